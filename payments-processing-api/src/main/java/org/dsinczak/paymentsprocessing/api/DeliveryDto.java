@@ -0,0 +1,16 @@
+package org.dsinczak.paymentsprocessing.api;
+
+import lombok.Value;
+
+/**
+ * Single attempt to notify external service about payment event.
+ */
+@Value
+public class DeliveryDto {
+    String eventId;
+    int attempt;
+    String outcome;
+    Long latencyMillis;
+    String error;
+    String loggedAt;
+}
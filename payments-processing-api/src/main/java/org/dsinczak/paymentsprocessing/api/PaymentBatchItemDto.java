@@ -0,0 +1,23 @@
+package org.dsinczak.paymentsprocessing.api;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Result of single payment of batch creation request, in the position of the payment in request.
+ * Either payment id or errors are set.
+ */
+@Value
+public class PaymentBatchItemDto {
+    String paymentId;
+    List<String> errors;
+
+    public static PaymentBatchItemDto created(String paymentId) {
+        return new PaymentBatchItemDto(paymentId, List.of());
+    }
+
+    public static PaymentBatchItemDto rejected(List<String> errors) {
+        return new PaymentBatchItemDto(null, errors);
+    }
+}
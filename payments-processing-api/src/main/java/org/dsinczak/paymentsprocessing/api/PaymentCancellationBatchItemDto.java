@@ -0,0 +1,24 @@
+package org.dsinczak.paymentsprocessing.api;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Result of single payment of batch cancellation request, in the position of the payment id in request.
+ * Either cancellation fee or errors are set.
+ */
+@Value
+public class PaymentCancellationBatchItemDto {
+    String paymentId;
+    MoneyDto cancellationFee;
+    List<String> errors;
+
+    public static PaymentCancellationBatchItemDto cancelled(String paymentId, MoneyDto cancellationFee) {
+        return new PaymentCancellationBatchItemDto(paymentId, cancellationFee, List.of());
+    }
+
+    public static PaymentCancellationBatchItemDto rejected(String paymentId, List<String> errors) {
+        return new PaymentCancellationBatchItemDto(paymentId, null, errors);
+    }
+}
@@ -1,5 +1,7 @@
 package org.dsinczak.paymentsprocessing.api;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Value;
 
 import java.util.List;
@@ -9,4 +11,9 @@ public class PaymentIdsDto {
 
     List<String> ids;
 
+    // Single argument constructor would be taken for delegating creator without explicit property name
+    @JsonCreator
+    public PaymentIdsDto(@JsonProperty("ids") List<String> ids) {
+        this.ids = ids;
+    }
 }
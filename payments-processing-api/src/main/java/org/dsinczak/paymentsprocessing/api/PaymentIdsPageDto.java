@@ -0,0 +1,23 @@
+package org.dsinczak.paymentsprocessing.api;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Page of payment ids. Next page is requested with {@code nextCursor}, which is null on the last page.
+ */
+@Value
+public class PaymentIdsPageDto {
+
+    List<String> ids;
+    String nextCursor;
+
+    @JsonCreator
+    public PaymentIdsPageDto(@JsonProperty("ids") List<String> ids, @JsonProperty("nextCursor") String nextCursor) {
+        this.ids = ids;
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,18 @@
+package org.dsinczak.paymentsprocessing.api;
+
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Result of single record of streamed payment upload. Either payment id or errors are set.
+ */
+@Value
+public class PaymentIngestionResultDto {
+    /**
+     * Line of the upload the record started on, counted from 1.
+     */
+    int line;
+    String paymentId;
+    List<String> errors;
+}
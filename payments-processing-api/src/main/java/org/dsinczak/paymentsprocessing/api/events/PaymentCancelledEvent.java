@@ -17,8 +17,11 @@ public class PaymentCancelledEvent extends PaymentEvent {
         this.paymentId = paymentId;
     }
 
+    /**
+     * Recreates already published event, used by deserialization.
+     */
     @JsonCreator
-    PaymentCancelledEvent(@JsonProperty("eventId") String eventId, @JsonProperty("paymentId") String paymentId) {
+    public PaymentCancelledEvent(@JsonProperty("eventId") String eventId, @JsonProperty("paymentId") String paymentId) {
         super(eventId);
         this.paymentId = paymentId;
     }
@@ -26,8 +29,8 @@ public class PaymentCancelledEvent extends PaymentEvent {
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
-        if (!(o instanceof PaymentCreatedEvent)) return false;
-        PaymentCreatedEvent that = (PaymentCreatedEvent) o;
+        if (!(o instanceof PaymentCancelledEvent)) return false;
+        PaymentCancelledEvent that = (PaymentCancelledEvent) o;
         return getEventId().equals(that.getEventId());
     }
 
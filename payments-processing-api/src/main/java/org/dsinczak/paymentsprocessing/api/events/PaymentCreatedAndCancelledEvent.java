@@ -0,0 +1,58 @@
+package org.dsinczak.paymentsprocessing.api.events;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Objects;
+
+/**
+ * Replaces {@link PaymentCreatedEvent} immediately followed by {@link PaymentCancelledEvent} of the same
+ * payment, when both were still waiting for delivery. Carries id of the cancellation event, so repeated
+ * delivery of the same pair produces the same event.
+ */
+@Getter
+@ToString
+public class PaymentCreatedAndCancelledEvent extends PaymentEvent {
+
+    private final String paymentId;
+
+    private final String type;
+
+    private final String createdEventId;
+
+    public PaymentCreatedAndCancelledEvent(PaymentCreatedEvent created, PaymentCancelledEvent cancelled) {
+        this(cancelled.getEventId(), created.getPaymentId(), created.getType(), created.getEventId());
+    }
+
+    /**
+     * Recreates already published event, used by deserialization.
+     */
+    @JsonCreator
+    public PaymentCreatedAndCancelledEvent(@JsonProperty("eventId") String eventId, @JsonProperty("paymentId") String paymentId,
+                                           @JsonProperty("type") String type, @JsonProperty("createdEventId") String createdEventId) {
+        super(eventId);
+        this.paymentId = paymentId;
+        this.type = type;
+        this.createdEventId = createdEventId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PaymentCreatedAndCancelledEvent)) return false;
+        PaymentCreatedAndCancelledEvent that = (PaymentCreatedAndCancelledEvent) o;
+        return getEventId().equals(that.getEventId());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(getEventId());
+    }
+
+    @Override
+    public boolean needsConfirmation() {
+        return false;
+    }
+}
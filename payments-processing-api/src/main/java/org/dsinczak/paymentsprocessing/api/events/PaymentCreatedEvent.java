@@ -20,8 +20,11 @@ public class PaymentCreatedEvent extends PaymentEvent {
         this.type = type;
     }
 
+    /**
+     * Recreates already published event, used by deserialization.
+     */
     @JsonCreator
-    PaymentCreatedEvent(@JsonProperty("eventId") String eventId, @JsonProperty("paymentId") String paymentId, @JsonProperty("type") String type) {
+    public PaymentCreatedEvent(@JsonProperty("eventId") String eventId, @JsonProperty("paymentId") String paymentId, @JsonProperty("type") String type) {
         super(eventId);
         this.paymentId = paymentId;
         this.type = type;
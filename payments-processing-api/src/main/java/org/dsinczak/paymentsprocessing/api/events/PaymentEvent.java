@@ -4,8 +4,9 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
+import org.dsinczak.paymentsprocessing.api.ids.TimeOrderedUuids;
+
 import java.io.Serializable;
-import java.util.UUID;
 
 import static com.fasterxml.jackson.annotation.JsonTypeInfo.As.PROPERTY;
 import static com.fasterxml.jackson.annotation.JsonTypeInfo.Id.NAME;
@@ -14,6 +15,7 @@ import static com.fasterxml.jackson.annotation.JsonTypeInfo.Id.NAME;
 @JsonSubTypes({
         @JsonSubTypes.Type(value = PaymentCreatedEvent.class, name = "paymentCreatedEvent"),
         @JsonSubTypes.Type(value = PaymentCancelledEvent.class, name = "paymentCancelledEvent"),
+        @JsonSubTypes.Type(value = PaymentCreatedAndCancelledEvent.class, name = "paymentCreatedAndCancelledEvent"),
 
 })
 public abstract class PaymentEvent implements Serializable {
@@ -22,7 +24,7 @@ public abstract class PaymentEvent implements Serializable {
     private final String eventId;
 
     public PaymentEvent() {
-        this.eventId = UUID.randomUUID().toString();
+        this.eventId = TimeOrderedUuids.next().toString();
     }
 
     protected PaymentEvent(String eventId) {
@@ -31,6 +33,11 @@ public abstract class PaymentEvent implements Serializable {
 
     public abstract boolean needsConfirmation();
 
+    /**
+     * Events of the same payment are delivered in order they were published.
+     */
+    public abstract String getPaymentId();
+
     public String getEventId() {
         return eventId;
     }
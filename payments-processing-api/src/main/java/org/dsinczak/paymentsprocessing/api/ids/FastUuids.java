@@ -0,0 +1,21 @@
+package org.dsinczak.paymentsprocessing.api.ids;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Random (version 4) UUIDs from {@link ThreadLocalRandom}. Never blocks and never contends, but ids are
+ * predictable, so it is meant for ids like log correlation ids, not for anything that acts as a secret.
+ */
+public final class FastUuids {
+
+    private FastUuids() {
+    }
+
+    public static UUID next() {
+        var random = ThreadLocalRandom.current();
+        var mostSignificantBits = random.nextLong() & 0xFFFFFFFFFFFF0FFFL | 0x4000L;
+        var leastSignificantBits = random.nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+}
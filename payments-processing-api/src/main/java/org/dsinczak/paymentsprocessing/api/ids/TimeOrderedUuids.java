@@ -0,0 +1,77 @@
+package org.dsinczak.paymentsprocessing.api.ids;
+
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generator of time ordered UUIDs laid out as version 7 of RFC 9562:
+ * <pre>
+ * unix millis:48 | version:4 | sequence:12 | variant:2 | random:62
+ * </pre>
+ * Ids generated later sort after earlier ones, so inserts hit the right edge of an index instead of random
+ * pages all over it. Millisecond and 12 bit sequence are taken from single atomic counter, which makes ids of
+ * this JVM strictly increasing even within one millisecond (more than 4096 ids in a millisecond borrow from
+ * the next one). Random part comes from per thread {@link SecureRandom}, so ids stay unguessable without
+ * contending on shared generator like {@link UUID#randomUUID()} does. Random bytes are fetched in blocks,
+ * as single call to the generator costs about the same for 8 bytes as for a few kilobytes.
+ */
+public final class TimeOrderedUuids {
+
+    private static final AtomicLong LAST_TIMESTAMP_AND_SEQUENCE = new AtomicLong();
+
+    private static final int RANDOM_BLOCK_SIZE = 4096;
+
+    private static final ThreadLocal<RandomBlock> RANDOM = ThreadLocal.withInitial(RandomBlock::new);
+
+    private TimeOrderedUuids() {
+    }
+
+    public static UUID next() {
+        var timestampAndSequence = nextTimestampAndSequence(System.currentTimeMillis());
+        var random = RANDOM.get().nextLong();
+        var mostSignificantBits = (timestampAndSequence >>> 12) << 16 | 0x7000L | (timestampAndSequence & 0xFFFL);
+        var leastSignificantBits = random & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+        return new UUID(mostSignificantBits, leastSignificantBits);
+    }
+
+    /**
+     * @return unix millis shifted left by 12 bits with sequence within the millisecond in the low bits
+     */
+    private static long nextTimestampAndSequence(long unixMillis) {
+        var candidate = unixMillis << 12;
+        while (true) {
+            var last = LAST_TIMESTAMP_AND_SEQUENCE.get();
+            var next = candidate > last ? candidate : last + 1;
+            if (LAST_TIMESTAMP_AND_SEQUENCE.compareAndSet(last, next)) {
+                return next;
+            }
+        }
+    }
+
+    private static final class RandomBlock {
+        private final SecureRandom secureRandom = newSecureRandom();
+        private final ByteBuffer block = ByteBuffer.allocate(RANDOM_BLOCK_SIZE).position(RANDOM_BLOCK_SIZE);
+
+        long nextLong() {
+            if (!block.hasRemaining()) {
+                secureRandom.nextBytes(block.array());
+                block.clear();
+            }
+            return block.getLong();
+        }
+
+        /**
+         * DRBG keeps its state per instance, unlike NativePRNG which serializes all instances on one lock.
+         */
+        private static SecureRandom newSecureRandom() {
+            try {
+                return SecureRandom.getInstance("DRBG");
+            } catch (NoSuchAlgorithmException e) {
+                return new SecureRandom();
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package org.dsinczak.paymentsprocessing;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * Limits of bulk payment creation ({@link PaymentsService#createNewPayments}) and cancellation
+ * ({@link PaymentsService#cancelPayments}).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "payments.batch")
+public class PaymentBatchProperties {
+
+    /**
+     * Maximum number of payments in single request.
+     */
+    private int maxSize = 5_000;
+
+    /**
+     * Number of payments stored in one transaction. Inserts of a chunk are sent in JDBC batches of
+     * {@code spring.jpa.properties.hibernate.jdbc.batch_size}, cancellations are conditional updates one per payment.
+     */
+    private int chunkSize = 500;
+
+    /**
+     * Chunks of streamed upload ({@link PaymentIngestion}) are created as one batch, so chunk has to fit into it.
+     */
+    @PostConstruct
+    void validate() {
+        if (chunkSize < 1 || chunkSize > maxSize) {
+            throw new IllegalStateException("payments.batch.chunk-size has to be from 1 to payments.batch.max-size (" + maxSize + "), but is " + chunkSize + ".");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.dsinczak.paymentsprocessing;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+import io.vavr.control.Either;
+import lombok.extern.slf4j.Slf4j;
+import org.dsinczak.paymentsprocessing.api.PaymentDto;
+import org.dsinczak.paymentsprocessing.api.PaymentIngestionResultDto;
+import org.dsinczak.paymentsprocessing.shared.ErrorMessage;
+import org.dsinczak.paymentsprocessing.web.ErrorMessageRenderer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.UUID;
+
+/**
+ * Streamed variant of bulk payment creation. Newline delimited payments are read with Jackson streaming parser
+ * one chunk at a time, chunk is created with {@link PaymentsService#createNewPayments} and results of its records
+ * are written and flushed before next chunk is read. At most one chunk is held in memory regardless of upload size,
+ * and upload is not read while chunk is being committed, so client sending faster than we commit is held back by
+ * TCP flow control instead of being buffered.
+ * Record that is not valid JSON ends the upload, parser cannot tell where next record starts. Its error is the
+ * last result, everything before it is already committed. Valid JSON object that does not map to payment (value of
+ * wrong type) is rejected alone and the upload goes on.
+ */
+@Slf4j
+@Component
+public class PaymentIngestion {
+
+    private final PaymentsService paymentsService;
+    private final ErrorMessageRenderer errorMessageRenderer;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter resultWriter;
+    private final PaymentBatchProperties batchProperties;
+
+    @Autowired
+    public PaymentIngestion(PaymentsService paymentsService, ErrorMessageRenderer errorMessageRenderer, ObjectMapper objectMapper, PaymentBatchProperties batchProperties) {
+        this.paymentsService = paymentsService;
+        this.errorMessageRenderer = errorMessageRenderer;
+        this.objectMapper = objectMapper;
+        this.resultWriter = objectMapper.writerFor(PaymentIngestionResultDto.class);
+        this.batchProperties = batchProperties;
+    }
+
+    /**
+     * @return number of records read
+     */
+    public int ingest(InputStream upload, OutputStream results) throws IOException {
+        var records = 0;
+        try (var parser = objectMapper.getFactory().createParser(upload)) {
+            var chunk = new ArrayList<PaymentDto>(batchProperties.getChunkSize());
+            var lines = new ArrayList<Integer>(batchProperties.getChunkSize());
+            var token = nextToken(parser, chunk, lines, results);
+            while (token != null) {
+                var line = parser.getTokenLocation().getLineNr();
+                if (token != JsonToken.START_OBJECT) {
+                    writeChunk(chunk, lines, results);
+                    writeError(line, "Payment has to be JSON object", results);
+                    return records;
+                }
+                try {
+                    chunk.add(objectMapper.readValue(parser, PaymentDto.class));
+                } catch (MismatchedInputException e) {
+                    writeChunk(chunk, lines, results);
+                    writeError(line, "Payment has invalid field: " + e.getOriginalMessage(), results);
+                    if (!skipRecord(parser, results)) {
+                        return records;
+                    }
+                    token = nextToken(parser, chunk, lines, results);
+                    continue;
+                } catch (JsonProcessingException e) {
+                    writeChunk(chunk, lines, results);
+                    writeError(line, "Payment is not valid JSON: " + e.getOriginalMessage(), results);
+                    return records;
+                }
+                lines.add(line);
+                records++;
+                if (chunk.size() == batchProperties.getChunkSize()) {
+                    writeChunk(chunk, lines, results);
+                }
+                token = nextToken(parser, chunk, lines, results);
+            }
+            writeChunk(chunk, lines, results);
+        }
+        log.info("Ingested {} payments", records);
+        return records;
+    }
+
+    /**
+     * @return next token or null when upload ended or is not valid JSON, in the latter case error is already written
+     */
+    private JsonToken nextToken(JsonParser parser, java.util.List<PaymentDto> chunk, java.util.List<Integer> lines, OutputStream results) throws IOException {
+        try {
+            return parser.nextToken();
+        } catch (JsonProcessingException e) {
+            writeChunk(chunk, lines, results);
+            writeError(e.getLocation().getLineNr(), "Payment is not valid JSON: " + e.getOriginalMessage(), results);
+            return null;
+        }
+    }
+
+    /**
+     * Moves parser to the end of record it failed to map.
+     *
+     * @return false when rest of the record is not valid JSON, error is already written then
+     */
+    private boolean skipRecord(JsonParser parser, OutputStream results) throws IOException {
+        try {
+            while (!parser.getParsingContext().inRoot()) {
+                if (parser.nextToken() == null) {
+                    break;
+                }
+            }
+            return true;
+        } catch (JsonProcessingException e) {
+            writeError(e.getLocation().getLineNr(), "Payment is not valid JSON: " + e.getOriginalMessage(), results);
+            return false;
+        }
+    }
+
+    private void writeChunk(java.util.List<PaymentDto> chunk, java.util.List<Integer> lines, OutputStream results) throws IOException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        // Chunk size is checked against batch limit at startup, rejected chunk is still reported record by record
+        var created = paymentsService.createNewPayments(List.ofAll(chunk))
+                .fold(error -> List.fill(chunk.size(), Either.<Seq<ErrorMessage>, UUID>left(List.of(error))), payments -> payments);
+        for (var result : created.zip(lines)) {
+            write(new PaymentIngestionResultDto(
+                    result._2,
+                    result._1.map(Object::toString).getOrNull(),
+                    result._1.fold(errors -> errorMessageRenderer.render(errors).asJava(), pid -> java.util.List.of())), results);
+        }
+        results.flush();
+        chunk.clear();
+        lines.clear();
+    }
+
+    private void writeError(int line, String error, OutputStream results) throws IOException {
+        write(new PaymentIngestionResultDto(line, null, java.util.List.of(error)), results);
+        results.flush();
+    }
+
+    private void write(PaymentIngestionResultDto result, OutputStream results) throws IOException {
+        results.write(resultWriter.writeValueAsBytes(result));
+        results.write('\n');
+    }
+}
@@ -1,10 +1,16 @@
 package org.dsinczak.paymentsprocessing;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vavr.control.Option;
 import lombok.extern.slf4j.Slf4j;
 import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
 import org.dsinczak.paymentsprocessing.domain.*;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.CircuitBreakingEventSenderConduit;
 import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderConduit;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderProperties;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeliveryCircuitBreaker;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.HttpEventSenderConduit;
 import org.dsinczak.paymentsprocessing.web.ClientAuditInterceptor;
 import org.dsinczak.paymentsprocessing.web.MdcLoggingInterceptor;
 import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
@@ -16,15 +22,18 @@ import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.net.URI;
 import java.net.http.HttpClient;
 import java.time.Clock;
 import java.time.Duration;
 import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -77,8 +86,40 @@ public class PaymentsConfiguration implements WebMvcConfigurer, AsyncConfigurer
     }
 
     @Bean
-    public DbEventSenderConduit dbEventSenderConduit() {
-        return (PaymentEvent e) -> log.info("Sending event {} to destination", e);
+    public ThreadPoolTaskScheduler taskScheduler() {
+        // Thread per long running job (outbox drain, journal drain, idempotency key purge), so
+        // slow destination does not hold back the others. Drain cycles started by poller and by
+        // commit triggered wake ups still run one after another, senders skip overlapping cycles
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(3);
+        scheduler.setThreadNamePrefix("TaskScheduler-");
+        return scheduler;
+    }
+
+    @Bean
+    public HttpClient eventSenderHttpClient() {
+        return HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    @Bean
+    public DeliveryCircuitBreaker deliveryCircuitBreaker(DbEventSenderProperties properties, MeterRegistry meterRegistry) {
+        var destination = Option.of(properties.getDestinationUrl())
+                .map(url -> URI.create(url).getAuthority())
+                .getOrElse("log");
+        return new DeliveryCircuitBreaker(destination, properties.getCircuitBreaker(), applicationClock(), meterRegistry);
+    }
+
+    @Bean
+    public DbEventSenderConduit dbEventSenderConduit(DbEventSenderProperties properties, DeliveryCircuitBreaker deliveryCircuitBreaker) {
+        var destinationConduit = Option.of(properties.getDestinationUrl())
+                .<DbEventSenderConduit>map(url -> new HttpEventSenderConduit(eventSenderHttpClient(), objectMapper, URI.create(url), properties.getDeliveryTimeout()))
+                .getOrElse(() -> (PaymentEvent e) -> {
+                    log.info("Sending event {} to destination", e);
+                    return CompletableFuture.completedFuture(null);
+                });
+        return new CircuitBreakingEventSenderConduit(destinationConduit, deliveryCircuitBreaker, properties.getDeliveryTimeout());
     }
 
     @Override
@@ -2,13 +2,24 @@ package org.dsinczak.paymentsprocessing;
 
 import io.vavr.collection.List;
 import io.vavr.collection.Seq;
+import io.vavr.control.Option;
 import io.vavr.control.Try;
 import lombok.extern.slf4j.Slf4j;
+import org.dsinczak.paymentsprocessing.api.DeliveryDto;
 import org.dsinczak.paymentsprocessing.api.ErrorDto;
 import org.dsinczak.paymentsprocessing.api.MoneyDto;
+import org.dsinczak.paymentsprocessing.api.PaymentBatchItemDto;
+import org.dsinczak.paymentsprocessing.api.PaymentCancellationBatchItemDto;
 import org.dsinczak.paymentsprocessing.api.PaymentCancellationFeeDto;
 import org.dsinczak.paymentsprocessing.api.PaymentDto;
-import org.dsinczak.paymentsprocessing.readModel.PaymentViewRepository;
+import org.dsinczak.paymentsprocessing.api.PaymentIdsDto;
+import org.dsinczak.paymentsprocessing.api.PaymentIdsPageDto;
+import org.dsinczak.paymentsprocessing.idempotency.IdempotentPaymentCreation;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeliveryLogRepository;
+import org.dsinczak.paymentsprocessing.readModel.NotCancelledPaymentsExport;
+import org.dsinczak.paymentsprocessing.readModel.NotCancelledPaymentsQuery;
+import org.dsinczak.paymentsprocessing.readModel.PaymentAmountFilter;
+import org.dsinczak.paymentsprocessing.readModel.PaymentViewCache;
 import org.dsinczak.paymentsprocessing.shared.ErrorMessage;
 import org.dsinczak.paymentsprocessing.web.ErrorMessageRenderer;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,6 +27,10 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import javax.money.MonetaryAmount;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.UUID;
 
 import static io.vavr.API.*;
@@ -31,25 +46,77 @@ import static org.dsinczak.paymentsprocessing.shared.ErrorMessage.error;
 @RequestMapping("/payment")
 public class PaymentsController {
 
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final PaymentsService paymentsService;
     private final ErrorMessageRenderer errorMessageRenderer;
-    private final PaymentViewRepository paymentViewRepository;
+    private final PaymentViewCache paymentViewCache;
+    private final DeliveryLogRepository deliveryLogRepository;
+    private final PaymentIngestion paymentIngestion;
+    private final IdempotentPaymentCreation idempotentPaymentCreation;
+    private final NotCancelledPaymentsQuery notCancelledPaymentsQuery;
+    private final NotCancelledPaymentsExport notCancelledPaymentsExport;
 
     @Autowired
-    PaymentsController(PaymentsService paymentFactory, ErrorMessageRenderer errorMessageRenderer, PaymentViewRepository paymentViewRepository) {
+    PaymentsController(PaymentsService paymentFactory, ErrorMessageRenderer errorMessageRenderer, PaymentViewCache paymentViewCache,
+                       DeliveryLogRepository deliveryLogRepository, PaymentIngestion paymentIngestion, IdempotentPaymentCreation idempotentPaymentCreation,
+                       NotCancelledPaymentsQuery notCancelledPaymentsQuery, NotCancelledPaymentsExport notCancelledPaymentsExport) {
         this.paymentsService = paymentFactory;
         this.errorMessageRenderer = errorMessageRenderer;
-        this.paymentViewRepository = paymentViewRepository;
+        this.paymentViewCache = paymentViewCache;
+        this.deliveryLogRepository = deliveryLogRepository;
+        this.paymentIngestion = paymentIngestion;
+        this.idempotentPaymentCreation = idempotentPaymentCreation;
+        this.notCancelledPaymentsQuery = notCancelledPaymentsQuery;
+        this.notCancelledPaymentsExport = notCancelledPaymentsExport;
     }
 
+    /**
+     * With {@value #IDEMPOTENCY_KEY} header the request can be retried, retry returns the payment created by the first
+     * request, see {@link IdempotentPaymentCreation}.
+     */
     @PostMapping()
-    ResponseEntity<Object> createPayment(@RequestBody PaymentDto paymentDto) {
-        return Match(paymentsService.createNewPayment(paymentDto)).of(
+    ResponseEntity<Object> createPayment(@RequestBody PaymentDto paymentDto, @RequestHeader(name = IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        var created = idempotencyKey == null
+                ? paymentsService.createNewPayment(paymentDto)
+                : idempotentPaymentCreation.createNewPayment(idempotencyKey, paymentDto);
+
+        return Match(created).of(
                 Case($Right($()), pid -> ok(pid.toString())),
                 Case($Left($()), this::badRequest)
         );
     }
 
+    /**
+     * Creates many payments at once. Response lists result of every payment in request order, invalid payments
+     * do not stop the valid ones.
+     */
+    @PostMapping("/batch")
+    ResponseEntity<Object> createPayments(@RequestBody java.util.List<PaymentDto> paymentDtos) {
+        var results = paymentsService.createNewPayments(List.ofAll(paymentDtos))
+                .map(items -> items
+                        .map(item -> item.fold(
+                                errors -> PaymentBatchItemDto.rejected(errorMessageRenderer.render(errors).asJava()),
+                                pid -> PaymentBatchItemDto.created(pid.toString())))
+                        .asJava());
+
+        return Match(results).of(
+                Case($Right($()), this::ok),
+                Case($Left($()), this::badRequest)
+        );
+    }
+
+    /**
+     * Creates payments uploaded as newline delimited JSON of any size. Result of every record is streamed back
+     * as soon as its chunk is committed, see {@link PaymentIngestion}.
+     */
+    @PostMapping(path = "/stream", consumes = NDJSON, produces = NDJSON)
+    void ingestPayments(InputStream upload, HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        paymentIngestion.ingest(upload, response.getOutputStream());
+    }
+
     @PutMapping("/{paymentId}/cancellation")
     ResponseEntity<Object> cancelPayment(@PathVariable String paymentId) {
         var cancellation = Try.of(() -> UUID.fromString(paymentId)).toEither()
@@ -57,18 +124,78 @@ public class PaymentsController {
                 .flatMap(paymentsService::cancelPayment);
 
         return Match(cancellation).of(
-                Case($Right($()), ma -> ok(new MoneyDto(ma.getNumber().toString(), ma.getCurrency().getCurrencyCode()))),
+                Case($Right($()), ma -> ok(toDto(ma))),
                 Case($Left($()), this::badRequest)
         );
     }
 
-    // It should be possible to query all payments that aren't canceled as well as filter them by amount. Query should return payment IDs.
-    // There should also be an option to query specific payment by ID, and it should return payment ID and cancelation fee.
+    /**
+     * Cancels many payments at once. Response lists result of every payment id in request order, payments that
+     * cannot be cancelled do not stop the others.
+     */
+    @PostMapping("/cancellation/batch")
+    ResponseEntity<Object> cancelPayments(@RequestBody PaymentIdsDto paymentIdsDto) {
+        var paymentIds = Option.of(paymentIdsDto.getIds()).map(List::ofAll).getOrElse(List.empty());
+        var results = paymentsService.cancelPayments(paymentIds)
+                .map(items -> items
+                        .zipWith(paymentIds, (item, paymentId) -> item.fold(
+                                error -> PaymentCancellationBatchItemDto.rejected(paymentId, java.util.List.of(errorMessageRenderer.render(error))),
+                                fee -> PaymentCancellationBatchItemDto.cancelled(paymentId, toDto(fee.toMonetaryAmount()))))
+                        .asJava());
 
+        return Match(results).of(
+                Case($Right($()), this::ok),
+                Case($Left($()), this::badRequest)
+        );
+    }
+
+    /**
+     * Ids of payments that are not cancelled, optionally filtered by amount and currency, one page at a time.
+     * Next page is requested with {@code cursor} returned with the previous one, see {@link NotCancelledPaymentsQuery}.
+     */
+    @GetMapping()
+    ResponseEntity<Object> findNotCancelledPayments(@RequestParam(required = false) String minAmount, @RequestParam(required = false) String maxAmount,
+                                                    @RequestParam(required = false) String currency, @RequestParam(required = false) String cursor,
+                                                    @RequestParam(required = false) Integer limit) {
+        var page = notCancelledPaymentsQuery.find(minAmount, maxAmount, currency, cursor, limit)
+                .map(p -> new PaymentIdsPageDto(p.getPaymentIds().map(UUID::toString).asJava(), p.getNextCursor()));
+
+        return Match(page).of(
+                Case($Right($()), this::ok),
+                Case($Left($()), this::badRequest)
+        );
+    }
+
+
+    /**
+     * All payments of {@link #findNotCancelledPayments} at once, streamed as newline delimited JSON or CSV
+     * ({@code format=ndjson|csv}) straight from database, see {@link NotCancelledPaymentsExport}.
+     */
+    @GetMapping("/export")
+    ResponseEntity<Object> exportNotCancelledPayments(@RequestParam(required = false) String minAmount, @RequestParam(required = false) String maxAmount,
+                                                      @RequestParam(required = false) String currency, @RequestParam(defaultValue = "ndjson") String format,
+                                                      HttpServletResponse response) throws IOException {
+        var exportFormat = NotCancelledPaymentsExport.Format.of(format);
+        if (exportFormat.isEmpty()) {
+            return badRequest(error("Export format {0} is not supported.", format));
+        }
+        var filter = PaymentAmountFilter.of(minAmount, maxAmount, currency);
+        if (filter.isLeft()) {
+            return badRequest(filter.getLeft());
+        }
+        response.setContentType(exportFormat.get().getContentType());
+        notCancelledPaymentsExport.write(filter.get(), exportFormat.get(), response.getOutputStream());
+        // Response is already written
+        return null;
+    }
+
+    /**
+     * Polled heavily by dashboards, answered from {@link PaymentViewCache} when possible.
+     */
     @GetMapping("/{paymentId}/cancellation")
     ResponseEntity<Object> getCancellationByPaymentId(@PathVariable String paymentId) {
         var dto = Try.of(() -> UUID.fromString(paymentId)).toOption()
-                .flatMap(paymentViewRepository::findByPaymentId)
+                .flatMap(paymentViewCache::findByPaymentId)
                 .map(pv->new PaymentCancellationFeeDto(
                         pv.getPaymentId().toString(),
                         pv.getCancellationFee().getNumber().toString(),
@@ -81,12 +208,40 @@ public class PaymentsController {
         );
     }
 
+    /**
+     * Notification attempts of payment events, oldest first. Log is written asynchronously, so the latest
+     * attempt may show up with a short delay.
+     */
+    @GetMapping("/{paymentId}/deliveries")
+    ResponseEntity<Object> getDeliveriesByPaymentId(@PathVariable String paymentId) {
+        var deliveries = Try.of(() -> UUID.fromString(paymentId)).toEither()
+                .mapLeft(th -> error("Payment ID {0} is not valid UUID", paymentId))
+                .map(pid -> deliveryLogRepository.findByPaymentIdOrderByIdAsc(pid.toString())
+                        .map(entry -> new DeliveryDto(
+                                entry.getEventId(),
+                                entry.getAttempt(),
+                                entry.getOutcome().name(),
+                                entry.getLatencyMillis(),
+                                entry.getError(),
+                                entry.getLoggedAt().toString()))
+                        .asJava());
+
+        return Match(deliveries).of(
+                Case($Right($()), this::ok),
+                Case($Left($()), this::badRequest)
+        );
+    }
+
     @ExceptionHandler(Exception.class)
     ResponseEntity<ErrorDto> exceptionHandler(Exception ex) {
         log.error("Uncaught exception, sending apologise to the client", ex);
         return new ResponseEntity<>(new ErrorDto("Something went wrong. We are very sorry for inconvenience."), HttpStatus.INTERNAL_SERVER_ERROR);
     }
 
+    private static MoneyDto toDto(MonetaryAmount amount) {
+        return new MoneyDto(amount.getNumber().toString(), amount.getCurrency().getCurrencyCode());
+    }
+
     private ResponseEntity<Object> ok(Object o) {
         return new ResponseEntity<>(o, HttpStatus.OK);
     }
@@ -2,10 +2,13 @@ package org.dsinczak.paymentsprocessing;
 
 import io.vavr.Tuple;
 import io.vavr.Tuple2;
+import io.vavr.Tuple3;
 import io.vavr.collection.HashSet;
+import io.vavr.collection.List;
 import io.vavr.collection.Seq;
 import io.vavr.collection.Set;
 import io.vavr.control.Either;
+import io.vavr.control.Try;
 import lombok.extern.slf4j.Slf4j;
 import org.dsinczak.paymentsprocessing.api.PaymentDto;
 import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent;
@@ -16,8 +19,11 @@ import org.dsinczak.paymentsprocessing.domain.PaymentFactory;
 import org.dsinczak.paymentsprocessing.domain.PaymentRepository;
 import org.dsinczak.paymentsprocessing.notification.EventPublisher;
 import org.dsinczak.paymentsprocessing.shared.ErrorMessage;
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
 
 import javax.money.MonetaryAmount;
 import javax.transaction.Transactional;
@@ -42,19 +48,68 @@ public class PaymentsService {
     private final PaymentRepository paymentRepository;
     private final CancellationFeePolicy cancellationFeePolicy;
     private final EventPublisher eventPublisher;
+    private final TransactionOperations transactionOperations;
+    private final PaymentBatchProperties batchProperties;
+    private final ApplicationEventPublisher applicationEventPublisher;
 
     @Autowired
-    public PaymentsService(PaymentFactory paymentFactory, PaymentRepository paymentRepository, CancellationFeePolicy cancellationFeePolicy, EventPublisher eventPublisher) {
+    public PaymentsService(PaymentFactory paymentFactory, PaymentRepository paymentRepository, CancellationFeePolicy cancellationFeePolicy, EventPublisher eventPublisher,
+                           TransactionOperations transactionOperations, PaymentBatchProperties batchProperties, ApplicationEventPublisher applicationEventPublisher) {
         this.paymentFactory = paymentFactory;
         this.paymentRepository = paymentRepository;
         this.cancellationFeePolicy = cancellationFeePolicy;
         this.eventPublisher = eventPublisher;
+        this.transactionOperations = transactionOperations;
+        this.batchProperties = batchProperties;
+        this.applicationEventPublisher = applicationEventPublisher;
     }
 
-    @Transactional(Transactional.TxType.REQUIRES_NEW)
+    /**
+     * Joins transaction of the caller when there is one, so caller can store more along with the payment.
+     */
+    @Transactional
     public Either<Seq<ErrorMessage>, UUID> createNewPayment(PaymentDto paymentDto) {
         log.info("Creating new payment {}", paymentDto);
-        var payment = paymentFactory.create()
+        var result = buildPayment(paymentDto).map(payment -> persist(payment, paymentDto.getType()));
+        log.debug("Payment creation result {}", result);
+
+        return result;
+    }
+
+    /**
+     * Bulk variant of {@link #createNewPayment(PaymentDto)} for upstream batch jobs. Payments are validated in parallel,
+     * valid ones are stored in chunks and every chunk is committed in its own transaction, so one commit covers many
+     * payments. When chunk cannot be stored its payments are reported as failed, chunks committed before stay.
+     *
+     * @return result of every payment in request order or error when batch size is out of limits
+     */
+    public Either<ErrorMessage, List<Either<Seq<ErrorMessage>, UUID>>> createNewPayments(List<PaymentDto> paymentDtos) {
+        if (paymentDtos.isEmpty() || paymentDtos.size() > batchProperties.getMaxSize()) {
+            return Either.left(error("Batch has to contain from 1 to {0} payments.", batchProperties.getMaxSize()));
+        }
+        log.info("Creating {} new payments", paymentDtos.size());
+        var validated = paymentDtos.toJavaParallelStream()
+                .map(this::buildPayment)
+                .collect(List.collector());
+
+        var stored = validated.zipWithIndex()
+                .filter(paymentWithIndex -> paymentWithIndex._1.isRight())
+                .map(paymentWithIndex -> Tuple.of(paymentWithIndex._2, paymentWithIndex._1.get(), paymentDtos.get(paymentWithIndex._2).getType()))
+                .grouped(batchProperties.getChunkSize())
+                .flatMap(this::persistChunk)
+                .toMap(Tuple2::_1, Tuple2::_2);
+
+        var result = validated.zipWithIndex()
+                .map(paymentWithIndex -> paymentWithIndex._1.isLeft()
+                        ? Either.<Seq<ErrorMessage>, UUID>left(paymentWithIndex._1.getLeft())
+                        : stored.get(paymentWithIndex._2).get());
+        log.debug("Created {} of {} payments", result.count(Either::isRight), paymentDtos.size());
+
+        return Either.right(result);
+    }
+
+    private Either<Seq<ErrorMessage>, Payment> buildPayment(PaymentDto paymentDto) {
+        return paymentFactory.create()
                 .withType(paymentDto.getType())
                 .withAmount(paymentDto.getAmount())
                 .withCurrency(paymentDto.getCurrency())
@@ -63,19 +118,84 @@ public class PaymentsService {
                 .withDebtor(paymentDto.getDebtorIban())
                 .withDetails(paymentDto.getDetails())
                 .build();
+    }
 
-        // persist
-        var paymentWithId = payment.map(p -> Tuple.of(paymentRepository.save(p), p));
+    private UUID persist(Payment payment, String type) {
+        var paymentId = paymentRepository.save(payment);
 
+        var event = new PaymentCreatedEvent(paymentId.toString(), type);
         // send events (only for TYPE1 and TYPE2)
-        paymentWithId.toOption()
-                .filter(ip -> CREATION_NOTIFICATION_TYPES.contains(ip._2.getType()))
-                .forEach(ip -> eventPublisher.publish(new PaymentCreatedEvent(ip._1.toString(), paymentDto.getType())));
+        if (CREATION_NOTIFICATION_TYPES.contains(payment.getType())) {
+            eventPublisher.publish(event);
+        }
+        // In-process listeners (read model projection) follow payments of every type
+        applicationEventPublisher.publishEvent(event);
+        return paymentId;
+    }
 
-        var result = paymentWithId.map(Tuple2::_1);
-        log.debug("Payment creation result {}", result);
+    /**
+     * Inserts of the chunk are flushed at commit, grouped by table into JDBC batches.
+     *
+     * @param chunk payments with their position in request and requested type
+     */
+    private List<Tuple2<Integer, Either<Seq<ErrorMessage>, UUID>>> persistChunk(List<Tuple3<Integer, Payment, String>> chunk) {
+        try {
+            return transactionOperations.execute(status -> chunk.map(item ->
+                    Tuple.of(item._1, Either.<Seq<ErrorMessage>, UUID>right(persist(item._2, item._3)))));
+        } catch (Exception e) {
+            log.error("Unable to store chunk of " + chunk.size() + " payments.", e);
+            return chunk.map(item -> Tuple.of(item._1, Either.left(List.of(error("Payment could not be stored, it can be sent again.")))));
+        }
+    }
 
-        return result;
+    /**
+     * Bulk variant of {@link #cancelPayment(UUID)} for operations teams. Payments of every chunk are loaded with
+     * single query and cancelled in one transaction, each with its own update guarded by payment version, so
+     * payment changed concurrently is reported as failed alone and the rest of the chunk is committed. When chunk
+     * cannot be stored at all its payments are reported as failed, chunks committed before stay.
+     *
+     * @return result of every payment id in request order or error when batch size is out of limits
+     */
+    public Either<ErrorMessage, List<Either<ErrorMessage, MinorUnitAmount>>> cancelPayments(List<String> paymentIds) {
+        if (paymentIds.isEmpty() || paymentIds.size() > batchProperties.getMaxSize()) {
+            return Either.left(error("Batch has to contain from 1 to {0} payments.", batchProperties.getMaxSize()));
+        }
+        log.info("Cancelling {} payments", paymentIds.size());
+        var parsed = paymentIds.map(paymentId -> Try.of(() -> UUID.fromString(paymentId)).toEither()
+                .mapLeft(th -> error("Payment ID {0} is not valid UUID", paymentId)));
+
+        var cancelled = parsed.flatMap(Either::toOption)
+                .distinct()
+                .grouped(batchProperties.getChunkSize())
+                .flatMap(this::cancelChunk)
+                .toMap(Tuple2::_1, Tuple2::_2);
+
+        var result = parsed.map(paymentId -> paymentId.flatMap(pid -> cancelled.get(pid).get()));
+        log.debug("Cancelled {} of {} payments", result.count(Either::isRight), paymentIds.size());
+
+        return Either.right(result);
+    }
+
+    private List<Tuple2<UUID, Either<ErrorMessage, MinorUnitAmount>>> cancelChunk(List<UUID> chunk) {
+        try {
+            return transactionOperations.execute(status -> {
+                var payments = paymentRepository.findByPaymentIds(chunk);
+                var results = chunk.map(paymentId -> Tuple.of(paymentId, payments.get(paymentId)
+                        .toEither(error("Payment with ID: {0} does not exist.", paymentId))
+                        .flatMap(payment -> payment.cancel(cancellationFeePolicy).map(fee -> Tuple.of(fee, payment)))
+                        .flatMap(cancelled -> paymentRepository.saveCancellation(cancelled._2)
+                                ? Either.<ErrorMessage, MinorUnitAmount>right(cancelled._1)
+                                : Either.left(error("Cancellation failure. Payment was changed concurrently")))));
+
+                results.filter(result -> result._2.isRight())
+                        .map(result -> new PaymentCancelledEvent(result._1.toString()))
+                        .forEach(this::publishCancellation);
+                return results;
+            });
+        } catch (Exception e) {
+            log.error("Unable to cancel chunk of " + chunk.size() + " payments.", e);
+            return chunk.map(paymentId -> Tuple.of(paymentId, Either.left(error("Payment could not be cancelled, it can be sent again."))));
+        }
     }
 
     @Transactional(Transactional.TxType.REQUIRES_NEW)
@@ -83,18 +203,23 @@ public class PaymentsService {
         log.info("Payment {} cancellation", paymentId);
         var cancellation = paymentRepository.findByPaymentId(paymentId)
                 .toEither(error("Payment with ID: {0} does not exist.", paymentId))
-                .flatMap(payment -> payment.cancel(cancellationFeePolicy).map(fee -> Tuple.of(fee, payment)));
+                .flatMap(payment -> payment.cancel(cancellationFeePolicy).map(fee -> Tuple.of(fee, payment)))
+                // Persist, only one of concurrent cancellations gets through
+                .flatMap(cancelled -> paymentRepository.saveCancellation(cancelled._2)
+                        ? Either.<ErrorMessage, MinorUnitAmount>right(cancelled._1)
+                        : Either.left(error("Cancellation failure. Payment was changed concurrently")));
 
-        // Persist and send events
-        cancellation.map(Tuple2::_2).forEach(payment -> {
-            paymentRepository.save(payment);
-            eventPublisher.publish(new PaymentCancelledEvent(paymentId.toString()));
-        });
+        // Send events
+        cancellation.forEach(fee -> publishCancellation(new PaymentCancelledEvent(paymentId.toString())));
 
-        var result = cancellation.map(Tuple2::_1);
+        var result = cancellation.map(MinorUnitAmount::toMonetaryAmount);
         log.debug("Payment cancellation result {}", result);
 
         return result;
     }
 
+    private void publishCancellation(PaymentCancelledEvent event) {
+        eventPublisher.publish(event);
+        applicationEventPublisher.publishEvent(event);
+    }
 }
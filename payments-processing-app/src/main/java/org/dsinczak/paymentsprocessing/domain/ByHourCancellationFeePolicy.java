@@ -1,8 +1,8 @@
 package org.dsinczak.paymentsprocessing.domain;
 
-import org.javamoney.moneta.Money;
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount;
 
-import javax.money.MonetaryAmount;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.LocalDateTime;
@@ -14,9 +14,14 @@ import java.time.LocalDateTime;
  * h - number of full hours (2:59 = 2h) payment is in system;
  * k - coefficient (0.05 for TYPE1; 0.1 for TYPE2, 0.15 for TYPE3).
  * Result is an amount in EUR.
+ * Coefficients are kept in euro cents, so fee is exact long multiplication.
  */
 public class ByHourCancellationFeePolicy implements CancellationFeePolicy {
 
+    private static final MinorUnitAmount TYPE1_HOURLY_FEE = MinorUnitAmount.of(5, CurrencyCode.EUR);
+    private static final MinorUnitAmount TYPE2_HOURLY_FEE = MinorUnitAmount.of(10, CurrencyCode.EUR);
+    private static final MinorUnitAmount TYPE3_HOURLY_FEE = MinorUnitAmount.of(15, CurrencyCode.EUR);
+
     private final Clock clock;
 
     public ByHourCancellationFeePolicy(Clock clock) {
@@ -24,24 +29,24 @@ public class ByHourCancellationFeePolicy implements CancellationFeePolicy {
     }
 
     @Override
-    public MonetaryAmount apply(LocalDateTime created, Payment.Type type, MonetaryAmount monetaryAmount) {
+    public MinorUnitAmount apply(LocalDateTime created, Payment.Type type, MinorUnitAmount amount) {
         var now = LocalDateTime.now(clock);
         if (now.isBefore(created)) {
             throw new IllegalArgumentException("Payment creation time cannot be after current time.");
         }
         var hours = Duration.between(created, now).toHours();
 
-        return Money.of(hours, "EUR").multiply(coefficient(type));
+        return hourlyFee(type).multiply(hours);
     }
 
-    private double coefficient(Payment.Type type) {
+    private MinorUnitAmount hourlyFee(Payment.Type type) {
         switch (type) {
             case TYPE1:
-                return 0.05;
+                return TYPE1_HOURLY_FEE;
             case TYPE2:
-                return 0.1;
+                return TYPE2_HOURLY_FEE;
             case TYPE3:
-                return 0.15;
+                return TYPE3_HOURLY_FEE;
             default:
                 throw new IllegalArgumentException("Payment type: " + type + " is not supported.");
         }
@@ -1,8 +1,8 @@
 package org.dsinczak.paymentsprocessing.domain;
 
 import io.vavr.Function3;
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount;
 
-import javax.money.MonetaryAmount;
 import java.time.LocalDateTime;
 
 /**
@@ -11,6 +11,6 @@ import java.time.LocalDateTime;
  * modify domain logic but only providing new implementation that keeps the
  * contract.
  */
-public interface CancellationFeePolicy extends Function3<LocalDateTime, Payment.Type, MonetaryAmount, MonetaryAmount> {
+public interface CancellationFeePolicy extends Function3<LocalDateTime, Payment.Type, MinorUnitAmount, MinorUnitAmount> {
 
 }
@@ -1,5 +1,9 @@
 package org.dsinczak.paymentsprocessing.domain;
 
+import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.collection.Seq;
 import io.vavr.control.Option;
 
 import javax.persistence.EntityManager;
@@ -23,6 +27,49 @@ public class JpaPaymentRepository implements PaymentRepository {
         return payment.getPaymentId();
     }
 
+    /**
+     * Single query with {@code IN} list, H2 and most databases accept thousands of parameters, so chunk of
+     * {@link org.dsinczak.paymentsprocessing.PaymentBatchProperties#getChunkSize()} fits into it.
+     */
+    @Override
+    public Map<UUID, Payment> findByPaymentIds(Seq<UUID> paymentIds) {
+        if (paymentIds.isEmpty()) {
+            return HashMap.empty();
+        }
+        var payments = List.ofAll(entityManager.createQuery("SELECT p FROM Payment p WHERE p.paymentId IN :paymentIds", Payment.class)
+                .setParameter("paymentIds", paymentIds.asJava())
+                .getResultList());
+
+        // Inject dependencies
+        payments.forEach(p -> p.setClock(clock));
+
+        return payments.toMap(Payment::getPaymentId, p -> p);
+    }
+
+    /**
+     * Single conditional update, row is locked only for the rest of the transaction and concurrent cancellations
+     * of the same version end with exactly one updated row.
+     */
+    @Override
+    public boolean saveCancellation(Payment payment) {
+        // Update below writes the change, dirty checking must not write it once again at flush
+        entityManager.detach(payment);
+        var fee = payment.getCancellationFee();
+        var updated = entityManager.createQuery("UPDATE Payment p SET p.state = :cancelled, " +
+                "p.cancellationFee.minorUnits = :feeMinorUnits, p.cancellationFee.currency = :feeCurrency, " +
+                "p.lastModified = :lastModified, p.version = p.version + 1 " +
+                "WHERE p.id = :id AND p.version = :version AND p.state = :created")
+                .setParameter("cancelled", Payment.State.CANCELLED)
+                .setParameter("feeMinorUnits", fee.getMinorUnits())
+                .setParameter("feeCurrency", fee.getCurrency())
+                .setParameter("lastModified", payment.getLastModified())
+                .setParameter("id", payment.getId())
+                .setParameter("version", payment.getVersion())
+                .setParameter("created", Payment.State.CREATED)
+                .executeUpdate();
+        return updated == 1;
+    }
+
     @Override
     public Option<Payment> findByPaymentId(UUID paymentId) {
         try {
@@ -3,10 +3,10 @@ package org.dsinczak.paymentsprocessing.domain;
 import io.vavr.control.Either;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import org.dsinczak.paymentsprocessing.api.ids.TimeOrderedUuids;
 import org.dsinczak.paymentsprocessing.shared.ErrorMessage;
-import org.dsinczak.paymentsprocessing.shared.MonetaryAmountConverter;
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount;
 
-import javax.money.MonetaryAmount;
 import javax.persistence.*;
 import java.time.Clock;
 import java.time.LocalDateTime;
@@ -22,6 +22,11 @@ import static org.dsinczak.paymentsprocessing.shared.ErrorMessage.error;
  * Encapsulates business rules for purchase providing coherent api for internal state manipulation.
  */
 @Entity
+// Serves keyset pages of not cancelled payments filtered by amount, id makes the key unique
+@Table(name = "payment", indexes = {
+        @Index(name = "payment_state_amount_idx", columnList = "state, amount_currency, amount_minor, id"),
+        @Index(name = "payment_last_modified_idx", columnList = "last_modified")
+})
 @NoArgsConstructor(force = true, access = AccessLevel.PRIVATE)
 public class Payment {
 
@@ -32,14 +37,17 @@ public class Payment {
     @Transient
     private Clock clock;
 
+    // Pooled sequence, Hibernate hands out 50 ids per single sequence call
     @Id
-    @GeneratedValue(strategy = GenerationType.AUTO)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "payment_id")
+    @SequenceGenerator(name = "payment_id", sequenceName = "payment_id_seq", allocationSize = 50)
     private Long id;
 
     // Business is separate from technical DB id.
     // This also solves problem of equals and hashcode
+    // Time ordered, so unique index on it is appended to instead of being written all over
     @Column(unique = true)
-    private UUID paymentId = UUID.randomUUID();
+    private UUID paymentId = TimeOrderedUuids.next();
     @Column(nullable = false)
     private Type type;
     @Column(nullable = false)
@@ -50,23 +58,35 @@ public class Payment {
     private Iban creditor;
     @Column
     private Bic creditorBic;
-    @Column(nullable = false)
-    @Convert(converter = MonetaryAmountConverter.class)
-    private MonetaryAmount amount;
+    @Embedded
+    @AttributeOverride(name = "minorUnits", column = @Column(name = "amount_minor", nullable = false))
+    @AttributeOverride(name = "currency", column = @Column(name = "amount_currency", length = 3, nullable = false))
+    private MinorUnitAmount amount;
     @Column(nullable = false)
     private LocalDateTime created;
     @Column(nullable = false)
     private State state = State.CREATED;
     @Column
     private String details;
-    @Column
-    @Convert(converter = MonetaryAmountConverter.class)
-    private MonetaryAmount cancellationFee;
+    @Embedded
+    @AttributeOverride(name = "minorUnits", column = @Column(name = "cancellation_fee_minor"))
+    @AttributeOverride(name = "currency", column = @Column(name = "cancellation_fee_currency", length = 3))
+    private MinorUnitAmount cancellationFee;
+    // Concurrent modifications of the same payment are detected, not overwritten
+    @Version
+    @Column(nullable = false)
+    private long version;
+    /**
+     * Time of creation or cancellation, instances of the application follow changes of each other by it.
+     */
+    @Column(name = "last_modified", nullable = false)
+    private LocalDateTime lastModified;
 
     // For testing purposes
-    Payment(Clock clock, LocalDateTime created, Type type, Iban debtor, Iban creditor, Bic creditorBic, String details, MonetaryAmount amount) {
+    Payment(Clock clock, LocalDateTime created, Type type, Iban debtor, Iban creditor, Bic creditorBic, String details, MinorUnitAmount amount) {
         this.clock = clock;
         this.created = created;
+        this.lastModified = created;
         this.type = type;
         this.debtor = debtor;
         this.creditor = creditor;
@@ -79,7 +99,7 @@ public class Payment {
      * Creation of payment is possible only through repository or factory.
      * This way we protect business logic invariants.
      */
-    Payment(Clock clock, Type type, Iban debtor, Iban creditor, Bic creditorBic, String details, MonetaryAmount amount) {
+    Payment(Clock clock, Type type, Iban debtor, Iban creditor, Bic creditorBic, String details, MinorUnitAmount amount) {
         this(clock, LocalDateTime.now(clock), type, debtor, creditor, creditorBic, details, amount);
     }
 
@@ -89,7 +109,7 @@ public class Payment {
      * @param cancellationFeePolicy cancellation fee may apply according to policy
      * @return either error message or calculated fee value
      */
-    public Either<ErrorMessage, MonetaryAmount> cancel(CancellationFeePolicy cancellationFeePolicy) {
+    public Either<ErrorMessage, MinorUnitAmount> cancel(CancellationFeePolicy cancellationFeePolicy) {
         Objects.requireNonNull(cancellationFeePolicy, "Cannot cancel without fee policy");
         if (state == State.CANCELLED) {
             return Either.left(error("Cancellation failure. Payment already cancelled"));
@@ -102,6 +122,7 @@ public class Payment {
         }
 
         this.state = State.CANCELLED;
+        this.lastModified = now;
         var fee = cancellationFeePolicy.apply(created, type, amount);
         this.cancellationFee = fee;
         return Either.right(fee);
@@ -113,6 +134,26 @@ public class Payment {
         return paymentId;
     }
 
+    Long getId() {
+        return id;
+    }
+
+    long getVersion() {
+        return version;
+    }
+
+    State getState() {
+        return state;
+    }
+
+    MinorUnitAmount getCancellationFee() {
+        return cancellationFee;
+    }
+
+    LocalDateTime getLastModified() {
+        return lastModified;
+    }
+
     /**
      * This is consequence of decision to mix aggregate with persistence information.
      * JPA is able to load object state from DB but dependency injection has to be done
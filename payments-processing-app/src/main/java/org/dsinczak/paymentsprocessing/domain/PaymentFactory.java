@@ -5,10 +5,9 @@ import io.vavr.collection.List;
 import io.vavr.collection.Seq;
 import io.vavr.control.Either;
 import io.vavr.control.Validation;
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
 import org.dsinczak.paymentsprocessing.shared.ErrorMessage;
 
-import javax.money.CurrencyUnit;
-import javax.money.Monetary;
 import java.time.Clock;
 
 import static io.vavr.control.Validation.combine;
@@ -19,9 +18,6 @@ import static io.vavr.control.Validation.combine;
  */
 public class PaymentFactory {
 
-    private static final CurrencyUnit USD = Monetary.getCurrency("USD");
-    private static final CurrencyUnit EUR = Monetary.getCurrency("EUR");
-
     private final Clock applicationClock;
 
     public PaymentFactory(Clock applicationClock) {
@@ -35,7 +31,7 @@ public class PaymentFactory {
     /**
      * Functional composition of validations for TYPE1 and TYPE2 of payment
      */
-    private Validation<Seq<ErrorMessage>, Payment> validateBasicType(Payment.Type type, PaymentBuilder builder, CurrencyUnit currency) {
+    private Validation<Seq<ErrorMessage>, Payment> validateBasicType(Payment.Type type, PaymentBuilder builder, CurrencyCode currency) {
         return combine(
                 Validations.validateAmount(builder.currency, builder.amount, HashSet.of(currency)),
                 Validations.validateIban("Debtor", builder.debtor),
@@ -49,7 +45,7 @@ public class PaymentFactory {
      */
     private Validation<Seq<ErrorMessage>, Payment> validateType3(PaymentBuilder builder) {
         return combine(
-                Validations.validateAmount(builder.currency, builder.amount, HashSet.of(USD, EUR)),
+                Validations.validateAmount(builder.currency, builder.amount, HashSet.of(CurrencyCode.USD, CurrencyCode.EUR)),
                 Validations.validateIban("Debtor", builder.debtor),
                 Validations.validateIban("Creditor", builder.creditor),
                 Validations.validateBic("Creditor", builder.creditorBic)
@@ -119,9 +115,9 @@ public class PaymentFactory {
         private Validation<Seq<ErrorMessage>, Payment> matchValidationType(Payment.Type type) {
             switch (type) {
                 case TYPE1:
-                    return validateBasicType(type, this, USD);
+                    return validateBasicType(type, this, CurrencyCode.USD);
                 case TYPE2:
-                    return validateBasicType(type, this, EUR);
+                    return validateBasicType(type, this, CurrencyCode.EUR);
                 case TYPE3:
                     return validateType3(this);
                 default:
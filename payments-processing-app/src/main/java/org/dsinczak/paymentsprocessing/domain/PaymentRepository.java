@@ -1,5 +1,7 @@
 package org.dsinczak.paymentsprocessing.domain;
 
+import io.vavr.collection.Map;
+import io.vavr.collection.Seq;
 import io.vavr.control.Option;
 
 import java.util.UUID;
@@ -10,4 +12,17 @@ public interface PaymentRepository {
 
     Option<Payment> findByPaymentId(UUID paymentId);
 
+    /**
+     * @return payments found, by payment id
+     */
+    Map<UUID, Payment> findByPaymentIds(Seq<UUID> paymentIds);
+
+    /**
+     * Stores cancellation of payment cancelled in memory, only when stored payment is still not cancelled and
+     * was not changed since it was loaded.
+     *
+     * @return false when payment was changed meanwhile, nothing is stored then
+     */
+    boolean saveCancellation(Payment payment);
+
 }
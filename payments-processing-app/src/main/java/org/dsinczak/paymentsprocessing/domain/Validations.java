@@ -1,14 +1,15 @@
 package org.dsinczak.paymentsprocessing.domain;
 
 import io.vavr.collection.Set;
-import io.vavr.control.Try;
 import io.vavr.control.Validation;
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
 import org.dsinczak.paymentsprocessing.shared.ErrorMessage;
-import org.javamoney.moneta.Money;
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount;
 
-import javax.money.CurrencyUnit;
-import java.math.BigDecimal;
-import java.util.regex.Pattern;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static io.vavr.control.Validation.invalid;
 import static io.vavr.control.Validation.valid;
@@ -18,11 +19,24 @@ import static org.dsinczak.paymentsprocessing.shared.ErrorMessage.error;
  * Container namespace for business validations. Validations implemented here are the smallest
  * compose-able functions. The whole idea, it that we can compose validation of incoming requests
  * from small testable pieces.
+ * Invalid input is the common case for public endpoint, so validations never throw and scan input by hand
+ * in a single pass, which keeps rejecting hostile input as cheap as accepting valid one.
  */
 abstract class Validations {
 
-    private static final Pattern IBAN_PATTERN = Pattern.compile("[a-zA-Z]{2}[0-9]{2}[a-zA-Z0-9]{4}[0-9]{7}([a-zA-Z0-9]?){0,16}");
-    private static final Pattern BIC_PATTERN = Pattern.compile("[A-Z]{6,6}[A-Z2-9][A-NP-Z0-9]([A-Z0-9]{3,3}){0,1}");
+    // Patterns are only shown to the client, the same formats are checked by hand below
+    private static final String IBAN_PATTERN = "[a-zA-Z]{2}[0-9]{2}[a-zA-Z0-9]{4}[0-9]{7}([a-zA-Z0-9]?){0,16}";
+    private static final String BIC_PATTERN = "[A-Z]{6,6}[A-Z2-9][A-NP-Z0-9]([A-Z0-9]{3,3}){0,1}";
+    private static final int IBAN_MIN_LENGTH = 15;
+    private static final int IBAN_MAX_LENGTH = 31;
+    /**
+     * Amount is kept as long of minor units, which safely holds 18 digits.
+     */
+    private static final int AMOUNT_MAX_DIGITS = 18;
+    private static final long INVALID_AMOUNT = -1;
+
+    private static final Map<String, Payment.Type> TYPES = Arrays.stream(Payment.Type.values())
+            .collect(Collectors.toUnmodifiableMap(Enum::name, Function.identity()));
 
     private Validations() {
     }
@@ -34,34 +48,140 @@ abstract class Validations {
                 : valid(details);
     }
 
-    static Validation<ErrorMessage, Money> validateAmount(String currency, String amount, Set<CurrencyUnit> expectedCurrencies) {
+    static Validation<ErrorMessage, MinorUnitAmount> validateAmount(String currency, String amount, Set<CurrencyCode> expectedCurrencies) {
         if (currency == null || amount == null) return invalid(error("Amount and currency are required"));
-        return Try.of(() -> new BigDecimal(amount))
-                .filter(a -> a.compareTo(BigDecimal.ZERO) > 0)
-                .map(a -> Money.of(a, currency))
-                .filter(m -> expectedCurrencies.contains(m.getCurrency()))
-                .map(Validation::<ErrorMessage, Money>valid)
-                .getOrElse(invalid(error("Amount {0} {1} is not valid positive decimal with expected currency {2}", amount, currency, expectedCurrencies)));
+        var currencyCode = CurrencyCode.of(currency);
+        var minorUnits = currencyCode != null && expectedCurrencies.contains(currencyCode)
+                ? parseMinorUnits(amount, currencyCode.getFractionDigits())
+                : INVALID_AMOUNT;
+        return minorUnits > 0
+                ? valid(MinorUnitAmount.of(minorUnits, currencyCode))
+                : invalid(error("Amount {0} {1} is not valid positive decimal with expected currency {2}", amount, currency, expectedCurrencies));
     }
 
     static Validation<ErrorMessage, Payment.Type> validateType(String type) {
         if (type == null) return invalid(error("Payment type is required"));
-        return Try.of(() -> Payment.Type.valueOf(type))
-                .map(Validation::<ErrorMessage, Payment.Type>valid)
-                .getOrElse(() -> invalid(error("Payment type {0} is invalid. Supported types {1}.", type, Payment.Type.values())));
+        var paymentType = TYPES.get(type);
+        return paymentType != null
+                ? valid(paymentType)
+                : invalid(error("Payment type {0} is invalid. Supported types {1}.", type, Payment.Type.values()));
     }
 
     static Validation<ErrorMessage, Iban> validateIban(String owner, String iban) {
         if (iban == null) return invalid(error("{0} IBAN is required", owner));
-        return IBAN_PATTERN.matcher(iban).matches()
+        if (!isIbanFormat(iban)) return invalid(error("{0} IBAN does not match pattern: {1}", owner, IBAN_PATTERN));
+        return hasValidIbanChecksum(iban)
                 ? valid(new Iban(iban))
-                : invalid(error("{0} IBAN does not match pattern: {1}", owner, IBAN_PATTERN.pattern()));
+                : invalid(error("{0} IBAN has invalid check digits", owner));
     }
 
     static Validation<ErrorMessage, Bic> validateBic(String owner, String bic) {
         if (bic == null) return invalid(error("{0} BIC is required", owner));
-        return BIC_PATTERN.matcher(bic).matches()
+        return isBicFormat(bic)
                 ? valid(new Bic(bic))
-                : invalid(error("{0} BIC does not match pattern: {1}", owner, BIC_PATTERN.pattern()));
+                : invalid(error("{0} BIC does not match pattern: {1}", owner, BIC_PATTERN));
+    }
+
+    /**
+     * Parses digits with optional fraction part of at most {@code fractionDigits} straight into minor units.
+     * Sign and exponent are not accepted.
+     *
+     * @return minor units or {@link #INVALID_AMOUNT}
+     */
+    private static long parseMinorUnits(String amount, int fractionDigits) {
+        var length = amount.length();
+        if (length == 0 || length > AMOUNT_MAX_DIGITS + 1) {
+            return INVALID_AMOUNT;
+        }
+        var digits = 0;
+        var fraction = 0;
+        var point = false;
+        var minorUnits = 0L;
+        for (int i = 0; i < length; i++) {
+            var c = amount.charAt(i);
+            if (c == '.' && !point) {
+                point = true;
+            } else if (isDigit(c)) {
+                digits++;
+                fraction += point ? 1 : 0;
+                minorUnits = minorUnits * 10 + (c - '0');
+            } else {
+                return INVALID_AMOUNT;
+            }
+        }
+        // Digits are counted with fraction padded to minor units, so the result never overflows
+        if (digits == 0 || fraction > fractionDigits || digits + fractionDigits - fraction > AMOUNT_MAX_DIGITS) {
+            return INVALID_AMOUNT;
+        }
+        for (int i = fraction; i < fractionDigits; i++) {
+            minorUnits *= 10;
+        }
+        return minorUnits;
+    }
+
+    private static boolean isIbanFormat(String iban) {
+        var length = iban.length();
+        if (length < IBAN_MIN_LENGTH || length > IBAN_MAX_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            var c = iban.charAt(i);
+            var matches = i < 2 ? isLetter(c)
+                    : i < 4 ? isDigit(c)
+                    : i < 8 ? isLetter(c) || isDigit(c)
+                    : i < 15 ? isDigit(c)
+                    : isLetter(c) || isDigit(c);
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * ISO 7064 mod 97-10: country code and check digits are moved to the end, letters count as two digit numbers
+     * from 10 to 35 and whole number has to give remainder 1. Number is reduced digit by digit, so it never
+     * needs more than int.
+     */
+    private static boolean hasValidIbanChecksum(String iban) {
+        var length = iban.length();
+        var remainder = 0;
+        for (int i = 0; i < length; i++) {
+            var c = iban.charAt((i + 4) % length);
+            remainder = isDigit(c)
+                    ? (remainder * 10 + (c - '0')) % 97
+                    : (remainder * 100 + (Character.toUpperCase(c) - 'A' + 10)) % 97;
+        }
+        return remainder == 1;
+    }
+
+    private static boolean isBicFormat(String bic) {
+        var length = bic.length();
+        if (length != 8 && length != 11) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            var c = bic.charAt(i);
+            var matches = i < 6 ? isUpperLetter(c)
+                    : i == 6 ? isUpperLetter(c) || (c >= '2' && c <= '9')
+                    : i == 7 ? (isUpperLetter(c) && c != 'O') || isDigit(c)
+                    : isUpperLetter(c) || isDigit(c);
+            if (!matches) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isUpperLetter(char c) {
+        return c >= 'A' && c <= 'Z';
+    }
+
+    private static boolean isLetter(char c) {
+        return isUpperLetter(c) || (c >= 'a' && c <= 'z');
     }
 }
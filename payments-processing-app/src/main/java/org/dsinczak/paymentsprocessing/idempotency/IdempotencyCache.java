@@ -0,0 +1,65 @@
+package org.dsinczak.paymentsprocessing.idempotency;
+
+import io.vavr.control.Option;
+import lombok.Value;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Bounded in-memory cache of created payments by idempotency key. Holds at most {@code maxSize} keys, evicting
+ * least recently used, and forgets keys after {@code ttl}.
+ */
+class IdempotencyCache {
+
+    @Value
+    static class CreatedPayment {
+        String requestHash;
+        UUID paymentId;
+    }
+
+    @Value
+    private static class Entry {
+        CreatedPayment payment;
+        Instant expiresAt;
+    }
+
+    private final Duration ttl;
+    private final Clock clock;
+    private final LinkedHashMap<String, Entry> entries;
+
+    IdempotencyCache(int maxSize, Duration ttl, Clock clock) {
+        this.ttl = ttl;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    synchronized Option<CreatedPayment> get(String key) {
+        var entry = entries.get(key);
+        if (entry == null) {
+            return Option.none();
+        }
+        if (!entry.getExpiresAt().isAfter(Instant.now(clock))) {
+            entries.remove(key);
+            return Option.none();
+        }
+        return Option.of(entry.getPayment());
+    }
+
+    synchronized void put(String key, CreatedPayment payment) {
+        entries.put(key, new Entry(payment, Instant.now(clock).plus(ttl)));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+}
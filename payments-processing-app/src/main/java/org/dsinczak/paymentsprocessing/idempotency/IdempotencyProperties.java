@@ -0,0 +1,30 @@
+package org.dsinczak.paymentsprocessing.idempotency;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "payments.idempotency")
+public class IdempotencyProperties {
+
+    /**
+     * Maximum number of keys kept in memory, least recently used are evicted first.
+     */
+    private int cacheSize = 10_000;
+
+    /**
+     * How long key stays in memory, older keys are answered from database.
+     */
+    private Duration cacheTtl = Duration.ofMinutes(10);
+
+    /**
+     * How long key is kept in database, replay after that creates new payment.
+     */
+    private Duration retention = Duration.ofHours(24);
+
+    private Duration purgeInterval = Duration.ofHours(1);
+}
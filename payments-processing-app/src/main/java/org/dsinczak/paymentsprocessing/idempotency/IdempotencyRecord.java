@@ -0,0 +1,42 @@
+package org.dsinczak.paymentsprocessing.idempotency;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Payment created for idempotency key, stored in the same transaction as the payment itself. Rows are inserted
+ * with plain JDBC by {@link IdempotentPaymentCreation}, so duplicate key fails right away instead of at commit,
+ * entity mapping only describes the table and serves queries.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "idempotency_record", indexes = {
+        @Index(name = "idempotency_record_created_at_idx", columnList = "createdAt")
+})
+public class IdempotencyRecord {
+
+    static final int MAX_KEY_LENGTH = 255;
+
+    @Id
+    @Column(length = MAX_KEY_LENGTH)
+    String idempotencyKey;
+
+    /**
+     * Hash of the request, replay with different request is rejected.
+     */
+    @Column(nullable = false, length = 64)
+    String requestHash;
+
+    @Column(nullable = false)
+    UUID paymentId;
+
+    @Column(nullable = false)
+    Instant createdAt;
+}
@@ -0,0 +1,26 @@
+package org.dsinczak.paymentsprocessing.idempotency;
+
+import io.vavr.control.Option;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+@Repository
+@Transactional(readOnly = true)
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    Option<IdempotencyRecord> findByIdempotencyKey(String idempotencyKey);
+
+    /**
+     * Bulk delete, records are not loaded.
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.createdAt < :cutoff")
+    int deleteCreatedBefore(@Param("cutoff") Instant cutoff);
+}
@@ -0,0 +1,164 @@
+package org.dsinczak.paymentsprocessing.idempotency;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.vavr.collection.List;
+import io.vavr.collection.Seq;
+import io.vavr.control.Either;
+import io.vavr.control.Option;
+import lombok.extern.slf4j.Slf4j;
+import org.dsinczak.paymentsprocessing.PaymentsService;
+import org.dsinczak.paymentsprocessing.api.PaymentDto;
+import org.dsinczak.paymentsprocessing.idempotency.IdempotencyCache.CreatedPayment;
+import org.dsinczak.paymentsprocessing.shared.ErrorMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import javax.annotation.PostConstruct;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.dsinczak.paymentsprocessing.shared.ErrorMessage.error;
+
+/**
+ * Payment creation that can be safely retried by client with the same idempotency key. Replay returns id of
+ * the payment created by the first request, without validation and without transaction:
+ * <ol>
+ *     <li>key is looked up in {@link IdempotencyCache memory}, then in database,</li>
+ *     <li>concurrent requests with the same key wait for the one that came first and share its result,</li>
+ *     <li>key is stored in the same transaction as the payment, so other instance racing for the same key
+ *     fails on primary key and answers with what the winner stored.</li>
+ * </ol>
+ * Rejected payments are not remembered, replay validates them again.
+ */
+@Slf4j
+@Component
+public class IdempotentPaymentCreation {
+
+    private static final String INSERT = "INSERT INTO idempotency_record " +
+            "(idempotency_key, request_hash, payment_id, created_at) VALUES (?, ?, ?, ?)";
+
+    private final PaymentsService paymentsService;
+    private final IdempotencyRecordRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionOperations transactionOperations;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyProperties properties;
+    private final Clock clock;
+    private final TaskScheduler taskScheduler;
+    private final IdempotencyCache cache;
+    private final ConcurrentMap<String, CompletableFuture<Either<Seq<ErrorMessage>, CreatedPayment>>> inFlight = new ConcurrentHashMap<>();
+
+    @Autowired
+    public IdempotentPaymentCreation(PaymentsService paymentsService, IdempotencyRecordRepository repository, JdbcTemplate jdbcTemplate,
+                                     TransactionOperations transactionOperations, ObjectMapper objectMapper, IdempotencyProperties properties,
+                                     Clock clock, TaskScheduler taskScheduler) {
+        this.paymentsService = paymentsService;
+        this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionOperations = transactionOperations;
+        this.objectMapper = objectMapper;
+        this.properties = properties;
+        this.clock = clock;
+        this.taskScheduler = taskScheduler;
+        this.cache = new IdempotencyCache(properties.getCacheSize(), properties.getCacheTtl(), clock);
+    }
+
+    @PostConstruct
+    public void start() {
+        taskScheduler.scheduleWithFixedDelay(this::purge, properties.getPurgeInterval());
+    }
+
+    public Either<Seq<ErrorMessage>, UUID> createNewPayment(String idempotencyKey, PaymentDto paymentDto) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > IdempotencyRecord.MAX_KEY_LENGTH) {
+            return Either.left(List.of(error("Idempotency key has to have from 1 to {0} characters.", IdempotencyRecord.MAX_KEY_LENGTH)));
+        }
+        var requestHash = hash(paymentDto);
+        var created = cache.get(idempotencyKey)
+                .map(Either::<Seq<ErrorMessage>, CreatedPayment>right)
+                .getOrElse(() -> createOnce(idempotencyKey, requestHash, paymentDto));
+
+        return created.flatMap(payment -> payment.getRequestHash().equals(requestHash)
+                ? Either.right(payment.getPaymentId())
+                : Either.left(List.of(error("Idempotency key {0} was already used for different payment.", idempotencyKey))));
+    }
+
+    /**
+     * @return number of purged records
+     */
+    int purge() {
+        try {
+            var purged = repository.deleteCreatedBefore(Instant.now(clock).minus(properties.getRetention()));
+            log.debug("Purged {} idempotency records.", purged);
+            return purged;
+        } catch (Exception e) {
+            log.error("Unable to purge idempotency records.", e);
+            return 0;
+        }
+    }
+
+    private Either<Seq<ErrorMessage>, CreatedPayment> createOnce(String idempotencyKey, String requestHash, PaymentDto paymentDto) {
+        var mine = new CompletableFuture<Either<Seq<ErrorMessage>, CreatedPayment>>();
+        var first = inFlight.putIfAbsent(idempotencyKey, mine);
+        if (first != null) {
+            log.info("Waiting for concurrent request with idempotency key {}", idempotencyKey);
+            return first.join();
+        }
+        try {
+            var result = findStored(idempotencyKey)
+                    .map(Either::<Seq<ErrorMessage>, CreatedPayment>right)
+                    .getOrElse(() -> create(idempotencyKey, requestHash, paymentDto));
+            result.forEach(payment -> cache.put(idempotencyKey, payment));
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(idempotencyKey, mine);
+        }
+    }
+
+    private Either<Seq<ErrorMessage>, CreatedPayment> create(String idempotencyKey, String requestHash, PaymentDto paymentDto) {
+        try {
+            return transactionOperations.execute(status -> paymentsService.createNewPayment(paymentDto)
+                    .map(paymentId -> {
+                        jdbcTemplate.update(INSERT, idempotencyKey, requestHash, paymentId, Timestamp.from(Instant.now(clock)));
+                        return new CreatedPayment(requestHash, paymentId);
+                    }));
+        } catch (DataIntegrityViolationException e) {
+            log.info("Idempotency key {} was stored concurrently by other instance", idempotencyKey);
+            return findStored(idempotencyKey)
+                    .toEither(() -> (Seq<ErrorMessage>) List.of(error("Payment could not be stored, it can be sent again.")));
+        }
+    }
+
+    private Option<CreatedPayment> findStored(String idempotencyKey) {
+        return repository.findByIdempotencyKey(idempotencyKey)
+                .map(record -> new CreatedPayment(record.getRequestHash(), record.getPaymentId()));
+    }
+
+    private String hash(PaymentDto paymentDto) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(paymentDto));
+            var hex = new StringBuilder(digest.length * 2);
+            for (var b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Unable to hash payment", e);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package org.dsinczak.paymentsprocessing.notification.journal;
+
+import io.vavr.control.Option;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal split into fixed size segment files, each mapped into memory. Record is addressed by
+ * its position, which grows across segments: segment {@code n} holds positions from {@code n * segmentSize}.
+ * <pre>
+ * record: length:4 | crc32:4 | type:1 | transactionId:8 | payload
+ * </pre>
+ * Length is written last, so reader never sees half written record. Record that does not fit into current
+ * segment starts the next one. Writes go to the page cache right away, so they survive crash of the process
+ * regardless of {@link FsyncPolicy}, the policy only decides what survives crash of the machine.
+ * When journal is opened, last segment is scanned and torn record left by a crash is cut off.
+ */
+@Slf4j
+public class Journal implements Closeable {
+
+    public enum FsyncPolicy {
+        /**
+         * Never forced explicitly, operating system writes pages back on its own.
+         */
+        NEVER,
+        /**
+         * Appender waits until background flusher forces the segment. Appenders arriving while force is running
+         * share the next one.
+         */
+        GROUP,
+        /**
+         * Every append forces the segment before it returns.
+         */
+        ALWAYS
+    }
+
+    /**
+     * Marks record that starts a transaction, its own position becomes the transaction id.
+     */
+    public static final long NEW_TRANSACTION = -1;
+
+    private static final int HEADER_SIZE = 8;
+    private static final int BODY_HEADER_SIZE = 9;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final ConcurrentNavigableMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final Condition forced = appendLock.newCondition();
+    private final ScheduledExecutorService flusher;
+    private final Duration groupCommitDelay;
+    private final AtomicBoolean forceRequested = new AtomicBoolean();
+    private volatile long writePosition;
+    private long forcedPosition;
+
+    private Journal(Path directory, int segmentSize, FsyncPolicy fsyncPolicy, Duration groupCommitDelay) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.groupCommitDelay = groupCommitDelay;
+        this.flusher = fsyncPolicy != FsyncPolicy.GROUP ? null : Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "journal-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens journal in given directory, creating it when it does not exist yet.
+     *
+     * @param groupCommitDelay how long flusher waits for more appenders before it forces, {@link FsyncPolicy#GROUP} only
+     */
+    public static Journal open(Path directory, int segmentSize, FsyncPolicy fsyncPolicy, Duration groupCommitDelay) {
+        if (segmentSize < HEADER_SIZE + BODY_HEADER_SIZE + 1) {
+            throw new IllegalArgumentException("Segment size " + segmentSize + " is too small");
+        }
+        var journal = new Journal(directory, segmentSize, fsyncPolicy, groupCommitDelay);
+        try {
+            journal.recover();
+        } catch (IOException e) {
+            journal.close();
+            throw new UncheckedIOException("Unable to open journal in " + directory, e);
+        }
+        return journal;
+    }
+
+    /**
+     * @param transactionId id of transaction the record belongs to or {@link #NEW_TRANSACTION}
+     * @return position of the record
+     */
+    public long append(byte type, long transactionId, byte[] payload) {
+        var bodySize = BODY_HEADER_SIZE + payload.length;
+        var recordSize = HEADER_SIZE + bodySize;
+        if (recordSize > segmentSize) {
+            throw new IllegalArgumentException("Record of " + recordSize + " bytes does not fit into segment of " + segmentSize + " bytes");
+        }
+        appendLock.lock();
+        try {
+            var offset = offset(writePosition);
+            if (offset + recordSize > segmentSize) {
+                rollSegment(offset);
+                offset = 0;
+            }
+            var position = writePosition;
+            var segment = segments.get(segmentIndex(position));
+            var body = segment.duplicate();
+            body.position(offset + HEADER_SIZE);
+            body.put(type)
+                    .putLong(transactionId == NEW_TRANSACTION ? position : transactionId)
+                    .put(payload);
+            segment.putInt(offset + 4, crc(segment, offset + HEADER_SIZE, bodySize));
+            segment.putInt(offset, bodySize);
+            writePosition = position + recordSize;
+            if (fsyncPolicy == FsyncPolicy.ALWAYS) {
+                segment.force();
+                forcedPosition = writePosition;
+            }
+            return position;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until record at given position survives crash of the machine, as far as {@link FsyncPolicy} promises.
+     */
+    public void awaitDurable(long position) {
+        if (fsyncPolicy != FsyncPolicy.GROUP) {
+            return;
+        }
+        appendLock.lock();
+        try {
+            while (forcedPosition <= position) {
+                requestForce();
+                forced.await(1, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for journal force", e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * @return record at given position, empty when there is nothing written there yet
+     */
+    public Option<JournalRecord> read(long position) {
+        if (position >= writePosition) {
+            return Option.none();
+        }
+        var segment = segments.get(segmentIndex(position));
+        if (segment == null) {
+            throw new IllegalStateException("Position " + position + " is in already deleted segment");
+        }
+        var offset = offset(position);
+        if (segmentSize - offset < HEADER_SIZE || segment.getInt(offset) == END_OF_SEGMENT) {
+            return read((segmentIndex(position) + 1) * segmentSize);
+        }
+        var bodySize = segment.getInt(offset);
+        var body = segment.duplicate();
+        body.position(offset + HEADER_SIZE);
+        var type = body.get();
+        var transactionId = body.getLong();
+        var payload = new byte[bodySize - BODY_HEADER_SIZE];
+        body.get(payload);
+        return Option.of(new JournalRecord(position, position + HEADER_SIZE + bodySize, type, transactionId, payload));
+    }
+
+    public long getWritePosition() {
+        return writePosition;
+    }
+
+    /**
+     * Deletes segments holding only records before given position. Segment being written is never deleted.
+     */
+    public void deleteSegmentsBefore(long position) {
+        var current = segmentIndex(writePosition);
+        for (var index : segments.headMap(Math.min(segmentIndex(position), current)).keySet()) {
+            segments.remove(index);
+            try {
+                // Mapping itself is released when buffer is garbage collected
+                Files.deleteIfExists(segmentFile(index));
+                log.debug("Deleted journal segment {}.", index);
+            } catch (IOException e) {
+                log.warn("Unable to delete journal segment " + index + ".", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        appendLock.lock();
+        try {
+            segments.values().forEach(MappedByteBuffer::force);
+            forcedPosition = writePosition;
+            forced.signalAll();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        var indexes = Files.list(directory)
+                .map(path -> path.getFileName().toString())
+                .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                .sorted()
+                .collect(Collectors.toList());
+        if (indexes.isEmpty()) {
+            segments.put(0L, map(0));
+            return;
+        }
+        for (var index : indexes) {
+            segments.put(index, map(index));
+        }
+        var lastIndex = indexes.get(indexes.size() - 1);
+        var last = segments.get(lastIndex);
+        var offset = validEnd(last);
+        // Whatever follows valid records is a torn write, it must not be mistaken for record later
+        for (int i = offset; i < segmentSize; i++) {
+            if (last.get(i) != 0) {
+                last.put(i, (byte) 0);
+            }
+        }
+        if (offset == segmentSize) {
+            segments.put(lastIndex + 1, map(lastIndex + 1));
+        }
+        writePosition = lastIndex * segmentSize + offset;
+        forcedPosition = writePosition;
+        log.info("Opened journal {} with {} segments, write position {}.", directory, indexes.size(), writePosition);
+    }
+
+    private int validEnd(MappedByteBuffer segment) {
+        var offset = 0;
+        while (segmentSize - offset >= HEADER_SIZE) {
+            var bodySize = segment.getInt(offset);
+            if (bodySize == END_OF_SEGMENT) {
+                return segmentSize;
+            }
+            if (bodySize < BODY_HEADER_SIZE || offset + HEADER_SIZE + bodySize > segmentSize
+                    || segment.getInt(offset + 4) != crc(segment, offset + HEADER_SIZE, bodySize)) {
+                return offset;
+            }
+            offset += HEADER_SIZE + bodySize;
+        }
+        return offset;
+    }
+
+    private void rollSegment(int offset) {
+        var current = segments.get(segmentIndex(writePosition));
+        if (segmentSize - offset >= 4) {
+            current.putInt(offset, END_OF_SEGMENT);
+        }
+        if (fsyncPolicy != FsyncPolicy.NEVER) {
+            current.force();
+        }
+        var next = segmentIndex(writePosition) + 1;
+        try {
+            segments.put(next, map(next));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create journal segment " + next, e);
+        }
+        writePosition = next * segmentSize;
+    }
+
+    private void requestForce() {
+        if (forceRequested.compareAndSet(false, true)) {
+            try {
+                flusher.schedule(this::forceWritten, groupCommitDelay.toNanos(), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                forceRequested.set(false);
+                throw new IllegalStateException("Journal is closed", e);
+            }
+        }
+    }
+
+    /**
+     * Runs on flusher thread, segment is forced outside of the lock so appends are not stopped meanwhile.
+     */
+    private void forceWritten() {
+        forceRequested.set(false);
+        long target;
+        MappedByteBuffer segment;
+        appendLock.lock();
+        try {
+            if (forcedPosition >= writePosition) {
+                return;
+            }
+            target = writePosition;
+            segment = segments.get(segmentIndex(target - 1));
+        } finally {
+            appendLock.unlock();
+        }
+        try {
+            segment.force();
+        } catch (Exception e) {
+            log.error("Unable to force journal segment.", e);
+            return;
+        }
+        appendLock.lock();
+        try {
+            forcedPosition = Math.max(forcedPosition, target);
+            forced.signalAll();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private MappedByteBuffer map(long index) throws IOException {
+        try (var channel = FileChannel.open(segmentFile(index), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private Path segmentFile(long index) {
+        return directory.resolve(String.format("%020d%s", index, SEGMENT_SUFFIX));
+    }
+
+    private long segmentIndex(long position) {
+        return position / segmentSize;
+    }
+
+    private int offset(long position) {
+        return (int) (position % segmentSize);
+    }
+
+    private static int crc(MappedByteBuffer segment, int offset, int length) {
+        var slice = segment.duplicate();
+        slice.position(offset).limit(offset + length);
+        var crc = new CRC32();
+        crc.update(slice);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,53 @@
+package org.dsinczak.paymentsprocessing.notification.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Journal position consumer has processed everything before. Stored in its own file, new value is written
+ * to temporary file, forced and moved over the old one, so crash leaves either old or new value, never broken one.
+ */
+public class JournalCheckpoint {
+
+    private final Path file;
+    private final Path temporaryFile;
+
+    public JournalCheckpoint(Path file) {
+        this.file = file;
+        this.temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    /**
+     * @return stored position, zero when nothing was stored yet
+     */
+    public long read() {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try {
+            return ByteBuffer.wrap(Files.readAllBytes(file)).getLong();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read journal checkpoint " + file, e);
+        }
+    }
+
+    public void write(long position) {
+        try (var channel = FileChannel.open(temporaryFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, position));
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write journal checkpoint " + temporaryFile, e);
+        }
+        try {
+            Files.move(temporaryFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to replace journal checkpoint " + file, e);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.dsinczak.paymentsprocessing.notification.journal;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+
+@Configuration
+@ConditionalOnProperty(prefix = "payments.notification.journal", name = "enabled", havingValue = "true")
+public class JournalConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public Journal eventJournal(JournalProperties properties) {
+        return Journal.open(Path.of(properties.getDirectory()), properties.getSegmentSize(), properties.getFsyncPolicy(), properties.getGroupCommitDelay());
+    }
+
+    @Bean
+    public JournalCheckpoint eventJournalCheckpoint(JournalProperties properties) {
+        return new JournalCheckpoint(Path.of(properties.getDirectory(), "consumer.checkpoint"));
+    }
+}
@@ -0,0 +1,111 @@
+package org.dsinczak.paymentsprocessing.notification.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Publishes events to local {@link Journal} instead of database outbox, so publication costs no SQL
+ * at all. {@link JournalEventSender} delivers them asynchronously.
+ * Events published in a transaction are appended right before the transaction commits, and the commit
+ * waits until they are durable. Failure to append fails the commit, so there is no committed business
+ * change without its events. Outcome of the transaction is appended afterwards as commit or abort marker.
+ * When process dies between the events and the marker, events are delivered after restart, even if database
+ * did not manage to commit - same at least once semantics destination already has to deal with.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "payments.notification.journal", name = "enabled", havingValue = "true")
+public class JournalEventPublisher implements EventPublisher {
+
+    static final byte EVENT = 1;
+    static final byte COMMIT = 2;
+    static final byte ABORT = 3;
+
+    private final Journal journal;
+    private final DbEventCodec eventCodec;
+    private final JournalEventSender eventSender;
+
+    @Autowired
+    public JournalEventPublisher(Journal journal, DbEventCodec eventCodec, JournalEventSender eventSender) {
+        this.journal = journal;
+        this.eventCodec = eventCodec;
+        this.eventSender = eventSender;
+    }
+
+    @Override
+    public void publish(PaymentEvent event) {
+        log.debug("Storing event {} to journal for further processing.", event);
+        var payload = eventCodec.toDbEvent(event).getPayload();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            transactionEvents().add(payload);
+        } else {
+            var position = journal.append(EVENT, Journal.NEW_TRANSACTION, payload);
+            journal.append(COMMIT, position, new byte[0]);
+            journal.awaitDurable(position);
+            eventSender.wakeUp();
+        }
+    }
+
+    private List<byte[]> transactionEvents() {
+        @SuppressWarnings("unchecked")
+        var events = (List<byte[]>) TransactionSynchronizationManager.getResource(this);
+        if (events == null) {
+            var newEvents = new ArrayList<byte[]>();
+            TransactionSynchronizationManager.bindResource(this, newEvents);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionEvents(newEvents));
+            return newEvents;
+        }
+        return events;
+    }
+
+    private class TransactionEvents extends TransactionSynchronizationAdapter {
+
+        private final List<byte[]> events;
+        private long transactionId = Journal.NEW_TRANSACTION;
+
+        TransactionEvents(List<byte[]> events) {
+            this.events = events;
+        }
+
+        @Override
+        public void beforeCommit(boolean readOnly) {
+            var lastPosition = 0L;
+            for (var payload : events) {
+                lastPosition = journal.append(EVENT, transactionId, payload);
+                if (transactionId == Journal.NEW_TRANSACTION) {
+                    transactionId = lastPosition;
+                }
+            }
+            journal.awaitDurable(lastPosition);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(JournalEventPublisher.this);
+            if (transactionId == Journal.NEW_TRANSACTION) {
+                return;
+            }
+            // Unknown outcome is treated as commit, losing event is worse than sending one twice
+            var committed = status != TransactionSynchronization.STATUS_ROLLED_BACK;
+            try {
+                journal.append(committed ? COMMIT : ABORT, transactionId, new byte[0]);
+            } catch (Exception e) {
+                log.error("Unable to mark journal transaction " + transactionId + " as " + (committed ? "committed" : "aborted") + ".", e);
+            }
+            if (committed) {
+                eventSender.wakeUp();
+            }
+        }
+    }
+}
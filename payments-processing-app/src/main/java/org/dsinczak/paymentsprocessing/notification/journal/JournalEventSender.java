@@ -0,0 +1,369 @@
+package org.dsinczak.paymentsprocessing.notification.journal;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventCodec;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderConduit;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderProperties;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeadLetterEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeadLetterEventRepository;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeliveryCircuitBreaker;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeliveryNotAttemptedException;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.KeyOrderedDispatcher;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.PrecedingEventNotDeliveredException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Delivers events published to {@link Journal} by {@link JournalEventPublisher}. Journal is read from the
+ * last checkpoint, events wait in memory until their transaction is committed, aborted transactions are
+ * dropped. Delivery works like in {@link org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSender}:
+ * parallel lanes keeping order of events of one payment, retries with exponential backoff, dead letter table
+ * after too many attempts, circuit breaker in front of destination.
+ * Checkpoint is moved to the oldest event not delivered yet, so after restart nothing before it is read again
+ * and segments before it are deleted. Events after the checkpoint which were delivered already are sent again
+ * after restart.
+ * Transaction left without commit or abort marker by crashed process is considered committed, its events
+ * were durable before database commit started.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "payments.notification.journal", name = "enabled", havingValue = "true")
+public class JournalEventSender {
+
+    /**
+     * Committed events held in memory at most, in batches. Rest of the journal is read once they are delivered.
+     */
+    private static final int PENDING_BATCHES = 4;
+
+    private final Journal journal;
+    private final JournalCheckpoint checkpoint;
+    private final DbEventSenderConduit senderConduit;
+    private final DeadLetterEventRepository deadLetterRepository;
+    private final DeliveryCircuitBreaker circuitBreaker;
+    private final DbEventCodec eventCodec;
+    private final DbEventSenderProperties properties;
+    private final Clock clock;
+    private final TaskScheduler taskScheduler;
+    private final KeyOrderedDispatcher dispatcher;
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+    /**
+     * Events read from the journal and not delivered yet, by position. Accessed only by the drain cycle.
+     */
+    private final TreeMap<Long, PendingEvent> pending = new TreeMap<>();
+    private final Map<Long, java.util.List<PendingEvent>> openTransactions = new HashMap<>();
+    /**
+     * Pending events of {@link #openTransactions}, they do not count against the limit as their outcome is still ahead.
+     */
+    private int openEvents;
+    private final long recoveryEnd;
+    private long readPosition;
+    private long checkpointPosition;
+
+    @Autowired
+    public JournalEventSender(Journal journal, JournalCheckpoint checkpoint, DbEventSenderConduit senderConduit, DeadLetterEventRepository deadLetterRepository, DeliveryCircuitBreaker circuitBreaker, DbEventCodec eventCodec, DbEventSenderProperties properties, Clock clock, TaskScheduler taskScheduler) {
+        this.journal = journal;
+        this.checkpoint = checkpoint;
+        this.senderConduit = senderConduit;
+        this.deadLetterRepository = deadLetterRepository;
+        this.circuitBreaker = circuitBreaker;
+        this.eventCodec = eventCodec;
+        this.properties = properties;
+        this.clock = clock;
+        this.taskScheduler = taskScheduler;
+        this.dispatcher = new KeyOrderedDispatcher(properties.getMaxInFlight());
+        // Nothing was appended by this process yet, publisher depends on sender
+        this.recoveryEnd = journal.getWritePosition();
+        this.readPosition = checkpoint.read();
+        this.checkpointPosition = readPosition;
+    }
+
+    /**
+     * Reading journal costs no I/O, so it is checked on every tick.
+     */
+    @Scheduled(fixedDelay = 50)
+    public void sendEvents() {
+        drainJournal();
+    }
+
+    /**
+     * Requests immediate drain cycle, see {@link org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSender#wakeUp()}.
+     */
+    public void wakeUp() {
+        if (wakeUpPending.compareAndSet(false, true)) {
+            try {
+                taskScheduler.schedule(this::drainJournal, Instant.now(clock));
+            } catch (Exception e) {
+                log.warn("Unable to schedule journal drain, leaving it for poller.", e);
+            }
+        }
+    }
+
+    /**
+     * @return number of delivered events
+     */
+    int drainJournal() {
+        if (!draining.compareAndSet(false, true)) {
+            return 0;
+        }
+        try {
+            var sent = 0;
+            boolean moreToRead;
+            int delivered;
+            do {
+                wakeUpPending.set(false);
+                moreToRead = readJournal();
+                delivered = sendPending();
+                sent += delivered;
+                moveCheckpoint();
+            } while (wakeUpPending.get() || (moreToRead && delivered > 0));
+            return sent;
+        } catch (Exception e) {
+            log.error("Journal drain cycle failed.", e);
+            return 0;
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    /**
+     * Reads until journal end or until {@link #PENDING_BATCHES} batches of committed events wait for delivery,
+     * next cycle continues from where it stopped.
+     *
+     * @return whether reading stopped before journal end
+     */
+    private boolean readJournal() {
+        var limit = PENDING_BATCHES * properties.getBatchSize();
+        var record = journal.read(readPosition);
+        while (record.isDefined() && pending.size() - openEvents < limit) {
+            apply(record.get());
+            readPosition = record.get().getNextPosition();
+            record = journal.read(readPosition);
+        }
+        if (readPosition >= recoveryEnd && !openTransactions.isEmpty()) {
+            // Transactions started before restart will never get their marker
+            var orphaned = List.ofAll(openTransactions.keySet()).filter(transactionId -> transactionId < recoveryEnd);
+            orphaned.forEach(transactionId -> {
+                log.warn("Journal transaction {} has no outcome, delivering its events.", transactionId);
+                commit(openTransactions.remove(transactionId));
+            });
+        }
+        return record.isDefined();
+    }
+
+    private void apply(JournalRecord record) {
+        switch (record.getType()) {
+            case JournalEventPublisher.EVENT:
+                var event = Try.of(() -> eventCodec.fromDbEvent(new DbEvent(record.getPayload(), null)));
+                if (event.isFailure()) {
+                    quarantineUnreadable(record, event.getCause());
+                    break;
+                }
+                var pendingEvent = new PendingEvent(record.getPosition(), record.getPayload(), event.get());
+                pending.put(record.getPosition(), pendingEvent);
+                openTransactions.computeIfAbsent(record.getTransactionId(), id -> new ArrayList<>()).add(pendingEvent);
+                openEvents++;
+                break;
+            case JournalEventPublisher.COMMIT:
+                Option.of(openTransactions.remove(record.getTransactionId())).forEach(this::commit);
+                break;
+            case JournalEventPublisher.ABORT:
+                Option.of(openTransactions.remove(record.getTransactionId())).forEach(events -> {
+                    events.forEach(abortedEvent -> pending.remove(abortedEvent.position));
+                    openEvents -= events.size();
+                });
+                break;
+            default:
+                log.error("Skipping journal record of unknown type {} at {}.", record.getType(), record.getPosition());
+        }
+    }
+
+    private void commit(java.util.List<PendingEvent> events) {
+        events.forEach(PendingEvent::commit);
+        openEvents -= events.size();
+    }
+
+    /**
+     * Event that cannot be read will not become readable later, its raw payload goes to dead letter table
+     * right away. When that fails, reading stops before the event and it is tried again next cycle.
+     */
+    private void quarantineUnreadable(JournalRecord record, Throwable error) {
+        var dbEvent = new DbEvent(record.getPayload(), null);
+        dbEvent.setId(record.getPosition());
+        deadLetterRepository.save(new DeadLetterEvent(dbEvent, error, Instant.now(clock)));
+        log.error("Unreadable journal event " + record.getPosition() + " quarantined.", error);
+    }
+
+    /**
+     * @return number of delivered events
+     */
+    private int sendPending() {
+        var sent = 0;
+        var batchSize = circuitBreaker.permittedCalls(properties.getBatchSize());
+        while (batchSize > 0) {
+            var batch = nextBatch(batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            var delivered = sendBatch(batch);
+            sent += delivered;
+            if (delivered < batch.size()) {
+                // Failed events are backing off, rest waits for next cycle
+                break;
+            }
+            batchSize = circuitBreaker.permittedCalls(properties.getBatchSize());
+        }
+        return sent;
+    }
+
+    /**
+     * Committed events in journal order, except events of payments having earlier event that cannot be sent now.
+     */
+    private List<PendingEvent> nextBatch(int batchSize) {
+        var now = Instant.now(clock);
+        var blockedPaymentIds = new HashSet<String>();
+        var batch = new ArrayList<PendingEvent>(batchSize);
+        for (var pendingEvent : pending.values()) {
+            if (batch.size() == batchSize) {
+                break;
+            }
+            var paymentId = pendingEvent.event.getPaymentId();
+            if (!pendingEvent.committed || pendingEvent.nextAttemptAt.isAfter(now)) {
+                blockedPaymentIds.add(paymentId);
+            } else if (!blockedPaymentIds.contains(paymentId)) {
+                batch.add(pendingEvent);
+            }
+        }
+        return List.ofAll(batch);
+    }
+
+    /**
+     * @return number of delivered events
+     */
+    private int sendBatch(List<PendingEvent> batch) {
+        var failedPaymentIds = ConcurrentHashMap.<String>newKeySet();
+        var deliveries = batch.map(pendingEvent -> dispatch(pendingEvent, failedPaymentIds));
+        CompletableFuture.allOf(deliveries.asJava().toArray(new CompletableFuture[0])).join();
+        var now = Instant.now(clock);
+        var delivered = 0;
+        for (var outcome : batch.zip(deliveries.map(CompletableFuture::join))) {
+            var pendingEvent = outcome._1;
+            if (outcome._2.isEmpty()) {
+                pending.remove(pendingEvent.position);
+                delivered++;
+            } else if (!(outcome._2.get() instanceof DeliveryNotAttemptedException)) {
+                handleFailure(pendingEvent, outcome._2.get(), now);
+            }
+        }
+        return delivered;
+    }
+
+    private void handleFailure(PendingEvent pendingEvent, Throwable error, Instant now) {
+        pendingEvent.attempts++;
+        if (pendingEvent.attempts < properties.getMaxAttempts()) {
+            pendingEvent.nextAttemptAt = now.plus(retryBackoff(pendingEvent.attempts));
+            return;
+        }
+        var dbEvent = new DbEvent(pendingEvent.payload, pendingEvent.event.getPaymentId());
+        dbEvent.setId(pendingEvent.position);
+        dbEvent.setAttempts(pendingEvent.attempts - 1);
+        try {
+            deadLetterRepository.save(new DeadLetterEvent(dbEvent, error, now));
+            pending.remove(pendingEvent.position);
+            log.warn("Journal event {} quarantined after {} attempts.", pendingEvent.position, pendingEvent.attempts, error);
+        } catch (Exception e) {
+            // Event stays in the journal and is retried, it is not lost
+            log.error("Unable to quarantine journal event " + pendingEvent.position + ".", e);
+            pendingEvent.nextAttemptAt = now.plus(properties.getMaxRetryBackoff());
+        }
+    }
+
+    private Duration retryBackoff(int attempts) {
+        var backoff = properties.getInitialRetryBackoff().multipliedBy(1L << Math.min(attempts - 1, 30));
+        return backoff.compareTo(properties.getMaxRetryBackoff()) > 0 ? properties.getMaxRetryBackoff() : backoff;
+    }
+
+    /**
+     * @return delivery error if delivery failed, never completes exceptionally
+     */
+    private CompletableFuture<Option<Throwable>> dispatch(PendingEvent pendingEvent, Set<String> failedPaymentIds) {
+        var paymentId = pendingEvent.event.getPaymentId();
+        return dispatcher.dispatch(paymentId, () -> {
+            if (failedPaymentIds.contains(paymentId)) {
+                return CompletableFuture.failedFuture(new PrecedingEventNotDeliveredException(pendingEvent.position, paymentId));
+            }
+            return senderConduit.send(pendingEvent.event).toCompletableFuture()
+                    .orTimeout(properties.getDeliveryTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                    .whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            failedPaymentIds.add(paymentId);
+                        }
+                    });
+        }).handle((ignored, error) -> {
+            var cause = Option.of(error).map(JournalEventSender::unwrap);
+            cause.filter(e -> !(e instanceof DeliveryNotAttemptedException))
+                    .forEach(e -> log.warn("Error sending journal event " + pendingEvent.position + " to destination (attempt " + (pendingEvent.attempts + 1) + ").", e));
+            return cause;
+        });
+    }
+
+    /**
+     * Everything before the oldest pending event was delivered or dropped.
+     */
+    private void moveCheckpoint() {
+        var position = pending.isEmpty() ? readPosition : pending.firstKey();
+        if (position == checkpointPosition) {
+            return;
+        }
+        checkpoint.write(position);
+        checkpointPosition = position;
+        journal.deleteSegmentsBefore(position);
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    private static class PendingEvent {
+        final long position;
+        final byte[] payload;
+        final PaymentEvent event;
+        boolean committed;
+        int attempts;
+        Instant nextAttemptAt = Instant.MIN;
+
+        PendingEvent(long position, byte[] payload, PaymentEvent event) {
+            this.position = position;
+            this.payload = payload;
+            this.event = event;
+        }
+
+        void commit() {
+            committed = true;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.dsinczak.paymentsprocessing.notification.journal;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Settings of journal backed event publication ({@link JournalEventPublisher}). Delivery itself
+ * is tuned with the same sender properties as database outbox.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "payments.notification.journal")
+public class JournalProperties {
+
+    /**
+     * Events are published to the journal instead of database outbox.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Directory of segment files and consumer checkpoint, has to be on local disk.
+     */
+    private String directory = "journal";
+
+    /**
+     * Size of single segment file. Segments are deleted once all their events were delivered.
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+
+    private Journal.FsyncPolicy fsyncPolicy = Journal.FsyncPolicy.GROUP;
+
+    /**
+     * How long {@link Journal.FsyncPolicy#GROUP} flusher waits for more committing transactions before it forces
+     * the journal. Fewer forces at the price of this much added commit latency, by default transactions
+     * committing while force is running already share the next one.
+     */
+    private Duration groupCommitDelay = Duration.ZERO;
+}
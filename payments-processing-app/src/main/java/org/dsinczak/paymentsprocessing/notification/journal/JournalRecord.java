@@ -0,0 +1,15 @@
+package org.dsinczak.paymentsprocessing.notification.journal;
+
+import lombok.Value;
+
+@Value
+public class JournalRecord {
+    long position;
+    /**
+     * Position right after this record, where next record will be read from.
+     */
+    long nextPosition;
+    byte type;
+    long transactionId;
+    byte[] payload;
+}
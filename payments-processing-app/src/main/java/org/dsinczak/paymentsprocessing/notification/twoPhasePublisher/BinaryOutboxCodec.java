@@ -0,0 +1,263 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedAndCancelledEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of outbox events:
+ * <pre>
+ * version:1 | type:1 | eventId | paymentId | [payment type, created event only]
+ *                                           | [payment type | created event id, created and cancelled event only]
+ * </pre>
+ * Every string is stored with a tag byte: canonical lower case UUID (which is what we generate) as its 16 raw
+ * bytes, any other value as varint length and UTF-8 bytes, null as tag alone. Compared to JSON there
+ * are no field names, no type names and no reflection, payload of created event is about a third of its
+ * JSON size.
+ */
+public class BinaryOutboxCodec implements OutboxCodec {
+
+    public static final byte VERSION = 1;
+
+    private static final byte PAYMENT_CREATED = 1;
+    private static final byte PAYMENT_CANCELLED = 2;
+    private static final byte PAYMENT_CREATED_AND_CANCELLED = 3;
+
+    private static final byte NULL = 0;
+    private static final byte UUID = 1;
+    private static final byte TEXT = 2;
+
+    private static final int UUID_LENGTH = 36;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    @Override
+    public byte version() {
+        return VERSION;
+    }
+
+    @Override
+    public byte[] encode(PaymentEvent event) {
+        if (event instanceof PaymentCreatedEvent) {
+            var created = (PaymentCreatedEvent) event;
+            var buffer = ByteBuffer.allocate(2 + stringSize(created.getEventId()) + stringSize(created.getPaymentId()) + stringSize(created.getType()));
+            buffer.put(VERSION).put(PAYMENT_CREATED);
+            putString(buffer, created.getEventId());
+            putString(buffer, created.getPaymentId());
+            putString(buffer, created.getType());
+            return buffer.array();
+        }
+        if (event instanceof PaymentCancelledEvent) {
+            var buffer = ByteBuffer.allocate(2 + stringSize(event.getEventId()) + stringSize(event.getPaymentId()));
+            buffer.put(VERSION).put(PAYMENT_CANCELLED);
+            putString(buffer, event.getEventId());
+            putString(buffer, event.getPaymentId());
+            return buffer.array();
+        }
+        if (event instanceof PaymentCreatedAndCancelledEvent) {
+            var coalesced = (PaymentCreatedAndCancelledEvent) event;
+            var buffer = ByteBuffer.allocate(2 + stringSize(coalesced.getEventId()) + stringSize(coalesced.getPaymentId())
+                    + stringSize(coalesced.getType()) + stringSize(coalesced.getCreatedEventId()));
+            buffer.put(VERSION).put(PAYMENT_CREATED_AND_CANCELLED);
+            putString(buffer, coalesced.getEventId());
+            putString(buffer, coalesced.getPaymentId());
+            putString(buffer, coalesced.getType());
+            putString(buffer, coalesced.getCreatedEventId());
+            return buffer.array();
+        }
+        throw new IllegalArgumentException("Unsupported event type " + event.getClass().getName());
+    }
+
+    @Override
+    public PaymentEvent decode(byte[] payload) {
+        try {
+            var buffer = ByteBuffer.wrap(payload);
+            var version = buffer.get();
+            if (version != VERSION) {
+                throw new UnreadableEventException("Unsupported payload version " + version);
+            }
+            var type = buffer.get();
+            PaymentEvent event;
+            switch (type) {
+                case PAYMENT_CREATED:
+                    event = new PaymentCreatedEvent(getString(buffer), getString(buffer), getString(buffer));
+                    break;
+                case PAYMENT_CANCELLED:
+                    event = new PaymentCancelledEvent(getString(buffer), getString(buffer));
+                    break;
+                case PAYMENT_CREATED_AND_CANCELLED:
+                    event = new PaymentCreatedAndCancelledEvent(getString(buffer), getString(buffer), getString(buffer), getString(buffer));
+                    break;
+                default:
+                    throw new UnreadableEventException("Unknown event type " + type);
+            }
+            if (buffer.hasRemaining()) {
+                throw new UnreadableEventException("Unexpected " + buffer.remaining() + " bytes after event");
+            }
+            return event;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new UnreadableEventException("Truncated or malformed payload", e);
+        }
+    }
+
+    private static int stringSize(String value) {
+        if (value == null) {
+            return 1;
+        }
+        return isUuid(value) ? 1 + 16 : 1 + textSize(value);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        if (value == null) {
+            buffer.put(NULL);
+        } else if (isUuid(value)) {
+            buffer.put(UUID).putLong(parseHex(value, 0, 8, 9, 13, 14, 18)).putLong(parseHex(value, 19, 23, 24, 36, 36, 36));
+        } else {
+            buffer.put(TEXT);
+            putText(buffer, value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        var tag = buffer.get();
+        switch (tag) {
+            case NULL:
+                return null;
+            case UUID:
+                return formatUuid(buffer.getLong(), buffer.getLong());
+            case TEXT:
+                return getText(buffer);
+            default:
+                throw new UnreadableEventException("Unknown string tag " + tag);
+        }
+    }
+
+    private static int textSize(String text) {
+        var length = utf8Length(text);
+        return varIntSize(length) + length;
+    }
+
+    private static void putText(ByteBuffer buffer, String text) {
+        var bytes = text.getBytes(StandardCharsets.UTF_8);
+        putVarInt(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getText(ByteBuffer buffer) {
+        var length = getVarInt(buffer);
+        if (length > buffer.remaining()) {
+            throw new UnreadableEventException("Text length " + length + " exceeds payload");
+        }
+        var text = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return text;
+    }
+
+    private static int utf8Length(String text) {
+        var length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            var c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int varIntSize(int value) {
+        var size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static int getVarInt(ByteBuffer buffer) {
+        var value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            var b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new UnreadableEventException("Malformed varint");
+    }
+
+    /**
+     * Only canonical lower case form is stored as raw bytes, anything else would not survive round trip.
+     */
+    private static boolean isUuid(String id) {
+        if (id.length() != UUID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < UUID_LENGTH; i++) {
+            var c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses three hex ranges of the UUID string into single long.
+     */
+    private static long parseHex(String id, int from1, int to1, int from2, int to2, int from3, int to3) {
+        var value = 0L;
+        value = parseHex(id, from1, to1, value);
+        value = parseHex(id, from2, to2, value);
+        return parseHex(id, from3, to3, value);
+    }
+
+    private static long parseHex(String id, int from, int to, long value) {
+        for (int i = from; i < to; i++) {
+            value = (value << 4) | Character.digit(id.charAt(i), 16);
+        }
+        return value;
+    }
+
+    private static String formatUuid(long mostSignificant, long leastSignificant) {
+        var chars = new char[UUID_LENGTH];
+        formatHex(chars, 0, 8, mostSignificant >>> 32);
+        chars[8] = '-';
+        formatHex(chars, 9, 4, mostSignificant >>> 16);
+        chars[13] = '-';
+        formatHex(chars, 14, 4, mostSignificant);
+        chars[18] = '-';
+        formatHex(chars, 19, 4, leastSignificant >>> 48);
+        chars[23] = '-';
+        formatHex(chars, 24, 12, leastSignificant);
+        return new String(chars);
+    }
+
+    private static void formatHex(char[] chars, int offset, int digits, long value) {
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            chars[i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guards destination conduit with {@link DeliveryCircuitBreaker}. Call not permitted by the breaker
+ * fails with {@link DeliveryCircuitOpenException} without reaching destination.
+ */
+public class CircuitBreakingEventSenderConduit implements DbEventSenderConduit {
+
+    private final DbEventSenderConduit destinationConduit;
+    private final DeliveryCircuitBreaker circuitBreaker;
+    private final Duration callTimeout;
+
+    public CircuitBreakingEventSenderConduit(DbEventSenderConduit destinationConduit, DeliveryCircuitBreaker circuitBreaker, Duration callTimeout) {
+        this.destinationConduit = destinationConduit;
+        this.circuitBreaker = circuitBreaker;
+        this.callTimeout = callTimeout;
+    }
+
+    @Override
+    public CompletionStage<Void> send(PaymentEvent event) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            return CompletableFuture.failedFuture(new DeliveryCircuitOpenException(event.getEventId()));
+        }
+        CompletableFuture<Void> call;
+        try {
+            call = destinationConduit.send(event).toCompletableFuture();
+        } catch (Exception e) {
+            call = CompletableFuture.failedFuture(e);
+        }
+        // Call that never completes would keep half open circuit waiting for its probe forever
+        return call.orTimeout(callTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        circuitBreaker.onSuccess();
+                    } else {
+                        circuitBreaker.onFailure();
+                    }
+                });
+    }
+}
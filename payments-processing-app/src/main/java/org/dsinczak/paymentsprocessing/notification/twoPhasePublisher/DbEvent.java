@@ -5,21 +5,78 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import javax.persistence.*;
+import java.time.Instant;
 
+/**
+ * Outbox row. While being sent the row is leased by single sender instance ({@link #owner})
+ * until {@link #leaseExpiry}, so several application instances can drain the outbox in parallel.
+ * Lease of crashed instance simply expires and row can be claimed again.
+ * Failed row is not claimable until {@link #nextAttemptAt}, so it does not block events behind it,
+ * except later events of the same payment ({@link #paymentId}), which have to wait for it.
+ */
 @Data
 @NoArgsConstructor
 @Entity
+@Table(indexes = {
+        @Index(name = "db_event_lease_expiry_idx", columnList = "leaseExpiry"),
+        @Index(name = "db_event_next_attempt_at_idx", columnList = "nextAttemptAt"),
+        @Index(name = "db_event_payment_id_idx", columnList = "paymentId, id")
+})
 public class DbEvent {
 
+    static final int MAX_PAYLOAD_LENGTH = 1024;
+
+    // Not pooled on purpose: events of a payment are delivered in id order, and blocks of pooled ids held by
+    // different instances would let later event get lower id
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
     Long id;
 
-    @Column(nullable = false)
+    /**
+     * JSON of events stored before {@link #payload} was introduced, empty for new rows.
+     */
+    @Column
     String event;
 
+    /**
+     * Event encoded by {@link OutboxCodec}, starts with codec version byte.
+     */
+    @Column(length = MAX_PAYLOAD_LENGTH)
+    byte[] payload;
+
+    /**
+     * Ordering key, empty for events stored before it was introduced.
+     */
+    @Column
+    String paymentId;
+
+    @Column
+    String owner;
+
+    @Column
+    Instant leaseExpiry;
+
+    /**
+     * Number of failed delivery attempts.
+     */
+    @Column(nullable = false)
+    int attempts;
+
+    @Column
+    Instant nextAttemptAt;
+
     public DbEvent(String event) {
         this.event = event;
     }
 
+    public DbEvent(String event, String paymentId) {
+        this.event = event;
+        this.paymentId = paymentId;
+    }
+
+    public DbEvent(byte[] payload, String paymentId) {
+        this.payload = payload;
+        this.paymentId = paymentId;
+    }
+
 }
@@ -0,0 +1,64 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * Converts events to and from outbox rows. New rows are written with codec selected by
+ * {@link DbEventSenderProperties#getPayloadVersion()}, rows are read with codec matching version byte of
+ * their payload, so payload version can be changed without draining the outbox first. Rows stored before
+ * payload was introduced have only JSON {@link DbEvent#getEvent()} and are still readable.
+ */
+@Component
+public class DbEventCodec {
+
+    private final ObjectMapper objectMapper;
+    private final Map<Byte, OutboxCodec> codecs;
+    private final OutboxCodec writeCodec;
+
+    @Autowired
+    public DbEventCodec(ObjectMapper objectMapper, DbEventSenderProperties properties) {
+        this.objectMapper = objectMapper;
+        this.codecs = List.of(new JsonOutboxCodec(objectMapper), new BinaryOutboxCodec())
+                .toMap(OutboxCodec::version, codec -> codec);
+        this.writeCodec = codecs.get(properties.getPayloadVersion())
+                .getOrElseThrow(() -> new IllegalArgumentException("Unknown outbox payload version " + properties.getPayloadVersion()));
+    }
+
+    public DbEvent toDbEvent(PaymentEvent event) {
+        return new DbEvent(writeCodec.encode(event), event.getPaymentId());
+    }
+
+    /**
+     * @throws UnreadableEventException when row cannot be read by any known codec
+     */
+    public PaymentEvent fromDbEvent(DbEvent dbEvent) {
+        var payload = dbEvent.getPayload();
+        if (payload == null) {
+            return fromLegacyJson(dbEvent.getEvent());
+        }
+        if (payload.length == 0) {
+            throw new UnreadableEventException("Empty payload");
+        }
+        return codecs.get(payload[0])
+                .getOrElseThrow(() -> new UnreadableEventException("Unsupported payload version " + payload[0]))
+                .decode(payload);
+    }
+
+    private PaymentEvent fromLegacyJson(String json) {
+        if (json == null) {
+            throw new UnreadableEventException("Event has neither payload nor JSON");
+        }
+        try {
+            return objectMapper.readValue(json, PaymentEvent.class);
+        } catch (IOException e) {
+            throw new UnreadableEventException("Malformed JSON event " + json, e);
+        }
+    }
+}
@@ -1,13 +1,15 @@
 package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
 import org.dsinczak.paymentsprocessing.notification.EventPublisher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 
 /**
@@ -18,18 +20,24 @@ import org.springframework.transaction.annotation.Transactional;
  * to take place. {@link DbEventSender} will send in separate transaction so this
  * way we do not block service for event sending and do not create time coupling between
  * service availability and event sending.
+ * Once business transaction commits {@link DbEventSender} is woken up, so event is sent
+ * right away instead of waiting for the next outbox poll.
+ * Replaced by {@link org.dsinczak.paymentsprocessing.notification.journal.JournalEventPublisher} when journal is enabled.
  */
 @Slf4j
 @Component
+@ConditionalOnProperty(prefix = "payments.notification.journal", name = "enabled", havingValue = "false", matchIfMissing = true)
 public class DbEventPublisher implements EventPublisher {
 
     private final DbEventRepository eventRepository;
-    private final ObjectMapper objectMapper;
+    private final DbEventCodec eventCodec;
+    private final DbEventSender eventSender;
 
     @Autowired
-    public DbEventPublisher(DbEventRepository eventRepository, ObjectMapper objectMapper) {
+    public DbEventPublisher(DbEventRepository eventRepository, DbEventCodec eventCodec, DbEventSender eventSender) {
         this.eventRepository = eventRepository;
-        this.objectMapper = objectMapper;
+        this.eventCodec = eventCodec;
+        this.eventSender = eventSender;
     }
 
     @Override
@@ -37,10 +45,27 @@ public class DbEventPublisher implements EventPublisher {
     public void publish(PaymentEvent event) {
         try {
             log.debug("Storing event {} to database for further processing.", event);
-            var eventJson = objectMapper.writeValueAsString(event);
-            eventRepository.save(new DbEvent(eventJson));
+            eventRepository.save(eventCodec.toDbEvent(event));
+            wakeUpSenderAfterCommit();
         } catch (Exception e) {
             log.error("Unable to publish event: " + event, e);
         }
     }
+
+    /**
+     * Waking up sender before commit would make it miss the event, it is not visible to other
+     * transactions yet.
+     */
+    private void wakeUpSenderAfterCommit() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    eventSender.wakeUp();
+                }
+            });
+        } else {
+            eventSender.wakeUp();
+        }
+    }
 }
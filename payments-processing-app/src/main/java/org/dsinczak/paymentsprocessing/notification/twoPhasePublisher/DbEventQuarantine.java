@@ -0,0 +1,46 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Moves undeliverable events from the outbox to the dead letter table.
+ */
+@Slf4j
+@Component
+public class DbEventQuarantine {
+
+    private final DbEventRepository eventRepository;
+    private final DeadLetterEventRepository deadLetterRepository;
+    private final Clock clock;
+
+    @Autowired
+    public DbEventQuarantine(DbEventRepository eventRepository, DeadLetterEventRepository deadLetterRepository, Clock clock) {
+        this.eventRepository = eventRepository;
+        this.deadLetterRepository = deadLetterRepository;
+        this.clock = clock;
+    }
+
+    /**
+     * Removal from the outbox and insert to the dead letter table happen in one transaction. Event
+     * is moved only while it is still leased by given owner, otherwise it was taken over by other
+     * instance after lease expired.
+     *
+     * @return true if event was moved
+     */
+    @Transactional
+    public boolean quarantine(DbEvent dbEvent, String owner, Throwable reason) {
+        if (eventRepository.deleteClaimed(List.of(dbEvent.getId()), owner) == 0) {
+            return false;
+        }
+        deadLetterRepository.save(new DeadLetterEvent(dbEvent, reason, Instant.now(clock)));
+        log.warn("Event {} quarantined after {} attempts.", dbEvent.getId(), dbEvent.getAttempts() + 1, reason);
+        return true;
+    }
+}
@@ -1,12 +1,88 @@
 package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
 
-import io.vavr.control.Option;
+import io.vavr.collection.List;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
+
+/**
+ * Outbox access. Rows are claimed with lease protocol:
+ * <ol>
+ *     <li>{@link #findClaimableIds} - oldest rows that are not leased or whose lease expired and that are not
+ *     backing off after failed delivery. Row is skipped also when earlier row of the same payment is leased by
+ *     other instance or backing off</li>
+ *     <li>{@link #claim} - conditional update that takes only rows still claimable at the moment of update.
+ *     Row locks taken by concurrent claim make the other instance re-evaluate the condition, so the row
+ *     is claimed by exactly one instance</li>
+ *     <li>{@link #findClaimed} - rows actually won by this claim</li>
+ *     <li>{@link #findPaymentIdsWithPrecedingEvents} - payments whose claimed rows still have earlier rows that
+ *     were not claimed (taken by other instance in the meantime). Such rows have to be given back</li>
+ * </ol>
+ */
 @Repository
 public interface DbEventRepository extends JpaRepository<DbEvent, Long> {
 
-    Option<DbEvent> findTop1ByOrderByIdAsc();
+    @Query("SELECT e.id FROM DbEvent e WHERE (e.leaseExpiry IS NULL OR e.leaseExpiry < :now) " +
+            "AND (e.nextAttemptAt IS NULL OR e.nextAttemptAt <= :now) " +
+            "AND NOT EXISTS (SELECT p.id FROM DbEvent p WHERE p.paymentId = e.paymentId AND p.id < e.id " +
+            "AND (p.leaseExpiry >= :now OR p.nextAttemptAt > :now)) " +
+            "ORDER BY e.id ASC")
+    List<Long> findClaimableIds(@Param("now") Instant now, Pageable page);
+
+    @Modifying
+    @Transactional
+    @Query("UPDATE DbEvent e SET e.owner = :owner, e.leaseExpiry = :leaseExpiry " +
+            "WHERE e.id IN :ids AND (e.leaseExpiry IS NULL OR e.leaseExpiry < :now) " +
+            "AND (e.nextAttemptAt IS NULL OR e.nextAttemptAt <= :now)")
+    int claim(@Param("ids") Collection<Long> ids, @Param("owner") String owner, @Param("leaseExpiry") Instant leaseExpiry, @Param("now") Instant now);
+
+    @Query("SELECT e FROM DbEvent e WHERE e.id IN :ids AND e.owner = :owner AND e.leaseExpiry = :leaseExpiry ORDER BY e.id ASC")
+    List<DbEvent> findClaimed(@Param("ids") Collection<Long> ids, @Param("owner") String owner, @Param("leaseExpiry") Instant leaseExpiry);
+
+    // Spring Data fails to convert this scalar result to vavr collection (ClassCastException), plain Java set is used
+    @Query("SELECT DISTINCT p.paymentId FROM DbEvent p WHERE p.paymentId IN :paymentIds AND p.id NOT IN :ids " +
+            "AND p.id < (SELECT MAX(c.id) FROM DbEvent c WHERE c.id IN :ids AND c.paymentId = p.paymentId)")
+    java.util.Set<String> findPaymentIdsWithPrecedingEvents(@Param("paymentIds") Collection<String> paymentIds, @Param("ids") Collection<Long> ids);
+
+    /**
+     * Moves lease of rows still owned by given owner, so they are not taken over while their deliveries run.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DbEvent e SET e.leaseExpiry = :leaseExpiry WHERE e.id IN :ids AND e.owner = :owner")
+    int renewLease(@Param("ids") Collection<Long> ids, @Param("owner") String owner, @Param("leaseExpiry") Instant leaseExpiry);
+
+    /**
+     * Gives back rows that were claimed but delivery was not even attempted.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DbEvent e SET e.owner = NULL, e.leaseExpiry = NULL WHERE e.id IN :ids AND e.owner = :owner")
+    int release(@Param("ids") Collection<Long> ids, @Param("owner") String owner);
+
+    /**
+     * Gives back rows that failed to be sent. They become claimable again at {@code nextAttemptAt}.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DbEvent e SET e.owner = NULL, e.leaseExpiry = NULL, e.attempts = e.attempts + 1, e.nextAttemptAt = :nextAttemptAt " +
+            "WHERE e.id IN :ids AND e.owner = :owner")
+    int retryLater(@Param("ids") Collection<Long> ids, @Param("owner") String owner, @Param("nextAttemptAt") Instant nextAttemptAt);
+
+    /**
+     * Removes rows only while they are still leased by given owner. Whole sent batch is removed with single
+     * statement instead of one delete per event.
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DbEvent e WHERE e.id IN :ids AND e.owner = :owner")
+    int deleteClaimed(@Param("ids") Collection<Long> ids, @Param("owner") String owner);
 
 }
@@ -1,45 +1,381 @@
 package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.HashSet;
+import io.vavr.collection.List;
+import io.vavr.collection.Set;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
 import lombok.extern.slf4j.Slf4j;
 import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Propagation;
-import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Second phase of event publication. Outbox is drained in leased batches, so many application instances
+ * can share one outbox table, and deliveries of a batch run in parallel lanes ({@link KeyOrderedDispatcher}).
+ * Drain cycle is started by poller or by {@link #wakeUp()}.
+ */
 @Slf4j
 @Component
 public class DbEventSender {
 
     private final DbEventRepository eventRepository;
     private final DbEventSenderConduit senderConduit;
-    private final ObjectMapper objectMapper;
+    private final DbEventQuarantine quarantine;
+    private final DeliveryLogWriter deliveryLog;
+    private final DeliveryCircuitBreaker circuitBreaker;
+    private final DbEventCodec eventCodec;
+    private final DbEventSenderProperties properties;
+    private final Clock clock;
+    private final TaskScheduler taskScheduler;
+
+    // Drain cycle can be started both by poller and by wake up
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean wakeUpPending = new AtomicBoolean();
+    private volatile Duration pollInterval = Duration.ZERO;
+    private volatile Instant nextPollAt = Instant.MIN;
+    private final KeyOrderedDispatcher dispatcher;
+    private final OutboxCoalescer coalescer;
 
     @Autowired
-    public DbEventSender(DbEventRepository eventRepository, DbEventSenderConduit senderConduit, ObjectMapper objectMapper) {
+    public DbEventSender(DbEventRepository eventRepository, DbEventSenderConduit senderConduit, DbEventQuarantine quarantine, DeliveryLogWriter deliveryLog, DeliveryCircuitBreaker circuitBreaker, DbEventCodec eventCodec, DbEventSenderProperties properties, Clock clock, TaskScheduler taskScheduler) {
         this.eventRepository = eventRepository;
         this.senderConduit = senderConduit;
-        this.objectMapper = objectMapper;
+        this.quarantine = quarantine;
+        this.deliveryLog = deliveryLog;
+        this.circuitBreaker = circuitBreaker;
+        this.eventCodec = eventCodec;
+        this.properties = properties;
+        this.clock = clock;
+        this.taskScheduler = taskScheduler;
+        this.dispatcher = new KeyOrderedDispatcher(properties.getMaxInFlight());
+        this.coalescer = new OutboxCoalescer(properties.getCoalescing(), eventCodec);
     }
 
-    @Async
-    @Scheduled(fixedDelay = 1000)
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    /**
+     * Cheap poller tick, outbox is queried only when current poll interval elapsed or wake up is pending.
+     */
+    @Scheduled(fixedDelay = 50)
     public void sendEvents() {
-        eventRepository.findTop1ByOrderByIdAsc().forEach(this::send);
+        if (wakeUpPending.get() || !Instant.now(clock).isBefore(nextPollAt)) {
+            drainOutbox();
+        }
     }
 
-    private void send(DbEvent dbEvent) {
-        log.debug("Found event to send {}", dbEvent);
+    /**
+     * Requests immediate drain cycle, publisher calls it right after commit of new events. Many wake ups
+     * arriving while one is pending are coalesced into single cycle. Never fails, if drain cannot be
+     * scheduled poller picks pending wake up on its next tick.
+     */
+    public void wakeUp() {
+        if (wakeUpPending.compareAndSet(false, true)) {
+            try {
+                taskScheduler.schedule(this::drainOutbox, Instant.now(clock));
+            } catch (Exception e) {
+                log.warn("Unable to schedule outbox drain, leaving it for poller.", e);
+            }
+        }
+    }
+
+    /**
+     * Keeps sending batches as long as it finds full pages of events, so throughput is not bound by
+     * the scheduling interval. While destination circuit is open outbox is not queried at all.
+     */
+    private void drainOutbox() {
+        if (circuitBreaker.permittedCalls(1) == 0) {
+            // Nothing could be sent anyway, poll interval is left as it is so sending resumes right after circuit opening ends
+            log.debug("Delivery circuit is open, skipping drain cycle.");
+            return;
+        }
+        if (!draining.compareAndSet(false, true)) {
+            log.debug("Drain cycle is already running, skipping.");
+            return;
+        }
         try {
-            var event = objectMapper.readValue(dbEvent.event, PaymentEvent.class);
-            senderConduit.send(event);
-            eventRepository.delete(dbEvent);
+            var sent = 0;
+            do {
+                wakeUpPending.set(false);
+                sent += sendPending();
+            } while (wakeUpPending.get());
+            adjustPollInterval(sent);
         } catch (Exception e) {
-            log.error("Error sending event to destination, another attempt soon.", e);
+            log.error("Outbox drain cycle failed.", e);
+            adjustPollInterval(0);
+        } finally {
+            draining.set(false);
+        }
+    }
+
+    /**
+     * @return number of sent events
+     */
+    private int sendPending() {
+        var sent = 0;
+        var hasMore = true;
+        while (hasMore) {
+            var batch = sendBatch();
+            sent += batch._1;
+            hasMore = batch._2;
+        }
+        return sent;
+    }
+
+    /**
+     * Keeps polling on every tick while there is backlog and backs off exponentially up to
+     * configured maximum when nothing was sent.
+     */
+    private void adjustPollInterval(int sent) {
+        if (sent > 0) {
+            pollInterval = Duration.ZERO;
+        } else {
+            var doubled = pollInterval.multipliedBy(2);
+            pollInterval = doubled.compareTo(properties.getMinPollInterval()) < 0
+                    ? properties.getMinPollInterval()
+                    : doubled.compareTo(properties.getMaxPollInterval()) > 0 ? properties.getMaxPollInterval() : doubled;
+        }
+        nextPollAt = Instant.now(clock).plus(pollInterval);
+    }
+
+    /**
+     * Claims page of outbox with a lease (see {@link DbEventRepository}), delivers it and deletes sent rows. Rows are
+     * deleted, retried or released only while still owned. Read and bulk delete run in their own short transactions,
+     * database resources are not held while talking to the destination. In half open circuit only as many events
+     * as there are permitted probes are claimed. Events of one payment may be collapsed before delivery
+     * ({@link OutboxCoalescer}).
+     *
+     * @return number of sent events and whether whole page was claimed and sent, so backlog may still be non empty
+     */
+    private Tuple2<Integer, Boolean> sendBatch() {
+        var pageSize = circuitBreaker.permittedCalls(properties.getBatchSize());
+        if (pageSize == 0) {
+            return Tuple.of(0, false);
+        }
+        var now = Instant.now(clock);
+        var candidates = eventRepository.findClaimableIds(now, PageRequest.of(0, pageSize));
+        if (candidates.isEmpty()) {
+            return Tuple.of(0, false);
+        }
+        var hasMore = candidates.size() == pageSize;
+
+        var owner = properties.getInstanceId();
+        var leaseExpiry = now.plus(properties.getLeaseDuration()).truncatedTo(ChronoUnit.MILLIS);
+        if (eventRepository.claim(candidates.asJava(), owner, leaseExpiry, now) == 0) {
+            // Whole page was taken by other instances, there may be more behind it
+            return Tuple.of(0, hasMore);
         }
+        var claimed = eventRepository.findClaimed(candidates.asJava(), owner, leaseExpiry);
+        var blockedPaymentIds = paymentIdsWithPrecedingEvents(claimed);
+        var blockedAndReady = claimed.partition(dbEvent -> blockedPaymentIds.contains(dbEvent.getPaymentId()));
+        if (!blockedAndReady._1.isEmpty()) {
+            eventRepository.release(blockedAndReady._1.map(DbEvent::getId).asJava(), owner);
+        }
+
+        // Deliveries of the batch are in flight concurrently (one per lane), rows are
+        // deleted or retried only after their delivery completed
+        var failedPaymentIds = ConcurrentHashMap.<String>newKeySet();
+        var deliveriesAndDiscarded = coalescer.coalesce(blockedAndReady._2);
+        var readyIds = blockedAndReady._2.map(DbEvent::getId);
+        var leaseFor = leaseFor(deliveriesAndDiscarded._1);
+        if (leaseFor.compareTo(properties.getLeaseDuration()) > 0) {
+            // Batch may outlive its lease before the first renewal, it is extended up front
+            warnIfLeaseLost("renewed", readyIds.size(),
+                    eventRepository.renewLease(readyIds.asJava(), owner, now.plus(leaseFor).truncatedTo(ChronoUnit.MILLIS)));
+        }
+        var deliveries = deliveriesAndDiscarded._1.map(delivery -> Tuple.of(delivery, dispatch(delivery, failedPaymentIds)));
+        awaitRenewingLease(CompletableFuture.allOf(deliveries.map(Tuple2::_2).asJava().toArray(new CompletableFuture[0])),
+                readyIds, owner, leaseFor);
+        var outcomes = deliveries.flatMap(d -> d._1.getRows().map(dbEvent -> Tuple.of(dbEvent, d._2.join())));
+        var sent = outcomes.filter(o -> o._2.isEmpty()).map(Tuple2::_1);
+        var failed = outcomes.filter(o -> o._2.isDefined()).map(o -> Tuple.of(o._1, o._2.get()));
+        var done = sent.appendAll(deliveriesAndDiscarded._2);
+        deliveriesAndDiscarded._2.forEach(dbEvent ->
+                deliveryLog.record(new DeliveryLogEntry(dbEvent, null, DeliveryLogEntry.Outcome.DISCARDED, null, null, now)));
+        if (!done.isEmpty()) {
+            var deleted = eventRepository.deleteClaimed(done.map(DbEvent::getId).asJava(), owner);
+            warnIfLeaseLost("deleted", done.size(), deleted);
+        }
+        if (!failed.isEmpty()) {
+            handleFailures(failed);
+        }
+        // Failed events are backing off now, so they do not stop the rest of the backlog
+        return Tuple.of(done.size(), hasMore);
+    }
+
+    /**
+     * Deliveries of one lane run one after another, so batch takes at most its longest lane times delivery
+     * timeout. Single slow payment with many events keeps the batch running that long, lease covers it with
+     * one lease duration left for database work.
+     */
+    private Duration leaseFor(List<OutboxCoalescer.Delivery> deliveries) {
+        var longestLane = deliveries.groupBy(delivery -> dispatcher.laneOf(laneKey(delivery.getFirstRow())))
+                .values()
+                .map(List::size)
+                .max()
+                .getOrElse(0);
+        var worstCase = properties.getDeliveryTimeout().multipliedBy(longestLane);
+        return worstCase.compareTo(properties.getLeaseDuration()) < 0
+                ? properties.getLeaseDuration()
+                : worstCase.plus(properties.getLeaseDuration());
+    }
+
+    /**
+     * Waits for deliveries of the batch and moves lease of its rows forward every third of lease duration,
+     * so slow destination does not let other instance claim and send them again.
+     */
+    private void awaitRenewingLease(CompletableFuture<Void> deliveries, List<Long> ids, String owner, Duration leaseFor) {
+        var renewEvery = properties.getLeaseDuration().dividedBy(3).toMillis();
+        while (true) {
+            try {
+                deliveries.get(renewEvery, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                var leaseExpiry = Instant.now(clock).plus(leaseFor).truncatedTo(ChronoUnit.MILLIS);
+                var renewed = eventRepository.renewLease(ids.asJava(), owner, leaseExpiry);
+                warnIfLeaseLost("renewed", ids.size(), renewed);
+            } catch (ExecutionException e) {
+                // Deliveries never complete exceptionally, failures are their results
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for deliveries.", e);
+            }
+        }
+    }
+
+    /**
+     * Rows are updated only while this instance owns them, the rest was taken over by other instance.
+     */
+    private static void warnIfLeaseLost(String action, int expected, int updated) {
+        if (updated < expected) {
+            log.warn("Only {} of {} outbox rows {}, lease of the rest was lost to other instance.", updated, expected, action);
+        }
+    }
+
+    /**
+     * Earlier event of the payment was claimed by other instance between our query and claim.
+     */
+    private Set<String> paymentIdsWithPrecedingEvents(List<DbEvent> claimed) {
+        var paymentIds = claimed.map(DbEvent::getPaymentId).filter(Objects::nonNull).distinct();
+        if (paymentIds.isEmpty()) {
+            return HashSet.empty();
+        }
+        return HashSet.ofAll(eventRepository.findPaymentIdsWithPrecedingEvents(paymentIds.asJava(), claimed.map(DbEvent::getId).asJava()));
+    }
+
+    /**
+     * Failed event is retried with exponential backoff and after too many attempts moved to dead letter table
+     * ({@link DbEventQuarantine}). Event backing off is skipped by outbox query, so single poison event does not
+     * stop events behind it.
+     */
+    private void handleFailures(List<Tuple2<DbEvent, Throwable>> failed) {
+        var owner = properties.getInstanceId();
+        var now = Instant.now(clock);
+        // Event rejected by circuit breaker or waiting for earlier event did not reach destination, it is not failed attempt
+        var notAttemptedAndAttempted = failed.partition(f -> f._2 instanceof DeliveryNotAttemptedException);
+        if (!notAttemptedAndAttempted._1.isEmpty()) {
+            var released = eventRepository.release(notAttemptedAndAttempted._1.map(f -> f._1.getId()).asJava(), owner);
+            warnIfLeaseLost("released", notAttemptedAndAttempted._1.size(), released);
+        }
+        var quarantinedAndRetried = notAttemptedAndAttempted._2.partition(f -> isPoison(f._2) || f._1.getAttempts() + 1 >= properties.getMaxAttempts());
+        quarantinedAndRetried._1
+                .filter(f -> quarantine.quarantine(f._1, owner, f._2))
+                .forEach(f -> deliveryLog.record(new DeliveryLogEntry(f._1, null, DeliveryLogEntry.Outcome.QUARANTINED, null, f._2, now)));
+        // Events with the same number of attempts share backoff, so they are updated together
+        quarantinedAndRetried._2
+                .map(Tuple2::_1)
+                .groupBy(DbEvent::getAttempts)
+                .forEach((attempts, dbEvents) -> warnIfLeaseLost("retried", dbEvents.size(),
+                        eventRepository.retryLater(dbEvents.map(DbEvent::getId).asJava(), owner, now.plus(retryBackoff(attempts + 1)))));
+    }
+
+    /**
+     * Event that cannot be read will not become readable later.
+     */
+    private static boolean isPoison(Throwable error) {
+        return error instanceof UnreadableEventException;
+    }
+
+    private Duration retryBackoff(int attempts) {
+        var backoff = properties.getInitialRetryBackoff().multipliedBy(1L << Math.min(attempts - 1, 30));
+        return backoff.compareTo(properties.getMaxRetryBackoff()) > 0 ? properties.getMaxRetryBackoff() : backoff;
+    }
+
+    /**
+     * Starts delivery as soon as its lane is free. Events of one payment share a lane and are delivered in order,
+     * later event is not even attempted when earlier one failed. Event without payment id (stored before ordering
+     * was introduced) has no ordering requirements and is spread over lanes by its id.
+     *
+     * @return delivery error if delivery failed, never completes exceptionally
+     */
+    private CompletableFuture<Option<Throwable>> dispatch(OutboxCoalescer.Delivery delivery, java.util.Set<String> failedPaymentIds) {
+        log.debug("Found event to send {}", delivery);
+        var dbEvent = delivery.getFirstRow();
+        var paymentId = Option.of(dbEvent.getPaymentId());
+        return dispatcher.dispatch(laneKey(dbEvent), () -> {
+            if (paymentId.exists(failedPaymentIds::contains)) {
+                return CompletableFuture.failedFuture(new PrecedingEventNotDeliveredException(dbEvent.getId(), paymentId.get()));
+            }
+            return deliver(delivery)
+                    // Part of the lane task, so failure is recorded before next event of the lane starts
+                    .whenComplete((ignored, error) -> {
+                        if (error != null) {
+                            paymentId.forEach(failedPaymentIds::add);
+                        }
+                    });
+        }).handle((ignored, error) -> {
+            var cause = Option.of(error).map(DbEventSender::unwrap);
+            cause.filter(e -> !(e instanceof DeliveryNotAttemptedException))
+                    .forEach(e -> log.warn("Error sending event " + dbEvent.getId() + " to destination (attempt " + (dbEvent.getAttempts() + 1) + ").", e));
+            return cause;
+        });
+    }
+
+    private static String laneKey(DbEvent dbEvent) {
+        return Option.of(dbEvent.getPaymentId()).getOrElse(() -> dbEvent.getId().toString());
+    }
+
+    /**
+     * Every attempt that reached destination, or failed because event could not be read, is written to
+     * delivery log ({@link DeliveryLogWriter}).
+     */
+    private CompletableFuture<Void> deliver(OutboxCoalescer.Delivery delivery) {
+        var event = Try.of(() -> delivery.getEvent().getOrElse(() -> eventCodec.fromDbEvent(delivery.getFirstRow())));
+        var started = System.nanoTime();
+        return event.mapTry(e -> senderConduit.send(e).toCompletableFuture())
+                .getOrElseGet(CompletableFuture::failedFuture)
+                .orTimeout(properties.getDeliveryTimeout().toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, error) -> {
+                    var cause = error == null ? null : unwrap(error);
+                    if (cause instanceof DeliveryNotAttemptedException) {
+                        return;
+                    }
+                    var latency = event.isSuccess() ? Duration.ofNanos(System.nanoTime() - started) : null;
+                    var outcome = cause == null ? DeliveryLogEntry.Outcome.DELIVERED : DeliveryLogEntry.Outcome.FAILED;
+                    var loggedAt = Instant.now(clock);
+                    delivery.getRows().forEach(dbEvent -> deliveryLog.record(
+                            new DeliveryLogEntry(dbEvent, event.map(PaymentEvent::getEventId).getOrNull(), outcome, latency, cause, loggedAt)));
+                });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
     }
 }
@@ -2,9 +2,16 @@ package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
 
 import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
 
+import java.util.concurrent.CompletionStage;
+
 @FunctionalInterface
 public interface DbEventSenderConduit {
 
-    void send(PaymentEvent event);
+    /**
+     * Starts delivery of the event without waiting for destination.
+     *
+     * @return stage completed once destination accepted the event or completed exceptionally when delivery failed
+     */
+    CompletionStage<Void> send(PaymentEvent event);
 
 }
@@ -0,0 +1,168 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Tuning knobs of the second phase of event publication ({@link DbEventSender}).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "payments.notification.sender")
+public class DbEventSenderProperties {
+
+    /**
+     * Number of events claimed from the outbox in one drain cycle iteration.
+     */
+    private int batchSize = 100;
+
+    /**
+     * Identity of this instance as outbox lease owner. Has to be unique among instances
+     * sharing the outbox table.
+     */
+    private String instanceId = UUID.randomUUID().toString();
+
+    /**
+     * How long claimed events stay reserved for this instance. When instance dies, its
+     * events are picked up by others after lease expires. Lease of batch is renewed every third
+     * of this time while its deliveries run, and extended up front when longest lane of the batch
+     * may take longer than this at delivery timeout.
+     */
+    private Duration leaseDuration = Duration.ofSeconds(30);
+
+    /**
+     * First poll interval after outbox was found empty. Interval doubles with every empty
+     * poll up to {@link #maxPollInterval}. Events published by this instance do not wait
+     * for polling, sender is woken up right after commit.
+     */
+    private Duration minPollInterval = Duration.ofMillis(100);
+
+    private Duration maxPollInterval = Duration.ofSeconds(5);
+
+    /**
+     * Number of delivery lanes. Every lane has at most one delivery in flight, so it is also maximum
+     * number of deliveries started but not yet completed.
+     */
+    private int maxInFlight = 16;
+
+    /**
+     * Delivery not completed in this time is considered failed.
+     */
+    private Duration deliveryTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Delivery attempts after which event is moved to the dead letter table. Event that cannot
+     * be even deserialized is moved there right away.
+     */
+    private int maxAttempts = 10;
+
+    /**
+     * Delay before second attempt to deliver failed event. Delay doubles with every next failure
+     * up to {@link #maxRetryBackoff}.
+     */
+    private Duration initialRetryBackoff = Duration.ofSeconds(1);
+
+    private Duration maxRetryBackoff = Duration.ofMinutes(10);
+
+    /**
+     * Destination endpoint events are POSTed to. When not set events are only logged.
+     */
+    private String destinationUrl;
+
+    /**
+     * Encoding of newly stored outbox events: 0 - JSON, 1 - compact binary. Rows of every known version
+     * are readable regardless of this setting.
+     */
+    private byte payloadVersion = BinaryOutboxCodec.VERSION;
+
+    /**
+     * How events of one payment claimed in the same batch are collapsed before delivery, see {@link Coalescing}.
+     */
+    private Coalescing coalescing = Coalescing.NONE;
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    private DeliveryLog deliveryLog = new DeliveryLog();
+
+    public enum Coalescing {
+        /**
+         * Every event is delivered as it was published.
+         */
+        NONE,
+        /**
+         * Created event immediately followed by cancelled event is delivered as single {@code PaymentCreatedAndCancelledEvent}.
+         */
+        MERGE,
+        /**
+         * Created event immediately followed by cancelled event is not delivered at all, for destinations that
+         * do not care about payments which were cancelled before they heard of them.
+         */
+        DISCARD
+    }
+
+    /**
+     * Settings of {@link DeliveryCircuitBreaker} guarding destination.
+     */
+    @Data
+    public static class CircuitBreaker {
+
+        /**
+         * Percentage of failed calls in the window that opens the circuit.
+         */
+        private int failureRateThreshold = 50;
+
+        /**
+         * Number of most recent calls failure rate is computed from.
+         */
+        private int slidingWindowSize = 20;
+
+        /**
+         * Circuit does not open before this many calls were recorded.
+         */
+        private int minimumNumberOfCalls = 10;
+
+        /**
+         * How long destination is left alone before it is probed again.
+         */
+        private Duration openDuration = Duration.ofSeconds(10);
+
+        /**
+         * Number of probe calls that have to succeed to close the circuit.
+         */
+        private int halfOpenProbes = 3;
+    }
+
+    /**
+     * Settings of {@link DeliveryLogWriter}.
+     */
+    @Data
+    public static class DeliveryLog {
+
+        private boolean enabled = true;
+
+        /**
+         * Entries waiting to be written. When writer falls behind, new entries are dropped instead of
+         * slowing down delivery.
+         */
+        private int bufferSize = 10_000;
+
+        /**
+         * Number of entries written with single JDBC batch.
+         */
+        private int batchSize = 500;
+
+        private Duration flushInterval = Duration.ofMillis(200);
+
+        /**
+         * Entries older than this are purged.
+         */
+        private Duration retention = Duration.ofDays(7);
+
+        private Duration purgeInterval = Duration.ofHours(1);
+    }
+
+}
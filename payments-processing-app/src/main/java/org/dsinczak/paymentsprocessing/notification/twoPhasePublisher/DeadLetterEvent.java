@@ -0,0 +1,58 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.Instant;
+
+/**
+ * Outbox event that could not be delivered and was taken out of the outbox, so it does not
+ * consume sender capacity anymore. Kept for inspection and manual re-drive.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+public class DeadLetterEvent {
+
+    private static final int MAX_REASON_LENGTH = 1000;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "dead_letter_event_id")
+    @SequenceGenerator(name = "dead_letter_event_id", sequenceName = "dead_letter_event_id_seq", allocationSize = 50)
+    Long id;
+
+    /**
+     * Id of the row in the outbox.
+     */
+    @Column(nullable = false)
+    Long outboxId;
+
+    @Column
+    String event;
+
+    @Column(length = DbEvent.MAX_PAYLOAD_LENGTH)
+    byte[] payload;
+
+    @Column(nullable = false)
+    int attempts;
+
+    @Column(length = MAX_REASON_LENGTH)
+    String reason;
+
+    @Column(nullable = false)
+    Instant quarantinedAt;
+
+    public DeadLetterEvent(DbEvent dbEvent, Throwable reason, Instant quarantinedAt) {
+        this.outboxId = dbEvent.getId();
+        this.event = dbEvent.getEvent();
+        this.payload = dbEvent.getPayload();
+        this.attempts = dbEvent.getAttempts() + 1;
+        this.reason = truncate(String.valueOf(reason));
+        this.quarantinedAt = quarantinedAt;
+    }
+
+    private static String truncate(String reason) {
+        return reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason;
+    }
+}
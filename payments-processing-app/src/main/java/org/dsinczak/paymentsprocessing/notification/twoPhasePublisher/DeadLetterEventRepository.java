@@ -0,0 +1,12 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import io.vavr.collection.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface DeadLetterEventRepository extends JpaRepository<DeadLetterEvent, Long> {
+
+    List<DeadLetterEvent> findByOutboxId(Long outboxId);
+
+}
@@ -0,0 +1,149 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Instant;
+
+/**
+ * Circuit breaker guarding single event destination.
+ * <ul>
+ *     <li>CLOSED - calls go through, outcomes of last {@code slidingWindowSize} calls are recorded. When failure
+ *     rate of the window reaches threshold the circuit opens</li>
+ *     <li>OPEN - no calls are permitted until open duration passes</li>
+ *     <li>HALF_OPEN - limited number of probe calls is permitted. When all of them succeed the circuit closes,
+ *     any failure opens it again</li>
+ * </ul>
+ * State and transitions are published as metrics tagged with destination name.
+ */
+@Slf4j
+public class DeliveryCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String destination;
+    private final DbEventSenderProperties.CircuitBreaker config;
+    private final Clock clock;
+    private final MeterRegistry meterRegistry;
+    private final Counter rejectedCalls;
+
+    private State state = State.CLOSED;
+    // Ring buffer of call outcomes, true means failure
+    private final boolean[] window;
+    private int windowPosition;
+    private int recordedCalls;
+    private int failedCalls;
+    private Instant openUntil = Instant.MIN;
+    private int startedProbes;
+    private int succeededProbes;
+
+    public DeliveryCircuitBreaker(String destination, DbEventSenderProperties.CircuitBreaker config, Clock clock, MeterRegistry meterRegistry) {
+        this.destination = destination;
+        this.config = config;
+        this.clock = clock;
+        this.meterRegistry = meterRegistry;
+        this.window = new boolean[config.getSlidingWindowSize()];
+        Gauge.builder("payments.notification.circuit.state", this, breaker -> breaker.getState().ordinal())
+                .description("Delivery circuit state: 0 - closed, 1 - open, 2 - half open")
+                .tag("destination", destination)
+                .register(meterRegistry);
+        this.rejectedCalls = Counter.builder("payments.notification.circuit.rejected")
+                .description("Deliveries not attempted because circuit was not closed")
+                .tag("destination", destination)
+                .register(meterRegistry);
+    }
+
+    public synchronized State getState() {
+        openExpired();
+        return state;
+    }
+
+    /**
+     * Does not take permission, tells how many of requested calls would be permitted now.
+     */
+    public synchronized int permittedCalls(int requested) {
+        openExpired();
+        switch (state) {
+            case CLOSED:
+                return requested;
+            case HALF_OPEN:
+                return Math.min(requested, config.getHalfOpenProbes() - startedProbes);
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Takes permission for single call. Outcome of permitted call has to be reported with
+     * {@link #onSuccess()} or {@link #onFailure()}.
+     */
+    public synchronized boolean tryAcquirePermission() {
+        if (permittedCalls(1) == 0) {
+            rejectedCalls.increment();
+            return false;
+        }
+        if (state == State.HALF_OPEN) {
+            startedProbes++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++succeededProbes >= config.getHalfOpenProbes()) {
+                transitionTo(State.CLOSED);
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            transitionTo(State.OPEN);
+        } else if (state == State.CLOSED) {
+            record(true);
+        }
+    }
+
+    private void record(boolean failure) {
+        if (recordedCalls == window.length) {
+            failedCalls -= window[windowPosition] ? 1 : 0;
+        } else {
+            recordedCalls++;
+        }
+        window[windowPosition] = failure;
+        failedCalls += failure ? 1 : 0;
+        windowPosition = (windowPosition + 1) % window.length;
+        if (recordedCalls >= config.getMinimumNumberOfCalls()
+                && failedCalls * 100 >= config.getFailureRateThreshold() * recordedCalls) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void openExpired() {
+        if (state == State.OPEN && !Instant.now(clock).isBefore(openUntil)) {
+            transitionTo(State.HALF_OPEN);
+        }
+    }
+
+    private void transitionTo(State newState) {
+        log.info("Delivery circuit of {} changes state {} -> {}", destination, state, newState);
+        meterRegistry.counter("payments.notification.circuit.transitions",
+                "destination", destination, "from", state.name(), "to", newState.name()).increment();
+        state = newState;
+        recordedCalls = 0;
+        failedCalls = 0;
+        windowPosition = 0;
+        startedProbes = 0;
+        succeededProbes = 0;
+        if (newState == State.OPEN) {
+            openUntil = Instant.now(clock).plus(config.getOpenDuration());
+        }
+    }
+}
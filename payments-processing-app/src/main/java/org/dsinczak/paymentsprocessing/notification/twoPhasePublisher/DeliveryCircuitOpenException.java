@@ -0,0 +1,11 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+/**
+ * Delivery was not attempted because destination circuit is not closed.
+ */
+public class DeliveryCircuitOpenException extends DeliveryNotAttemptedException {
+
+    public DeliveryCircuitOpenException(String eventId) {
+        super("Delivery circuit is open, event " + eventId + " was not sent");
+    }
+}
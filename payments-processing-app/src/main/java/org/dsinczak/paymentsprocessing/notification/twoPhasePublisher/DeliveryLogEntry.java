@@ -0,0 +1,91 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Outcome of single delivery attempt of outbox event, or of its removal from the outbox without delivery.
+ * Entries are written in batches by {@link DeliveryLogWriter}, with plain JDBC, entity mapping only describes
+ * the table and serves queries.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "delivery_log", indexes = {
+        @Index(name = "delivery_log_payment_id_idx", columnList = "paymentId, id"),
+        @Index(name = "delivery_log_logged_at_idx", columnList = "loggedAt")
+})
+public class DeliveryLogEntry {
+
+    static final int MAX_ERROR_LENGTH = 500;
+
+    public enum Outcome {
+        DELIVERED,
+        /**
+         * Attempt failed, event stays in the outbox and will be retried.
+         */
+        FAILED,
+        /**
+         * Event was moved to dead letter table.
+         */
+        QUARANTINED,
+        /**
+         * Event was removed by coalescing without being delivered.
+         */
+        DISCARDED
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    Long id;
+
+    @Column(nullable = false)
+    Long outboxId;
+
+    /**
+     * Id of delivered event, empty when event could not be read.
+     */
+    @Column
+    String eventId;
+
+    @Column
+    String paymentId;
+
+    @Column(nullable = false)
+    int attempt;
+
+    @Column(nullable = false, length = 16)
+    @Enumerated(EnumType.STRING)
+    Outcome outcome;
+
+    /**
+     * Round trip to destination, empty when destination was not called.
+     */
+    @Column
+    Long latencyMillis;
+
+    @Column(length = MAX_ERROR_LENGTH)
+    String error;
+
+    @Column(nullable = false)
+    Instant loggedAt;
+
+    public DeliveryLogEntry(DbEvent dbEvent, String eventId, Outcome outcome, Duration latency, Throwable error, Instant loggedAt) {
+        this.outboxId = dbEvent.getId();
+        this.eventId = eventId;
+        this.paymentId = dbEvent.getPaymentId();
+        this.attempt = dbEvent.getAttempts() + 1;
+        this.outcome = outcome;
+        this.latencyMillis = latency == null ? null : latency.toMillis();
+        this.error = error == null ? null : truncate(String.valueOf(error));
+        this.loggedAt = loggedAt;
+    }
+
+    private static String truncate(String error) {
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+}
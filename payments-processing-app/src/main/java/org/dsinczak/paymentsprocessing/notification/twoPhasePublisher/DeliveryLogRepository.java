@@ -0,0 +1,26 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import io.vavr.collection.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+@Repository
+@Transactional(readOnly = true)
+public interface DeliveryLogRepository extends JpaRepository<DeliveryLogEntry, Long> {
+
+    List<DeliveryLogEntry> findByPaymentIdOrderByIdAsc(String paymentId);
+
+    /**
+     * Bulk delete, entries are not loaded.
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DeliveryLogEntry e WHERE e.loggedAt < :cutoff")
+    int deleteLoggedBefore(@Param("cutoff") Instant cutoff);
+}
@@ -0,0 +1,161 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes {@link DeliveryLogEntry delivery log} without holding up delivery. Sender only puts entries into bounded
+ * buffer, single writer thread drains it and inserts entries with JDBC batches, so cost of the log is a few
+ * round trips per thousand deliveries instead of one per delivery. When buffer is full entries are dropped
+ * and counted, losing part of the log is better than stopping the outbox.
+ * Same thread periodically purges entries older than retention with single bulk delete.
+ */
+@Slf4j
+@Component
+public class DeliveryLogWriter {
+
+    private static final String INSERT = "INSERT INTO delivery_log " +
+            "(outbox_id, event_id, payment_id, attempt, outcome, latency_millis, error, logged_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DeliveryLogRepository repository;
+    private final DbEventSenderProperties.DeliveryLog config;
+    private final Clock clock;
+    private final BlockingQueue<DeliveryLogEntry> buffer;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private volatile boolean started;
+    private final Counter writtenEntries;
+    private final Counter droppedEntries;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "delivery-log-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public DeliveryLogWriter(JdbcTemplate jdbcTemplate, DeliveryLogRepository repository, DbEventSenderProperties properties, Clock clock, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.repository = repository;
+        this.config = properties.getDeliveryLog();
+        this.clock = clock;
+        this.buffer = new ArrayBlockingQueue<>(config.getBufferSize());
+        this.writtenEntries = Counter.builder("payments.notification.delivery.log.written")
+                .description("Delivery log entries written to database")
+                .register(meterRegistry);
+        this.droppedEntries = Counter.builder("payments.notification.delivery.log.dropped")
+                .description("Delivery log entries dropped because writer did not keep up")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!config.isEnabled()) {
+            return;
+        }
+        var flushMillis = config.getFlushInterval().toMillis();
+        writer.scheduleWithFixedDelay(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        var purgeMillis = config.getPurgeInterval().toMillis();
+        writer.scheduleWithFixedDelay(this::purge, purgeMillis, purgeMillis, TimeUnit.MILLISECONDS);
+        started = true;
+    }
+
+    /**
+     * Writes what is left in the buffer, so entries are not lost on regular shutdown.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        writer.shutdown();
+        writer.awaitTermination(5, TimeUnit.SECONDS);
+        flush();
+    }
+
+    /**
+     * Never blocks. Once writer is started full batch is written right away, smaller ones on next flush tick.
+     */
+    public void record(DeliveryLogEntry entry) {
+        if (!config.isEnabled()) {
+            return;
+        }
+        if (!buffer.offer(entry)) {
+            droppedEntries.increment();
+            return;
+        }
+        if (started && buffer.size() >= config.getBatchSize() && flushRequested.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::flush);
+            } catch (Exception e) {
+                // Writer is shutting down, it flushes the buffer on its own
+                flushRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Writes all buffered entries, runs on writer thread only.
+     *
+     * @return number of written entries
+     */
+    int flush() {
+        flushRequested.set(false);
+        var written = 0;
+        var batch = new ArrayList<DeliveryLogEntry>(config.getBatchSize());
+        while (buffer.drainTo(batch, config.getBatchSize()) > 0) {
+            try {
+                jdbcTemplate.batchUpdate(INSERT, batch, batch.size(), (statement, entry) -> {
+                    statement.setLong(1, entry.getOutboxId());
+                    statement.setString(2, entry.getEventId());
+                    statement.setString(3, entry.getPaymentId());
+                    statement.setInt(4, entry.getAttempt());
+                    statement.setString(5, entry.getOutcome().name());
+                    if (entry.getLatencyMillis() == null) {
+                        statement.setNull(6, Types.BIGINT);
+                    } else {
+                        statement.setLong(6, entry.getLatencyMillis());
+                    }
+                    statement.setString(7, entry.getError());
+                    statement.setTimestamp(8, Timestamp.from(entry.getLoggedAt()));
+                });
+                written += batch.size();
+                writtenEntries.increment(batch.size());
+            } catch (Exception e) {
+                droppedEntries.increment(batch.size());
+                log.error("Unable to write " + batch.size() + " delivery log entries.", e);
+            }
+            batch.clear();
+        }
+        return written;
+    }
+
+    /**
+     * @return number of purged entries
+     */
+    int purge() {
+        try {
+            var purged = repository.deleteLoggedBefore(Instant.now(clock).minus(config.getRetention()));
+            log.debug("Purged {} delivery log entries.", purged);
+            return purged;
+        } catch (Exception e) {
+            log.error("Unable to purge delivery log.", e);
+            return 0;
+        }
+    }
+}
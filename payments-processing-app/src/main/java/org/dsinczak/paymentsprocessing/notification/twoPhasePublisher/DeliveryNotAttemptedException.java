@@ -0,0 +1,12 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+/**
+ * Event did not reach destination because sender decided not to try. Such event is given back
+ * to the outbox without counting failed attempt.
+ */
+public class DeliveryNotAttemptedException extends RuntimeException {
+
+    public DeliveryNotAttemptedException(String message) {
+        super(message);
+    }
+}
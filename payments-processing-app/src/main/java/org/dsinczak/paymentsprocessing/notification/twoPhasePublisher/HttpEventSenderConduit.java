@@ -0,0 +1,54 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Delivers events to destination service as JSON POST requests. Requests are sent with
+ * non blocking {@link HttpClient#sendAsync}, so many deliveries can be in flight at once.
+ * Any 2xx response means destination accepted the event.
+ */
+@Slf4j
+public class HttpEventSenderConduit implements DbEventSenderConduit {
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final URI destination;
+    private final Duration requestTimeout;
+
+    public HttpEventSenderConduit(HttpClient httpClient, ObjectMapper objectMapper, URI destination, Duration requestTimeout) {
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.destination = destination;
+        this.requestTimeout = requestTimeout;
+    }
+
+    @Override
+    public CompletionStage<Void> send(PaymentEvent event) {
+        try {
+            var request = HttpRequest.newBuilder(destination)
+                    .timeout(requestTimeout)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(event)))
+                    .build();
+            log.debug("Sending event {} to {}", event.getEventId(), destination);
+            return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenAccept(response -> {
+                        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                            throw new IllegalStateException("Destination " + destination + " rejected event " + event.getEventId() + " with status " + response.statusCode());
+                        }
+                    });
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+}
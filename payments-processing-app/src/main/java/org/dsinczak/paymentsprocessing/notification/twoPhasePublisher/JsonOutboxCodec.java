@@ -0,0 +1,48 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Jackson JSON behind version byte. Larger and slower than {@link BinaryOutboxCodec} but human readable.
+ */
+public class JsonOutboxCodec implements OutboxCodec {
+
+    public static final byte VERSION = 0;
+
+    private final ObjectMapper objectMapper;
+
+    public JsonOutboxCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public byte version() {
+        return VERSION;
+    }
+
+    @Override
+    public byte[] encode(PaymentEvent event) {
+        try {
+            var json = objectMapper.writeValueAsBytes(event);
+            var payload = new byte[json.length + 1];
+            payload[0] = VERSION;
+            System.arraycopy(json, 0, payload, 1, json.length);
+            return payload;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to encode event " + event, e);
+        }
+    }
+
+    @Override
+    public PaymentEvent decode(byte[] payload) {
+        try {
+            return objectMapper.readValue(payload, 1, payload.length - 1, PaymentEvent.class);
+        } catch (IOException e) {
+            throw new UnreadableEventException("Malformed JSON payload " + Arrays.toString(payload), e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Runs asynchronous tasks in fixed number of lanes. Key is hashed to a lane and every lane is
+ * FIFO: task starts only after previous task of the lane completed (successfully or not). Tasks
+ * of the same key are therefore executed in submission order, while tasks of different keys
+ * proceed in parallel, up to one task per lane.
+ */
+public class KeyOrderedDispatcher {
+
+    private final CompletableFuture<?>[] laneTails;
+
+    public KeyOrderedDispatcher(int lanes) {
+        if (lanes < 1) {
+            throw new IllegalArgumentException("At least one lane is required, got " + lanes);
+        }
+        this.laneTails = new CompletableFuture<?>[lanes];
+        for (int i = 0; i < lanes; i++) {
+            laneTails[i] = CompletableFuture.completedFuture(null);
+        }
+    }
+
+    public int lanes() {
+        return laneTails.length;
+    }
+
+    /**
+     * @param task started when the lane is free, on the thread completing previous task of the lane
+     */
+    public <T> CompletableFuture<T> dispatch(String key, Supplier<CompletableFuture<T>> task) {
+        var lane = laneOf(key);
+        var laneFree = new CompletableFuture<Void>();
+        CompletableFuture<T> next = laneFree.thenCompose(ignored -> task.get());
+        CompletableFuture<?> previous;
+        synchronized (laneTails) {
+            previous = laneTails[lane];
+            laneTails[lane] = next;
+        }
+        // Task is started outside of the lock, possibly right here when lane is idle
+        previous.whenComplete((result, error) -> laneFree.complete(null));
+        return next;
+    }
+
+    int laneOf(String key) {
+        // Spread hash bits, String hash codes of similar keys differ mostly in lowest bits
+        var hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), laneTails.length);
+    }
+}
@@ -0,0 +1,118 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import io.vavr.Tuple;
+import io.vavr.Tuple2;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedAndCancelledEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+
+import java.util.HashSet;
+
+import static org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderProperties.Coalescing.MERGE;
+import static org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderProperties.Coalescing.NONE;
+
+/**
+ * Optional stage of outbox drain collapsing events of one payment claimed in the same batch. Payment cancelled
+ * shortly after creation often has both events waiting in the outbox, with coalescing they cost destination single
+ * call ({@link DbEventSenderProperties.Coalescing#MERGE}) or none ({@link DbEventSenderProperties.Coalescing#DISCARD}).
+ * Only events following each other in the payment's own order are collapsed, so ordering guarantees still hold.
+ * Rows that cannot be read are left alone, sender deals with them as usual.
+ */
+@Slf4j
+public class OutboxCoalescer {
+
+    /**
+     * Rows delivered with single destination call. Outcome of the call applies to all of them.
+     */
+    @Value
+    public static class Delivery {
+        List<DbEvent> rows;
+        /**
+         * Event replacing the rows, empty when single row is delivered as it was stored.
+         */
+        Option<PaymentEvent> event;
+
+        static Delivery of(DbEvent dbEvent) {
+            return new Delivery(List.of(dbEvent), Option.none());
+        }
+
+        public DbEvent getFirstRow() {
+            return rows.head();
+        }
+    }
+
+    private final DbEventSenderProperties.Coalescing coalescing;
+    private final DbEventCodec eventCodec;
+
+    public OutboxCoalescer(DbEventSenderProperties.Coalescing coalescing, DbEventCodec eventCodec) {
+        this.coalescing = coalescing;
+        this.eventCodec = eventCodec;
+    }
+
+    /**
+     * @param batch claimed rows in outbox order
+     * @return deliveries in outbox order and rows that do not need to be delivered at all
+     */
+    public Tuple2<List<Delivery>, List<DbEvent>> coalesce(List<DbEvent> batch) {
+        if (coalescing == NONE) {
+            return Tuple.of(batch.map(Delivery::of), List.empty());
+        }
+        var nextOfPayment = nextRowsOfPayments(batch);
+        if (nextOfPayment.isEmpty()) {
+            return Tuple.of(batch.map(Delivery::of), List.empty());
+        }
+        var deliveries = List.<Delivery>empty();
+        var discarded = List.<DbEvent>empty();
+        var collapsedIds = new HashSet<Long>();
+        for (var dbEvent : batch) {
+            if (collapsedIds.contains(dbEvent.getId())) {
+                continue;
+            }
+            var next = nextOfPayment.get(dbEvent.getId());
+            var pair = next.flatMap(n -> createdAndCancelled(dbEvent, n));
+            if (pair.isEmpty()) {
+                deliveries = deliveries.prepend(Delivery.of(dbEvent));
+                continue;
+            }
+            collapsedIds.add(next.get().getId());
+            log.debug("Coalescing events {} and {} of payment {}.", dbEvent.getId(), next.get().getId(), dbEvent.getPaymentId());
+            if (coalescing == MERGE) {
+                deliveries = deliveries.prepend(new Delivery(List.of(dbEvent, next.get()), pair.map(p -> new PaymentCreatedAndCancelledEvent(p._1, p._2))));
+            } else {
+                discarded = discarded.prepend(dbEvent).prepend(next.get());
+            }
+        }
+        return Tuple.of(deliveries.reverse(), discarded.reverse());
+    }
+
+    /**
+     * @return row id mapped to the following row of the same payment, only for payments with several rows in batch
+     */
+    private static Map<Long, DbEvent> nextRowsOfPayments(List<DbEvent> batch) {
+        return batch.filter(dbEvent -> dbEvent.getPaymentId() != null)
+                .groupBy(DbEvent::getPaymentId)
+                .values()
+                .filter(rows -> rows.size() > 1)
+                .flatMap(rows -> rows.sortBy(DbEvent::getId).sliding(2).filter(window -> window.size() == 2))
+                .toMap(window -> window.head().getId(), window -> window.last());
+    }
+
+    private Option<Tuple2<PaymentCreatedEvent, PaymentCancelledEvent>> createdAndCancelled(DbEvent first, DbEvent second) {
+        return read(first)
+                .filter(PaymentCreatedEvent.class::isInstance)
+                .flatMap(created -> read(second)
+                        .filter(PaymentCancelledEvent.class::isInstance)
+                        .map(cancelled -> Tuple.of((PaymentCreatedEvent) created, (PaymentCancelledEvent) cancelled)));
+    }
+
+    private Option<PaymentEvent> read(DbEvent dbEvent) {
+        return Try.of(() -> eventCodec.fromDbEvent(dbEvent)).toOption();
+    }
+}
@@ -0,0 +1,20 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+
+/**
+ * Encoding of events stored in the outbox. Every payload starts with {@link #version()} byte, so rows
+ * written by older codec versions can still be read after format changes.
+ */
+public interface OutboxCodec {
+
+    byte version();
+
+    byte[] encode(PaymentEvent event);
+
+    /**
+     * @param payload whole payload including version byte
+     * @throws UnreadableEventException when payload is malformed
+     */
+    PaymentEvent decode(byte[] payload);
+}
@@ -0,0 +1,11 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+/**
+ * Delivery was not attempted because earlier event of the same payment was not delivered.
+ */
+public class PrecedingEventNotDeliveredException extends DeliveryNotAttemptedException {
+
+    public PrecedingEventNotDeliveredException(Long outboxId, String paymentId) {
+        super("Earlier event of payment " + paymentId + " was not delivered, event " + outboxId + " has to wait");
+    }
+}
@@ -0,0 +1,15 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher;
+
+/**
+ * Stored event cannot be decoded. It will not become readable later, so it is not worth retrying.
+ */
+public class UnreadableEventException extends RuntimeException {
+
+    public UnreadableEventException(String message) {
+        super(message);
+    }
+
+    public UnreadableEventException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,26 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Layout of {@code payment_id} column for readers going around Hibernate with plain JDBC. Hibernate stores UUID
+ * as 16 bytes, most significant first.
+ */
+final class BinaryUuids {
+
+    private BinaryUuids() {
+    }
+
+    static UUID toUuid(byte[] bytes) {
+        var buffer = ByteBuffer.wrap(bytes);
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    static byte[] toBytes(UUID uuid) {
+        return ByteBuffer.allocate(16)
+                .putLong(uuid.getMostSignificantBits())
+                .putLong(uuid.getLeastSignificantBits())
+                .array();
+    }
+}
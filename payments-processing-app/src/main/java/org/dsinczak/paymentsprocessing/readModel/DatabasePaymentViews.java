@@ -0,0 +1,37 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import io.vavr.control.Option;
+import org.dsinczak.paymentsprocessing.domain.Payment;
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Every read is a query of {@code payment} table. Replaced by {@link PaymentProjection} when projection is enabled.
+ */
+@Component
+@ConditionalOnProperty(prefix = "payments.projection", name = "enabled", havingValue = "false", matchIfMissing = true)
+public class DatabasePaymentViews implements PaymentViews {
+
+    private final PaymentViewRepository paymentViewRepository;
+
+    @Autowired
+    public DatabasePaymentViews(PaymentViewRepository paymentViewRepository) {
+        this.paymentViewRepository = paymentViewRepository;
+    }
+
+    @Override
+    public Option<PaymentView> findByPaymentId(UUID paymentId) {
+        return paymentViewRepository.findByPaymentId(paymentId);
+    }
+
+    @Override
+    public List<PaymentView> findNotCancelledAfter(CurrencyCode currency, long afterMinorUnits, long afterId, long maxMinorUnits, int limit) {
+        return paymentViewRepository.findPageAfter(Payment.State.CREATED, currency, afterMinorUnits, afterId, maxMinorUnits, PageRequest.of(0, limit));
+    }
+}
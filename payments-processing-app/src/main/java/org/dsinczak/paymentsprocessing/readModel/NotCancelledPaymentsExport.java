@@ -0,0 +1,147 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.extern.slf4j.Slf4j;
+import org.dsinczak.paymentsprocessing.domain.Payment;
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+
+/**
+ * All payments that are not cancelled, filtered like {@link NotCancelledPaymentsQuery}, written as one stream.
+ * Rows are read with forward only JDBC result set, {@link PaymentExportProperties#getFetchSize()} at a time, and every
+ * row is written to the output as soon as it is read, no entity or list of rows is created, so memory use does not
+ * depend on size of the export. Ids and amounts never need escaping, so rows are written as plain bytes.
+ * Export runs in read only transaction, some drivers (PostgreSQL) honor fetch size only outside of auto commit.
+ * Part of the export may reach the client before reading fails, status of the response cannot tell that anymore,
+ * so failed export ends with an error line instead of the rest of the rows.
+ */
+@Slf4j
+@Component
+public class NotCancelledPaymentsExport {
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "", "{\"error\":\"Export failed, payments are missing.\"}\n"),
+        CSV("text/csv", "payment_id,amount,currency\n", "# Export failed, payments are missing.\n");
+
+        private final String contentType;
+        private final String header;
+        private final String errorLine;
+
+        Format(String contentType, String header, String errorLine) {
+            this.contentType = contentType;
+            this.header = header;
+            this.errorLine = errorLine;
+        }
+
+        /**
+         * @return format of given name, case insensitive
+         */
+        public static Option<Format> of(String name) {
+            return List.of(values()).find(format -> format.name().equalsIgnoreCase(name));
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    private static final String QUERY = "SELECT payment_id, amount_minor FROM payment " +
+            "WHERE state = ? AND amount_currency = ? AND amount_minor >= ? AND amount_minor <= ? " +
+            "ORDER BY state, amount_currency, amount_minor, id";
+
+    private static final byte[] NDJSON_PAYMENT_ID = "{\"paymentId\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NDJSON_AMOUNT = "\",\"amount\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NDJSON_CURRENCY = "\",\"currency\":\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NDJSON_END = "\"}\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PaymentExportProperties properties;
+
+    @Autowired
+    public NotCancelledPaymentsExport(JdbcTemplate jdbcTemplate, PaymentExportProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    /**
+     * @return number of payments written, when export fails the rows written before the error line
+     */
+    @Transactional(readOnly = true)
+    public long write(PaymentAmountFilter filter, Format format, OutputStream output) throws IOException {
+        var out = new BufferedOutputStream(output, properties.getBufferSize());
+        out.write(format.header.getBytes(StandardCharsets.US_ASCII));
+        var written = new long[1];
+        try {
+            for (var currency : filter.getCurrencies()) {
+                write(filter, currency, format, out, written);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (RuntimeException e) {
+            log.error("Export of payments as " + format + " failed after " + written[0] + " payments.", e);
+            out.write(format.errorLine.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            return written[0];
+        }
+        out.flush();
+        log.info("Exported {} payments as {}", written[0], format);
+        return written[0];
+    }
+
+    /**
+     * @param rows incremented by every row written
+     */
+    private void write(PaymentAmountFilter filter, CurrencyCode currency, Format format, OutputStream out, long[] rows) {
+        var code = currency.name().getBytes(StandardCharsets.US_ASCII);
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(QUERY, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(properties.getFetchSize());
+            statement.setInt(1, Payment.State.CREATED.ordinal());
+            statement.setString(2, currency.name());
+            statement.setLong(3, filter.minMinorUnits(currency));
+            statement.setLong(4, filter.maxMinorUnits(currency));
+            return statement;
+        }, resultSet -> {
+            var paymentId = BinaryUuids.toUuid(resultSet.getBytes(1)).toString().getBytes(StandardCharsets.US_ASCII);
+            var amount = BigDecimal.valueOf(resultSet.getLong(2), currency.getFractionDigits()).toPlainString().getBytes(StandardCharsets.US_ASCII);
+            try {
+                writeRow(format, paymentId, amount, code, out);
+            } catch (IOException e) {
+                // Client went away, stops reading the result set
+                throw new UncheckedIOException(e);
+            }
+            rows[0]++;
+        });
+    }
+
+    private static void writeRow(Format format, byte[] paymentId, byte[] amount, byte[] currency, OutputStream out) throws IOException {
+        if (format == Format.NDJSON) {
+            out.write(NDJSON_PAYMENT_ID);
+            out.write(paymentId);
+            out.write(NDJSON_AMOUNT);
+            out.write(amount);
+            out.write(NDJSON_CURRENCY);
+            out.write(currency);
+            out.write(NDJSON_END);
+        } else {
+            out.write(paymentId);
+            out.write(',');
+            out.write(amount);
+            out.write(',');
+            out.write(currency);
+            out.write('\n');
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import io.vavr.collection.List;
+import io.vavr.control.Either;
+import io.vavr.control.Option;
+import org.dsinczak.paymentsprocessing.shared.ErrorMessage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import static org.dsinczak.paymentsprocessing.shared.ErrorMessage.error;
+
+/**
+ * Ids of payments that are not cancelled, optionally filtered by amount range and currency, in pages ordered by
+ * currency, amount and id. Pages are read with keyset pagination: cursor holds key of the last payment returned and
+ * next page is a seek in the index right after it, so the last page of millions costs the same as the first one.
+ * Without currency, currencies are read one after another, every query stays a range of the index.
+ * Index is the one of database or sorted set of {@link PaymentProjection} when projection is enabled.
+ */
+@Component
+public class NotCancelledPaymentsQuery {
+
+    public static final int DEFAULT_LIMIT = 100;
+    public static final int MAX_LIMIT = 1_000;
+
+    private final PaymentViews paymentViews;
+
+    @Autowired
+    public NotCancelledPaymentsQuery(PaymentViews paymentViews) {
+        this.paymentViews = paymentViews;
+    }
+
+    /**
+     * @param minAmount lowest amount, inclusive, in major units of currency (e.g. {@code 10.50}), null for no limit
+     * @param maxAmount highest amount, inclusive, null for no limit
+     * @param currency  currency of payments, null for all currencies
+     * @param cursor    cursor returned with previous page, null for the first page
+     * @param limit     maximum number of ids in page, null for {@value #DEFAULT_LIMIT}
+     */
+    public Either<ErrorMessage, PaymentIdsPage> find(String minAmount, String maxAmount, String currency, String cursor, Integer limit) {
+        if (limit != null && (limit < 1 || limit > MAX_LIMIT)) {
+            return Either.left(error("Limit has to be from 1 to {0}.", MAX_LIMIT));
+        }
+        if (cursor != null && PageCursor.decode(cursor).isEmpty()) {
+            return Either.left(error("Cursor {0} is not valid.", cursor));
+        }
+        return PaymentAmountFilter.of(minAmount, maxAmount, currency)
+                .map(filter -> findPage(filter, Option.of(cursor).flatMap(PageCursor::decode), limit != null ? limit : DEFAULT_LIMIT));
+    }
+
+    private PaymentIdsPage findPage(PaymentAmountFilter filter, Option<PageCursor> after, int limit) {
+        var currencies = filter.getCurrencies();
+        var page = List.<PaymentView>empty();
+        for (var currency : after.map(c -> currencies.dropUntil(c.getCurrency()::equals)).getOrElse(currencies)) {
+            if (page.size() == limit) {
+                break;
+            }
+            var minMinorUnits = filter.minMinorUnits(currency);
+            // Cursor of other currency is already passed, ids are positive, so 0 starts before the first one
+            var start = after.filter(c -> c.getCurrency() == currency && c.getMinorUnits() >= minMinorUnits)
+                    .getOrElse(new PageCursor(currency, minMinorUnits, 0));
+            page = page.appendAll(paymentViews.findNotCancelledAfter(currency, start.getMinorUnits(), start.getId(),
+                    filter.maxMinorUnits(currency), limit - page.size()));
+        }
+        var nextCursor = page.size() < limit ? null : cursorOf(page.last()).encode();
+        return new PaymentIdsPage(page.map(PaymentView::getPaymentId), nextCursor);
+    }
+
+    private static PageCursor cursorOf(PaymentView payment) {
+        return new PageCursor(payment.getAmount().getCurrency(), payment.getAmount().getMinorUnits(), payment.getId());
+    }
+}
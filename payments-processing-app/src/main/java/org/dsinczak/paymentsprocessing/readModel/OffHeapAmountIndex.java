@@ -0,0 +1,257 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Sorted index of payments of one currency by amount and id, the order of {@code payment_state_amount_idx}, held
+ * outside of the Java heap. Entry is 20 bytes (amount in minor units, id, slot of payment in {@link ProjectedPayments})
+ * in a direct buffer, no object is created per entry. Range scan is a binary search followed by sequential read.
+ * Entries are kept in two sorted runs:
+ * <ul>
+ * <li>main run, off-heap, appended to when entries arrive in order (rebuild streams payments sorted by amount),
+ * removed entries are only marked with slot -1 and skipped by scans,</li>
+ * <li>small delta of entries added out of order, in primitive arrays, inserted with array copy.</li>
+ * </ul>
+ * When delta fills up, or a quarter of main run is removed, both runs are merged into new main run, so cost of
+ * random insert stays a copy of at most {@code deltaCapacity} entries plus amortized merge.
+ * Merge runs on the writer, at ten million entries it copies 200 MB. One buffer holds up to {@link #MAX_ENTRIES}
+ * (about 107 million) entries, growth beyond fails with {@link IllegalStateException}.
+ * Not thread safe, single writer has to exclude readers.
+ */
+public class OffHeapAmountIndex {
+
+    public static final int DEFAULT_DELTA_CAPACITY = 64 * 1024;
+
+    private static final int ENTRY_BYTES = 20;
+    /**
+     * Entries fitting into direct buffer addressed by int.
+     */
+    public static final int MAX_ENTRIES = Integer.MAX_VALUE / ENTRY_BYTES;
+    private static final int ID_OFFSET = 8;
+    private static final int SLOT_OFFSET = 16;
+    private static final int REMOVED = -1;
+
+    private final int deltaCapacity;
+    private final int maxEntries;
+    private ByteBuffer main;
+    /**
+     * Entries of main run including removed ones.
+     */
+    private int mainSize;
+    private int mainRemoved;
+    private final long[] deltaAmounts;
+    private final long[] deltaIds;
+    private final int[] deltaSlots;
+    private int deltaSize;
+
+    public OffHeapAmountIndex(int initialCapacity, int deltaCapacity) {
+        this(initialCapacity, deltaCapacity, MAX_ENTRIES);
+    }
+
+    OffHeapAmountIndex(int initialCapacity, int deltaCapacity, int maxEntries) {
+        this.deltaCapacity = deltaCapacity;
+        this.maxEntries = maxEntries;
+        this.main = allocate(capacityFor(0, initialCapacity));
+        this.deltaAmounts = new long[deltaCapacity];
+        this.deltaIds = new long[deltaCapacity];
+        this.deltaSlots = new int[deltaCapacity];
+    }
+
+    /**
+     * @return number of entries
+     */
+    public int size() {
+        return mainSize - mainRemoved + deltaSize;
+    }
+
+    /**
+     * @return bytes held outside of the heap
+     */
+    public long offHeapBytes() {
+        return main.capacity();
+    }
+
+    /**
+     * @param id has to be unique, together with amount it identifies the entry
+     */
+    public void add(long minorUnits, long id, int slot) {
+        if (deltaSize == 0 && (mainSize == 0 || compare(minorUnits, id, amountAt(mainSize - 1), idAt(mainSize - 1)) > 0)) {
+            append(minorUnits, id, slot);
+            return;
+        }
+        if (deltaSize == deltaCapacity) {
+            merge();
+            add(minorUnits, id, slot);
+            return;
+        }
+        var at = deltaLowerBound(minorUnits, id);
+        System.arraycopy(deltaAmounts, at, deltaAmounts, at + 1, deltaSize - at);
+        System.arraycopy(deltaIds, at, deltaIds, at + 1, deltaSize - at);
+        System.arraycopy(deltaSlots, at, deltaSlots, at + 1, deltaSize - at);
+        deltaAmounts[at] = minorUnits;
+        deltaIds[at] = id;
+        deltaSlots[at] = slot;
+        deltaSize++;
+    }
+
+    /**
+     * @return false when there was no such entry
+     */
+    public boolean remove(long minorUnits, long id) {
+        var at = deltaLowerBound(minorUnits, id);
+        if (at < deltaSize && deltaAmounts[at] == minorUnits && deltaIds[at] == id) {
+            System.arraycopy(deltaAmounts, at + 1, deltaAmounts, at, deltaSize - at - 1);
+            System.arraycopy(deltaIds, at + 1, deltaIds, at, deltaSize - at - 1);
+            System.arraycopy(deltaSlots, at + 1, deltaSlots, at, deltaSize - at - 1);
+            deltaSize--;
+            return true;
+        }
+        at = mainLowerBound(minorUnits, id);
+        if (at == mainSize || amountAt(at) != minorUnits || idAt(at) != id || slotAt(at) == REMOVED) {
+            return false;
+        }
+        main.putInt(at * ENTRY_BYTES + SLOT_OFFSET, REMOVED);
+        if (++mainRemoved > mainSize / 4) {
+            merge();
+        }
+        return true;
+    }
+
+    /**
+     * Slots of entries right after given key, up to given amount, in order.
+     *
+     * @param slots filled from the start, at most its length entries are read
+     * @return number of slots filled
+     */
+    public int scan(long afterMinorUnits, long afterId, long maxMinorUnits, int[] slots) {
+        var inMain = mainLowerBound(afterMinorUnits, afterId);
+        if (inMain < mainSize && amountAt(inMain) == afterMinorUnits && idAt(inMain) == afterId) {
+            inMain++;
+        }
+        var inDelta = deltaLowerBound(afterMinorUnits, afterId);
+        if (inDelta < deltaSize && deltaAmounts[inDelta] == afterMinorUnits && deltaIds[inDelta] == afterId) {
+            inDelta++;
+        }
+        var found = 0;
+        while (found < slots.length) {
+            while (inMain < mainSize && slotAt(inMain) == REMOVED) {
+                inMain++;
+            }
+            var mainLeft = inMain < mainSize;
+            var deltaLeft = inDelta < deltaSize;
+            if (!mainLeft && !deltaLeft) {
+                break;
+            }
+            var fromMain = !deltaLeft || (mainLeft && compare(amountAt(inMain), idAt(inMain), deltaAmounts[inDelta], deltaIds[inDelta]) < 0);
+            var minorUnits = fromMain ? amountAt(inMain) : deltaAmounts[inDelta];
+            if (minorUnits > maxMinorUnits) {
+                break;
+            }
+            slots[found++] = fromMain ? slotAt(inMain++) : deltaSlots[inDelta++];
+        }
+        return found;
+    }
+
+    /**
+     * Writes both runs into new main run, dropping removed entries. Old buffer is freed by garbage collector.
+     */
+    private void merge() {
+        var merged = allocate(capacityFor(size(), size() + size() / 2L));
+        var size = 0;
+        var inDelta = 0;
+        for (var inMain = 0; inMain <= mainSize; inMain++) {
+            var mainLeft = inMain < mainSize;
+            while (inDelta < deltaSize && (!mainLeft || compare(deltaAmounts[inDelta], deltaIds[inDelta], amountAt(inMain), idAt(inMain)) < 0)) {
+                put(merged, size++, deltaAmounts[inDelta], deltaIds[inDelta], deltaSlots[inDelta]);
+                inDelta++;
+            }
+            if (mainLeft && slotAt(inMain) != REMOVED) {
+                put(merged, size++, amountAt(inMain), idAt(inMain), slotAt(inMain));
+            }
+        }
+        main = merged;
+        mainSize = size;
+        mainRemoved = 0;
+        deltaSize = 0;
+    }
+
+    private void append(long minorUnits, long id, int slot) {
+        if (mainSize == main.capacity() / ENTRY_BYTES) {
+            var grown = allocate(capacityFor(mainSize + 1, mainSize * 2L));
+            grown.put(main.duplicate().position(0).limit(mainSize * ENTRY_BYTES));
+            main = grown;
+        }
+        put(main, mainSize++, minorUnits, id, slot);
+    }
+
+    /**
+     * @return position of the first entry of main run not lower than given key, removed entries included
+     */
+    private int mainLowerBound(long minorUnits, long id) {
+        var low = 0;
+        var high = mainSize;
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (compare(amountAt(middle), idAt(middle), minorUnits, id) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int deltaLowerBound(long minorUnits, long id) {
+        var low = 0;
+        var high = deltaSize;
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (compare(deltaAmounts[middle], deltaIds[middle], minorUnits, id) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private long amountAt(int position) {
+        return main.getLong(position * ENTRY_BYTES);
+    }
+
+    private long idAt(int position) {
+        return main.getLong(position * ENTRY_BYTES + ID_OFFSET);
+    }
+
+    private int slotAt(int position) {
+        return main.getInt(position * ENTRY_BYTES + SLOT_OFFSET);
+    }
+
+    private static void put(ByteBuffer buffer, int position, long minorUnits, long id, int slot) {
+        var offset = position * ENTRY_BYTES;
+        buffer.putLong(offset, minorUnits);
+        buffer.putLong(offset + ID_OFFSET, id);
+        buffer.putInt(offset + SLOT_OFFSET, slot);
+    }
+
+    private static int compare(long minorUnits, long id, long otherMinorUnits, long otherId) {
+        var byAmount = Long.compare(minorUnits, otherMinorUnits);
+        return byAmount != 0 ? byAmount : Long.compare(id, otherId);
+    }
+
+    /**
+     * @param wanted capacity with room to grow, capped at the limit
+     * @throws IllegalStateException when required entries do not fit into one buffer
+     */
+    private int capacityFor(int required, long wanted) {
+        if (required > maxEntries) {
+            throw new IllegalStateException("Amount index is limited to " + maxEntries + " entries, " + required + " required.");
+        }
+        return (int) Math.min(Math.max(wanted, 16), maxEntries);
+    }
+
+    private static ByteBuffer allocate(int entries) {
+        return ByteBuffer.allocateDirect(Math.multiplyExact(entries, ENTRY_BYTES)).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,38 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.Value;
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Key of the last payment of a page. Client gets it as opaque text, so its content can change without breaking
+ * clients.
+ */
+@Value
+class PageCursor {
+
+    private static final String SEPARATOR = ":";
+
+    CurrencyCode currency;
+    long minorUnits;
+    long id;
+
+    String encode() {
+        var text = currency.name() + SEPARATOR + minorUnits + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return cursor or none when given text is not a cursor
+     */
+    static Option<PageCursor> decode(String cursor) {
+        return Try.of(() -> new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split(SEPARATOR))
+                .filter(parts -> parts.length == 3)
+                .flatMap(parts -> Try.of(() -> new PageCursor(CurrencyCode.valueOf(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2]))))
+                .toOption();
+    }
+}
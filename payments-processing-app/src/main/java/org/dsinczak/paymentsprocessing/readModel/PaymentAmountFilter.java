@@ -0,0 +1,83 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import io.vavr.collection.List;
+import io.vavr.control.Either;
+import io.vavr.control.Try;
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
+import org.dsinczak.paymentsprocessing.shared.ErrorMessage;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static org.dsinczak.paymentsprocessing.shared.ErrorMessage.error;
+
+/**
+ * Amount range and currency of payments queried from read model. Amounts are given in major units of currency
+ * (e.g. {@code 10.50}) and turned into minor units of every queried currency.
+ */
+public class PaymentAmountFilter {
+
+    private static final int MAX_DIGITS = 19;
+
+    private final String minAmount;
+    private final String maxAmount;
+    private final List<CurrencyCode> currencies;
+
+    private PaymentAmountFilter(String minAmount, String maxAmount, List<CurrencyCode> currencies) {
+        this.minAmount = minAmount;
+        this.maxAmount = maxAmount;
+        this.currencies = currencies;
+    }
+
+    /**
+     * @param minAmount lowest amount, inclusive, null for no limit
+     * @param maxAmount highest amount, inclusive, null for no limit
+     * @param currency  currency of payments, null for all currencies
+     */
+    public static Either<ErrorMessage, PaymentAmountFilter> of(String minAmount, String maxAmount, String currency) {
+        if (currency != null && CurrencyCode.of(currency) == null) {
+            return Either.left(error("Currency {0} is not supported.", currency));
+        }
+        var invalidAmount = List.of(minAmount, maxAmount).find(amount -> !isAmount(amount));
+        if (invalidAmount.isDefined()) {
+            return Either.left(error("Amount {0} is not valid non negative decimal.", invalidAmount.get()));
+        }
+        var currencies = currency != null ? List.of(CurrencyCode.of(currency)) : List.of(CurrencyCode.values());
+        return Either.right(new PaymentAmountFilter(minAmount, maxAmount, currencies));
+    }
+
+    /**
+     * @return queried currencies, in the order of {@link CurrencyCode}
+     */
+    List<CurrencyCode> getCurrencies() {
+        return currencies;
+    }
+
+    long minMinorUnits(CurrencyCode currency) {
+        return toMinorUnits(minAmount, currency, RoundingMode.CEILING, 0);
+    }
+
+    long maxMinorUnits(CurrencyCode currency) {
+        return toMinorUnits(maxAmount, currency, RoundingMode.FLOOR, Long.MAX_VALUE);
+    }
+
+    /**
+     * Digits are limited, so amount like {@code 1E999999999} is never expanded when it is rounded.
+     */
+    private static boolean isAmount(String amount) {
+        return amount == null || Try.of(() -> new BigDecimal(amount))
+                .filter(value -> value.signum() >= 0 && value.scale() <= MAX_DIGITS && value.precision() - value.scale() <= MAX_DIGITS)
+                .isSuccess();
+    }
+
+    /**
+     * Amount out of range of minor units is clamped, it filters the same as the limit.
+     */
+    private static long toMinorUnits(String amount, CurrencyCode currency, RoundingMode roundingMode, long orElse) {
+        if (amount == null) {
+            return orElse;
+        }
+        var minorUnits = new BigDecimal(amount).movePointRight(currency.getFractionDigits()).setScale(0, roundingMode);
+        return minorUnits.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0 ? Long.MAX_VALUE : minorUnits.longValueExact();
+    }
+}
@@ -0,0 +1,24 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Streaming export of payments ({@link NotCancelledPaymentsExport}).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "payments.export")
+public class PaymentExportProperties {
+
+    /**
+     * Rows fetched from database in one round trip. Only so many rows are held in memory, whatever the size of export.
+     */
+    private int fetchSize = 1_000;
+
+    /**
+     * Bytes buffered before they are written to the response.
+     */
+    private int bufferSize = 64 * 1024;
+}
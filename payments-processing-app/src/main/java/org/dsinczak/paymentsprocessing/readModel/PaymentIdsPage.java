@@ -0,0 +1,15 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import io.vavr.collection.List;
+import lombok.Value;
+
+import java.util.UUID;
+
+/**
+ * Ids of single page of payments and cursor of the next page, null when there are no more payments.
+ */
+@Value
+public class PaymentIdsPage {
+    List<UUID> paymentIds;
+    String nextCursor;
+}
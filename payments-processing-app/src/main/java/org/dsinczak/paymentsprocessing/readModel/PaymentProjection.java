@@ -0,0 +1,330 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vavr.control.Option;
+import lombok.extern.slf4j.Slf4j;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.domain.Payment;
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Read model of payments held in memory ({@link ProjectedPayments}), reads are served without any query.
+ * Projection is rebuilt from {@code payment} table at startup, until then reads go to database. Afterwards it
+ * follows {@link PaymentCreatedEvent} and {@link PaymentCancelledEvent} published within the application once
+ * their transaction commits. Events carry only payment id, so single projection thread reads changed payments
+ * back from database, a batch of them with one query, and applies their committed state. Changes committed
+ * while projection is rebuilt wait in the queue, applying them again is harmless.
+ * Reads lag behind commits by a few milliseconds, lag of every change is recorded as {@code payments.projection.lag}.
+ * Instances sharing the database do not see events of each other, changes committed elsewhere are polled by
+ * {@code last_modified} every {@link PaymentProjectionProperties#getCatchUpInterval()} instead.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "payments.projection", name = "enabled", havingValue = "true")
+public class PaymentProjection implements PaymentViews {
+
+    private static final String COLUMNS = "SELECT id, payment_id, state, amount_minor, amount_currency, " +
+            "cancellation_fee_minor, cancellation_fee_currency, last_modified FROM payment";
+    /**
+     * Payments in order of amount index, so rebuild only appends to it.
+     */
+    private static final String REBUILD = COLUMNS + " ORDER BY state, amount_currency, amount_minor, id";
+    private static final String CATCH_UP = COLUMNS + " WHERE last_modified >= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PaymentViews database;
+    private final PaymentProjectionProperties properties;
+    private final Clock clock;
+    private final ProjectedPayments payments;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Queue<PendingChange> changes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean applyRequested = new AtomicBoolean();
+    private volatile boolean ready;
+    /**
+     * Start of the last rebuild or catch up, changes from then on are read by the next catch up.
+     */
+    private LocalDateTime caughtUpTo;
+    private final Timer lag;
+    private final ScheduledExecutorService projector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        var thread = new Thread(runnable, "payment-projection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @Autowired
+    public PaymentProjection(JdbcTemplate jdbcTemplate, PaymentViewRepository paymentViewRepository, PaymentProjectionProperties properties, Clock clock, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.database = new DatabasePaymentViews(paymentViewRepository);
+        this.properties = properties;
+        this.clock = clock;
+        this.payments = new ProjectedPayments(properties.getInitialCapacity());
+        Gauge.builder("payments.projection.size", this, PaymentProjection::size)
+                .description("Payments held by in-memory read model")
+                .register(meterRegistry);
+        Gauge.builder("payments.projection.index.bytes", this, PaymentProjection::offHeapBytes)
+                .description("Memory of amount indexes of in-memory read model held outside of the heap")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("payments.projection.pending", changes, Queue::size)
+                .description("Committed payment changes not applied to in-memory read model yet")
+                .register(meterRegistry);
+        this.lag = Timer.builder("payments.projection.lag")
+                .description("Time from commit of payment change to its visibility in in-memory read model")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        projector.execute(this::rebuild);
+        var applyMillis = properties.getApplyInterval().toMillis();
+        projector.scheduleWithFixedDelay(this::apply, applyMillis, applyMillis, TimeUnit.MILLISECONDS);
+        var catchUpMillis = properties.getCatchUpInterval().toMillis();
+        projector.scheduleWithFixedDelay(this::catchUp, catchUpMillis, catchUpMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        projector.shutdownNow();
+        projector.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaymentCreated(PaymentCreatedEvent event) {
+        changed(event.getPaymentId());
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onPaymentCancelled(PaymentCancelledEvent event) {
+        changed(event.getPaymentId());
+    }
+
+    @Override
+    public Option<PaymentView> findByPaymentId(UUID paymentId) {
+        if (!ready) {
+            return database.findByPaymentId(paymentId);
+        }
+        lock.readLock().lock();
+        try {
+            return payments.find(paymentId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<PaymentView> findNotCancelledAfter(CurrencyCode currency, long afterMinorUnits, long afterId, long maxMinorUnits, int limit) {
+        if (!ready) {
+            return database.findNotCancelledAfter(currency, afterMinorUnits, afterId, maxMinorUnits, limit);
+        }
+        lock.readLock().lock();
+        try {
+            return payments.findNotCancelledAfter(currency, afterMinorUnits, afterId, maxMinorUnits, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int size() {
+        lock.readLock().lock();
+        try {
+            return payments.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return payments.offHeapBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Never blocks the committing thread, change is applied by projection thread.
+     */
+    private void changed(String paymentId) {
+        changes.add(new PendingChange(UUID.fromString(paymentId), System.nanoTime()));
+        if (ready && applyRequested.compareAndSet(false, true)) {
+            try {
+                projector.execute(this::apply);
+            } catch (Exception e) {
+                // Projection is shutting down
+                applyRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * Streams whole {@code payment} table, runs on projection thread only.
+     */
+    void rebuild() {
+        try {
+            var started = System.nanoTime();
+            var rebuiltFrom = LocalDateTime.now(clock);
+            jdbcTemplate.query(connection -> {
+                var statement = connection.prepareStatement(REBUILD, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(properties.getFetchSize());
+                return statement;
+            }, (ResultSet resultSet) -> {
+                lock.writeLock().lock();
+                try {
+                    put(resultSet);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            });
+            caughtUpTo = rebuiltFrom;
+            ready = true;
+            log.info("Payment projection of {} payments rebuilt in {} ms", size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            apply();
+        } catch (Exception e) {
+            log.error("Unable to rebuild payment projection, reads stay on database until it is rebuilt.", e);
+        }
+    }
+
+    /**
+     * Applies all queued changes, runs on projection thread only. Rebuild that failed is tried again first.
+     *
+     * @return number of applied changes
+     */
+    int apply() {
+        applyRequested.set(false);
+        if (!ready) {
+            rebuild();
+            return 0;
+        }
+        var applied = 0;
+        var batch = new ArrayList<PendingChange>(properties.getBatchSize());
+        while (drain(batch) > 0) {
+            try {
+                reload(batch);
+                var now = System.nanoTime();
+                batch.forEach(change -> lag.record(now - change.committedAt, TimeUnit.NANOSECONDS));
+                applied += batch.size();
+            } catch (Exception e) {
+                // Changes are put back, so they are not lost when database is unavailable for a while
+                changes.addAll(batch);
+                log.error("Unable to apply " + batch.size() + " payment changes to projection.", e);
+                return applied;
+            }
+            batch.clear();
+        }
+        return applied;
+    }
+
+    /**
+     * Applies payments changed since the previous catch up, runs on projection thread only. Changes of this
+     * instance are applied by events already and are skipped, lag of the others is measured from their
+     * {@code last_modified}.
+     *
+     * @return number of applied changes
+     */
+    int catchUp() {
+        if (!ready) {
+            return 0;
+        }
+        var started = LocalDateTime.now(clock);
+        var applied = new int[1];
+        try {
+            jdbcTemplate.query(CATCH_UP, statement -> statement.setTimestamp(1, Timestamp.valueOf(caughtUpTo.minus(properties.getCatchUpOverlap()))),
+                    (ResultSet resultSet) -> {
+                        // Projection thread is the only writer, it reads without lock
+                        if (payments.holds(BinaryUuids.toUuid(resultSet.getBytes(2)), Payment.State.values()[resultSet.getInt(3)])) {
+                            return;
+                        }
+                        lock.writeLock().lock();
+                        try {
+                            put(resultSet);
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                        var lastModified = resultSet.getTimestamp(8).toLocalDateTime();
+                        lag.record(Duration.between(lastModified, LocalDateTime.now(clock)));
+                        applied[0]++;
+                    });
+            caughtUpTo = started;
+        } catch (Exception e) {
+            // Watermark stays, the same changes are read again next time
+            log.error("Unable to catch up payment projection with changes of other instances.", e);
+        }
+        return applied[0];
+    }
+
+    private int drain(List<PendingChange> batch) {
+        PendingChange change;
+        while (batch.size() < properties.getBatchSize() && (change = changes.poll()) != null) {
+            batch.add(change);
+        }
+        return batch.size();
+    }
+
+    private void reload(List<PendingChange> batch) {
+        var placeholders = String.join(", ", Collections.nCopies(batch.size(), "?"));
+        jdbcTemplate.query(COLUMNS + " WHERE payment_id IN (" + placeholders + ")", statement -> {
+            for (var i = 0; i < batch.size(); i++) {
+                statement.setBytes(i + 1, BinaryUuids.toBytes(batch.get(i).paymentId));
+            }
+        }, (ResultSet resultSet) -> {
+            lock.writeLock().lock();
+            try {
+                put(resultSet);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        });
+    }
+
+    private void put(ResultSet resultSet) throws SQLException {
+        var feeCurrency = resultSet.getString(7);
+        payments.put(BinaryUuids.toUuid(resultSet.getBytes(2)), resultSet.getLong(1), Payment.State.values()[resultSet.getInt(3)],
+                MinorUnitAmount.of(resultSet.getLong(4), CurrencyCode.of(resultSet.getString(5))),
+                feeCurrency == null ? null : MinorUnitAmount.of(resultSet.getLong(6), CurrencyCode.of(feeCurrency)));
+    }
+
+    private static final class PendingChange {
+        private final UUID paymentId;
+        private final long committedAt;
+
+        PendingChange(UUID paymentId, long committedAt) {
+            this.paymentId = paymentId;
+            this.committedAt = committedAt;
+        }
+    }
+}
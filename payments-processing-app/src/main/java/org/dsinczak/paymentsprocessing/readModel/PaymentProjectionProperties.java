@@ -0,0 +1,52 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * In-memory read model of payments ({@link PaymentProjection}).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "payments.projection")
+public class PaymentProjectionProperties {
+
+    /**
+     * Serve reads from memory instead of database.
+     */
+    private boolean enabled = false;
+
+    /**
+     * Payments the projection has room for before it grows for the first time.
+     */
+    private int initialCapacity = 1_024;
+
+    /**
+     * Rows fetched from database in one round trip while projection is rebuilt at startup.
+     */
+    private int fetchSize = 1_000;
+
+    /**
+     * Changed payments read back from database with single query.
+     */
+    private int batchSize = 500;
+
+    /**
+     * How often changes are applied when no commit requested it, safety net only.
+     */
+    private Duration applyInterval = Duration.ofSeconds(1);
+
+    /**
+     * How often payments changed by other instances sharing the database are read by their {@code last_modified}.
+     */
+    private Duration catchUpInterval = Duration.ofSeconds(1);
+
+    /**
+     * How far before the previous catch up changes are read again. Covers transactions committed after the time
+     * they stored and clock skew between instances, changes older than that when committed are seen after restart only.
+     */
+    private Duration catchUpOverlap = Duration.ofSeconds(10);
+}
@@ -1,12 +1,18 @@
 package org.dsinczak.paymentsprocessing.readModel;
 
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.NoArgsConstructor;
 import lombok.ToString;
-import org.dsinczak.paymentsprocessing.shared.MonetaryAmountConverter;
+import org.dsinczak.paymentsprocessing.domain.Payment;
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount;
 import org.hibernate.annotations.Immutable;
 
 import javax.money.MonetaryAmount;
-import javax.persistence.Convert;
+import javax.persistence.AttributeOverride;
+import javax.persistence.Column;
+import javax.persistence.Embedded;
 import javax.persistence.Entity;
 import javax.persistence.Id;
 import javax.persistence.Table;
@@ -20,12 +26,28 @@ import java.util.UUID;
 @Table(name = "payment")
 @Getter
 @ToString
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
 public class PaymentView {
 
     @Id
     private Long id;
     private UUID paymentId;
-    @Convert(converter = MonetaryAmountConverter.class)
-    private MonetaryAmount cancellationFee;
+    private Payment.State state;
+    @Embedded
+    @AttributeOverride(name = "minorUnits", column = @Column(name = "amount_minor"))
+    @AttributeOverride(name = "currency", column = @Column(name = "amount_currency"))
+    private MinorUnitAmount amount;
+    @Embedded
+    @AttributeOverride(name = "minorUnits", column = @Column(name = "cancellation_fee_minor"))
+    @AttributeOverride(name = "currency", column = @Column(name = "cancellation_fee_currency"))
+    private MinorUnitAmount cancellationFee;
+
+    /**
+     * @return fee of cancelled payment, null when payment was not cancelled
+     */
+    public MonetaryAmount getCancellationFee() {
+        return cancellationFee == null ? null : cancellationFee.toMonetaryAmount();
+    }
 
 }
@@ -0,0 +1,136 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vavr.control.Option;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Bounded near-cache of {@link PaymentViews#findByPaymentId} for heavily polled cancellation fee. Holds at most
+ * {@code maxSize} payments, evicting least recently used. Cancelled payment never changes again and is kept for
+ * {@code ttl}, unknown ids and payments that are not cancelled yet only for {@code negativeTtl}.
+ * Payment is invalidated once its cancellation commits. Invalidation leaves a marker behind, so view read before
+ * the commit by concurrent lookup is not put back over it.
+ */
+@Component
+public class PaymentViewCache {
+
+    private static final class Entry {
+        /**
+         * Null for invalidation marker.
+         */
+        private final Option<PaymentView> view;
+        private final Instant expiresAt;
+        /**
+         * Invalidation count when entry was created.
+         */
+        private final long stamp;
+
+        Entry(Option<PaymentView> view, Instant expiresAt, long stamp) {
+            this.view = view;
+            this.expiresAt = expiresAt;
+            this.stamp = stamp;
+        }
+    }
+
+    private final PaymentViews paymentViews;
+    private final PaymentViewCacheProperties properties;
+    private final Clock clock;
+    private final LinkedHashMap<UUID, Entry> entries;
+    /**
+     * Number of invalidations so far.
+     */
+    private long stamp;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public PaymentViewCache(PaymentViews paymentViews, PaymentViewCacheProperties properties, Clock clock, MeterRegistry meterRegistry) {
+        this.paymentViews = paymentViews;
+        this.properties = properties;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                return size() > properties.getMaxSize();
+            }
+        };
+        this.hits = Counter.builder("payments.view.cache.gets")
+                .description("Payment view lookups answered from memory")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("payments.view.cache.gets")
+                .description("Payment view lookups read from read model")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("payments.view.cache.hit.ratio", this, PaymentViewCache::hitRatio)
+                .description("Share of payment view lookups answered from memory")
+                .register(meterRegistry);
+        Gauge.builder("payments.view.cache.size", this, PaymentViewCache::size)
+                .description("Payment ids held in memory, including invalidation markers")
+                .register(meterRegistry);
+    }
+
+    public Option<PaymentView> findByPaymentId(UUID paymentId) {
+        var cached = lookup(paymentId);
+        if (cached.view != null) {
+            hits.increment();
+            return cached.view;
+        }
+        misses.increment();
+        var view = paymentViews.findByPaymentId(paymentId);
+        put(paymentId, view, cached.stamp);
+        return view;
+    }
+
+    /**
+     * Marker only has to outlive lookups that were running during the commit.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onPaymentCancelled(PaymentCancelledEvent event) {
+        entries.put(UUID.fromString(event.getPaymentId()), new Entry(null, Instant.now(clock).plus(properties.getNegativeTtl()), ++stamp));
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private double hitRatio() {
+        var total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    /**
+     * @return entry with cached view or, when there is none, entry holding only stamp to put the view with
+     */
+    private synchronized Entry lookup(UUID paymentId) {
+        var entry = entries.get(paymentId);
+        if (entry != null && !entry.expiresAt.isAfter(Instant.now(clock))) {
+            entries.remove(paymentId);
+        } else if (entry != null && entry.view != null) {
+            return entry;
+        }
+        return new Entry(null, null, stamp);
+    }
+
+    private synchronized void put(UUID paymentId, Option<PaymentView> view, long lookupStamp) {
+        var entry = entries.get(paymentId);
+        if (entry != null && entry.view == null && entry.stamp > lookupStamp) {
+            // Payment was cancelled while it was read, view may be older than cancellation
+            return;
+        }
+        var cancelled = view.exists(v -> v.getCancellationFee() != null);
+        var ttl = cancelled ? properties.getTtl() : properties.getNegativeTtl();
+        entries.put(paymentId, new Entry(view, Instant.now(clock).plus(ttl), stamp));
+    }
+}
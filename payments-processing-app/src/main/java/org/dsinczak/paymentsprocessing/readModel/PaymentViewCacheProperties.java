@@ -0,0 +1,32 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Near-cache of payment views by payment id ({@link PaymentViewCache}).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "payments.view-cache")
+public class PaymentViewCacheProperties {
+
+    /**
+     * Maximum number of payment ids kept in memory, least recently used are evicted first.
+     */
+    private int maxSize = 10_000;
+
+    /**
+     * How long cancelled payment stays in memory, its fee never changes again.
+     */
+    private Duration ttl = Duration.ofMinutes(10);
+
+    /**
+     * How long unknown id or payment that is not cancelled yet stays in memory. Cancellation done by other
+     * instance of the application is seen after this time at the latest.
+     */
+    private Duration negativeTtl = Duration.ofSeconds(5);
+}
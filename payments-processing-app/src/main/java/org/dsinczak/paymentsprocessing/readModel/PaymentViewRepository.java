@@ -1,10 +1,16 @@
 package org.dsinczak.paymentsprocessing.readModel;
 
 import io.vavr.control.Option;
+import org.dsinczak.paymentsprocessing.domain.Payment;
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
 import java.util.UUID;
 
 @Repository
@@ -13,4 +19,20 @@ public interface PaymentViewRepository extends JpaRepository<PaymentView, Long>
 
     Option<PaymentView> findByPaymentId(UUID paymentId);
 
+    /**
+     * Page of payments in given state and currency ordered by amount and id, starting right after given key.
+     * Query seeks in {@code payment_state_amount_idx} instead of skipping rows, so every page costs the same.
+     * Redundant {@code >= afterMinorUnits} gives the index lower bound of the range, it is not derived from
+     * the {@code OR}. Order repeats constant state and currency, otherwise H2 sorts the whole range instead of
+     * reading it in index order.
+     *
+     * @param pageable only its size is used, as limit
+     */
+    @Query("SELECT p FROM PaymentView p WHERE p.state = :state AND p.amount.currency = :currency " +
+            "AND p.amount.minorUnits >= :afterMinorUnits AND p.amount.minorUnits <= :maxMinorUnits " +
+            "AND (p.amount.minorUnits > :afterMinorUnits OR p.id > :afterId) " +
+            "ORDER BY p.state, p.amount.currency, p.amount.minorUnits, p.id")
+    List<PaymentView> findPageAfter(@Param("state") Payment.State state, @Param("currency") CurrencyCode currency, @Param("afterMinorUnits") long afterMinorUnits,
+                                    @Param("afterId") long afterId, @Param("maxMinorUnits") long maxMinorUnits, Pageable pageable);
+
 }
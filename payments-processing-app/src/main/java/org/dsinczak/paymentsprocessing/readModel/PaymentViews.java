@@ -0,0 +1,22 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import io.vavr.control.Option;
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Read model of payments. Served by database ({@link DatabasePaymentViews}) or, when
+ * {@code payments.projection.enabled} is set, by in-memory {@link PaymentProjection}.
+ */
+public interface PaymentViews {
+
+    Option<PaymentView> findByPaymentId(UUID paymentId);
+
+    /**
+     * Not cancelled payments of given currency ordered by amount and id, starting right after given key,
+     * see {@link PaymentViewRepository#findPageAfter}.
+     */
+    List<PaymentView> findNotCancelledAfter(CurrencyCode currency, long afterMinorUnits, long afterId, long maxMinorUnits, int limit);
+}
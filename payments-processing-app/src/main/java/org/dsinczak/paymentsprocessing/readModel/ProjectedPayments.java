@@ -0,0 +1,188 @@
+package org.dsinczak.paymentsprocessing.readModel;
+
+import io.vavr.control.Option;
+import org.dsinczak.paymentsprocessing.domain.Payment;
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Payments held in parallel primitive arrays, one slot per payment, so million payments cost a few dozen
+ * megabytes and no object per payment. Slot of payment is found by open addressing hash table of slots keyed
+ * by the two longs of payment id. Payments that are not cancelled are additionally kept in {@link OffHeapAmountIndex}
+ * of every currency, ordered by amount and id like {@code payment_state_amount_idx}.
+ * Payments are never removed. Not thread safe, {@link PaymentProjection} guards it with a lock.
+ */
+class ProjectedPayments {
+
+    private static final byte NO_CURRENCY = -1;
+    private static final Payment.State[] STATES = Payment.State.values();
+    private static final CurrencyCode[] CURRENCIES = CurrencyCode.values();
+
+    private int size;
+    private long[] paymentIdHigh;
+    private long[] paymentIdLow;
+    private long[] ids;
+    private byte[] states;
+    private long[] amounts;
+    private byte[] currencies;
+    private long[] fees;
+    private byte[] feeCurrencies;
+    /**
+     * Slot + 1 of payment, 0 marks empty entry. Kept at most half full.
+     */
+    private int[] table;
+    private final Map<CurrencyCode, OffHeapAmountIndex> notCancelled = new EnumMap<>(CurrencyCode.class);
+
+    ProjectedPayments(int initialCapacity) {
+        this(initialCapacity, OffHeapAmountIndex.DEFAULT_DELTA_CAPACITY);
+    }
+
+    ProjectedPayments(int initialCapacity, int indexDeltaCapacity) {
+        var capacity = Math.max(initialCapacity, 16);
+        paymentIdHigh = new long[capacity];
+        paymentIdLow = new long[capacity];
+        ids = new long[capacity];
+        states = new byte[capacity];
+        amounts = new long[capacity];
+        currencies = new byte[capacity];
+        fees = new long[capacity];
+        feeCurrencies = new byte[capacity];
+        table = new int[tableSize(capacity)];
+        for (var currency : CURRENCIES) {
+            notCancelled.put(currency, new OffHeapAmountIndex(initialCapacity, indexDeltaCapacity));
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return bytes of amount indexes held outside of the heap
+     */
+    long offHeapBytes() {
+        return notCancelled.values().stream().mapToLong(OffHeapAmountIndex::offHeapBytes).sum();
+    }
+
+    /**
+     * Adds payment or replaces state and fee of payment already held. Id and amount of payment never change.
+     */
+    void put(UUID paymentId, long id, Payment.State state, MinorUnitAmount amount, MinorUnitAmount cancellationFee) {
+        var slot = slotOf(paymentId.getMostSignificantBits(), paymentId.getLeastSignificantBits());
+        var wasNotCancelled = slot >= 0 && states[slot] == Payment.State.CREATED.ordinal();
+        if (slot < 0) {
+            slot = append(paymentId, id, amount);
+        }
+        states[slot] = (byte) state.ordinal();
+        fees[slot] = cancellationFee == null ? 0 : cancellationFee.getMinorUnits();
+        feeCurrencies[slot] = cancellationFee == null ? NO_CURRENCY : (byte) cancellationFee.getCurrency().ordinal();
+        // Same change applied again leaves the index alone
+        var notCancelledNow = state == Payment.State.CREATED;
+        if (wasNotCancelled && !notCancelledNow) {
+            notCancelled.get(amount.getCurrency()).remove(amounts[slot], ids[slot]);
+        } else if (!wasNotCancelled && notCancelledNow) {
+            notCancelled.get(amount.getCurrency()).add(amounts[slot], ids[slot], slot);
+        }
+    }
+
+    /**
+     * @return whether payment is held with given state
+     */
+    boolean holds(UUID paymentId, Payment.State state) {
+        var slot = slotOf(paymentId.getMostSignificantBits(), paymentId.getLeastSignificantBits());
+        return slot >= 0 && states[slot] == state.ordinal();
+    }
+
+    Option<PaymentView> find(UUID paymentId) {
+        var slot = slotOf(paymentId.getMostSignificantBits(), paymentId.getLeastSignificantBits());
+        return slot < 0 ? Option.none() : Option.some(view(slot));
+    }
+
+    /**
+     * Same page as {@link PaymentViewRepository#findPageAfter} for payments that are not cancelled.
+     */
+    List<PaymentView> findNotCancelledAfter(CurrencyCode currency, long afterMinorUnits, long afterId, long maxMinorUnits, int limit) {
+        var slots = new int[limit];
+        var found = notCancelled.get(currency).scan(afterMinorUnits, afterId, maxMinorUnits, slots);
+        var page = new ArrayList<PaymentView>(found);
+        for (var i = 0; i < found; i++) {
+            page.add(view(slots[i]));
+        }
+        return page;
+    }
+
+    private PaymentView view(int slot) {
+        var fee = feeCurrencies[slot] == NO_CURRENCY ? null : MinorUnitAmount.of(fees[slot], CURRENCIES[feeCurrencies[slot]]);
+        return new PaymentView(ids[slot], new UUID(paymentIdHigh[slot], paymentIdLow[slot]), STATES[states[slot]],
+                MinorUnitAmount.of(amounts[slot], CURRENCIES[currencies[slot]]), fee);
+    }
+
+    private int append(UUID paymentId, long id, MinorUnitAmount amount) {
+        if (size == ids.length) {
+            grow();
+        }
+        var slot = size++;
+        paymentIdHigh[slot] = paymentId.getMostSignificantBits();
+        paymentIdLow[slot] = paymentId.getLeastSignificantBits();
+        ids[slot] = id;
+        amounts[slot] = amount.getMinorUnits();
+        currencies[slot] = (byte) amount.getCurrency().ordinal();
+        insert(table, slot);
+        return slot;
+    }
+
+    private int slotOf(long high, long low) {
+        var mask = table.length - 1;
+        for (var i = hash(high, low) & mask; table[i] != 0; i = (i + 1) & mask) {
+            var slot = table[i] - 1;
+            if (paymentIdHigh[slot] == high && paymentIdLow[slot] == low) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(int[] into, int slot) {
+        var mask = into.length - 1;
+        var i = hash(paymentIdHigh[slot], paymentIdLow[slot]) & mask;
+        while (into[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        into[i] = slot + 1;
+    }
+
+    private void grow() {
+        var capacity = ids.length * 2;
+        paymentIdHigh = Arrays.copyOf(paymentIdHigh, capacity);
+        paymentIdLow = Arrays.copyOf(paymentIdLow, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        states = Arrays.copyOf(states, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        currencies = Arrays.copyOf(currencies, capacity);
+        fees = Arrays.copyOf(fees, capacity);
+        feeCurrencies = Arrays.copyOf(feeCurrencies, capacity);
+        table = new int[tableSize(capacity)];
+        for (var slot = 0; slot < size; slot++) {
+            insert(table, slot);
+        }
+    }
+
+    private static int tableSize(int capacity) {
+        return Integer.highestOneBit(capacity - 1) << 2;
+    }
+
+    /**
+     * Random UUIDs are well spread already, mixing only protects against ids differing in few bits.
+     */
+    private static int hash(long high, long low) {
+        var h = (high ^ low) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
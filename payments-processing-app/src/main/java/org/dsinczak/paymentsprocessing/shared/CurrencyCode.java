@@ -0,0 +1,42 @@
+package org.dsinczak.paymentsprocessing.shared;
+
+import javax.money.CurrencyUnit;
+import javax.money.Monetary;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Currencies payments can be made in.
+ */
+public enum CurrencyCode {
+    EUR(2),
+    USD(2);
+
+    private static final Map<String, CurrencyCode> BY_CODE = Arrays.stream(values())
+            .collect(Collectors.toUnmodifiableMap(Enum::name, Function.identity()));
+
+    private final int fractionDigits;
+    private final CurrencyUnit currencyUnit;
+
+    CurrencyCode(int fractionDigits) {
+        this.fractionDigits = fractionDigits;
+        this.currencyUnit = Monetary.getCurrency(name());
+    }
+
+    /**
+     * @return currency of given ISO code, null when it is not supported
+     */
+    public static CurrencyCode of(String code) {
+        return BY_CODE.get(code);
+    }
+
+    public int getFractionDigits() {
+        return fractionDigits;
+    }
+
+    public CurrencyUnit toCurrencyUnit() {
+        return currencyUnit;
+    }
+}
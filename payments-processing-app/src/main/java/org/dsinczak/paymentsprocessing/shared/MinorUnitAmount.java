@@ -0,0 +1,77 @@
+package org.dsinczak.paymentsprocessing.shared;
+
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import org.javamoney.moneta.Money;
+
+import javax.money.MonetaryAmount;
+import javax.persistence.Embeddable;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Money as whole number of minor units of its currency (cents for EUR). Arithmetic is exact long arithmetic
+ * that fails on overflow instead of losing precision, and stored form can be compared and filtered in SQL
+ * and is loaded without parsing any text. {@link MonetaryAmount} is used only at the boundary of the application.
+ */
+@Getter
+@EqualsAndHashCode
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+@Embeddable
+public class MinorUnitAmount {
+
+    private long minorUnits;
+    @Enumerated(EnumType.STRING)
+    private CurrencyCode currency;
+
+    private MinorUnitAmount(long minorUnits, CurrencyCode currency) {
+        this.minorUnits = minorUnits;
+        this.currency = currency;
+    }
+
+    public static MinorUnitAmount of(long minorUnits, CurrencyCode currency) {
+        return new MinorUnitAmount(minorUnits, currency);
+    }
+
+    /**
+     * Fraction beyond minor unit of the currency is rounded half to even.
+     *
+     * @throws IllegalArgumentException when currency is not supported
+     * @throws ArithmeticException      when amount does not fit into long of minor units
+     */
+    public static MinorUnitAmount of(MonetaryAmount amount) {
+        var currency = CurrencyCode.of(amount.getCurrency().getCurrencyCode());
+        if (currency == null) {
+            throw new IllegalArgumentException("Currency " + amount.getCurrency() + " is not supported");
+        }
+        var minorUnits = amount.getNumber().numberValue(BigDecimal.class)
+                .setScale(currency.getFractionDigits(), RoundingMode.HALF_EVEN)
+                .unscaledValue()
+                .longValueExact();
+        return new MinorUnitAmount(minorUnits, currency);
+    }
+
+    /**
+     * @throws ArithmeticException on overflow
+     */
+    public MinorUnitAmount multiply(long multiplier) {
+        return new MinorUnitAmount(Math.multiplyExact(minorUnits, multiplier), currency);
+    }
+
+    /**
+     * Trailing zeros of the fraction are dropped, so amount reads the way it was usually entered.
+     */
+    public MonetaryAmount toMonetaryAmount() {
+        var number = BigDecimal.valueOf(minorUnits, currency.getFractionDigits()).stripTrailingZeros();
+        return Money.of(number.scale() < 0 ? number.setScale(0) : number, currency.toCurrencyUnit());
+    }
+
+    @Override
+    public String toString() {
+        return currency + " " + BigDecimal.valueOf(minorUnits, currency.getFractionDigits());
+    }
+}
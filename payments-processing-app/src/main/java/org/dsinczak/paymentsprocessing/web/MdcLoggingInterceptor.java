@@ -1,12 +1,12 @@
 package org.dsinczak.paymentsprocessing.web;
 
 import io.vavr.control.Option;
+import org.dsinczak.paymentsprocessing.api.ids.FastUuids;
 import org.slf4j.MDC;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.util.UUID;
 
 public class MdcLoggingInterceptor extends HandlerInterceptorAdapter {
     private static final String CORRELATION_ID_HEADER_NAME = "X-Correlation-Id";
@@ -17,7 +17,7 @@ public class MdcLoggingInterceptor extends HandlerInterceptorAdapter {
         MDC.put(CORRELATION_ID_LOG_VAR_NAME,
                 Option.of(request.getHeader(CORRELATION_ID_HEADER_NAME))
                         .filter(h -> !h.isBlank())
-                        .getOrElse(() -> UUID.randomUUID().toString())
+                        .getOrElse(() -> FastUuids.next().toString())
         );
         return true;
     }
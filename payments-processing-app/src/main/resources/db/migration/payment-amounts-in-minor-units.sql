@@ -0,0 +1,23 @@
+-- Moves payment amount and cancellation fee from text columns ('EUR 10.00', written by former
+-- MonetaryAmountConverter) to minor units and currency code columns. Needed only for databases kept
+-- between releases, schema of new database is created by Hibernate.
+-- Supported currencies (EUR, USD) both have 2 fraction digits, hence the factor of 100.
+
+ALTER TABLE payment ADD COLUMN amount_minor BIGINT;
+ALTER TABLE payment ADD COLUMN amount_currency VARCHAR(3);
+ALTER TABLE payment ADD COLUMN cancellation_fee_minor BIGINT;
+ALTER TABLE payment ADD COLUMN cancellation_fee_currency VARCHAR(3);
+
+UPDATE payment SET
+    amount_currency = SUBSTRING(amount, 1, 3),
+    amount_minor = CAST(ROUND(CAST(SUBSTRING(amount, 5) AS DECIMAL(38, 10)) * 100, 0) AS BIGINT);
+
+UPDATE payment SET
+    cancellation_fee_currency = SUBSTRING(cancellation_fee, 1, 3),
+    cancellation_fee_minor = CAST(ROUND(CAST(SUBSTRING(cancellation_fee, 5) AS DECIMAL(38, 10)) * 100, 0) AS BIGINT)
+WHERE cancellation_fee IS NOT NULL;
+
+ALTER TABLE payment ALTER COLUMN amount_minor SET NOT NULL;
+ALTER TABLE payment ALTER COLUMN amount_currency SET NOT NULL;
+ALTER TABLE payment DROP COLUMN amount;
+ALTER TABLE payment DROP COLUMN cancellation_fee;
@@ -0,0 +1,7 @@
+-- Adds time of last change of payments, followed by in-memory projection of other instances. Needed only for
+-- databases kept between releases, schema of new database is created by Hibernate.
+
+ALTER TABLE payment ADD COLUMN last_modified TIMESTAMP;
+UPDATE payment SET last_modified = created;
+ALTER TABLE payment ALTER COLUMN last_modified SET NOT NULL;
+CREATE INDEX payment_last_modified_idx ON payment (last_modified);
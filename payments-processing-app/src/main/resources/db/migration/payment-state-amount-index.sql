@@ -0,0 +1,4 @@
+-- Index of amount range query of not cancelled payments (GET /payment). Needed only for databases kept between
+-- releases, schema of new database is created by Hibernate.
+
+CREATE INDEX payment_state_amount_idx ON payment (state, amount_currency, amount_minor, id);
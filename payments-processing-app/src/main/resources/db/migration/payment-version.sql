@@ -0,0 +1,4 @@
+-- Adds optimistic lock version to payments. Needed only for databases kept between releases, schema of
+-- new database is created by Hibernate.
+
+ALTER TABLE payment ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,112 @@
+package org.dsinczak.paymentsprocessing
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import io.vavr.collection.List
+import io.vavr.control.Either
+import org.dsinczak.paymentsprocessing.web.ErrorMessageRenderer
+import spock.lang.Specification
+
+import static org.dsinczak.paymentsprocessing.shared.ErrorMessage.error
+
+class PaymentIngestionCaseSpec extends Specification {
+
+    def objectMapper = new ObjectMapper()
+
+    def paymentsService = Mock(PaymentsService)
+
+    def output = new ByteArrayOutputStream()
+
+    def ingestion = new PaymentIngestion(paymentsService, new ErrorMessageRenderer(), objectMapper, new PaymentBatchProperties(chunkSize: 2))
+
+    def 'should create uploaded payments in chunks and write result of every line in order'() {
+        given:
+            def upload = (1..5).collect { payment("details $it") }.join("\n")
+            def written = []
+        when:
+            def records = ingestion.ingest(stream(upload), output)
+        then:
+            3 * paymentsService.createNewPayments(_) >> { List dtos ->
+                // Results of previous chunk are out before next chunk is created
+                written << results().size()
+                Either.right(dtos.map { it.details == "details 2" ? Either.left(List.of(error("Invalid {0}", it.details))) : Either.right(UUID.randomUUID()) })
+            }
+            records == 5
+            written == [0, 2, 4]
+            results()*.line == [1, 2, 3, 4, 5]
+            results()[1].errors == ["Invalid details 2"]
+            results()[1].paymentId == null
+            results().findAll { it.line != 2 }.every { it.paymentId != null && it.errors.isEmpty() }
+    }
+
+    def 'should stop at record that is not valid JSON after creating records before it'() {
+        given:
+            def upload = payment("first") + "\n" + '{"type": "TYPE1", ' + "\n" + payment("never read")
+        when:
+            ingestion.ingest(stream(upload), output)
+        then:
+            1 * paymentsService.createNewPayments({ it.size() == 1 && it[0].details == "first" }) >> Either.right(List.of(Either.right(UUID.randomUUID())))
+            0 * paymentsService.createNewPayments(_)
+            results().size() == 2
+            results()[1].line == 2
+            results()[1].errors[0].startsWith("Payment is not valid JSON")
+    }
+
+    def 'should reject record with field of wrong type alone and go on with the rest'() {
+        given:
+            def upload = payment("first") + "\n" + '{"type": "TYPE1", "amount": {"value": [10]}, "details": "wrong"}' + "\n" + payment("third")
+        when:
+            def records = ingestion.ingest(stream(upload), output)
+        then:
+            1 * paymentsService.createNewPayments({ it.size() == 1 && it[0].details == "first" }) >> Either.right(List.of(Either.right(UUID.randomUUID())))
+            1 * paymentsService.createNewPayments({ it.size() == 1 && it[0].details == "third" }) >> Either.right(List.of(Either.right(UUID.randomUUID())))
+            records == 2
+            results()*.line == [1, 2, 3]
+            results()[1].errors[0].startsWith("Payment has invalid field")
+            results()[2].paymentId != null
+    }
+
+    def 'should report every record of rejected chunk as failed'() {
+        when:
+            ingestion.ingest(stream(payment("first") + "\n" + payment("second")), output)
+        then:
+            1 * paymentsService.createNewPayments(_) >> Either.left(error("Batch has to contain from 1 to {0} payments.", 1))
+            results()*.line == [1, 2]
+            results()*.errors == [["Batch has to contain from 1 to 1 payments."]] * 2
+    }
+
+    def 'should not accept chunk larger than batch'() {
+        when:
+            new PaymentBatchProperties(maxSize: 10, chunkSize: 20).validate()
+        then:
+            def e = thrown(IllegalStateException)
+            e.message.startsWith("payments.batch.chunk-size has to be from 1 to payments.batch.max-size (10)")
+    }
+
+    def 'should reject record which is not JSON object'() {
+        when:
+            ingestion.ingest(stream('[1, 2]'), output)
+        then:
+            0 * paymentsService.createNewPayments(_)
+            results()*.errors == [["Payment has to be JSON object"]]
+    }
+
+    def 'should write nothing for empty upload'() {
+        when:
+            def records = ingestion.ingest(stream(""), output)
+        then:
+            records == 0
+            output.size() == 0
+    }
+
+    private java.util.List<Map> results() {
+        output.toString("UTF-8").readLines().collect { objectMapper.readValue(it, Map) }
+    }
+
+    private static String payment(String details) {
+        '{"type": "TYPE1", "amount": "10", "currency": "USD", "debtorIban": "CH9300762011623852957", "creditorIban": "SE3550000000054910000003", "details": "' + details + '"}'
+    }
+
+    private static InputStream stream(String upload) {
+        new ByteArrayInputStream(upload.getBytes("UTF-8"))
+    }
+}
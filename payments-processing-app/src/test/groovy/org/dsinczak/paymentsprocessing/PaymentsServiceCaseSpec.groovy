@@ -1,23 +1,189 @@
 package org.dsinczak.paymentsprocessing
 
 
+import io.vavr.collection.HashMap
+import io.vavr.collection.List
+import io.vavr.control.Option
+import org.dsinczak.paymentsprocessing.api.PaymentDto
+import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent
 import org.dsinczak.paymentsprocessing.domain.CancellationFeePolicy
+import org.dsinczak.paymentsprocessing.domain.Payment
 import org.dsinczak.paymentsprocessing.domain.PaymentFactory
 import org.dsinczak.paymentsprocessing.domain.PaymentRepository
 import org.dsinczak.paymentsprocessing.notification.EventPublisher
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.transaction.support.TransactionCallback
+import org.springframework.transaction.support.TransactionOperations
 import spock.lang.Specification
 
+import java.time.Clock
+import java.time.Instant
+import java.time.ZoneId
+
 class PaymentsServiceCaseSpec extends Specification{
 
-    PaymentFactory paymentFactory = Mock(PaymentFactory)
+    PaymentFactory paymentFactory = new PaymentFactory(Clock.fixed(Instant.parse("1985-02-19T16:00:00Z"), ZoneId.of("UTC")))
     PaymentRepository paymentRepository = Mock(PaymentRepository)
     CancellationFeePolicy cancellationFeePolicy = Mock(CancellationFeePolicy)
     EventPublisher eventPublisher = Mock(EventPublisher)
-    PaymentsService paymentsService = new PaymentsService(paymentFactory,paymentRepository, cancellationFeePolicy, eventPublisher)
+    TransactionOperations transactionOperations = Mock(TransactionOperations) {
+        execute(_) >> { TransactionCallback callback -> callback.doInTransaction(null) }
+    }
+    PaymentBatchProperties batchProperties = new PaymentBatchProperties(maxSize: 10, chunkSize: 2)
+    ApplicationEventPublisher applicationEventPublisher = Mock(ApplicationEventPublisher)
+    PaymentsService paymentsService = new PaymentsService(paymentFactory, paymentRepository, cancellationFeePolicy, eventPublisher, transactionOperations, batchProperties, applicationEventPublisher)
+
+    def 'should return result of every payment of batch in request order'() {
+        given:
+            def first = UUID.randomUUID()
+            def second = UUID.randomUUID()
+            paymentRepository.save(_) >>> [first, second]
+        when:
+            def result = paymentsService.createNewPayments(List.of(payment("TYPE1"), payment("UNKNOWN"), payment("TYPE3"))).get()
+        then:
+            result.size() == 3
+            result[0].get() == first
+            result[1].left.head().value.startsWith("Payment type {0} is invalid")
+            result[2].get() == second
+        and: 'only payments of notified types publish event'
+            1 * eventPublisher.publish({ it instanceof PaymentCreatedEvent && it.paymentId == first.toString() && it.type == "TYPE1" })
+            0 * eventPublisher.publish(_)
+        and: 'payments of every type are published within the application'
+            1 * applicationEventPublisher.publishEvent({ it instanceof PaymentCreatedEvent && it.paymentId == first.toString() })
+            1 * applicationEventPublisher.publishEvent({ it instanceof PaymentCreatedEvent && it.paymentId == second.toString() && it.type == "TYPE3" })
+    }
+
+    def 'should store valid payments in chunks, each in its own transaction'() {
+        given:
+            paymentRepository.save(_) >> { UUID.randomUUID() }
+        when:
+            def result = paymentsService.createNewPayments(List.ofAll((1..5).collect { payment("TYPE1") })).get()
+        then:
+            3 * transactionOperations.execute(_) >> { TransactionCallback callback -> callback.doInTransaction(null) }
+            result.forAll { it.isRight() }
+    }
+
+    def 'should report payments of failed chunk as failed and keep other chunks'() {
+        given:
+            paymentRepository.save(_) >> { UUID.randomUUID() }
+        when:
+            def result = paymentsService.createNewPayments(List.ofAll((1..3).collect { payment("TYPE1") })).get()
+        then:
+            2 * transactionOperations.execute(_) >> { throw new IllegalStateException("Database down") } >> { TransactionCallback callback -> callback.doInTransaction(null) }
+            result[0].left.head().value == "Payment could not be stored, it can be sent again."
+            result[1].isLeft()
+            result[2].isRight()
+    }
+
+    def 'should reject empty and too large batch'() {
+        expect:
+            paymentsService.createNewPayments(List.ofAll((0..<size).collect { payment("TYPE1") })).isLeft()
+        where:
+            size << [0, 11]
+    }
+
+    def 'should not publish cancellation that lost to concurrent change'() {
+        given:
+            def paymentId = UUID.randomUUID()
+            paymentRepository.findByPaymentId(paymentId) >> Option.of(createPayment())
+            cancellationFeePolicy.apply(_, _, _) >> MinorUnitAmount.of(10, CurrencyCode.EUR)
+        when:
+            def result = paymentsService.cancelPayment(paymentId)
+        then:
+            1 * paymentRepository.saveCancellation(_) >> stored
+            result.isRight() == stored
+            (stored ? 1 : 0) * eventPublisher.publish({ it instanceof PaymentCancelledEvent && it.paymentId == paymentId.toString() })
+            (stored ? 1 : 0) * applicationEventPublisher.publishEvent({ it instanceof PaymentCancelledEvent && it.paymentId == paymentId.toString() })
+        where:
+            stored << [true, false]
+    }
+
+    def 'should cancel payments of batch loaded by chunks and return result of every id in request order'() {
+        given:
+            def first = UUID.randomUUID()
+            def second = UUID.randomUUID()
+            def unknown = UUID.randomUUID()
+            cancellationFeePolicy.apply(_, _, _) >> MinorUnitAmount.of(10, CurrencyCode.EUR)
+            paymentRepository.saveCancellation(_) >> true
+        when:
+            def result = paymentsService.cancelPayments(List.of(first.toString(), "not-an-id", unknown.toString(), second.toString())).get()
+        then:
+            1 * paymentRepository.findByPaymentIds(List.of(first, unknown)) >> HashMap.of(first, createPayment())
+            1 * paymentRepository.findByPaymentIds(List.of(second)) >> HashMap.of(second, createPayment())
+            result.size() == 4
+            result[0].get() == MinorUnitAmount.of(10, CurrencyCode.EUR)
+            result[1].left.value == "Payment ID {0} is not valid UUID"
+            result[2].left.value == "Payment with ID: {0} does not exist."
+            result[3].isRight()
+        and: 'events are published for cancelled payments only'
+            1 * eventPublisher.publish({ it instanceof PaymentCancelledEvent && it.paymentId == first.toString() })
+            1 * eventPublisher.publish({ it instanceof PaymentCancelledEvent && it.paymentId == second.toString() })
+            0 * eventPublisher.publish(_)
+    }
+
+    def 'should report payments of failed cancellation chunk as failed and keep other chunks'() {
+        given:
+            def ids = (1..3).collect { UUID.randomUUID() }
+            paymentRepository.findByPaymentIds(_) >> { List chunk -> chunk.toMap({ it }, { createPayment() }) }
+            paymentRepository.saveCancellation(_) >> true
+        when:
+            def result = paymentsService.cancelPayments(List.ofAll(ids*.toString())).get()
+        then:
+            2 * transactionOperations.execute(_) >> { throw new IllegalStateException("Database down") } >> { TransactionCallback callback -> callback.doInTransaction(null) }
+            result[0].left.value == "Payment could not be cancelled, it can be sent again."
+            result[1].isLeft()
+            result[2].isRight()
+    }
+
+    def 'should report only payment changed concurrently as failed and cancel the rest of its chunk'() {
+        given:
+            def changed = UUID.randomUUID()
+            def other = UUID.randomUUID()
+            def changedPayment = createPayment()
+            cancellationFeePolicy.apply(_, _, _) >> MinorUnitAmount.of(10, CurrencyCode.EUR)
+            paymentRepository.findByPaymentIds(List.of(changed, other)) >> HashMap.of(changed, changedPayment, other, createPayment())
+            paymentRepository.saveCancellation(_) >> { Payment payment -> !payment.is(changedPayment) }
+        when:
+            def result = paymentsService.cancelPayments(List.of(changed.toString(), other.toString())).get()
+        then:
+            result[0].left.value == "Cancellation failure. Payment was changed concurrently"
+            result[1].get() == MinorUnitAmount.of(10, CurrencyCode.EUR)
+            1 * eventPublisher.publish({ it instanceof PaymentCancelledEvent && it.paymentId == other.toString() })
+            0 * eventPublisher.publish(_)
+    }
+
+    def 'should reject empty and too large cancellation batch'() {
+        expect:
+            paymentsService.cancelPayments(List.ofAll((0..<size).collect { UUID.randomUUID().toString() })).isLeft()
+        where:
+            size << [0, 11]
+    }
+
+    private Payment createPayment() {
+        def dto = payment("TYPE1")
+        paymentFactory.create()
+                .withType(dto.type)
+                .withAmount(dto.amount)
+                .withCurrency(dto.currency)
+                .withCreditor(dto.creditorIban)
+                .withDebtor(dto.debtorIban)
+                .withDetails(dto.details)
+                .build()
+                .get()
+    }
 
-    def 'should'(){
-        // I hope i proved each class can be tested separately as unit
-        // or as component with cooperation with other classes.
-        // I'm running out of time :)
+    private static PaymentDto payment(String type) {
+        PaymentDto.builder()
+                .type(type)
+                .amount("10")
+                .currency(type == "TYPE2" ? "EUR" : "USD")
+                .creditorIban("SE3550000000054910000003")
+                .debtorIban("CH9300762011623852957")
+                .creditorBic("NDEASESS")
+                .details("some details")
+                .build()
     }
 }
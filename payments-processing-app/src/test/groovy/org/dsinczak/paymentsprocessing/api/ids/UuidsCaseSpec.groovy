@@ -0,0 +1,51 @@
+package org.dsinczak.paymentsprocessing.api.ids
+
+import spock.lang.Specification
+
+import java.util.concurrent.Callable
+import java.util.concurrent.Executors
+
+class UuidsCaseSpec extends Specification {
+
+    def 'should generate version 7 uuid with current time'() {
+        given:
+            def before = System.currentTimeMillis()
+        when:
+            def uuid = TimeOrderedUuids.next()
+        then:
+            uuid.version() == 7
+            uuid.variant() == 2
+            (uuid.mostSignificantBits >>> 16) >= before
+            (uuid.mostSignificantBits >>> 16) <= System.currentTimeMillis() + 1
+    }
+
+    def 'should generate strictly increasing uuids within the same millisecond'() {
+        when:
+            def uuids = (1..10_000).collect { TimeOrderedUuids.next() }
+        then:
+            uuids.toSet().size() == 10_000
+            uuids.collect { it.toString() } == uuids.collect { it.toString() }.sort()
+    }
+
+    def 'should generate unique and per thread ordered uuids on many threads'() {
+        given:
+            def executor = Executors.newFixedThreadPool(8)
+        when:
+            def results = executor.invokeAll((1..8).collect {
+                { -> (1..5_000).collect { TimeOrderedUuids.next() } } as Callable<List<UUID>>
+            }).collect { it.get() }
+        then:
+            results.flatten().toSet().size() == 40_000
+            results.every { it == it.toSorted() }
+        cleanup:
+            executor.shutdown()
+    }
+
+    def 'should generate random version 4 uuids'() {
+        when:
+            def uuids = (1..10_000).collect { FastUuids.next() }
+        then:
+            uuids.every { it.version() == 4 && it.variant() == 2 }
+            uuids.toSet().size() == 10_000
+    }
+}
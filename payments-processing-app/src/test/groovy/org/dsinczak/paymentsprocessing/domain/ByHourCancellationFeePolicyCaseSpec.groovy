@@ -1,6 +1,6 @@
 package org.dsinczak.paymentsprocessing.domain
 
-import org.javamoney.moneta.Money
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount
 import spock.lang.Specification
 
 import java.time.Clock
@@ -8,6 +8,7 @@ import java.time.LocalDateTime
 import java.time.ZoneId
 
 import static org.dsinczak.paymentsprocessing.domain.Payment.Type.*
+import static org.dsinczak.paymentsprocessing.shared.CurrencyCode.EUR
 
 class ByHourCancellationFeePolicyCaseSpec extends Specification {
 
@@ -24,12 +25,12 @@ class ByHourCancellationFeePolicyCaseSpec extends Specification {
             fee == expectedFee
         where:
             created                               | type  | expectedFee
-            LocalDateTime.of(1985, 2, 19, 14, 10) | TYPE1 | Money.of(0.05, "EUR")
-            LocalDateTime.of(1985, 2, 19, 14, 10) | TYPE2 | Money.of(0.1, "EUR")
-            LocalDateTime.of(1985, 2, 19, 14, 10) | TYPE3 | Money.of(0.15, "EUR")
-            LocalDateTime.of(1985, 2, 19, 1, 50)  | TYPE1 | Money.of(0.7, "EUR")
-            LocalDateTime.of(1985, 2, 19, 3, 30)  | TYPE2 | Money.of(1.2, "EUR")
-            LocalDateTime.of(1985, 2, 19, 10, 10) | TYPE3 | Money.of(0.75, "EUR")
+            LocalDateTime.of(1985, 2, 19, 14, 10) | TYPE1 | MinorUnitAmount.of(5, EUR)
+            LocalDateTime.of(1985, 2, 19, 14, 10) | TYPE2 | MinorUnitAmount.of(10, EUR)
+            LocalDateTime.of(1985, 2, 19, 14, 10) | TYPE3 | MinorUnitAmount.of(15, EUR)
+            LocalDateTime.of(1985, 2, 19, 1, 50)  | TYPE1 | MinorUnitAmount.of(70, EUR)
+            LocalDateTime.of(1985, 2, 19, 3, 30)  | TYPE2 | MinorUnitAmount.of(120, EUR)
+            LocalDateTime.of(1985, 2, 19, 10, 10) | TYPE3 | MinorUnitAmount.of(75, EUR)
     }
 
     def 'should fail when creation date is after current time'() {
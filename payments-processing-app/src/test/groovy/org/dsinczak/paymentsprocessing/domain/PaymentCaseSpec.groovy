@@ -1,11 +1,11 @@
 package org.dsinczak.paymentsprocessing.domain
 
 import io.vavr.control.Either
-import org.javamoney.moneta.Money
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount
 import spock.lang.Specification
 import spock.lang.Unroll
 
-import javax.money.MonetaryAmount
 import java.time.Clock
 import java.time.LocalDateTime
 import java.time.ZoneId
@@ -20,12 +20,12 @@ class PaymentCaseSpec extends Specification {
     static def clock(int year, int month, int dayOfMonth, int hour, int minute) {
         Clock.fixed(LocalDateTime.of(year, month, dayOfMonth, hour, minute).atZone(zoneId).toInstant(), zoneId)
     }
-    static def amount = Money.of(BigDecimal.TEN, "USD")
+    static def amount = MinorUnitAmount.of(1000, CurrencyCode.USD)
     static def iban = new Iban("123456789")
     static def bic = new Bic("666")
     static def constantPolicy = new CancellationFeePolicy() {
         @Override
-        Money apply(LocalDateTime localDateTime, Payment.Type type, MonetaryAmount money) {
+        MinorUnitAmount apply(LocalDateTime localDateTime, Payment.Type type, MinorUnitAmount money) {
             return amount
         }
     }
@@ -1,15 +1,14 @@
 package org.dsinczak.paymentsprocessing.domain
 
 import io.vavr.collection.HashSet
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode
 import spock.lang.Specification
 
-import javax.money.CurrencyUnit
-import javax.money.Monetary
 
 class ValidationsCaseSpec extends Specification {
 
-    private static final CurrencyUnit USD = Monetary.getCurrency("USD");
-    private static final CurrencyUnit EUR = Monetary.getCurrency("EUR");
+    private static final CurrencyCode USD = CurrencyCode.USD
+    private static final CurrencyCode EUR = CurrencyCode.EUR
 
     def 'should validate IBAN'() {
         expect:
@@ -18,15 +17,30 @@ class ValidationsCaseSpec extends Specification {
             iban                          | isValid
             "SE3550000000054910000003"    | true
             "CH9300762011623852957"       | true
-            "HU4211773016111110180000000" | true
+            "HU42117730161111101800000000" | true
+            "HU4211773016111110180000000" | false
             "DE89370400440532013000"      | true
             "9E3550000000054910000003"    | false
             "C59300762011623852957"       | false
             "HU42117"                     | false
             "DE89370400ABC532013000"      | false
+            "ch9300762011623852957"       | true
+            "SE3550000000054910000004"    | false
+            "CH9400762011623852957"       | false
+            "DE89370400440532013000000000000000" | false
             null                          | false
     }
 
+    def 'should tell wrong IBAN check digits from wrong format'() {
+        expect:
+            Validations.validateIban("Debtor", iban).getError().value == message
+        where:
+            iban                       | message
+            "SE3550000000054910000004" | "{0} IBAN has invalid check digits"
+            "SE35500000000549"         | "{0} IBAN has invalid check digits"
+            "SE355000000005491000000!" | "{0} IBAN does not match pattern: {1}"
+    }
+
     def 'should validate details'() {
         expect:
             Validations.validateDetails(details).isValid() == isValid
@@ -49,11 +63,38 @@ class ValidationsCaseSpec extends Specification {
             "PLN"    | "1.0"   | false
             "EUR"    | "-10.9" | false
             "EUR"    | "ABC"   | false
+            "EUR"    | "5."    | true
+            "EUR"    | ".5"    | true
+            "EUR"    | "0.00"  | false
+            "EUR"    | "."     | false
+            "EUR"    | ""      | false
+            "EUR"    | "1e3"   | false
+            "EUR"    | "+5"    | false
+            "EUR"    | "1.2.3" | false
+            "EUR"    | "1" * 33 | false
+            "EUR"    | "9" * 16 + ".99" | true
+            "EUR"    | "9" * 17 + ".99" | false
+            "EUR"    | "9" * 17 | false
+            "EUR"    | "10.005" | false
+            "EUR"    | "10.000" | false
             null     | "12.23" | false
             "EUR"    | null    | false
             null     | null    | false
     }
 
+    def 'should parse amount into minor units'() {
+        expect:
+            Validations.validateAmount(currency, amount, HashSet.of(EUR, USD)).get().minorUnits == minorUnits
+        where:
+            currency | amount       | minorUnits
+            "EUR"    | "12.23"      | 1223
+            "EUR"    | "12.2"       | 1220
+            "USD"    | "12"         | 1200
+            "USD"    | ".05"        | 5
+            "USD"    | "0012.30"    | 1230
+            "EUR"    | "9" * 16     | 999999999999999900
+    }
+
     def 'should validate type'() {
         expect:
             Validations.validateType(type).isValid() == isValid
@@ -63,6 +104,7 @@ class ValidationsCaseSpec extends Specification {
             "TYPE2" | true
             "TYPE3" | true
             "TYPE4" | false
+            "type1" | false
             null    | false
     }
 
@@ -77,6 +119,10 @@ class ValidationsCaseSpec extends Specification {
             "EBSLPW"    | false
             "9ITIPLPX"  | false
             "BOTK666"   | false
+            "DEUTDEFF500" | true
+            "DEUTDEFO"  | false
+            "DEUTDE1F"  | false
+            "DEUTDEFF50" | false
             null        | false
 
 
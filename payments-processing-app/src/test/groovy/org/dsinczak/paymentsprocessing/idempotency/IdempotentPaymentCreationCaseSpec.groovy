@@ -0,0 +1,188 @@
+package org.dsinczak.paymentsprocessing.idempotency
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import io.vavr.collection.List
+import io.vavr.control.Either
+import io.vavr.control.Option
+import org.dsinczak.paymentsprocessing.PaymentsService
+import org.dsinczak.paymentsprocessing.api.PaymentDto
+import org.springframework.dao.DuplicateKeyException
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.scheduling.TaskScheduler
+import org.springframework.transaction.support.TransactionCallback
+import org.springframework.transaction.support.TransactionOperations
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import static org.dsinczak.paymentsprocessing.shared.ErrorMessage.error
+
+class IdempotentPaymentCreationCaseSpec extends Specification {
+
+    def clock = Clock.fixed(Instant.parse("2020-02-20T10:00:00Z"), ZoneOffset.UTC)
+
+    def paymentsService = Mock(PaymentsService)
+
+    def repository = Mock(IdempotencyRecordRepository)
+
+    def jdbcTemplate = Mock(JdbcTemplate)
+
+    def transactionOperations = Mock(TransactionOperations) {
+        execute(_) >> { TransactionCallback callback -> callback.doInTransaction(null) }
+    }
+
+    def creation = new IdempotentPaymentCreation(paymentsService, repository, jdbcTemplate, transactionOperations, new ObjectMapper(),
+            new IdempotencyProperties(), clock, Mock(TaskScheduler))
+
+    def 'should create payment once and answer replay from memory'() {
+        given:
+            def paymentId = UUID.randomUUID()
+        when:
+            def first = creation.createNewPayment("key", payment("details"))
+            def replay = creation.createNewPayment("key", payment("details"))
+        then:
+            1 * repository.findByIdempotencyKey("key") >> Option.none()
+            1 * paymentsService.createNewPayment(payment("details")) >> Either.right(paymentId)
+            1 * jdbcTemplate.update(_, "key", _, paymentId, _)
+            first == Either.right(paymentId)
+            replay == Either.right(paymentId)
+    }
+
+    def 'should answer replay from database when key is not in memory'() {
+        given:
+            def paymentId = UUID.randomUUID()
+            def requestHash = storedHash("details")
+        when:
+            def replay = creation.createNewPayment("stored", payment("details"))
+        then:
+            1 * repository.findByIdempotencyKey("stored") >> Option.of(new IdempotencyRecord("stored", requestHash, paymentId, Instant.now(clock)))
+            0 * paymentsService.createNewPayment(_)
+            replay == Either.right(paymentId)
+    }
+
+    def 'should reject key used for different payment'() {
+        given:
+            repository.findByIdempotencyKey("key") >> Option.none()
+            paymentsService.createNewPayment(_) >> Either.right(UUID.randomUUID())
+            creation.createNewPayment("key", payment("details"))
+        when:
+            def reused = creation.createNewPayment("key", payment("other details"))
+        then:
+            reused.getLeft() == List.of(error("Idempotency key {0} was already used for different payment.", "key"))
+    }
+
+    def 'should validate rejected payment again on replay'() {
+        given:
+            repository.findByIdempotencyKey("key") >> Option.none()
+        when:
+            creation.createNewPayment("key", payment(null))
+            def replay = creation.createNewPayment("key", payment(null))
+        then:
+            2 * paymentsService.createNewPayment(_) >> Either.left(List.of(error("Details are required")))
+            0 * jdbcTemplate.update(*_)
+            replay.isLeft()
+    }
+
+    def 'should reject blank and too long key'() {
+        expect:
+            creation.createNewPayment(key, payment("details")).isLeft()
+        where:
+            key << ["", "  ", "k" * 256]
+    }
+
+    def 'should return payment stored concurrently by other instance'() {
+        given:
+            def paymentId = UUID.randomUUID()
+            def requestHash = storedHash("details")
+        when:
+            def created = creation.createNewPayment("key", payment("details"))
+        then:
+            2 * repository.findByIdempotencyKey("key") >>> [Option.none(), Option.of(new IdempotencyRecord("key", requestHash, paymentId, Instant.now(clock)))]
+            1 * paymentsService.createNewPayment(_) >> Either.right(UUID.randomUUID())
+            1 * jdbcTemplate.update(*_) >> { throw new DuplicateKeyException("idempotency_record") }
+            created == Either.right(paymentId)
+    }
+
+    def 'should let only one of concurrent duplicates create the payment'() {
+        given:
+            def paymentId = UUID.randomUUID()
+            def started = new CountDownLatch(1)
+            def release = new CountDownLatch(1)
+            def executor = Executors.newFixedThreadPool(4)
+            repository.findByIdempotencyKey("key") >> Option.none()
+        when:
+            def first = executor.submit({ creation.createNewPayment("key", payment("details")) } as Callable)
+            started.await(5, TimeUnit.SECONDS)
+            def duplicates = (1..3).collect { executor.submit({ creation.createNewPayment("key", payment("details")) } as Callable) }
+            Thread.sleep(100)
+            release.countDown()
+            def results = ([first] + duplicates).collect { it.get(5, TimeUnit.SECONDS) }
+        then:
+            1 * paymentsService.createNewPayment(_) >> {
+                started.countDown()
+                release.await(5, TimeUnit.SECONDS)
+                Either.right(paymentId)
+            }
+            results.every { it == Either.right(paymentId) }
+        cleanup:
+            executor.shutdown()
+    }
+
+    def 'should evict least recently used and expired keys from memory'() {
+        given:
+            def now = Instant.parse("2020-02-20T10:00:00Z")
+            def mutableClock = Mock(Clock) {
+                instant() >> { now }
+            }
+            def cache = new IdempotencyCache(2, Duration.ofMinutes(10), mutableClock)
+            def payment = new IdempotencyCache.CreatedPayment("hash", UUID.randomUUID())
+        when:
+            cache.put("a", payment)
+            cache.put("b", payment)
+            cache.get("a")
+            cache.put("c", payment)
+        then:
+            cache.get("a").isDefined()
+            cache.get("b").isEmpty()
+            cache.get("c").isDefined()
+        when:
+            now = now.plus(Duration.ofMinutes(10))
+        then:
+            cache.get("a").isEmpty()
+            cache.size() == 1
+    }
+
+    private static PaymentDto payment(String details) {
+        PaymentDto.builder()
+                .type("TYPE1")
+                .amount("10")
+                .currency("USD")
+                .creditorIban("SE3550000000054910000003")
+                .debtorIban("CH9300762011623852957")
+                .details(details)
+                .build()
+    }
+
+    /**
+     * Hash of the payment as first request stored it.
+     */
+    private String storedHash(String details) {
+        def hash = null
+        def other = new IdempotentPaymentCreation(Stub(PaymentsService) {
+            createNewPayment(_) >> Either.right(UUID.randomUUID())
+        }, Stub(IdempotencyRecordRepository) {
+            findByIdempotencyKey(_) >> Option.none()
+        }, Stub(JdbcTemplate) {
+            update(*_) >> { args -> hash = args[1][1]; 1 }
+        }, transactionOperations, new ObjectMapper(), new IdempotencyProperties(), clock, Stub(TaskScheduler))
+        other.createNewPayment("any", payment(details))
+        hash
+    }
+}
@@ -0,0 +1,166 @@
+package org.dsinczak.paymentsprocessing.notification.journal
+
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.time.Duration
+
+import static org.dsinczak.paymentsprocessing.notification.journal.Journal.FsyncPolicy.ALWAYS
+import static org.dsinczak.paymentsprocessing.notification.journal.Journal.FsyncPolicy.GROUP
+import static org.dsinczak.paymentsprocessing.notification.journal.Journal.FsyncPolicy.NEVER
+
+class JournalCaseSpec extends Specification {
+
+    static final int SEGMENT_SIZE = 100
+
+    Path directory = Files.createTempDirectory("journal")
+
+    Journal journal
+
+    def cleanup() {
+        journal?.close()
+        directory.toFile().deleteDir()
+    }
+
+    def 'should read appended records in order'() {
+        given:
+            journal = open(NEVER)
+        when:
+            def first = journal.append((byte) 1, Journal.NEW_TRANSACTION, bytes("a"))
+            def second = journal.append((byte) 2, first, bytes("bc"))
+        then:
+            def firstRecord = journal.read(first).get()
+            firstRecord.type == (byte) 1
+            firstRecord.transactionId == first
+            new String(firstRecord.payload) == "a"
+            firstRecord.nextPosition == second
+        and:
+            def secondRecord = journal.read(second).get()
+            secondRecord.transactionId == first
+            new String(secondRecord.payload) == "bc"
+            journal.read(secondRecord.nextPosition).isEmpty()
+    }
+
+    def 'should start next segment when record does not fit into current one'() {
+        given:
+            journal = open(NEVER)
+        when:
+            def positions = (0..<5).collect { journal.append((byte) 1, Journal.NEW_TRANSACTION, new byte[20]) }
+        then:
+            segmentFiles() == ["00000000000000000000.segment", "00000000000000000001.segment", "00000000000000000002.segment"]
+            positions == [0L, 37L, SEGMENT_SIZE, SEGMENT_SIZE + 37L, 2L * SEGMENT_SIZE]
+        and: 'reader skips end of segment'
+            readAll(0)*.position == positions
+    }
+
+    def 'should reject record larger than segment'() {
+        given:
+            journal = open(NEVER)
+        when:
+            journal.append((byte) 1, Journal.NEW_TRANSACTION, new byte[SEGMENT_SIZE])
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def 'should continue after last record when reopened'() {
+        given:
+            journal = open(ALWAYS)
+            (0..<3).each { journal.append((byte) 1, Journal.NEW_TRANSACTION, new byte[20]) }
+            def writePosition = journal.writePosition
+            journal.close()
+        when:
+            journal = open(ALWAYS)
+            journal.append((byte) 2, Journal.NEW_TRANSACTION, new byte[20])
+        then:
+            journal.read(writePosition).get().type == (byte) 2
+            readAll(0).size() == 4
+    }
+
+    def 'should cut off torn record when reopened'() {
+        given:
+            journal = open(NEVER)
+            def valid = journal.append((byte) 1, Journal.NEW_TRANSACTION, bytes("valid"))
+            def torn = journal.append((byte) 1, Journal.NEW_TRANSACTION, bytes("torn"))
+            journal.close()
+            corrupt(torn + 12)
+        when:
+            journal = open(NEVER)
+        then:
+            journal.writePosition == torn
+            readAll(0)*.position == [valid]
+        when:
+            def next = journal.append((byte) 1, Journal.NEW_TRANSACTION, bytes("next"))
+        then:
+            next == torn
+            readAll(0)*.payload.collect { new String(it) } == ["valid", "next"]
+    }
+
+    def 'should make record durable with group commit'() {
+        given:
+            journal = open(GROUP)
+        when:
+            def position = journal.append((byte) 1, Journal.NEW_TRANSACTION, bytes("a"))
+            journal.awaitDurable(position)
+        then:
+            noExceptionThrown()
+    }
+
+    def 'should delete segments before position but keep the one being written'() {
+        given:
+            journal = open(NEVER)
+            (0..<5).each { journal.append((byte) 1, Journal.NEW_TRANSACTION, new byte[20]) }
+        when:
+            journal.deleteSegmentsBefore(SEGMENT_SIZE + 37)
+        then:
+            segmentFiles() == ["00000000000000000001.segment", "00000000000000000002.segment"]
+        when:
+            journal.deleteSegmentsBefore(10 * SEGMENT_SIZE)
+        then:
+            segmentFiles() == ["00000000000000000002.segment"]
+            journal.read(2 * SEGMENT_SIZE).isDefined()
+    }
+
+    def 'should store checkpoint'() {
+        given:
+            def checkpoint = new JournalCheckpoint(directory.resolve("consumer.checkpoint"))
+        expect:
+            checkpoint.read() == 0
+        when:
+            checkpoint.write(42)
+            checkpoint.write(4242)
+        then:
+            new JournalCheckpoint(directory.resolve("consumer.checkpoint")).read() == 4242
+    }
+
+    private Journal open(Journal.FsyncPolicy fsyncPolicy) {
+        Journal.open(directory, SEGMENT_SIZE, fsyncPolicy, Duration.ofMillis(1))
+    }
+
+    private List<JournalRecord> readAll(long from) {
+        def records = []
+        def record = journal.read(from)
+        while (record.isDefined()) {
+            records << record.get()
+            record = journal.read(record.get().nextPosition)
+        }
+        records
+    }
+
+    private List<String> segmentFiles() {
+        Files.list(directory).collect { it.fileName.toString() }.findAll { it.endsWith(".segment") }.sort()
+    }
+
+    private void corrupt(long position) {
+        FileChannel.open(directory.resolve("00000000000000000000.segment"), StandardOpenOption.WRITE).withCloseable {
+            it.write(ByteBuffer.wrap([(byte) 0xFF] as byte[]), position)
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        value.bytes
+    }
+}
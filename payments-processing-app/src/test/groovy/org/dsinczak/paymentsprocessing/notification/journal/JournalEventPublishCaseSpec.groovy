@@ -0,0 +1,267 @@
+package org.dsinczak.paymentsprocessing.notification.journal
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventCodec
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderConduit
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderProperties
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeadLetterEventRepository
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeliveryCircuitBreaker
+import org.springframework.scheduling.TaskScheduler
+import org.springframework.transaction.support.TransactionSynchronization
+import org.springframework.transaction.support.TransactionSynchronizationManager
+import org.springframework.transaction.support.TransactionSynchronizationUtils
+import spock.lang.Specification
+
+import java.nio.file.Files
+import java.nio.file.Path
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.util.concurrent.CompletableFuture
+
+class JournalEventPublishCaseSpec extends Specification {
+
+    Path directory = Files.createTempDirectory("journal")
+
+    def properties = new DbEventSenderProperties(batchSize: 10, maxAttempts: 3)
+
+    def eventCodec = new DbEventCodec(ObjectMapper.newInstance(), properties)
+
+    def eventSenderConduit = Mock(DbEventSenderConduit)
+
+    def deadLetterRepository = Mock(DeadLetterEventRepository)
+
+    def clock = Clock.fixed(Instant.parse("1985-02-19T16:00:00Z"), ZoneId.of("UTC"))
+
+    def taskScheduler = Mock(TaskScheduler)
+
+    def circuitBreaker = Mock(DeliveryCircuitBreaker) {
+        permittedCalls(_) >> { int requested -> requested }
+    }
+
+    def checkpoint = new JournalCheckpoint(directory.resolve("consumer.checkpoint"))
+
+    Journal journal = openJournal()
+
+    JournalEventSender eventSender = newSender()
+
+    JournalEventPublisher publisher = new JournalEventPublisher(journal, eventCodec, eventSender)
+
+    def cleanup() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization()
+        }
+        journal.close()
+        directory.toFile().deleteDir()
+    }
+
+    def 'should deliver event published outside of transaction'() {
+        given:
+            def event = new PaymentCreatedEvent("p1", "TYPE1")
+        when:
+            publisher.publish(event)
+            def sent = eventSender.drainJournal()
+        then:
+            1 * eventSenderConduit.send(event) >> delivered()
+            sent == 1
+    }
+
+    def 'should append events of transaction only when it commits'() {
+        given:
+            def created = new PaymentCreatedEvent("p1", "TYPE1")
+            def cancelled = new PaymentCancelledEvent("p1")
+            TransactionSynchronizationManager.initSynchronization()
+        when:
+            publisher.publish(created)
+            publisher.publish(cancelled)
+        then:
+            journal.writePosition == 0
+        when:
+            commit()
+            eventSender.drainJournal()
+        then:
+            1 * eventSenderConduit.send(created) >> delivered()
+        then:
+            1 * eventSenderConduit.send(cancelled) >> delivered()
+    }
+
+    def 'should not deliver events of rolled back transaction'() {
+        given:
+            TransactionSynchronizationManager.initSynchronization()
+            publisher.publish(new PaymentCreatedEvent("p1", "TYPE1"))
+        when:
+            TransactionSynchronizationUtils.triggerBeforeCommit(false)
+            complete(TransactionSynchronization.STATUS_ROLLED_BACK)
+            def sent = eventSender.drainJournal()
+        then:
+            0 * eventSenderConduit.send(_)
+            sent == 0
+    }
+
+    def 'should hold back events of payment while its earlier event waits for commit'() {
+        given: 'transaction is in the middle of commit'
+            def created = new PaymentCreatedEvent("p1", "TYPE1")
+            def open = journal.append(JournalEventPublisher.EVENT, Journal.NEW_TRANSACTION, eventCodec.toDbEvent(created).payload)
+        and: 'later transactions of the same and other payment committed already'
+            def cancelled = new PaymentCancelledEvent("p1")
+            def other = new PaymentCreatedEvent("p2", "TYPE1")
+            publisher.publish(cancelled)
+            publisher.publish(other)
+        when:
+            eventSender.drainJournal()
+        then:
+            1 * eventSenderConduit.send(other) >> delivered()
+            0 * eventSenderConduit.send(_)
+        when:
+            journal.append(JournalEventPublisher.COMMIT, open, new byte[0])
+            eventSender.drainJournal()
+        then:
+            1 * eventSenderConduit.send(created) >> delivered()
+        then:
+            1 * eventSenderConduit.send(cancelled) >> delivered()
+    }
+
+    def 'should retry failed event and not send later event of its payment before'() {
+        given:
+            properties.initialRetryBackoff = Duration.ZERO
+            def created = new PaymentCreatedEvent("p1", "TYPE1")
+            def cancelled = new PaymentCancelledEvent("p1")
+            publisher.publish(created)
+            publisher.publish(cancelled)
+        when:
+            eventSender.drainJournal()
+        then:
+            1 * eventSenderConduit.send(created) >> failed()
+            0 * eventSenderConduit.send(_)
+        when:
+            eventSender.drainJournal()
+        then:
+            1 * eventSenderConduit.send(created) >> delivered()
+        then:
+            1 * eventSenderConduit.send(cancelled) >> delivered()
+    }
+
+    def 'should move event to dead letter table after last attempt'() {
+        given:
+            properties.initialRetryBackoff = Duration.ZERO
+            def event = new PaymentCreatedEvent("p1", "TYPE1")
+            publisher.publish(event)
+        when:
+            3.times { eventSender.drainJournal() }
+        then:
+            3 * eventSenderConduit.send(event) >> failed()
+            1 * deadLetterRepository.save({ it.attempts == 3 && it.payload == eventCodec.toDbEvent(event).payload })
+        when:
+            eventSender.drainJournal()
+        then:
+            0 * eventSenderConduit.send(_)
+    }
+
+    def 'should move unreadable event to dead letter table and deliver the rest'() {
+        given:
+            def garbage = "not an event".bytes
+            def position = journal.append(JournalEventPublisher.EVENT, Journal.NEW_TRANSACTION, garbage)
+            journal.append(JournalEventPublisher.COMMIT, position, new byte[0])
+            def event = new PaymentCreatedEvent("p1", "TYPE1")
+            publisher.publish(event)
+        when: 'dead letter table is not available'
+            eventSender.drainJournal()
+        then: 'reading stops before unreadable event'
+            1 * deadLetterRepository.save(_) >> { throw new IllegalStateException("Database down") }
+            0 * eventSenderConduit.send(_)
+        when:
+            eventSender.drainJournal()
+        then:
+            1 * deadLetterRepository.save({ it.outboxId == position && it.payload == garbage })
+            1 * eventSenderConduit.send(event) >> delivered()
+    }
+
+    def 'should read journal only up to a few batches of pending events'() {
+        given:
+            properties.batchSize = 2
+            def events = (1..20).collect { new PaymentCreatedEvent("p" + it, "TYPE1") }
+            events.each { publisher.publish(it) }
+            def pendingAtSend = []
+        when:
+            def sent = eventSender.drainJournal()
+        then:
+            20 * eventSenderConduit.send(_) >> {
+                pendingAtSend << eventSender.@pending.size()
+                delivered()
+            }
+            sent == 20
+            pendingAtSend.max() == 8
+    }
+
+    def 'should not deliver again events before checkpoint after restart'() {
+        given:
+            def first = new PaymentCreatedEvent("p1", "TYPE1")
+            def second = new PaymentCreatedEvent("p2", "TYPE1")
+            publisher.publish(first)
+        when:
+            eventSender.drainJournal()
+        then:
+            1 * eventSenderConduit.send(first) >> delivered()
+        when:
+            publisher.publish(second)
+            restart()
+            eventSender.drainJournal()
+        then:
+            1 * eventSenderConduit.send(second) >> delivered()
+            0 * eventSenderConduit.send(_)
+        when:
+            restart()
+            eventSender.drainJournal()
+        then:
+            0 * eventSenderConduit.send(_)
+    }
+
+    def 'should deliver events of transaction left without outcome by crashed process'() {
+        given:
+            def event = new PaymentCreatedEvent("p1", "TYPE1")
+            journal.append(JournalEventPublisher.EVENT, Journal.NEW_TRANSACTION, eventCodec.toDbEvent(event).payload)
+        when:
+            restart()
+            eventSender.drainJournal()
+        then:
+            1 * eventSenderConduit.send(event) >> delivered()
+    }
+
+    private void commit() {
+        TransactionSynchronizationUtils.triggerBeforeCommit(false)
+        complete(TransactionSynchronization.STATUS_COMMITTED)
+    }
+
+    private static void complete(int status) {
+        def synchronizations = TransactionSynchronizationManager.getSynchronizations()
+        TransactionSynchronizationManager.clearSynchronization()
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, status)
+    }
+
+    private void restart() {
+        journal.close()
+        journal = openJournal()
+        eventSender = newSender()
+        publisher = new JournalEventPublisher(journal, eventCodec, eventSender)
+    }
+
+    private Journal openJournal() {
+        Journal.open(directory, 4096, Journal.FsyncPolicy.NEVER, Duration.ofMillis(1))
+    }
+
+    private JournalEventSender newSender() {
+        new JournalEventSender(journal, checkpoint, eventSenderConduit, deadLetterRepository, circuitBreaker, eventCodec, properties, clock, taskScheduler)
+    }
+
+    private static CompletableFuture<Void> delivered() {
+        CompletableFuture.completedFuture(null)
+    }
+
+    private static CompletableFuture<Void> failed() {
+        CompletableFuture.failedFuture(new IllegalStateException("Destination down"))
+    }
+}
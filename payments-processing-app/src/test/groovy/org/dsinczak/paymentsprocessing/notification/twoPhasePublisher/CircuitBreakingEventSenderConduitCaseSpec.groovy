@@ -0,0 +1,61 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher
+
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.TimeoutException
+
+class CircuitBreakingEventSenderConduitCaseSpec extends Specification {
+
+    def destinationConduit = Mock(DbEventSenderConduit)
+
+    def circuitBreaker = Mock(DeliveryCircuitBreaker)
+
+    def conduit = new CircuitBreakingEventSenderConduit(destinationConduit, circuitBreaker, Duration.ofMillis(50))
+
+    def event = new PaymentCreatedEvent("1", "TYPE1")
+
+    def 'should record successful delivery'() {
+        when:
+            conduit.send(event).toCompletableFuture().get()
+        then:
+            1 * circuitBreaker.tryAcquirePermission() >> true
+            1 * destinationConduit.send(event) >> CompletableFuture.completedFuture(null)
+            1 * circuitBreaker.onSuccess()
+            0 * circuitBreaker.onFailure()
+    }
+
+    def 'should record failed delivery'() {
+        when:
+            conduit.send(event).toCompletableFuture().get()
+        then:
+            1 * circuitBreaker.tryAcquirePermission() >> true
+            1 * destinationConduit.send(event) >> CompletableFuture.failedFuture(new IllegalStateException("Destination down"))
+            1 * circuitBreaker.onFailure()
+            thrown(ExecutionException)
+    }
+
+    def 'should record delivery that does not complete in time as failed'() {
+        when:
+            conduit.send(event).toCompletableFuture().get()
+        then:
+            1 * circuitBreaker.tryAcquirePermission() >> true
+            1 * destinationConduit.send(event) >> new CompletableFuture<Void>()
+            1 * circuitBreaker.onFailure()
+            def e = thrown(ExecutionException)
+            e.cause instanceof TimeoutException
+    }
+
+    def 'should not reach destination when circuit does not permit call'() {
+        when:
+            conduit.send(event).toCompletableFuture().get()
+        then:
+            1 * circuitBreaker.tryAcquirePermission() >> false
+            0 * destinationConduit.send(_)
+            def e = thrown(ExecutionException)
+            e.cause instanceof DeliveryCircuitOpenException
+    }
+}
@@ -0,0 +1,85 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedAndCancelledEvent
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class DbEventCodecCaseSpec extends Specification {
+
+    def objectMapper = new ObjectMapper()
+
+    def properties = new DbEventSenderProperties()
+
+    def codec = new DbEventCodec(objectMapper, properties)
+
+    @Unroll
+    def 'should read back #event.class.simpleName written in version #version'() {
+        given:
+            properties.payloadVersion = version
+            def writer = new DbEventCodec(objectMapper, properties)
+        when:
+            def read = codec.fromDbEvent(writer.toDbEvent(event))
+        then:
+            read.class == event.class
+            read.eventId == event.eventId
+            read.paymentId == event.paymentId
+            !(event.hasProperty('type')) || read.type == event.type
+            !(event instanceof PaymentCreatedAndCancelledEvent) || read.createdEventId == event.createdEventId
+        where:
+            [event, version] << [[new PaymentCreatedEvent(UUID.randomUUID().toString(), "TYPE1"),
+                                  new PaymentCancelledEvent(UUID.randomUUID().toString()),
+                                  new PaymentCreatedEvent("not-uuid", "zażółć"),
+                                  new PaymentCreatedEvent(UUID.randomUUID().toString().toUpperCase(), null),
+                                  new PaymentCancelledEvent("a" * 300),
+                                  new PaymentCreatedAndCancelledEvent(new PaymentCreatedEvent(UUID.randomUUID().toString(), "TYPE2"),
+                                          new PaymentCancelledEvent(UUID.randomUUID().toString()))],
+                                 [(byte) 0, (byte) 1]].combinations()
+    }
+
+    def 'should store uuid ids as raw bytes'() {
+        given:
+            def event = new PaymentCreatedEvent(UUID.randomUUID().toString(), "TYPE1")
+        when:
+            def dbEvent = codec.toDbEvent(event)
+        then:
+            dbEvent.payload.length == 1 + 1 + 17 + 17 + 1 + 1 + 5
+            dbEvent.payload.length < objectMapper.writeValueAsBytes(event).length / 2
+    }
+
+    def 'should read legacy JSON row'() {
+        given:
+            def event = new PaymentCancelledEvent(UUID.randomUUID().toString())
+            def dbEvent = new DbEvent(objectMapper.writeValueAsString(event))
+        expect:
+            codec.fromDbEvent(dbEvent) == event
+    }
+
+    @Unroll
+    def 'should report #description as unreadable'() {
+        when:
+            codec.fromDbEvent(dbEvent)
+        then:
+            thrown(UnreadableEventException)
+        where:
+            description               | dbEvent
+            'malformed JSON'          | new DbEvent("{not a payment event")
+            'unknown payload version' | new DbEvent([42, 1, 0, 0] as byte[], null)
+            'empty payload'           | new DbEvent(new byte[0], null)
+            'unknown event type'      | new DbEvent([1, 9, 0, 0] as byte[], null)
+            'truncated payload'       | new DbEvent([1, 2, 1, 7, 7] as byte[], null)
+            'trailing bytes'          | new DbEvent([1, 2, 0, 0, 0] as byte[], null)
+            'row without event'       | new DbEvent()
+    }
+
+    def 'should refuse unknown write version'() {
+        given:
+            properties.payloadVersion = 7
+        when:
+            new DbEventCodec(objectMapper, properties)
+        then:
+            thrown(IllegalArgumentException)
+    }
+}
@@ -0,0 +1,124 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+
+import static org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeliveryCircuitBreaker.State.CLOSED
+import static org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeliveryCircuitBreaker.State.HALF_OPEN
+import static org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeliveryCircuitBreaker.State.OPEN
+
+class DeliveryCircuitBreakerCaseSpec extends Specification {
+
+    def now = Instant.parse("1985-02-19T16:00:00Z")
+
+    def clock = Stub(Clock) {
+        instant() >> { now }
+    }
+
+    def meterRegistry = new SimpleMeterRegistry()
+
+    def config = new DbEventSenderProperties.CircuitBreaker(
+            failureRateThreshold: 50, slidingWindowSize: 4, minimumNumberOfCalls: 4, openDuration: Duration.ofSeconds(10), halfOpenProbes: 2)
+
+    def circuitBreaker = new DeliveryCircuitBreaker("destination:8080", config, clock, meterRegistry)
+
+    def 'should stay closed until minimum number of calls is recorded'() {
+        when:
+            3.times { attempt(false) }
+        then:
+            circuitBreaker.state == CLOSED
+            circuitBreaker.permittedCalls(10) == 10
+    }
+
+    def 'should open when failure rate of the window reaches threshold'() {
+        when:
+            attempt(true)
+            attempt(false)
+            attempt(true)
+            attempt(false)
+        then:
+            circuitBreaker.state == OPEN
+            circuitBreaker.permittedCalls(10) == 0
+            !circuitBreaker.tryAcquirePermission()
+    }
+
+    def 'should forget calls that left the window'() {
+        when:
+            attempt(true)
+            attempt(false)
+            attempt(false)
+            attempt(false)
+            attempt(false)
+            attempt(true)
+        then:
+            circuitBreaker.state == CLOSED
+    }
+
+    def 'should permit only probes when open duration passes'() {
+        given:
+            open()
+        when:
+            now = now.plusSeconds(10)
+        then:
+            circuitBreaker.state == HALF_OPEN
+            circuitBreaker.permittedCalls(10) == 2
+        when:
+            circuitBreaker.tryAcquirePermission()
+        then:
+            circuitBreaker.permittedCalls(10) == 1
+    }
+
+    def 'should close when all probes succeed'() {
+        given:
+            open()
+            now = now.plusSeconds(10)
+        when:
+            attempt(false)
+            attempt(false)
+        then:
+            circuitBreaker.state == CLOSED
+    }
+
+    def 'should open again when probe fails'() {
+        given:
+            open()
+            now = now.plusSeconds(10)
+        when:
+            attempt(false)
+            attempt(true)
+        then:
+            circuitBreaker.state == OPEN
+        when:
+            now = now.plusSeconds(9)
+        then:
+            circuitBreaker.state == OPEN
+    }
+
+    def 'should expose state and transitions as metrics'() {
+        when:
+            open()
+            now = now.plusSeconds(10)
+            circuitBreaker.tryAcquirePermission()
+            circuitBreaker.tryAcquirePermission()
+            circuitBreaker.tryAcquirePermission()
+        then:
+            meterRegistry.get("payments.notification.circuit.state").tag("destination", "destination:8080").gauge().value() == HALF_OPEN.ordinal()
+            meterRegistry.get("payments.notification.circuit.transitions").tags("from", "CLOSED", "to", "OPEN").counter().count() == 1
+            meterRegistry.get("payments.notification.circuit.transitions").tags("from", "OPEN", "to", "HALF_OPEN").counter().count() == 1
+            meterRegistry.get("payments.notification.circuit.rejected").counter().count() == 1
+    }
+
+    private void open() {
+        4.times { attempt(true) }
+        assert circuitBreaker.state == OPEN
+    }
+
+    private void attempt(boolean failure) {
+        assert circuitBreaker.tryAcquirePermission()
+        failure ? circuitBreaker.onFailure() : circuitBreaker.onSuccess()
+    }
+}
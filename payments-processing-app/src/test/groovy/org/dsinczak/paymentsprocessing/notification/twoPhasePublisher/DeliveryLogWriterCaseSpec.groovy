@@ -0,0 +1,84 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.springframework.jdbc.core.JdbcTemplate
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+
+class DeliveryLogWriterCaseSpec extends Specification {
+
+    def jdbcTemplate = Mock(JdbcTemplate)
+
+    def repository = Mock(DeliveryLogRepository)
+
+    def properties = new DbEventSenderProperties(deliveryLog: new DbEventSenderProperties.DeliveryLog(bufferSize: 5, batchSize: 2, retention: Duration.ofDays(1)))
+
+    def clock = Clock.fixed(Instant.parse("1985-02-19T16:00:00Z"), ZoneId.of("UTC"))
+
+    def meterRegistry = new SimpleMeterRegistry()
+
+    def writer = new DeliveryLogWriter(jdbcTemplate, repository, properties, clock, meterRegistry)
+
+    def 'should write buffered entries in batches'() {
+        given:
+            3.times { writer.record(entry(it)) }
+        when:
+            def written = writer.flush()
+        then:
+            1 * jdbcTemplate.batchUpdate(_, { it*.outboxId == [0L, 1L] }, 2, _)
+        then:
+            1 * jdbcTemplate.batchUpdate(_, { it*.outboxId == [2L] }, 1, _)
+            written == 3
+            meterRegistry.get("payments.notification.delivery.log.written").counter().count() == 3
+    }
+
+    def 'should drop entries when buffer is full'() {
+        when:
+            7.times { writer.record(entry(it)) }
+        then:
+            meterRegistry.get("payments.notification.delivery.log.dropped").counter().count() == 2
+        when:
+            writer.flush()
+        then:
+            3 * jdbcTemplate.batchUpdate(*_)
+    }
+
+    def 'should count entries of failed batch as dropped and keep writing'() {
+        given:
+            3.times { writer.record(entry(it)) }
+            jdbcTemplate.batchUpdate(_, { it.size() == 2 }, _, _) >> { throw new IllegalStateException("Database down") }
+        when:
+            def written = writer.flush()
+        then:
+            written == 1
+            meterRegistry.get("payments.notification.delivery.log.dropped").counter().count() == 2
+    }
+
+    def 'should not record anything when disabled'() {
+        given:
+            properties.deliveryLog.enabled = false
+        when:
+            writer.record(entry(1))
+            writer.flush()
+        then:
+            0 * jdbcTemplate.batchUpdate(*_)
+    }
+
+    def 'should purge entries older than retention'() {
+        when:
+            def purged = writer.purge()
+        then:
+            1 * repository.deleteLoggedBefore(Instant.parse("1985-02-18T16:00:00Z")) >> 42
+            purged == 42
+    }
+
+    private DeliveryLogEntry entry(long outboxId) {
+        def dbEvent = new DbEvent(new byte[0], "p1")
+        dbEvent.id = outboxId
+        new DeliveryLogEntry(dbEvent, "e" + outboxId, DeliveryLogEntry.Outcome.DELIVERED, Duration.ofMillis(5), null, clock.instant())
+    }
+}
@@ -0,0 +1,58 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.sun.net.httpserver.HttpServer
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent
+import spock.lang.Shared
+import spock.lang.Specification
+
+import java.net.http.HttpClient
+import java.time.Duration
+import java.util.concurrent.ExecutionException
+
+class HttpEventSenderConduitCaseSpec extends Specification {
+
+    @Shared
+    def objectMapper = ObjectMapper.newInstance()
+
+    def server = HttpServer.create(new InetSocketAddress("localhost", 0), 0)
+
+    def received = []
+
+    def responseStatus = 202
+
+    def conduit = new HttpEventSenderConduit(HttpClient.newHttpClient(), objectMapper,
+            URI.create("http://localhost:${server.address.port}/events"), Duration.ofSeconds(5))
+
+    def setup() {
+        server.createContext("/events") { exchange ->
+            received << exchange.requestBody.text
+            exchange.sendResponseHeaders(responseStatus, -1)
+            exchange.close()
+        }
+        server.start()
+    }
+
+    def cleanup() {
+        server.stop(0)
+    }
+
+    def 'should post event as json'() {
+        given:
+            def event = new PaymentCreatedEvent("123", "TYPE1")
+        when:
+            conduit.send(event).toCompletableFuture().get()
+        then:
+            received == [objectMapper.writeValueAsString(event)]
+    }
+
+    def 'should fail delivery when destination does not accept event'() {
+        given:
+            responseStatus = 500
+        when:
+            conduit.send(new PaymentCreatedEvent("123", "TYPE1")).toCompletableFuture().get()
+        then:
+            def e = thrown(ExecutionException)
+            e.cause instanceof IllegalStateException
+    }
+}
@@ -0,0 +1,64 @@
+package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher
+
+import spock.lang.Specification
+
+import java.util.concurrent.CompletableFuture
+
+class KeyOrderedDispatcherCaseSpec extends Specification {
+
+    def dispatcher = new KeyOrderedDispatcher(4)
+
+    def started = []
+
+    def 'should start task of a key only after previous task of that key completed'() {
+        given:
+            def first = new CompletableFuture<String>()
+        when:
+            dispatcher.dispatch("payment-1", task("first", first))
+            def second = dispatcher.dispatch("payment-1", task("second", CompletableFuture.completedFuture("second")))
+        then:
+            started == ["first"]
+            !second.done
+        when:
+            first.complete("first")
+        then:
+            started == ["first", "second"]
+            second.join() == "second"
+    }
+
+    def 'should run tasks of keys in different lanes in parallel'() {
+        given:
+            def keys = (1..100).collect { "payment-$it" as String }
+            def otherLaneKey = keys.find { dispatcher.laneOf(it) != dispatcher.laneOf("payment-0") }
+        when:
+            dispatcher.dispatch("payment-0", task("blocked", new CompletableFuture<String>()))
+            def other = dispatcher.dispatch(otherLaneKey, task("other", CompletableFuture.completedFuture("other")))
+        then:
+            started == ["blocked", "other"]
+            other.join() == "other"
+    }
+
+    def 'should continue lane after failed task'() {
+        when:
+            def failed = dispatcher.dispatch("payment-1", task("failed", CompletableFuture.failedFuture(new IllegalStateException())))
+            def next = dispatcher.dispatch("payment-1", task("next", CompletableFuture.completedFuture("next")))
+        then:
+            failed.completedExceptionally
+            next.join() == "next"
+    }
+
+    def 'should spread keys over all lanes'() {
+        when:
+            def lanes = (1..1000).collect { dispatcher.laneOf(UUID.randomUUID().toString()) }.countBy { it }
+        then:
+            lanes.keySet() == [0, 1, 2, 3] as Set
+            lanes.values().every { it > 150 }
+    }
+
+    private def task(String name, CompletableFuture<String> result) {
+        return {
+            started << name
+            result
+        }
+    }
+}
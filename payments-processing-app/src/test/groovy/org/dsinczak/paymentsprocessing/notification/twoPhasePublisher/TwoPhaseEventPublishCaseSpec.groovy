@@ -1,12 +1,23 @@
 package org.dsinczak.paymentsprocessing.notification.twoPhasePublisher
 
 import com.fasterxml.jackson.databind.ObjectMapper
-import io.vavr.control.Option
+import io.vavr.collection.List
 import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedAndCancelledEvent
 import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent
+import org.springframework.data.domain.PageRequest
+import org.springframework.scheduling.TaskScheduler
 import spock.lang.Shared
 import spock.lang.Specification
 
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
 class TwoPhaseEventPublishCaseSpec extends Specification {
 
     @Shared
@@ -16,26 +27,491 @@ class TwoPhaseEventPublishCaseSpec extends Specification {
 
     def eventSenderConduit = Mock(DbEventSenderConduit)
 
-    def 'should publish event to db'() {
+    def properties = new DbEventSenderProperties(batchSize: 2, instanceId: "node-1")
+
+    def clock = Clock.fixed(Instant.parse("1985-02-19T16:00:00Z"), ZoneId.of("UTC"))
+
+    def taskScheduler = Mock(TaskScheduler)
+
+    def quarantine = Mock(DbEventQuarantine)
+
+    def deliveryLog = Mock(DeliveryLogWriter)
+
+    def eventCodec = new DbEventCodec(objectMapper, properties)
+
+    def circuitBreaker = Mock(DeliveryCircuitBreaker) {
+        permittedCalls(_) >> { int requested -> requested }
+    }
+
+    def eventSender = new DbEventSender(eventRepository, eventSenderConduit, quarantine, deliveryLog, circuitBreaker, eventCodec, properties, clock, taskScheduler)
+
+    def 'should publish event to db in compact encoding and wake up sender'() {
         given:
             def event = new PaymentCancelledEvent("123")
-            def publisher = new DbEventPublisher(eventRepository, objectMapper)
+            def sender = Mock(DbEventSender)
+            def publisher = new DbEventPublisher(eventRepository, eventCodec, sender)
         when:
             publisher.publish(event)
         then:
-            1 * eventRepository.save(new DbEvent(objectMapper.writeValueAsString(event)))
+            1 * eventRepository.save({ DbEvent dbEvent ->
+                dbEvent.paymentId == "123" && dbEvent.event == null && dbEvent.payload[0] == BinaryOutboxCodec.VERSION
+            })
+        then:
+            1 * sender.wakeUp()
+    }
+
+    def 'should coalesce wake ups into single drain cycle'() {
+        when:
+            eventSender.wakeUp()
+            eventSender.wakeUp()
+        then:
+            1 * taskScheduler.schedule(_ as Runnable, clock.instant())
+    }
+
+    def 'should not query empty outbox again until poll interval elapses'() {
+        when:
+            eventSender.sendEvents()
+            eventSender.sendEvents()
+        then:
+            1 * eventRepository.findClaimableIds(*_) >> List.empty()
+    }
+
+    def 'should poll on every tick while events are found'() {
+        given:
+            eventRepository.claim(*_) >> 1
+            eventRepository.findClaimed(*_) >> List.of(dbEvent(1, objectMapper.writeValueAsString(new PaymentCreatedEvent("1", "TYPE1"))))
+            eventSenderConduit.send(_) >> delivered()
+        when:
+            eventSender.sendEvents()
+            eventSender.sendEvents()
+        then:
+            2 * eventRepository.findClaimableIds(*_) >> List.of(1L)
     }
 
     def 'should load event from repository and send using conduit'() {
         given:
             def event = new PaymentCreatedEvent("123", "TYPE1")
             def eventAsJson = objectMapper.writeValueAsString(event)
-            eventRepository.findTop1ByOrderByIdAsc() >> Option.of(new DbEvent(eventAsJson))
-            def eventSender = new DbEventSender(eventRepository, eventSenderConduit, objectMapper)
+            claimable(dbEvent(1, eventAsJson))
+        when:
+            eventSender.sendEvents()
+        then:
+            1 * eventSenderConduit.send(event) >> delivered()
+            1 * eventRepository.deleteClaimed([1L], "node-1")
+    }
+
+    def 'should keep draining while full batches are found and delete each batch at once'() {
+        given:
+            def events = (1..5).collect { new PaymentCreatedEvent("$it", "TYPE1") }
+            def dbEvents = events.withIndex().collect { e, i -> dbEvent(i + 1, objectMapper.writeValueAsString(e)) }
+            eventRepository.claim(*_) >> { ids, owner, expiry, now -> ids.size() }
+        when:
+            eventSender.sendEvents()
+        then:
+            3 * eventRepository.findClaimableIds(_, _) >>> [List.of(1L, 2L), List.of(3L, 4L), List.of(5L)]
+            3 * eventRepository.findClaimed(*_) >>> [List.ofAll(dbEvents[0..1]), List.ofAll(dbEvents[2..3]), List.of(dbEvents[4])]
+            5 * eventSenderConduit.send(_) >> delivered()
+            1 * eventRepository.deleteClaimed([1L, 2L], "node-1")
+            1 * eventRepository.deleteClaimed([3L, 4L], "node-1")
+            1 * eventRepository.deleteClaimed([5L], "node-1")
+    }
+
+    def 'should not stop batch on failure, delete sent events and retry failed ones later'() {
+        given:
+            properties.batchSize = 3
+            def first = new PaymentCreatedEvent("1", "TYPE1")
+            def second = new PaymentCreatedEvent("2", "TYPE1")
+            claimable(dbEvent(1, objectMapper.writeValueAsString(first)), dbEvent(2, objectMapper.writeValueAsString(second)))
+            eventSenderConduit.send(first) >> CompletableFuture.failedFuture(new IllegalStateException("Destination down"))
+            eventSenderConduit.send(second) >> delivered()
+        when:
+            eventSender.sendEvents()
+        then:
+            1 * eventRepository.deleteClaimed([2L], "node-1")
+            1 * eventRepository.retryLater([1L], "node-1", Instant.parse("1985-02-19T16:00:01Z"))
+    }
+
+    def 'should treat conduit throwing instead of returning failed delivery as failed delivery'() {
+        given:
+            def event = new PaymentCreatedEvent("1", "TYPE1")
+            claimable(dbEvent(1, objectMapper.writeValueAsString(event)))
+            eventSenderConduit.send(event) >> { throw new IllegalStateException("Destination down") }
+        when:
+            eventSender.sendEvents()
+        then:
+            0 * eventRepository.deleteClaimed(*_)
+            1 * eventRepository.retryLater([1L], "node-1", Instant.parse("1985-02-19T16:00:01Z"))
+    }
+
+    def 'should have whole batch in flight before first delivery completes'() {
+        given:
+            properties.batchSize = 3
+            properties.deliveryTimeout = Duration.ofSeconds(1)
+            def first = new PaymentCreatedEvent("1", "TYPE1")
+            def second = new PaymentCreatedEvent("2", "TYPE1")
+            def firstDelivery = new CompletableFuture<Void>()
+            claimable(dbEvent(1, objectMapper.writeValueAsString(first)), dbEvent(2, objectMapper.writeValueAsString(second)))
+            eventSenderConduit.send(first) >> firstDelivery
+            // first delivery completes only after the second one was started
+            eventSenderConduit.send(second) >> { firstDelivery.complete(null); delivered() }
+        when:
+            eventSender.sendEvents()
+        then:
+            1 * eventRepository.deleteClaimed([1L, 2L], "node-1")
+            0 * eventRepository.retryLater(*_)
+    }
+
+    def 'should renew lease of batch while its deliveries run'() {
+        given:
+            properties.leaseDuration = Duration.ofMillis(150)
+            properties.deliveryTimeout = Duration.ofSeconds(1)
+            def event = new PaymentCreatedEvent("1", "TYPE1")
+            claimable(dbEvent(1, objectMapper.writeValueAsString(event)))
+            eventSenderConduit.send(event) >> CompletableFuture.runAsync({}, CompletableFuture.delayedExecutor(400, TimeUnit.MILLISECONDS))
+        when:
+            eventSender.sendEvents()
+        then:
+            (3.._) * eventRepository.renewLease([1L], "node-1", Instant.parse("1985-02-19T16:00:01.150Z")) >> 1
+        then:
+            1 * eventRepository.deleteClaimed([1L], "node-1") >> 1
+    }
+
+    def 'should extend lease up front when one slow payment makes batch outlive lease duration'() {
+        given:
+            properties.batchSize = 5
+            properties.leaseDuration = Duration.ofSeconds(1)
+            properties.deliveryTimeout = Duration.ofMillis(500)
+            claimable(
+                    dbEvent(1, new PaymentCreatedEvent("p1", "TYPE1")),
+                    dbEvent(2, new PaymentCancelledEvent("p1")),
+                    dbEvent(3, new PaymentCreatedEvent("p1", "TYPE2")),
+                    dbEvent(4, new PaymentCreatedEvent("p2", "TYPE1")))
+            eventRepository.findPaymentIdsWithPrecedingEvents(*_) >> ([] as Set)
+            def sent = []
+            def sentBeforeRenewal = []
+            eventSenderConduit.send(_) >> { PaymentEvent event ->
+                sent << event.paymentId
+                CompletableFuture.runAsync({}, CompletableFuture.delayedExecutor(event.paymentId == "p1" ? 400 : 0, TimeUnit.MILLISECONDS))
+            }
+        when:
+            eventSender.sendEvents()
+        then: 'three deliveries of p1 run one after another, up to 1.5s at delivery timeout, batch keeps renewing for that long'
+            (2.._) * eventRepository.renewLease([1L, 2L, 3L, 4L], "node-1", Instant.parse("1985-02-19T16:00:02.500Z")) >> {
+                sentBeforeRenewal << sent.size()
+                4
+            }
+        then:
+            1 * eventRepository.deleteClaimed([1L, 2L, 3L, 4L], "node-1") >> 4
+            sentBeforeRenewal.first() == 0
+            sent.count { it == "p1" } == 3
+    }
+
+    def 'should retry event later when delivery does not complete in time'() {
+        given:
+            properties.deliveryTimeout = Duration.ofMillis(50)
+            def event = new PaymentCreatedEvent("1", "TYPE1")
+            claimable(dbEvent(1, objectMapper.writeValueAsString(event)))
+            eventSenderConduit.send(event) >> new CompletableFuture<Void>()
+        when:
+            eventSender.sendEvents()
+        then:
+            0 * eventRepository.deleteClaimed(*_)
+            1 * eventRepository.retryLater([1L], "node-1", Instant.parse("1985-02-19T16:00:01Z"))
+    }
+
+    def 'should double retry backoff with every failed attempt'() {
+        given:
+            properties.maxAttempts = 20
+            def event = new PaymentCreatedEvent("1", "TYPE1")
+            def failing = dbEvent(1, objectMapper.writeValueAsString(event))
+            failing.attempts = attempts
+            claimable(failing)
+            eventSenderConduit.send(event) >> CompletableFuture.failedFuture(new IllegalStateException("Destination down"))
+        when:
+            eventSender.sendEvents()
+        then:
+            1 * eventRepository.retryLater([1L], "node-1", Instant.parse(nextAttemptAt))
+            0 * quarantine.quarantine(*_)
+        where:
+            attempts || nextAttemptAt
+            0        || "1985-02-19T16:00:01Z"
+            1        || "1985-02-19T16:00:02Z"
+            3        || "1985-02-19T16:00:08Z"
+            8        || "1985-02-19T16:04:16Z"
+            9        || "1985-02-19T16:08:32Z"
+            12       || "1985-02-19T16:10:00Z"
+    }
+
+    def 'should quarantine event when last attempt fails'() {
+        given:
+            def event = new PaymentCreatedEvent("1", "TYPE1")
+            def failing = dbEvent(1, objectMapper.writeValueAsString(event))
+            failing.attempts = properties.maxAttempts - 1
+            def error = new IllegalStateException("Destination down")
+            claimable(failing)
+            eventSenderConduit.send(event) >> CompletableFuture.failedFuture(error)
+        when:
+            eventSender.sendEvents()
+        then:
+            1 * quarantine.quarantine(failing, "node-1", error)
+            0 * eventRepository.retryLater(*_)
+    }
+
+    def 'should quarantine event that cannot be read right away and keep sending the rest'() {
+        given:
+            def healthy = new PaymentCreatedEvent("2", "TYPE1")
+            properties.batchSize = 3
+            def poison = dbEvent(1, "{not a payment event")
+            claimable(poison, dbEvent(2, objectMapper.writeValueAsString(healthy)))
+        when:
+            eventSender.sendEvents()
+        then:
+            1 * eventSenderConduit.send(healthy) >> delivered()
+            1 * quarantine.quarantine(poison, "node-1", { it instanceof UnreadableEventException })
+            1 * eventRepository.deleteClaimed([2L], "node-1")
+            0 * eventRepository.retryLater(*_)
+    }
+
+    def 'should not query outbox while delivery circuit is open'() {
+        when:
+            eventSender.sendEvents()
+            eventSender.wakeUp()
+        then:
+            _ * circuitBreaker.permittedCalls(_) >> 0
+            0 * eventRepository.findClaimableIds(*_)
+    }
+
+    def 'should claim only as many events as there are probes while circuit is half open'() {
+        when:
+            eventSender.sendEvents()
+        then:
+            _ * circuitBreaker.permittedCalls(_) >> 1
+            1 * eventRepository.findClaimableIds(_, PageRequest.of(0, 1)) >> List.empty()
+    }
+
+    def 'should release events rejected by circuit breaker without counting attempt'() {
+        given:
+            def event = new PaymentCreatedEvent("1", "TYPE1")
+            claimable(dbEvent(1, objectMapper.writeValueAsString(event)))
+            eventSenderConduit.send(event) >> CompletableFuture.failedFuture(new DeliveryCircuitOpenException("1"))
+        when:
+            eventSender.sendEvents()
+        then:
+            1 * eventRepository.release([1L], "node-1")
+            0 * eventRepository.retryLater(*_)
+            0 * quarantine.quarantine(*_)
+    }
+
+    def 'should not send later event of payment when earlier one failed'() {
+        given:
+            properties.batchSize = 3
+            def created = new PaymentCreatedEvent("p1", "TYPE1")
+            def cancelled = new PaymentCancelledEvent("p1")
+            claimable(dbEvent(1, created), dbEvent(2, cancelled))
+            eventRepository.findPaymentIdsWithPrecedingEvents(["p1"], [1L, 2L]) >> ([] as Set)
+            eventSenderConduit.send(created) >> CompletableFuture.failedFuture(new IllegalStateException("Destination down"))
+        when:
+            eventSender.sendEvents()
+        then:
+            0 * eventSenderConduit.send(cancelled)
+            1 * eventRepository.retryLater([1L], "node-1", Instant.parse("1985-02-19T16:00:01Z"))
+            1 * eventRepository.release([2L], "node-1")
+    }
+
+    def 'should send later event of payment only after earlier one was delivered'() {
+        given:
+            properties.batchSize = 3
+            def created = new PaymentCreatedEvent("p1", "TYPE1")
+            def cancelled = new PaymentCancelledEvent("p1")
+            def createdDelivery = new CompletableFuture<Void>()
+            claimable(dbEvent(1, created), dbEvent(2, cancelled))
+            eventRepository.findPaymentIdsWithPrecedingEvents(*_) >> ([] as Set)
+            def sent = []
+            eventSenderConduit.send(created) >> { sent << created; createdDelivery }
+            eventSenderConduit.send(cancelled) >> { sent << cancelled; delivered() }
+            // Delivery of created event completes a moment later, on other thread
+            CompletableFuture.runAsync({ Thread.sleep(50); createdDelivery.complete(null) })
+        when:
+            eventSender.sendEvents()
+        then:
+            sent == [created, cancelled]
+    }
+
+    def 'should log delivered and failed attempts'() {
+        given:
+            properties.batchSize = 3
+            def deliveredEvent = new PaymentCreatedEvent("p1", "TYPE1")
+            def failing = new PaymentCreatedEvent("p2", "TYPE1")
+            claimable(dbEvent(1, deliveredEvent), dbEvent(2, failing))
+            eventRepository.findPaymentIdsWithPrecedingEvents(*_) >> ([] as Set)
+            eventSenderConduit.send(deliveredEvent) >> delivered()
+            eventSenderConduit.send(failing) >> CompletableFuture.failedFuture(new IllegalStateException("Destination down"))
+        when:
+            eventSender.sendEvents()
+        then:
+            1 * deliveryLog.record({ DeliveryLogEntry entry ->
+                entry.outboxId == 1L && entry.eventId == deliveredEvent.eventId && entry.paymentId == "p1" && entry.attempt == 1 &&
+                        entry.outcome == DeliveryLogEntry.Outcome.DELIVERED && entry.latencyMillis != null && entry.error == null
+            })
+            1 * deliveryLog.record({ DeliveryLogEntry entry ->
+                entry.outboxId == 2L && entry.eventId == failing.eventId && entry.outcome == DeliveryLogEntry.Outcome.FAILED &&
+                        entry.error.contains("Destination down")
+            })
+    }
+
+    def 'should log quarantined event'() {
+        given:
+            def poison = dbEvent(1, "{not a payment event")
+            claimable(poison)
+            quarantine.quarantine(*_) >> true
+        when:
+            eventSender.sendEvents()
+        then:
+            1 * deliveryLog.record({ DeliveryLogEntry entry -> entry.outcome == DeliveryLogEntry.Outcome.FAILED && entry.eventId == null && entry.latencyMillis == null })
+            1 * deliveryLog.record({ DeliveryLogEntry entry -> entry.outcome == DeliveryLogEntry.Outcome.QUARANTINED && entry.outboxId == 1L })
+    }
+
+    def 'should not log deliveries that were not attempted'() {
+        given:
+            def event = new PaymentCreatedEvent("1", "TYPE1")
+            claimable(dbEvent(1, event))
+            eventSenderConduit.send(event) >> CompletableFuture.failedFuture(new DeliveryCircuitOpenException("1"))
+        when:
+            eventSender.sendEvents()
+        then:
+            0 * deliveryLog.record(_)
+    }
+
+    def 'should merge created and cancelled events of payment claimed together'() {
+        given:
+            properties.batchSize = 4
+            properties.coalescing = DbEventSenderProperties.Coalescing.MERGE
+            def sender = coalescingSender()
+            def created = new PaymentCreatedEvent("p1", "TYPE1")
+            def cancelled = new PaymentCancelledEvent("p1")
+            def other = new PaymentCreatedEvent("p2", "TYPE1")
+            claimable(dbEvent(1, created), dbEvent(2, other), dbEvent(3, cancelled))
+            eventRepository.findPaymentIdsWithPrecedingEvents(*_) >> ([] as Set)
+        when:
+            sender.sendEvents()
+        then:
+            1 * eventSenderConduit.send({
+                it instanceof PaymentCreatedAndCancelledEvent && it.eventId == cancelled.eventId && it.createdEventId == created.eventId &&
+                        it.paymentId == "p1" && it.type == "TYPE1"
+            }) >> delivered()
+            1 * eventSenderConduit.send(other) >> delivered()
+            1 * eventRepository.deleteClaimed([1L, 3L, 2L], "node-1")
+            0 * eventSenderConduit.send(_)
+    }
+
+    def 'should retry both merged events when merged delivery fails'() {
+        given:
+            properties.batchSize = 3
+            properties.coalescing = DbEventSenderProperties.Coalescing.MERGE
+            def sender = coalescingSender()
+            claimable(dbEvent(1, new PaymentCreatedEvent("p1", "TYPE1")), dbEvent(2, new PaymentCancelledEvent("p1")))
+            eventRepository.findPaymentIdsWithPrecedingEvents(*_) >> ([] as Set)
+        when:
+            sender.sendEvents()
+        then:
+            1 * eventSenderConduit.send(_ as PaymentCreatedAndCancelledEvent) >> CompletableFuture.failedFuture(new IllegalStateException("Destination down"))
+            1 * eventRepository.retryLater([1L, 2L], "node-1", Instant.parse("1985-02-19T16:00:01Z"))
+            0 * eventRepository.deleteClaimed(*_)
+    }
+
+    def 'should drop created and cancelled events of payment without sending them when discarding'() {
+        given:
+            properties.batchSize = 3
+            properties.coalescing = DbEventSenderProperties.Coalescing.DISCARD
+            def sender = coalescingSender()
+            claimable(dbEvent(1, new PaymentCreatedEvent("p1", "TYPE1")), dbEvent(2, new PaymentCancelledEvent("p1")))
+            eventRepository.findPaymentIdsWithPrecedingEvents(*_) >> ([] as Set)
+        when:
+            sender.sendEvents()
+        then:
+            0 * eventSenderConduit.send(_)
+            1 * eventRepository.deleteClaimed([1L, 2L], "node-1")
+            2 * deliveryLog.record({ it.outcome == DeliveryLogEntry.Outcome.DISCARDED })
+    }
+
+    def 'should not coalesce events which do not form created and cancelled pair'() {
+        given:
+            properties.batchSize = 3
+            properties.coalescing = DbEventSenderProperties.Coalescing.MERGE
+            def sender = coalescingSender()
+            def cancelled = new PaymentCancelledEvent("p1")
+            def cancelledAgain = new PaymentCancelledEvent("p1")
+            claimable(dbEvent(1, cancelled), dbEvent(2, cancelledAgain))
+            eventRepository.findPaymentIdsWithPrecedingEvents(*_) >> ([] as Set)
+        when:
+            sender.sendEvents()
+        then:
+            1 * eventSenderConduit.send(cancelled) >> delivered()
+        then:
+            1 * eventSenderConduit.send(cancelledAgain) >> delivered()
+            1 * eventRepository.deleteClaimed([1L, 2L], "node-1")
+    }
+
+    def 'should give back events of payment whose earlier event is sent by other instance'() {
+        given:
+            def cancelled = new PaymentCancelledEvent("p1")
+            claimable(dbEvent(2, cancelled))
+        when:
+            eventSender.sendEvents()
+        then:
+            1 * eventRepository.findPaymentIdsWithPrecedingEvents(["p1"], [2L]) >> (["p1"] as Set)
+            0 * eventSenderConduit.send(_)
+            1 * eventRepository.release([2L], "node-1")
+    }
+
+    def 'should claim events with lease of this instance'() {
+        given:
+            eventRepository.findClaimableIds(_, _) >> List.of(1L)
         when:
             eventSender.sendEvents()
         then:
-            1 * eventSenderConduit.send(event)
-            1 * eventRepository.delete(_)
+            1 * eventRepository.claim([1L], "node-1", Instant.parse("1985-02-19T16:00:30Z"), Instant.parse("1985-02-19T16:00:00Z")) >> 1
+            1 * eventRepository.findClaimed([1L], "node-1", Instant.parse("1985-02-19T16:00:30Z")) >> List.empty()
+    }
+
+    def 'should not send events claimed by other instance'() {
+        given:
+            eventRepository.findClaimableIds(_, _) >> List.of(1L)
+            eventRepository.claim(*_) >> 0
+        when:
+            eventSender.sendEvents()
+        then:
+            0 * eventRepository.findClaimed(*_)
+            0 * eventSenderConduit.send(_)
+            0 * eventRepository.deleteClaimed(*_)
+    }
+
+    /**
+     * Coalescing is configured when sender is created.
+     */
+    private DbEventSender coalescingSender() {
+        new DbEventSender(eventRepository, eventSenderConduit, quarantine, deliveryLog, circuitBreaker, eventCodec, properties, clock, taskScheduler)
+    }
+
+    private void claimable(DbEvent... dbEvents) {
+        eventRepository.findClaimableIds(_, _) >> List.ofAll(dbEvents.toList()).map { it.id }
+        eventRepository.claim(*_) >> dbEvents.length
+        eventRepository.findClaimed(*_) >> List.ofAll(dbEvents.toList())
+    }
+
+    private static CompletableFuture<Void> delivered() {
+        CompletableFuture.completedFuture(null)
+    }
+
+    private DbEvent dbEvent(long id, PaymentEvent event) {
+        def dbEvent = eventCodec.toDbEvent(event)
+        dbEvent.id = id
+        dbEvent
+    }
+
+    private static DbEvent dbEvent(long id, String json) {
+        def dbEvent = new DbEvent(json)
+        dbEvent.id = id
+        dbEvent
     }
 }
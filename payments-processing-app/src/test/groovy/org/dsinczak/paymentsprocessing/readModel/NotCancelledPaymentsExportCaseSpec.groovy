@@ -0,0 +1,55 @@
+package org.dsinczak.paymentsprocessing.readModel
+
+import org.springframework.dao.DataAccessResourceFailureException
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.core.PreparedStatementCreator
+import org.springframework.jdbc.core.RowCallbackHandler
+import spock.lang.Specification
+
+import java.sql.ResultSet
+
+import static org.dsinczak.paymentsprocessing.readModel.NotCancelledPaymentsExport.Format.CSV
+import static org.dsinczak.paymentsprocessing.readModel.NotCancelledPaymentsExport.Format.NDJSON
+
+class NotCancelledPaymentsExportCaseSpec extends Specification {
+
+    JdbcTemplate jdbcTemplate = Mock(JdbcTemplate)
+    NotCancelledPaymentsExport export = new NotCancelledPaymentsExport(jdbcTemplate, new PaymentExportProperties())
+
+    def paymentId = UUID.fromString("01a14bf0-a0df-7000-8657-243acb82a64b")
+
+    def 'should end export failed after rows were written with error line'() {
+        given:
+            def output = new ByteArrayOutputStream()
+            def resultSet = Mock(ResultSet) {
+                getBytes(1) >> BinaryUuids.toBytes(paymentId)
+                getLong(2) >> 1050
+            }
+        when:
+            def written = export.write(PaymentAmountFilter.of(null, null, null).get(), format, output)
+        then: 'EUR rows are written, reading USD rows fails'
+            2 * jdbcTemplate.query(_ as PreparedStatementCreator, _ as RowCallbackHandler) >> { PreparedStatementCreator creator, RowCallbackHandler handler ->
+                handler.processRow(resultSet)
+            } >> { throw new DataAccessResourceFailureException("Connection lost") }
+            written == 1
+            output.toString("US-ASCII") == expected
+        where:
+            format || expected
+            NDJSON || '{"paymentId":"01a14bf0-a0df-7000-8657-243acb82a64b","amount":"10.50","currency":"EUR"}\n' +
+                    '{"error":"Export failed, payments are missing."}\n'
+            CSV    || 'payment_id,amount,currency\n' +
+                    '01a14bf0-a0df-7000-8657-243acb82a64b,10.50,EUR\n' +
+                    '# Export failed, payments are missing.\n'
+    }
+
+    def 'should stop export without error line when client went away'() {
+        given:
+            def output = new ByteArrayOutputStream()
+            jdbcTemplate.query(_ as PreparedStatementCreator, _ as RowCallbackHandler) >> { throw new UncheckedIOException(new IOException("Broken pipe")) }
+        when:
+            export.write(PaymentAmountFilter.of(null, null, "EUR").get(), CSV, output)
+        then:
+            thrown(IOException)
+            !output.toString("US-ASCII").contains("Export failed")
+    }
+}
@@ -0,0 +1,73 @@
+package org.dsinczak.paymentsprocessing.readModel
+
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount
+import spock.lang.Specification
+
+import static org.dsinczak.paymentsprocessing.shared.CurrencyCode.EUR
+import static org.dsinczak.paymentsprocessing.shared.CurrencyCode.USD
+
+class NotCancelledPaymentsQueryCaseSpec extends Specification {
+
+    PaymentViews paymentViews = Mock(PaymentViews)
+    NotCancelledPaymentsQuery query = new NotCancelledPaymentsQuery(paymentViews)
+
+    def 'should seek from amount range converted to minor units'() {
+        when:
+            def page = query.find("10.005", "20.999", "EUR", null, 5).get()
+        then:
+            1 * paymentViews.findNotCancelledAfter(EUR, 1001, 0, 2099, 5) >> [view(1, 1500, EUR)]
+            page.paymentIds.size() == 1
+            page.nextCursor == null
+    }
+
+    def 'should continue after the last payment of full page'() {
+        given:
+            paymentViews.findNotCancelledAfter(EUR, 0, 0, Long.MAX_VALUE, 2) >> [view(7, 100, EUR), view(3, 200, EUR)]
+        when:
+            def first = query.find(null, null, "EUR", null, 2).get()
+            query.find(null, null, "EUR", first.nextCursor, 2)
+        then:
+            1 * paymentViews.findNotCancelledAfter(EUR, 200, 3, Long.MAX_VALUE, 2) >> []
+    }
+
+    def 'should read currencies one after another when currency is not given'() {
+        when:
+            def page = query.find(null, null, null, new PageCursor(EUR, 500, 9).encode(), 3).get()
+        then:
+            1 * paymentViews.findNotCancelledAfter(EUR, 500, 9, Long.MAX_VALUE, 3) >> [view(10, 600, EUR)]
+            1 * paymentViews.findNotCancelledAfter(USD, 0, 0, Long.MAX_VALUE, 2) >> [view(2, 1, USD), view(4, 5, USD)]
+            page.paymentIds.size() == 3
+            PageCursor.decode(page.nextCursor).get() == new PageCursor(USD, 5, 4)
+    }
+
+    def 'should clamp amount out of range of minor units'() {
+        when:
+            query.find(null, "9999999999999999999", "USD", null, null)
+        then:
+            1 * paymentViews.findNotCancelledAfter(USD, 0, 0, Long.MAX_VALUE, NotCancelledPaymentsQuery.DEFAULT_LIMIT) >> []
+    }
+
+    def 'should reject invalid parameters'() {
+        expect:
+            query.find(minAmount, maxAmount, currency, cursor, limit).left.value == error
+        where:
+            minAmount | maxAmount | currency | cursor       | limit || error
+            "-1"      | null      | null     | null         | null  || "Amount {0} is not valid non negative decimal."
+            null      | "ten"     | null     | null         | null  || "Amount {0} is not valid non negative decimal."
+            "1E999"   | null      | null     | null         | null  || "Amount {0} is not valid non negative decimal."
+            "1E-999"  | null      | null     | null         | null  || "Amount {0} is not valid non negative decimal."
+            null      | null      | "PLN"    | null         | null  || "Currency {0} is not supported."
+            null      | null      | null     | "bm90LWl0"   | null  || "Cursor {0} is not valid."
+            null      | null      | null     | null         | 0     || "Limit has to be from 1 to {0}."
+            null      | null      | null     | null         | 1001  || "Limit has to be from 1 to {0}."
+    }
+
+    private static PaymentView view(long id, long minorUnits, CurrencyCode currency) {
+        def view = new PaymentView()
+        view.@id = id
+        view.@paymentId = UUID.randomUUID()
+        view.@amount = MinorUnitAmount.of(minorUnits, currency)
+        view
+    }
+}
@@ -0,0 +1,93 @@
+package org.dsinczak.paymentsprocessing.readModel
+
+import spock.lang.Specification
+
+class OffHeapAmountIndexCaseSpec extends Specification {
+
+    def 'should scan entries after given key up to given amount in amount and id order'() {
+        given:
+            def index = new OffHeapAmountIndex(2, 4)
+            [[300, 5, 50], [200, 2, 20], [200, 9, 90], [100, 1, 10], [400, 3, 30]].each { index.add(it[0], it[1], it[2]) }
+        expect:
+            scan(index, afterMinorUnits, afterId, maxMinorUnits, limit) == slots
+        where:
+            afterMinorUnits | afterId | maxMinorUnits  | limit || slots
+            0               | 0       | Long.MAX_VALUE | 10    || [10, 20, 90, 50, 30]
+            200             | 2       | Long.MAX_VALUE | 10    || [90, 50, 30]
+            200             | 2       | 300            | 10    || [90, 50]
+            100             | 0       | Long.MAX_VALUE | 2     || [10, 20]
+            400             | 3       | Long.MAX_VALUE | 10    || []
+    }
+
+    def 'should skip removed entries and report unknown ones'() {
+        given:
+            def index = new OffHeapAmountIndex(16, 4)
+            (1..10).each { index.add(it * 10, it, it) }
+        when:
+            def removed = index.remove(50, 5)
+            def removedAgain = index.remove(50, 5)
+            def unknown = index.remove(50, 6)
+        then:
+            removed
+            !removedAgain
+            !unknown
+            index.size() == 9
+            scan(index, 0, 0, Long.MAX_VALUE, 20) == [1, 2, 3, 4, 6, 7, 8, 9, 10]
+    }
+
+    def 'should cap growth at entry limit and fail clearly beyond it'() {
+        given:
+            def index = new OffHeapAmountIndex(16, 4, 40)
+        when:
+            (1..40).each { index.add(it * 10, it, it) }
+        then: 'buffer doubles up to the limit, not past it'
+            index.offHeapBytes() == 40 * 20
+        when:
+            index.add(500, 41, 41)
+        then:
+            def error = thrown(IllegalStateException)
+            error.message == "Amount index is limited to 40 entries, 41 required."
+            index.size() == 40
+    }
+
+    def 'should fail merge that does not fit into entry limit and keep entries'() {
+        given:
+            def index = new OffHeapAmountIndex(16, 4, 20)
+            (1..18).each { index.add(it * 10, it, it) }
+            (1..4).each { index.add(it * 10 + 5, 100 + it, 100 + it) }
+        when: 'delta is full, merge needs room for 22 entries'
+            index.add(1, 200, 200)
+        then:
+            thrown(IllegalStateException)
+            index.size() == 22
+            scan(index, 0, 0, Long.MAX_VALUE, 30).size() == 22
+    }
+
+    def 'should keep order of random changes through merges of delta and removals'() {
+        given:
+            def random = new Random(19850219)
+            def index = new OffHeapAmountIndex(16, 8)
+            def expected = new TreeMap<List<Long>, Integer>({ a, b -> a[0] <=> b[0] ?: a[1] <=> b[1] } as Comparator)
+        when:
+            (1..2000).each { id ->
+                def minorUnits = (long) random.nextInt(1000)
+                index.add(minorUnits, id, id)
+                expected.put([minorUnits, (long) id], id)
+                if (random.nextInt(3) == 0) {
+                    def victim = expected.keySet().toList()[random.nextInt(expected.size())]
+                    assert index.remove(victim[0], victim[1])
+                    expected.remove(victim)
+                }
+            }
+        then:
+            index.size() == expected.size()
+            scan(index, 0, 0, Long.MAX_VALUE, 10000) == expected.values().toList()
+            scan(index, 500, 0, 600, 10000) == expected.subMap([500L, 0L], true, [600L, Long.MAX_VALUE], true).values().toList()
+    }
+
+    private static List<Integer> scan(OffHeapAmountIndex index, long afterMinorUnits, long afterId, long maxMinorUnits, int limit) {
+        def slots = new int[limit]
+        def found = index.scan(afterMinorUnits, afterId, maxMinorUnits, slots)
+        slots.toList().take(found)
+    }
+}
@@ -0,0 +1,122 @@
+package org.dsinczak.paymentsprocessing.readModel
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.vavr.control.Option
+import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent
+import org.dsinczak.paymentsprocessing.domain.Payment
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount
+import spock.lang.Specification
+
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+
+import static org.dsinczak.paymentsprocessing.shared.CurrencyCode.EUR
+
+class PaymentViewCacheCaseSpec extends Specification {
+
+    def now = Instant.parse("1985-02-19T16:00:00Z")
+
+    def clock = Stub(Clock) {
+        instant() >> { now }
+    }
+
+    def meterRegistry = new SimpleMeterRegistry()
+
+    def paymentViews = Mock(PaymentViews)
+
+    def properties = new PaymentViewCacheProperties(maxSize: 2, ttl: Duration.ofMinutes(10), negativeTtl: Duration.ofSeconds(5))
+
+    def cache = new PaymentViewCache(paymentViews, properties, clock, meterRegistry)
+
+    def 'should answer cancelled payment from memory until ttl passes'() {
+        given:
+            def paymentId = UUID.randomUUID()
+        when:
+            cache.findByPaymentId(paymentId)
+            now = now.plus(Duration.ofMinutes(9))
+            def cached = cache.findByPaymentId(paymentId)
+            now = now.plus(Duration.ofMinutes(1))
+            cache.findByPaymentId(paymentId)
+        then:
+            2 * paymentViews.findByPaymentId(paymentId) >> Option.of(cancelled(paymentId))
+            cached.get().paymentId == paymentId
+            meterRegistry.get("payments.view.cache.gets").tag("result", "hit").counter().count() == 1
+            meterRegistry.get("payments.view.cache.gets").tag("result", "miss").counter().count() == 2
+            meterRegistry.get("payments.view.cache.hit.ratio").gauge().value() == 1 / 3d
+    }
+
+    def 'should keep unknown id and payment not cancelled yet only for negative ttl'() {
+        given:
+            def unknown = UUID.randomUUID()
+            def created = UUID.randomUUID()
+        when:
+            cache.findByPaymentId(unknown)
+            cache.findByPaymentId(created)
+            now = now.plus(Duration.ofSeconds(4))
+            def cachedUnknown = cache.findByPaymentId(unknown)
+            cache.findByPaymentId(created)
+            now = now.plus(Duration.ofSeconds(1))
+            cache.findByPaymentId(unknown)
+            cache.findByPaymentId(created)
+        then:
+            2 * paymentViews.findByPaymentId(unknown) >> Option.none()
+            2 * paymentViews.findByPaymentId(created) >> Option.of(view(created, Payment.State.CREATED, null))
+            cachedUnknown.isEmpty()
+    }
+
+    def 'should read payment again once its cancellation commits'() {
+        given:
+            def paymentId = UUID.randomUUID()
+            paymentViews.findByPaymentId(paymentId) >>> [Option.of(view(paymentId, Payment.State.CREATED, null)), Option.of(cancelled(paymentId))]
+            cache.findByPaymentId(paymentId)
+        when:
+            cache.onPaymentCancelled(new PaymentCancelledEvent(paymentId.toString()))
+        then:
+            cache.findByPaymentId(paymentId).get().state == Payment.State.CANCELLED
+    }
+
+    def 'should not put back view read before concurrent cancellation committed'() {
+        given:
+            def paymentId = UUID.randomUUID()
+        when:
+            def stale = cache.findByPaymentId(paymentId)
+            def fresh = cache.findByPaymentId(paymentId)
+        then:
+            1 * paymentViews.findByPaymentId(paymentId) >> {
+                cache.onPaymentCancelled(new PaymentCancelledEvent(paymentId.toString()))
+                Option.of(view(paymentId, Payment.State.CREATED, null))
+            }
+            1 * paymentViews.findByPaymentId(paymentId) >> Option.of(cancelled(paymentId))
+            stale.get().state == Payment.State.CREATED
+            fresh.get().state == Payment.State.CANCELLED
+    }
+
+    def 'should evict least recently used payment when full'() {
+        given:
+            def first = UUID.randomUUID()
+            def second = UUID.randomUUID()
+            def third = UUID.randomUUID()
+            paymentViews.findByPaymentId(_) >> { UUID paymentId -> Option.of(cancelled(paymentId)) }
+        when:
+            cache.findByPaymentId(first)
+            cache.findByPaymentId(second)
+            cache.findByPaymentId(first)
+            cache.findByPaymentId(third)
+        then:
+            cache.size() == 2
+        when:
+            cache.findByPaymentId(first)
+            cache.findByPaymentId(second)
+        then:
+            meterRegistry.get("payments.view.cache.gets").tag("result", "miss").counter().count() == 4
+    }
+
+    private static PaymentView cancelled(UUID paymentId) {
+        view(paymentId, Payment.State.CANCELLED, MinorUnitAmount.of(250, EUR))
+    }
+
+    private static PaymentView view(UUID paymentId, Payment.State state, MinorUnitAmount cancellationFee) {
+        new PaymentView(1L, paymentId, state, MinorUnitAmount.of(1000, EUR), cancellationFee)
+    }
+}
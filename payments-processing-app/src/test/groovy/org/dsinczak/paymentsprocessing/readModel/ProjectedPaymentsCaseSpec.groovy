@@ -0,0 +1,70 @@
+package org.dsinczak.paymentsprocessing.readModel
+
+import org.dsinczak.paymentsprocessing.domain.Payment
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount
+import spock.lang.Specification
+
+import static org.dsinczak.paymentsprocessing.shared.CurrencyCode.EUR
+import static org.dsinczak.paymentsprocessing.shared.CurrencyCode.USD
+
+class ProjectedPaymentsCaseSpec extends Specification {
+
+    ProjectedPayments payments = new ProjectedPayments(16)
+
+    def 'should find payment by id'() {
+        given:
+            def paymentId = UUID.randomUUID()
+            payments.put(paymentId, 7, Payment.State.CREATED, MinorUnitAmount.of(1050, EUR), null)
+        when:
+            def view = payments.find(paymentId).get()
+        then:
+            view.id == 7
+            view.paymentId == paymentId
+            view.state == Payment.State.CREATED
+            view.amount == MinorUnitAmount.of(1050, EUR)
+            view.cancellationFee == null
+            payments.find(UUID.randomUUID()).isEmpty()
+    }
+
+    def 'should replace state and fee of cancelled payment and drop it from amount order'() {
+        given:
+            def paymentId = UUID.randomUUID()
+            payments.put(paymentId, 1, Payment.State.CREATED, MinorUnitAmount.of(100, EUR), null)
+        when:
+            payments.put(paymentId, 1, Payment.State.CANCELLED, MinorUnitAmount.of(100, EUR), MinorUnitAmount.of(20, EUR))
+        then:
+            payments.size() == 1
+            payments.find(paymentId).get().state == Payment.State.CANCELLED
+            payments.find(paymentId).get().cancellationFee == MinorUnitAmount.of(20, EUR).toMonetaryAmount()
+            payments.findNotCancelledAfter(EUR, 0, 0, Long.MAX_VALUE, 10).isEmpty()
+    }
+
+    def 'should return page of not cancelled payments after given key ordered by amount and id'() {
+        given:
+            payments.put(UUID.randomUUID(), 5, Payment.State.CREATED, MinorUnitAmount.of(300, EUR), null)
+            payments.put(UUID.randomUUID(), 2, Payment.State.CREATED, MinorUnitAmount.of(200, EUR), null)
+            payments.put(UUID.randomUUID(), 9, Payment.State.CREATED, MinorUnitAmount.of(200, EUR), null)
+            payments.put(UUID.randomUUID(), 1, Payment.State.CREATED, MinorUnitAmount.of(100, EUR), null)
+            payments.put(UUID.randomUUID(), 3, Payment.State.CREATED, MinorUnitAmount.of(400, EUR), null)
+            payments.put(UUID.randomUUID(), 4, Payment.State.CREATED, MinorUnitAmount.of(250, USD), null)
+        expect:
+            payments.findNotCancelledAfter(EUR, afterMinorUnits, afterId, maxMinorUnits, limit)*.id == ids
+        where:
+            afterMinorUnits | afterId | maxMinorUnits  | limit || ids
+            0               | 0       | Long.MAX_VALUE | 10    || [1, 2, 9, 5, 3]
+            200             | 2       | Long.MAX_VALUE | 10    || [9, 5, 3]
+            200             | 2       | 300            | 10    || [9, 5]
+            100             | 0       | Long.MAX_VALUE | 2     || [1, 2]
+    }
+
+    def 'should keep every payment when it grows beyond initial capacity'() {
+        given:
+            def paymentIds = (1..1000).collect { UUID.randomUUID() }
+        when:
+            paymentIds.eachWithIndex { paymentId, i -> payments.put(paymentId, i + 1, Payment.State.CREATED, MinorUnitAmount.of(i, USD), null) }
+        then:
+            payments.size() == 1000
+            paymentIds.withIndex().every { paymentId, i -> payments.find(paymentId).get().id == i + 1 }
+            payments.findNotCancelledAfter(USD, 0, 0, Long.MAX_VALUE, 2000).size() == 1000
+    }
+}
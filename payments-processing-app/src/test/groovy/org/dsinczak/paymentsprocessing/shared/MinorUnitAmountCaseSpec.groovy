@@ -0,0 +1,55 @@
+package org.dsinczak.paymentsprocessing.shared
+
+import org.javamoney.moneta.Money
+import spock.lang.Specification
+
+class MinorUnitAmountCaseSpec extends Specification {
+
+    def 'should store amount as minor units of its currency'() {
+        when:
+            def stored = MinorUnitAmount.of(Money.of(new BigDecimal(amount), currency))
+        then:
+            stored.minorUnits == minorUnits
+            stored.currency.name() == currency
+            stored.toMonetaryAmount().number.toString() == loaded
+        where:
+            amount    | currency | minorUnits | loaded
+            "10"      | "EUR"    | 1000       | "10"
+            "10.50"   | "USD"    | 1050       | "10.5"
+            "0.45"    | "EUR"    | 45         | "0.45"
+            "0"       | "EUR"    | 0          | "0"
+            "100"     | "EUR"    | 10000      | "100"
+            "0.125"   | "EUR"    | 12         | "0.12"
+            "0.135"   | "EUR"    | 14         | "0.14"
+    }
+
+    def 'should load amount equal to stored one'() {
+        given:
+            def amount = Money.of(new BigDecimal("1234.56"), "USD")
+        expect:
+            MinorUnitAmount.of(amount).toMonetaryAmount() == amount
+    }
+
+    def 'should reject amount that does not fit into long of minor units'() {
+        when:
+            MinorUnitAmount.of(Money.of(new BigDecimal("1" * 18), "EUR"))
+        then:
+            thrown(ArithmeticException)
+    }
+
+    def 'should reject currency that is not supported'() {
+        when:
+            MinorUnitAmount.of(Money.of(BigDecimal.TEN, "PLN"))
+        then:
+            thrown(IllegalArgumentException)
+    }
+
+    def 'should multiply exactly and fail on overflow'() {
+        expect:
+            MinorUnitAmount.of(15, CurrencyCode.EUR).multiply(7) == MinorUnitAmount.of(105, CurrencyCode.EUR)
+        when:
+            MinorUnitAmount.of(Long.MAX_VALUE, CurrencyCode.EUR).multiply(2)
+        then:
+            thrown(ArithmeticException)
+    }
+}
@@ -0,0 +1,92 @@
+package org.dsinczak.paymentsprocessing.benchmark;
+
+import org.dsinczak.paymentsprocessing.readModel.OffHeapAmountIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Range queries of {@link OffHeapAmountIndex} of one currency, amounts spread from 0 to 10 000.00: page of
+ * {@link #PAGE} payments from random amount (what a page of {@code GET /payment} reads) and all payments of narrow
+ * amount range. Fragmented index has full delta of random inserts and a fifth of main run removed, the most
+ * a scan has to skip before next merge.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-XX:MaxDirectMemorySize=1g")
+@State(Scope.Benchmark)
+public class AmountIndexBenchmark {
+
+    private static final int PAGE = 100;
+    private static final long MAX_AMOUNT = 1_000_000;
+    private static final long NARROW_RANGE = 100;
+
+    @Param({"1000000", "10000000"})
+    private int entries;
+
+    @Param({"false", "true"})
+    private boolean fragmented;
+
+    private OffHeapAmountIndex index;
+    private final int[] page = new int[PAGE];
+    private final int[] range = new int[64 * 1024];
+    private final SplittableRandom random = new SplittableRandom(19850219);
+    /**
+     * Start amounts of queries, drawn up front so the benchmark does not measure random generator.
+     */
+    private final long[] starts = new long[1024];
+    private int query;
+
+    @Setup
+    public void setUp() {
+        index = new OffHeapAmountIndex(entries, OffHeapAmountIndex.DEFAULT_DELTA_CAPACITY);
+        // Rebuild reads payments in amount order, so index is built by appending
+        for (var i = 0; i < entries; i++) {
+            index.add(amountOf(i), i + 1, i);
+        }
+        if (fragmented) {
+            for (var i = 0; i < entries / 5; i++) {
+                var victim = random.nextInt(entries);
+                index.remove(amountOf(victim), victim + 1);
+            }
+            for (var i = 0; i < OffHeapAmountIndex.DEFAULT_DELTA_CAPACITY - 1; i++) {
+                index.add(random.nextLong(MAX_AMOUNT), entries + i + 1, entries + i);
+            }
+        }
+        for (var i = 0; i < starts.length; i++) {
+            starts[i] = random.nextLong(MAX_AMOUNT - NARROW_RANGE);
+        }
+    }
+
+    @Benchmark
+    public int pageFromRandomAmount() {
+        return index.scan(nextStart(), 0, Long.MAX_VALUE, page);
+    }
+
+    @Benchmark
+    public int narrowAmountRange() {
+        var from = nextStart();
+        return index.scan(from, 0, from + NARROW_RANGE, range);
+    }
+
+    private long nextStart() {
+        return starts[query++ & (starts.length - 1)];
+    }
+
+    private long amountOf(int position) {
+        return position * MAX_AMOUNT / entries;
+    }
+}
@@ -0,0 +1,85 @@
+package org.dsinczak.paymentsprocessing.benchmark;
+
+import org.dsinczak.paymentsprocessing.PaymentsApplication;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of publishing single event in its own transaction with database outbox and with journal, measured on
+ * running application, so sender drains published events in the background like it does in production.
+ * Database is H2 in a file, to have outbox on disk like the journal is.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class EventPublisherBenchmark {
+
+    /**
+     * Database outbox or journal with given fsync policy.
+     */
+    @Param({"outbox", "journal-NEVER", "journal-GROUP", "journal-ALWAYS"})
+    String backend;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private EventPublisher eventPublisher;
+    private TransactionTemplate transactionTemplate;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("publisher-benchmark");
+        var journal = backend.startsWith("journal-");
+        context = new SpringApplicationBuilder(PaymentsApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:file:" + directory.resolve("db"),
+                        "logging.level.root=WARN",
+                        "payments.notification.sender.delivery-log.enabled=false",
+                        "payments.notification.journal.enabled=" + journal,
+                        "payments.notification.journal.directory=" + directory.resolve("journal"),
+                        "payments.notification.journal.fsync-policy=" + (journal ? backend.substring("journal-".length()) : "GROUP"))
+                .run();
+        eventPublisher = context.getBean(EventPublisher.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(directory);
+    }
+
+    @Benchmark
+    public void publishInTransaction() {
+        var event = new PaymentCreatedEvent(UUID.randomUUID().toString(), "TYPE1");
+        transactionTemplate.executeWithoutResult(status -> eventPublisher.publish(event));
+    }
+}
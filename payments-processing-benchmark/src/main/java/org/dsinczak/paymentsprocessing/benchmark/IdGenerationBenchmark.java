@@ -0,0 +1,43 @@
+package org.dsinczak.paymentsprocessing.benchmark;
+
+import org.dsinczak.paymentsprocessing.api.ids.FastUuids;
+import org.dsinczak.paymentsprocessing.api.ids.TimeOrderedUuids;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of single id from each generator, on 4 threads to show contention on shared {@link java.security.SecureRandom}
+ * behind {@link UUID#randomUUID()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class IdGenerationBenchmark {
+
+    @Benchmark
+    public UUID randomUuid() {
+        return UUID.randomUUID();
+    }
+
+    @Benchmark
+    public UUID timeOrderedUuid() {
+        return TimeOrderedUuids.next();
+    }
+
+    @Benchmark
+    public UUID fastUuid() {
+        return FastUuids.next();
+    }
+}
@@ -0,0 +1,60 @@
+package org.dsinczak.paymentsprocessing.benchmark;
+
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
+import org.dsinczak.paymentsprocessing.shared.MinorUnitAmount;
+import org.javamoney.moneta.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.money.Monetary;
+import javax.money.MonetaryAmount;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Money arithmetic of request path done with moneta {@link Money}, the way it was done before, and with
+ * {@link MinorUnitAmount}: cancellation fee (hours times hourly fee) and amount of incoming payment.
+ * Run with {@code -prof gc} to see allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MoneyBenchmark {
+
+    private static final MinorUnitAmount HOURLY_FEE = MinorUnitAmount.of(15, CurrencyCode.EUR);
+
+    // Not constants, so JIT cannot fold them
+    private long hours = 7;
+    private String currency = "EUR";
+    private long minorUnits = 123456;
+
+    @Benchmark
+    public MonetaryAmount feeWithMoney() {
+        return Money.of(hours, "EUR").multiply(0.15);
+    }
+
+    @Benchmark
+    public MinorUnitAmount feeWithMinorUnits() {
+        return HOURLY_FEE.multiply(hours);
+    }
+
+    @Benchmark
+    public MonetaryAmount amountWithMoney() {
+        return Money.of(BigDecimal.valueOf(minorUnits, 2), Monetary.getCurrency(currency));
+    }
+
+    @Benchmark
+    public MinorUnitAmount amountWithMinorUnits() {
+        return MinorUnitAmount.of(minorUnits, CurrencyCode.of(currency));
+    }
+}
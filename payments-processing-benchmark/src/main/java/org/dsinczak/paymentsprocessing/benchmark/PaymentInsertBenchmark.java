@@ -0,0 +1,112 @@
+package org.dsinczak.paymentsprocessing.benchmark;
+
+import org.dsinczak.paymentsprocessing.api.ids.TimeOrderedUuids;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert rate of payment rows with id taken from sequence on every insert (what {@code GenerationType.AUTO} does)
+ * against pooled sequence handing out blocks of 50 ids, and with random against time ordered payment id in the
+ * unique index. Rows are inserted in JDBC batches of {@link #BATCH_SIZE}, one transaction per batch, into
+ * H2 file database that already holds {@link #INITIAL_ROWS} payments.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentInsertBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+    private static final int INITIAL_ROWS = 200_000;
+    private static final int ALLOCATION_SIZE = 50;
+
+    @Param({"sequence", "pooled"})
+    String idAllocation;
+
+    @Param({"random", "timeOrdered"})
+    String paymentId;
+
+    private Path directory;
+    private Connection connection;
+    private PreparedStatement nextId;
+    private PreparedStatement insert;
+    private long pooledNext;
+    private long pooledEnd;
+
+    @Setup
+    public void setUp() throws IOException, SQLException {
+        directory = Files.createTempDirectory("insert-benchmark");
+        connection = DriverManager.getConnection("jdbc:h2:file:" + directory.resolve("db"), "admin", "admin");
+        try (var statement = connection.createStatement()) {
+            statement.execute("CREATE SEQUENCE payment_id_seq INCREMENT BY " + ("pooled".equals(idAllocation) ? ALLOCATION_SIZE : 1));
+            statement.execute("CREATE TABLE payment (id BIGINT PRIMARY KEY, payment_id UUID NOT NULL UNIQUE, amount_minor BIGINT, amount_currency VARCHAR(3))");
+        }
+        nextId = connection.prepareStatement("SELECT NEXT VALUE FOR payment_id_seq");
+        insert = connection.prepareStatement("INSERT INTO payment (id, payment_id, amount_minor, amount_currency) VALUES (?, ?, ?, ?)");
+        connection.setAutoCommit(false);
+        for (int i = 0; i < INITIAL_ROWS / BATCH_SIZE; i++) {
+            insertBatch();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+        FileSystemUtils.deleteRecursively(directory.toFile());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void insertBatch() throws SQLException {
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            insert.setLong(1, nextId());
+            insert.setObject(2, "random".equals(paymentId) ? UUID.randomUUID() : TimeOrderedUuids.next());
+            insert.setLong(3, 1000);
+            insert.setString(4, "EUR");
+            insert.addBatch();
+        }
+        insert.executeBatch();
+        connection.commit();
+    }
+
+    /**
+     * Same as Hibernate pooled-lo optimizer, value from sequence is the first id of the block.
+     */
+    private long nextId() throws SQLException {
+        if ("pooled".equals(idAllocation) && pooledNext < pooledEnd) {
+            return pooledNext++;
+        }
+        long value;
+        try (var result = nextId.executeQuery()) {
+            result.next();
+            value = result.getLong(1);
+        }
+        pooledNext = value + 1;
+        pooledEnd = value + ALLOCATION_SIZE;
+        return value;
+    }
+}
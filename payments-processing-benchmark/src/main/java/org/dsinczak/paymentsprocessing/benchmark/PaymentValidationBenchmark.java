@@ -0,0 +1,80 @@
+package org.dsinczak.paymentsprocessing.benchmark;
+
+import io.vavr.collection.Seq;
+import io.vavr.control.Either;
+import org.dsinczak.paymentsprocessing.domain.Payment;
+import org.dsinczak.paymentsprocessing.domain.PaymentFactory;
+import org.dsinczak.paymentsprocessing.shared.ErrorMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Clock;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of validating payment request, for valid payments and for hostile ones: amount that is not a number,
+ * IBANs and BIC of long garbage and unknown type. Run with {@code -prof gc} to see allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PaymentValidationBenchmark {
+
+    private static final String GARBAGE = "X".repeat(10_000);
+
+    @Param({"valid", "hostile"})
+    String workload;
+
+    private PaymentFactory paymentFactory;
+    private String amount;
+    private String iban;
+    private String bic;
+
+    @Setup
+    public void setUp() {
+        paymentFactory = new PaymentFactory(Clock.systemUTC());
+        var valid = "valid".equals(workload);
+        amount = valid ? "1234.56" : "12,34" + GARBAGE;
+        iban = valid ? "DE89370400440532013000" : "DE89" + GARBAGE;
+        bic = valid ? "DEUTDEFF500" : GARBAGE;
+    }
+
+    /**
+     * Type 3 checks amount, both IBANs and BIC, so all validations are on the path.
+     */
+    @Benchmark
+    public Either<Seq<ErrorMessage>, Payment> validateFields() {
+        return paymentFactory.create()
+                .withType("TYPE3")
+                .withAmount(amount)
+                .withCurrency("EUR")
+                .withDebtor(iban)
+                .withCreditor(iban)
+                .withCreditorBic(bic)
+                .build();
+    }
+
+    @Benchmark
+    public Either<Seq<ErrorMessage>, Payment> validateUnknownType() {
+        return paymentFactory.create()
+                .withType("valid".equals(workload) ? "TYPE1" : "TYPE9")
+                .withAmount("10")
+                .withCurrency("USD")
+                .withDebtor("CH9300762011623852957")
+                .withCreditor("SE3550000000054910000003")
+                .withDetails("details")
+                .build();
+    }
+}
@@ -0,0 +1,93 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import org.dsinczak.paymentsprocessing.PaymentsService;
+import org.dsinczak.paymentsprocessing.api.PaymentDto;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:concurrentCancellation")
+public class ConcurrentCancellationItTest {
+
+    private static final int THREADS = 8;
+    private static final int PAYMENTS = 20;
+
+    @Autowired
+    PaymentsService paymentsService;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    EventPublisher eventPublisher;
+
+    @Test
+    public void shouldCancelPaymentExactlyOnceWhenCancelledConcurrently() throws Exception {
+        // Given
+        var executor = Executors.newFixedThreadPool(THREADS);
+        var cancelled = 0;
+        try {
+            for (int i = 0; i < PAYMENTS; i++) {
+                var paymentId = paymentsService.createNewPayment(payment()).get();
+                var start = new CountDownLatch(1);
+                var results = new ArrayList<Future<Boolean>>();
+
+                // When - every thread cancels the same payment at once
+                for (int t = 0; t < THREADS; t++) {
+                    results.add(executor.submit(() -> {
+                        start.await();
+                        return paymentsService.cancelPayment(paymentId).isRight();
+                    }));
+                }
+                start.countDown();
+
+                // Then - only one cancellation succeeded
+                var succeeded = 0;
+                for (var result : results) {
+                    succeeded += result.get() ? 1 : 0;
+                }
+                assertThat(succeeded).isEqualTo(1);
+                assertThat(version(paymentId)).isEqualTo(1);
+                cancelled += succeeded;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        // And - event was published once per payment
+        assertThat(cancelled).isEqualTo(PAYMENTS);
+        verify(eventPublisher, times(PAYMENTS)).publish(any(PaymentCancelledEvent.class));
+    }
+
+    private long version(UUID paymentId) {
+        return jdbcTemplate.queryForObject("SELECT version FROM payment WHERE payment_id = ?", Long.class, paymentId);
+    }
+
+    private static PaymentDto payment() {
+        return PaymentDto.builder()
+                .type("TYPE3")
+                .amount("10")
+                .currency("EUR")
+                .creditorIban("SE3550000000054910000003")
+                .creditorBic("DEUTDEFF")
+                .debtorIban("CH9300762011623852957")
+                .build();
+    }
+}
@@ -0,0 +1,147 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventRepository;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sender leaves destination alone while it is down and resumes delivery when it comes back.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:deliveryCircuitBreaker",
+        "payments.notification.sender.batch-size=10",
+        "payments.notification.sender.max-attempts=100",
+        "payments.notification.sender.initial-retry-backoff=100ms",
+        "payments.notification.sender.max-retry-backoff=200ms",
+        "payments.notification.sender.circuit-breaker.sliding-window-size=10",
+        "payments.notification.sender.circuit-breaker.minimum-number-of-calls=5",
+        "payments.notification.sender.circuit-breaker.open-duration=1s",
+        "payments.notification.sender.circuit-breaker.half-open-probes=2"
+})
+@ContextConfiguration(initializers = DeliveryCircuitBreakerItTest.DestinationInitializer.class)
+public class DeliveryCircuitBreakerItTest {
+
+    private static final int EVENTS = 50;
+
+    private static final AtomicBoolean destinationUp = new AtomicBoolean();
+    private static final AtomicInteger requests = new AtomicInteger();
+    private static final Set<String> received = ConcurrentHashMap.newKeySet();
+    private static final HttpServer destination = startDestination();
+
+    static class DestinationInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues.of("payments.notification.sender.destination-url=http://localhost:" + destination.getAddress().getPort() + "/events")
+                    .applyTo(context);
+        }
+    }
+
+    @Autowired
+    DbEventRepository eventRepository;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @AfterClass
+    public static void stopDestination() {
+        destination.stop(0);
+    }
+
+    @Test
+    public void shouldStopCallingDestinationDuringOutageAndRecoverAfterIt() throws Exception {
+        // Given - destination is down
+        var events = IntStream.range(0, EVENTS)
+                .mapToObj(i -> new PaymentCreatedEvent(UUID.randomUUID().toString(), "TYPE1"))
+                .collect(Collectors.toList());
+        var eventIds = events.stream().map(PaymentCreatedEvent::getEventId).collect(Collectors.toSet());
+
+        // When - events are waiting for three seconds of outage
+        eventRepository.saveAll(events.stream().map(this::dbEvent).collect(Collectors.toList()));
+        TimeUnit.SECONDS.sleep(3);
+
+        // Then - circuit opened
+        assertThat(meterRegistry.get("payments.notification.circuit.transitions").tags("from", "CLOSED", "to", "OPEN").counter().count())
+                .isGreaterThanOrEqualTo(1);
+        // And - destination got only first batch and few probes, without circuit breaker every event
+        // would be retried every 100-200ms
+        assertThat(requests.get()).isLessThan(30);
+
+        // When - destination comes back
+        destinationUp.set(true);
+        awaitUntil(() -> received.containsAll(eventIds), Duration.ofSeconds(10));
+
+        // Then - all events are delivered
+        assertThat(received).containsAll(eventIds);
+        assertThat(meterRegistry.get("payments.notification.circuit.state").gauge().value()).isZero();
+    }
+
+    private static HttpServer startDestination() {
+        try {
+            var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            var objectMapper = new ObjectMapper();
+            server.createContext("/events", exchange -> {
+                requests.incrementAndGet();
+                var event = objectMapper.readTree(exchange.getRequestBody());
+                if (destinationUp.get()) {
+                    received.add(event.get("eventId").asText());
+                    exchange.sendResponseHeaders(202, -1);
+                } else {
+                    exchange.sendResponseHeaders(503, -1);
+                }
+                exchange.close();
+            });
+            server.start();
+            return server;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private DbEvent dbEvent(PaymentCreatedEvent event) {
+        try {
+            return new DbEvent(objectMapper.writeValueAsString(event));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition, Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
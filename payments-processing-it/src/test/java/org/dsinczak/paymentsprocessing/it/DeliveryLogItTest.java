@@ -0,0 +1,131 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.api.DeliveryDto;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventCodec;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventRepository;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderConduit;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeliveryLogRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Every delivery attempt ends up in delivery log and can be checked by payment id.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:deliveryLog",
+        "payments.notification.sender.initial-retry-backoff=50ms",
+        "payments.notification.sender.delivery-log.flush-interval=50ms"
+})
+@AutoConfigureMockMvc
+public class DeliveryLogItTest {
+
+    @TestConfiguration
+    static class FailingOnceConduitConfiguration {
+        @Bean
+        @Primary
+        FailingOnceConduit failingOnceConduit() {
+            return new FailingOnceConduit();
+        }
+    }
+
+    /**
+     * Rejects first attempt of every event.
+     */
+    static class FailingOnceConduit implements DbEventSenderConduit {
+        final Set<String> attempted = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public CompletionStage<Void> send(PaymentEvent event) {
+            if (attempted.add(event.getEventId())) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Destination busy"));
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    DbEventRepository eventRepository;
+
+    @Autowired
+    DbEventCodec eventCodec;
+
+    @Autowired
+    DeliveryLogRepository deliveryLogRepository;
+
+    @Test
+    public void shouldLogEveryDeliveryAttemptOfPayment() throws Exception {
+        // Given
+        var paymentId = UUID.randomUUID().toString();
+        var created = new PaymentCreatedEvent(paymentId, "TYPE1");
+        var cancelled = new PaymentCancelledEvent(paymentId);
+
+        // When
+        eventRepository.saveAll(List.of(eventCodec.toDbEvent(created), eventCodec.toDbEvent(cancelled)));
+        awaitUntil(() -> deliveryLogRepository.findByPaymentIdOrderByIdAsc(paymentId).size() == 4, Duration.ofSeconds(10));
+        var response = mockMvc.perform(get("/payment/" + paymentId + "/deliveries"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        List<DeliveryDto> deliveries = objectMapper.readValue(response, new TypeReference<List<DeliveryDto>>() {});
+
+        // Then - each event failed once and was delivered on second attempt, in payment order
+        assertThat(deliveries.stream().map(d -> d.getEventId() + " " + d.getAttempt() + " " + d.getOutcome()).collect(Collectors.toList()))
+                .containsExactly(
+                        created.getEventId() + " 1 FAILED",
+                        created.getEventId() + " 2 DELIVERED",
+                        cancelled.getEventId() + " 1 FAILED",
+                        cancelled.getEventId() + " 2 DELIVERED");
+        assertThat(deliveries.get(0).getError()).contains("Destination busy");
+        assertThat(deliveries).allMatch(d -> d.getLatencyMillis() != null);
+    }
+
+    @Test
+    public void shouldRejectInvalidPaymentId() throws Exception {
+        // When / Then
+        mockMvc.perform(get("/payment/not-uuid/deliveries"))
+                .andExpect(status().isBadRequest());
+    }
+
+    private static void awaitUntil(BooleanSupplier condition, Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
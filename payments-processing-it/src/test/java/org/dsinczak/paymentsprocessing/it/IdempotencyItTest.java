@@ -0,0 +1,142 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.api.PaymentDto;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.domain.PaymentRepository;
+import org.dsinczak.paymentsprocessing.idempotency.IdempotencyRecord;
+import org.dsinczak.paymentsprocessing.idempotency.IdempotencyRecordRepository;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:idempotency")
+@AutoConfigureMockMvc
+public class IdempotencyItTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    PaymentRepository paymentRepository;
+
+    @Autowired
+    IdempotencyRecordRepository idempotencyRecordRepository;
+
+    @MockBean
+    EventPublisher eventPublisher;
+
+    @Test
+    public void shouldReturnPaymentOfFirstRequestWhenRequestIsReplayed() throws Exception {
+        // Given
+        var first = createPayment("replayed", payment("some details")).andExpect(status().isOk());
+        var paymentId = first.andReturn().getResponse().getContentAsString();
+
+        // When
+        var replay = createPayment("replayed", payment("some details"));
+
+        // Then
+        replay.andExpect(status().isOk());
+        assertThat(replay.andReturn().getResponse().getContentAsString()).isEqualTo(paymentId);
+        assertThat(paymentRepository.findByPaymentId(UUID.fromString(paymentId)).isDefined()).isTrue();
+        verify(eventPublisher, times(1)).publish(any(PaymentCreatedEvent.class));
+    }
+
+    @Test
+    public void shouldCreateSinglePaymentForConcurrentDuplicates() throws Exception {
+        // Given
+        var executor = Executors.newFixedThreadPool(8);
+        var requests = new ArrayList<Callable<String>>();
+        for (int i = 0; i < 8; i++) {
+            requests.add(() -> createPayment("concurrent", payment("some details"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString());
+        }
+
+        // When
+        var paymentIds = new HashSet<String>();
+        for (Future<String> response : executor.invokeAll(requests)) {
+            paymentIds.add(response.get());
+        }
+        executor.shutdown();
+
+        // Then
+        assertThat(paymentIds).hasSize(1);
+        verify(eventPublisher, times(1)).publish(any(PaymentCreatedEvent.class));
+    }
+
+    @Test
+    public void shouldRejectKeyReusedForDifferentPayment() throws Exception {
+        // Given
+        createPayment("reused", payment("some details")).andExpect(status().isOk());
+
+        // When
+        var reused = createPayment("reused", payment("other details"));
+
+        // Then
+        reused.andExpect(status().isBadRequest());
+        assertThat(reused.andReturn().getResponse().getContentAsString()).contains("Idempotency key reused was already used for different payment.");
+        verify(eventPublisher, times(1)).publish(any(PaymentCreatedEvent.class));
+    }
+
+    @Test
+    public void shouldReturnPaymentStoredByOtherInstance() throws Exception {
+        // Given - created by other instance, so it is only in database
+        var paymentId = UUID.fromString(createPayment("stored", payment("some details")).andReturn().getResponse().getContentAsString());
+        var record = idempotencyRecordRepository.findByIdempotencyKey("stored").get();
+        idempotencyRecordRepository.save(new IdempotencyRecord("stored elsewhere", record.getRequestHash(), paymentId, Instant.now()));
+
+        // When
+        var replay = createPayment("stored elsewhere", payment("some details"));
+
+        // Then
+        replay.andExpect(status().isOk());
+        assertThat(replay.andReturn().getResponse().getContentAsString()).isEqualTo(paymentId.toString());
+        verify(eventPublisher, times(1)).publish(any(PaymentCreatedEvent.class));
+    }
+
+    private ResultActions createPayment(String idempotencyKey, PaymentDto payment) throws Exception {
+        return mockMvc.perform(
+                post("/payment")
+                        .header("Idempotency-Key", idempotencyKey)
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(payment)));
+    }
+
+    private static PaymentDto payment(String details) {
+        return PaymentDto.builder()
+                .type("TYPE1")
+                .amount("10")
+                .currency("USD")
+                .creditorIban("SE3550000000054910000003")
+                .debtorIban("CH9300762011623852957")
+                .details(details)
+                .build();
+    }
+}
@@ -0,0 +1,91 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.api.PaymentDto;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.dsinczak.paymentsprocessing.notification.journal.Journal;
+import org.dsinczak.paymentsprocessing.notification.journal.JournalEventPublisher;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventRepository;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderConduit;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:journalNotification",
+        "payments.notification.journal.enabled=true",
+        "payments.notification.journal.directory=${java.io.tmpdir}/journal-it-${random.uuid}",
+        "payments.notification.journal.segment-size=4096"
+})
+@AutoConfigureMockMvc
+public class JournalNotificationItTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    EventPublisher eventPublisher;
+
+    @Autowired
+    Journal journal;
+
+    @Autowired
+    DbEventRepository eventRepository;
+
+    @MockBean
+    DbEventSenderConduit eventSenderConduit;
+
+    @Before
+    public void destinationAcceptsEvents() {
+        when(eventSenderConduit.send(any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
+    @Test
+    public void shouldSendNotificationThroughJournalWithoutTouchingOutbox() throws Exception {
+        // Given
+        var paymentDto = PaymentDto.builder()
+                .type("TYPE1")
+                .amount("10")
+                .currency("USD")
+                .creditorIban("SE3550000000054910000003")
+                .debtorIban("CH9300762011623852957")
+                .details("some details")
+                .build();
+        var writePosition = journal.getWritePosition();
+
+        // When
+        mockMvc.perform(
+                post("/payment")
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(paymentDto)))
+                .andExpect(status().isOk());
+
+        // Then - event went to the journal and was sent right after commit
+        assertThat(eventPublisher).isInstanceOf(JournalEventPublisher.class);
+        assertThat(journal.getWritePosition()).isGreaterThan(writePosition);
+        verify(eventSenderConduit, timeout(1000)).send(any(PaymentCreatedEvent.class));
+        // And - database outbox was not used
+        assertThat(eventRepository.count()).isZero();
+    }
+}
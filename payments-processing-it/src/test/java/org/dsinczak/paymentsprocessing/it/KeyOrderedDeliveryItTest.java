@@ -0,0 +1,130 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventRepository;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderConduit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Stress test of per payment ordering. Events of many payments are interleaved in the outbox,
+ * destination answers with random latency and randomly fails, so events are retried and lanes
+ * complete out of order. Still every payment has to see its events exactly in publication order
+ * and never two of them at the same time.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:keyOrderedDelivery",
+        "payments.notification.sender.batch-size=100",
+        "payments.notification.sender.max-in-flight=16",
+        "payments.notification.sender.max-attempts=1000",
+        "payments.notification.sender.initial-retry-backoff=10ms",
+        "payments.notification.sender.max-retry-backoff=50ms"
+})
+public class KeyOrderedDeliveryItTest {
+
+    private static final int PAYMENTS = 200;
+    private static final int EVENTS_PER_PAYMENT = 5;
+    private static final double FAILURE_RATE = 0.1;
+
+    @TestConfiguration
+    static class OrderRecordingConduitConfiguration {
+        @Bean
+        @Primary
+        OrderRecordingConduit orderRecordingConduit() {
+            return new OrderRecordingConduit();
+        }
+    }
+
+    static class OrderRecordingConduit implements DbEventSenderConduit {
+        final Map<String, List<String>> delivered = new ConcurrentHashMap<>();
+        final Set<String> inFlightPayments = ConcurrentHashMap.newKeySet();
+        final AtomicInteger concurrentDeliveriesOfPayment = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+
+        @Override
+        public CompletionStage<Void> send(PaymentEvent event) {
+            if (!inFlightPayments.add(event.getPaymentId())) {
+                concurrentDeliveriesOfPayment.incrementAndGet();
+            }
+            var random = ThreadLocalRandom.current();
+            var latency = CompletableFuture.delayedExecutor(random.nextInt(3), TimeUnit.MILLISECONDS);
+            var fail = random.nextDouble() < FAILURE_RATE;
+            return CompletableFuture.runAsync(() -> {
+                inFlightPayments.remove(event.getPaymentId());
+                if (fail) {
+                    failures.incrementAndGet();
+                    throw new IllegalStateException("Random destination failure");
+                }
+                delivered.computeIfAbsent(event.getPaymentId(), p -> Collections.synchronizedList(new ArrayList<>())).add(event.getEventId());
+            }, latency);
+        }
+    }
+
+    @Autowired
+    DbEventRepository eventRepository;
+
+    @Autowired
+    OrderRecordingConduit conduit;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    public void shouldDeliverEventsOfEveryPaymentInPublicationOrder() throws Exception {
+        // Given - events of many payments interleaved in the outbox
+        var paymentIds = IntStream.range(0, PAYMENTS)
+                .mapToObj(i -> UUID.randomUUID().toString())
+                .collect(Collectors.toList());
+        var expected = new ConcurrentHashMap<String, List<String>>();
+        var outbox = new ArrayList<DbEvent>();
+        for (int round = 0; round < EVENTS_PER_PAYMENT; round++) {
+            for (var paymentId : paymentIds) {
+                PaymentEvent event = round == 0 ? new PaymentCreatedEvent(paymentId, "TYPE1") : new PaymentCancelledEvent(paymentId);
+                expected.computeIfAbsent(paymentId, p -> new ArrayList<>()).add(event.getEventId());
+                outbox.add(new DbEvent(objectMapper.writeValueAsString(event), paymentId));
+            }
+        }
+        eventRepository.saveAll(outbox);
+
+        // When - sender drains it
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (eventRepository.count() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(50);
+        }
+
+        // Then - everything was delivered despite failures
+        assertThat(eventRepository.count()).isZero();
+        assertThat(conduit.failures.get()).isPositive();
+        // And - every payment got its events exactly once, in order, one at a time
+        assertThat(conduit.delivered).isEqualTo(expected);
+        assertThat(conduit.concurrentDeliveriesOfPayment.get()).isZero();
+    }
+}
@@ -0,0 +1,169 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.PaymentsApplication;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventRepository;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderConduit;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderProperties;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two application instances share one outbox database and split its backlog
+ * without sending any event twice.
+ */
+public class MultiInstanceOutboxItTest {
+
+    private static final String SHARED_DATABASE = "jdbc:h2:mem:sharedOutbox;DB_CLOSE_DELAY=-1";
+    private static final int EVENTS = 2_000;
+
+    // event id -> id of instance that delivered it
+    private static final Map<String, String> deliveries = new ConcurrentHashMap<>();
+    private static final AtomicInteger duplicates = new AtomicInteger();
+
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @TestConfiguration
+    static class RecordingConduitConfiguration {
+        @Bean
+        @Primary
+        DbEventSenderConduit recordingConduit(DbEventSenderProperties properties) {
+            return event -> {
+                sleep(1);
+                if (deliveries.putIfAbsent(event.getEventId(), properties.getInstanceId()) != null) {
+                    duplicates.incrementAndGet();
+                }
+                return CompletableFuture.completedFuture(null);
+            };
+        }
+    }
+
+    /**
+     * Plain application context does not filter out test configurations like @SpringBootTest does,
+     * so configurations of other integration tests would be picked up by component scan.
+     */
+    static class ItPackageExcludeFilter extends TypeExcludeFilter {
+        @Override
+        public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) {
+            return metadataReader.getClassMetadata().getClassName().startsWith(MultiInstanceOutboxItTest.class.getPackageName());
+        }
+    }
+
+    @BeforeClass
+    public static void startInstances() {
+        nodeA = startInstance("node-a");
+        nodeB = startInstance("node-b");
+    }
+
+    @AfterClass
+    public static void stopInstances() {
+        nodeB.close();
+        nodeA.close();
+    }
+
+    @Test
+    public void shouldSplitBacklogBetweenInstancesWithoutDuplicates() throws Exception {
+        // Given - backlog of events in shared outbox
+        var eventRepository = nodeA.getBean(DbEventRepository.class);
+        var events = IntStream.range(0, EVENTS)
+                .mapToObj(i -> new PaymentCreatedEvent(UUID.randomUUID().toString(), "TYPE1"))
+                .collect(Collectors.toList());
+        var eventIds = events.stream().map(PaymentCreatedEvent::getEventId).collect(Collectors.toSet());
+        eventRepository.saveAll(events.stream().map(MultiInstanceOutboxItTest::dbEvent).collect(Collectors.toList()));
+
+        // When - both instances drain it
+        awaitUntil(() -> deliveries.keySet().containsAll(eventIds), Duration.ofSeconds(60));
+
+        // Then - every event was delivered exactly once
+        assertThat(deliveries.keySet()).containsAll(eventIds);
+        assertThat(duplicates.get()).isZero();
+        // And - both instances took part
+        assertThat(eventIds.stream().map(deliveries::get)).contains("node-a", "node-b");
+    }
+
+    @Test
+    public void shouldReclaimEventsLeasedByCrashedInstance() throws Exception {
+        // Given - events leased by instance that is gone, one lease already expired
+        var eventRepository = nodeB.getBean(DbEventRepository.class);
+        var expired = new PaymentCreatedEvent(UUID.randomUUID().toString(), "TYPE1");
+        var stillLeased = new PaymentCreatedEvent(UUID.randomUUID().toString(), "TYPE1");
+        eventRepository.save(leasedDbEvent(expired, Instant.now().minus(Duration.ofMinutes(1))));
+        var stillLeasedRow = eventRepository.save(leasedDbEvent(stillLeased, Instant.now().plus(Duration.ofHours(1))));
+
+        // When - live instances poll the outbox
+        awaitUntil(() -> deliveries.containsKey(expired.getEventId()), Duration.ofSeconds(10));
+
+        // Then - expired lease was taken over
+        assertThat(deliveries).containsKey(expired.getEventId());
+        // And - valid lease is respected
+        assertThat(deliveries).doesNotContainKey(stillLeased.getEventId());
+        assertThat(eventRepository.existsById(stillLeasedRow.getId())).isTrue();
+    }
+
+    private static ConfigurableApplicationContext startInstance(String instanceId) {
+        return new SpringApplicationBuilder(PaymentsApplication.class, RecordingConduitConfiguration.class)
+                .initializers(context -> context.getBeanFactory().registerSingleton("itPackageExcludeFilter", new ItPackageExcludeFilter()))
+                .run(
+                        "--spring.datasource.url=" + SHARED_DATABASE,
+                        "--spring.jpa.hibernate.ddl-auto=update",
+                        "--server.port=0",
+                        "--payments.notification.sender.instance-id=" + instanceId,
+                        "--payments.notification.sender.batch-size=20");
+    }
+
+    private static DbEvent dbEvent(PaymentCreatedEvent event) {
+        try {
+            return new DbEvent(nodeA.getBean(ObjectMapper.class).writeValueAsString(event));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static DbEvent leasedDbEvent(PaymentCreatedEvent event, Instant leaseExpiry) {
+        var dbEvent = dbEvent(event);
+        dbEvent.setOwner("crashed-node");
+        dbEvent.setLeaseExpiry(leaseExpiry);
+        return dbEvent;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition, Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventRepository;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderConduit;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures sustained outbox drain rate. Runs on its own database so schedulers of other
+ * cached test contexts do not steal events.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:outboxThroughput",
+        "payments.notification.sender.batch-size=500"
+})
+public class OutboxThroughputItTest {
+
+    private static final Logger log = LoggerFactory.getLogger(OutboxThroughputItTest.class);
+
+    private static final int EVENTS = 20_000;
+    private static final long MIN_EVENTS_PER_SECOND = 500;
+
+    @TestConfiguration
+    static class CountingConduitConfiguration {
+        @Bean
+        @Primary
+        CountingConduit countingConduit() {
+            return new CountingConduit();
+        }
+    }
+
+    static class CountingConduit implements DbEventSenderConduit {
+        final AtomicInteger sent = new AtomicInteger();
+
+        @Override
+        public CompletionStage<Void> send(PaymentEvent event) {
+            sent.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    @Autowired
+    DbEventRepository eventRepository;
+
+    @Autowired
+    CountingConduit conduit;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    public void shouldDrainOutboxBacklogInBatches() throws Exception {
+        // Given - backlog of events waiting in outbox
+        var backlog = IntStream.range(0, EVENTS)
+                .mapToObj(i -> new DbEvent(json(new PaymentCreatedEvent(UUID.randomUUID().toString(), "TYPE1"))))
+                .collect(Collectors.toList());
+        eventRepository.saveAll(backlog);
+        var start = System.nanoTime();
+
+        // When - sender drains it
+        var deadline = start + TimeUnit.SECONDS.toNanos(60);
+        while (eventRepository.count() > 0 && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        var elapsedMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        var eventsPerSecond = EVENTS * 1000L / elapsedMillis;
+        log.info("Outbox drained {} events in {} ms ({} events/s)", EVENTS, elapsedMillis, eventsPerSecond);
+
+        // Then - every event was sent exactly once
+        assertThat(eventRepository.count()).isZero();
+        assertThat(conduit.sent.get()).isEqualTo(EVENTS);
+        // And - throughput is not bound by scheduling interval
+        assertThat(eventsPerSecond).isGreaterThan(MIN_EVENTS_PER_SECOND);
+    }
+
+    private String json(PaymentCreatedEvent event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
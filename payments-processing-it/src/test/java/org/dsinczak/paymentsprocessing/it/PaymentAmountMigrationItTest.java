@@ -0,0 +1,49 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PaymentAmountMigrationItTest {
+
+    @Test
+    public void shouldMoveTextAmountsToMinorUnits() throws Exception {
+        // Given - payments stored before amounts were numeric
+        var dataSource = new SingleConnectionDataSource("jdbc:h2:mem:amountMigration", "admin", "admin", true);
+        var jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE payment (id BIGINT PRIMARY KEY, amount VARCHAR(255) NOT NULL, cancellation_fee VARCHAR(255))");
+        jdbcTemplate.update("INSERT INTO payment VALUES (1, 'EUR 10.5', NULL)");
+        jdbcTemplate.update("INSERT INTO payment VALUES (2, 'USD 1234.56', 'EUR 0.45')");
+        jdbcTemplate.update("INSERT INTO payment VALUES (3, 'USD 7', 'EUR 0')");
+
+        // When
+        try (var connection = dataSource.getConnection()) {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/migration/payment-amounts-in-minor-units.sql"));
+        }
+
+        // Then
+        var rows = jdbcTemplate.queryForList("SELECT * FROM payment ORDER BY id");
+        assertThat(rows).containsExactly(
+                row(1, 1050, "EUR", null, null),
+                row(2, 123456, "USD", 45L, "EUR"),
+                row(3, 700, "USD", 0L, "EUR"));
+        dataSource.destroy();
+    }
+
+    private static Map<String, Object> row(long id, long amountMinor, String amountCurrency, Long feeMinor, String feeCurrency) {
+        var row = new LinkedHashMap<String, Object>();
+        row.put("ID", id);
+        row.put("AMOUNT_MINOR", amountMinor);
+        row.put("AMOUNT_CURRENCY", amountCurrency);
+        row.put("CANCELLATION_FEE_MINOR", feeMinor);
+        row.put("CANCELLATION_FEE_CURRENCY", feeCurrency);
+        return row;
+    }
+}
@@ -0,0 +1,116 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.api.PaymentBatchItemDto;
+import org.dsinczak.paymentsprocessing.api.PaymentDto;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.domain.PaymentRepository;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:paymentBatch",
+        "payments.batch.max-size=100",
+        "payments.batch.chunk-size=7"
+})
+@AutoConfigureMockMvc
+public class PaymentBatchItTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    PaymentRepository paymentRepository;
+
+    @MockBean
+    EventPublisher eventPublisher;
+
+    @Test
+    public void shouldCreateValidPaymentsOfBatchAndReportInvalidOnes() throws Exception {
+        // Given - every tenth payment is invalid
+        var payments = new ArrayList<PaymentDto>();
+        for (int i = 0; i < 50; i++) {
+            payments.add(payment(i % 10 == 0 ? "NOT_AN_IBAN" : "CH9300762011623852957"));
+        }
+
+        // When
+        var response = mockMvc.perform(
+                post("/payment/batch")
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(payments)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        // Then - every payment has its result in request order
+        List<PaymentBatchItemDto> results = objectMapper.readValue(response, new TypeReference<>() {
+        });
+        assertThat(results).hasSize(50);
+        for (int i = 0; i < results.size(); i++) {
+            var result = results.get(i);
+            if (i % 10 == 0) {
+                assertThat(result.getPaymentId()).isNull();
+                assertThat(result.getErrors()).anyMatch(error -> error.startsWith("Debtor IBAN"));
+            } else {
+                assertThat(result.getErrors()).isEmpty();
+                assertThat(paymentRepository.findByPaymentId(UUID.fromString(result.getPaymentId())).isDefined()).isTrue();
+            }
+        }
+        // And - events were published for created payments only
+        verify(eventPublisher, times(45)).publish(any(PaymentCreatedEvent.class));
+    }
+
+    @Test
+    public void shouldRejectBatchOverLimit() throws Exception {
+        // Given
+        var payments = new ArrayList<PaymentDto>();
+        for (int i = 0; i < 101; i++) {
+            payments.add(payment("CH9300762011623852957"));
+        }
+
+        // When
+        var result = mockMvc.perform(
+                post("/payment/batch")
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(payments)));
+
+        // Then - whole batch is rejected
+        result.andExpect(status().isBadRequest());
+        verify(eventPublisher, times(0)).publish(any());
+    }
+
+    private static PaymentDto payment(String debtorIban) {
+        return PaymentDto.builder()
+                .type("TYPE1")
+                .amount("10")
+                .currency("USD")
+                .creditorIban("SE3550000000054910000003")
+                .debtorIban(debtorIban)
+                .details("some details")
+                .build();
+    }
+}
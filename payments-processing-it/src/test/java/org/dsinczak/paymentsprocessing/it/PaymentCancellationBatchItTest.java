@@ -0,0 +1,127 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.api.MoneyDto;
+import org.dsinczak.paymentsprocessing.api.PaymentCancellationBatchItemDto;
+import org.dsinczak.paymentsprocessing.api.PaymentDto;
+import org.dsinczak.paymentsprocessing.api.PaymentIdsDto;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCancelledEvent;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:paymentCancellationBatch",
+        "payments.batch.max-size=10",
+        "payments.batch.chunk-size=2"
+})
+@AutoConfigureMockMvc
+public class PaymentCancellationBatchItTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    EventPublisher eventPublisher;
+
+    @Test
+    public void shouldCancelPaymentsOfBatchAndReportTheOnesThatCannotBeCancelled() throws Exception {
+        // Given
+        var first = createPayment();
+        var second = createPayment();
+        var alreadyCancelled = createPayment();
+        mockMvc.perform(put("/payment/{paymentId}/cancellation", alreadyCancelled)).andExpect(status().isOk());
+        var unknown = UUID.randomUUID().toString();
+
+        // When
+        var response = mockMvc.perform(
+                post("/payment/cancellation/batch")
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(new PaymentIdsDto(List.of(first, alreadyCancelled, "not-an-id", unknown, second)))))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        // Then - every payment id has its result in request order
+        List<PaymentCancellationBatchItemDto> results = objectMapper.readValue(response, new TypeReference<>() {
+        });
+        assertThat(results).extracting(PaymentCancellationBatchItemDto::getPaymentId)
+                .containsExactly(first, alreadyCancelled, "not-an-id", unknown, second);
+        assertThat(results.get(0).getCancellationFee()).isEqualTo(new MoneyDto("0", "EUR"));
+        assertThat(results.get(1).getErrors()).containsExactly("Cancellation failure. Payment already cancelled");
+        assertThat(results.get(2).getErrors()).containsExactly("Payment ID not-an-id is not valid UUID");
+        assertThat(results.get(3).getErrors()).containsExactly("Payment with ID: " + unknown + " does not exist.");
+        assertThat(results.get(4).getErrors()).isEmpty();
+        // And - cancellations are stored with new version
+        assertThat(jdbcTemplate.queryForList("SELECT state, version FROM payment WHERE payment_id IN (?, ?)", UUID.fromString(first), UUID.fromString(second)))
+                .allMatch(row -> row.get("STATE").equals(1) && row.get("VERSION").equals(1L));
+        // And - events were published for every cancellation, including the one cancelled before
+        verify(eventPublisher, times(3)).publish(any(PaymentCancelledEvent.class));
+    }
+
+    @Test
+    public void shouldRejectBatchOverLimit() throws Exception {
+        // Given
+        var ids = new ArrayList<String>();
+        for (int i = 0; i < 11; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+
+        // When
+        var result = mockMvc.perform(
+                post("/payment/cancellation/batch")
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(new PaymentIdsDto(ids))));
+
+        // Then - whole batch is rejected
+        result.andExpect(status().isBadRequest());
+        verify(eventPublisher, times(0)).publish(any());
+    }
+
+    private String createPayment() throws Exception {
+        var paymentDto = PaymentDto.builder()
+                .type("TYPE3")
+                .amount("10")
+                .currency("EUR")
+                .creditorIban("SE3550000000054910000003")
+                .creditorBic("DEUTDEFF")
+                .debtorIban("CH9300762011623852957")
+                .build();
+        return mockMvc.perform(
+                post("/payment")
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(paymentDto)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+    }
+}
@@ -0,0 +1,154 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.api.PaymentDto;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.dsinczak.paymentsprocessing.readModel.NotCancelledPaymentsExport;
+import org.dsinczak.paymentsprocessing.readModel.PaymentAmountFilter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.OutputStream;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:paymentExport",
+        "payments.export.fetch-size=100",
+        "payments.export.buffer-size=4096"
+})
+@AutoConfigureMockMvc
+public class PaymentExportItTest {
+
+    private static final int SEEDED = 100_000;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    NotCancelledPaymentsExport export;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    EventPublisher eventPublisher;
+
+    @Test
+    public void shouldExportNotCancelledPaymentsAsNdjsonAndCsv() throws Exception {
+        // Given
+        var twenty = createPayment("20", "USD");
+        var ten = createPayment("10.5", "USD");
+        var cancelled = createPayment("15", "USD");
+        createPayment("15", "EUR");
+        mockMvc.perform(put("/payment/{paymentId}/cancellation", cancelled)).andExpect(status().isOk());
+
+        // When
+        var ndjson = mockMvc.perform(get("/payment/export").param("currency", "USD"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+        var csv = mockMvc.perform(get("/payment/export").param("currency", "USD").param("format", "csv"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andReturn().getResponse().getContentAsString();
+
+        // Then - not cancelled payments ordered by amount
+        assertThat(ndjson).isEqualTo(
+                "{\"paymentId\":\"" + ten + "\",\"amount\":\"10.50\",\"currency\":\"USD\"}\n" +
+                "{\"paymentId\":\"" + twenty + "\",\"amount\":\"20.00\",\"currency\":\"USD\"}\n");
+        assertThat(objectMapper.readTree(ndjson.split("\n")[0]).get("paymentId").asText()).isEqualTo(ten);
+        assertThat(csv).isEqualTo("payment_id,amount,currency\n" + ten + ",10.50,USD\n" + twenty + ",20.00,USD\n");
+    }
+
+    @Test
+    public void shouldRejectInvalidExport() throws Exception {
+        mockMvc.perform(get("/payment/export").param("format", "xml")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/payment/export").param("minAmount", "abc")).andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldWriteLargeExportToOutputAsItIsRead() throws Exception {
+        // Given - payments above any amount created by other tests
+        seed();
+        var output = new CountingOutputStream();
+
+        // When
+        var written = export.write(PaymentAmountFilter.of("1000000", null, "EUR").get(), NotCancelledPaymentsExport.Format.CSV, output);
+
+        // Then - every payment was written
+        assertThat(written).isEqualTo(SEEDED);
+        assertThat(output.lines).isEqualTo(SEEDED + 1);
+        // And - output received export in buffer sized pieces, not as single block at the end
+        assertThat(output.writes).isGreaterThanOrEqualTo(output.bytes / 4096);
+    }
+
+    private void seed() {
+        var created = Timestamp.valueOf(LocalDateTime.now());
+        var rows = new ArrayList<Object[]>();
+        for (int i = 0; i < SEEDED; i++) {
+            rows.add(new Object[]{2_000_000_000L + i, UUID.randomUUID(), 100_000_000L + i, created});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO payment (id, payment_id, type, debtor_iban, creditor_iban, details, amount_minor, amount_currency, created, last_modified, state, version) " +
+                "VALUES (?, ?, 0, 'CH9300762011623852957', 'SE3550000000054910000003', 'seeded', ?, 'EUR', ?, CURRENT_TIMESTAMP, 0, 0)", rows);
+    }
+
+    private String createPayment(String amount, String currency) throws Exception {
+        var paymentDto = PaymentDto.builder()
+                .type("TYPE3")
+                .amount(amount)
+                .currency(currency)
+                .creditorIban("SE3550000000054910000003")
+                .creditorBic("DEUTDEFF")
+                .debtorIban("CH9300762011623852957")
+                .build();
+        return mockMvc.perform(
+                post("/payment")
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(paymentDto)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+    }
+
+    static class CountingOutputStream extends OutputStream {
+        long bytes;
+        long writes;
+        long lines;
+
+        @Override
+        public void write(int b) {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            writes++;
+            bytes += len;
+            for (int i = off; i < off + len; i++) {
+                lines += b[i] == '\n' ? 1 : 0;
+            }
+        }
+    }
+}
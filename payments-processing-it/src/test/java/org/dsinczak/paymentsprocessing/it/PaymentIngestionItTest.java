@@ -0,0 +1,99 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.api.PaymentDto;
+import org.dsinczak.paymentsprocessing.api.PaymentIngestionResultDto;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.domain.PaymentRepository;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:paymentIngestion",
+        "payments.batch.chunk-size=100"
+})
+@AutoConfigureMockMvc
+public class PaymentIngestionItTest {
+
+    private static final int PAYMENTS = 1_050;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    PaymentRepository paymentRepository;
+
+    @MockBean
+    EventPublisher eventPublisher;
+
+    @Test
+    public void shouldCreatePaymentsOfNewlineDelimitedUploadAndStreamResultOfEveryLine() throws Exception {
+        // Given - upload with one invalid payment
+        var upload = new StringBuilder();
+        for (int i = 1; i <= PAYMENTS; i++) {
+            var payment = PaymentDto.builder()
+                    .type("TYPE1")
+                    .amount(i == 500 ? "-1" : "10")
+                    .currency("USD")
+                    .creditorIban("SE3550000000054910000003")
+                    .debtorIban("CH9300762011623852957")
+                    .details("payment " + i)
+                    .build();
+            upload.append(objectMapper.writeValueAsString(payment)).append('\n');
+        }
+
+        // When
+        var response = mockMvc.perform(
+                post("/payment/stream")
+                        .contentType("application/x-ndjson")
+                        .content(upload.toString()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        // Then - there is result of every line, in upload order
+        var results = response.lines()
+                .map(this::readResult)
+                .collect(Collectors.toList());
+        assertThat(results).extracting(PaymentIngestionResultDto::getLine)
+                .containsExactlyElementsOf(IntStream.rangeClosed(1, PAYMENTS).boxed().collect(Collectors.toList()));
+        assertThat(results.get(499).getErrors()).isNotEmpty();
+        assertThat(results.stream().filter(result -> result.getPaymentId() != null)).hasSize(PAYMENTS - 1);
+        // And - created payments are stored and their events published
+        assertThat(paymentRepository.findByPaymentId(UUID.fromString(results.get(PAYMENTS - 1).getPaymentId())).isDefined()).isTrue();
+        verify(eventPublisher, times(PAYMENTS - 1)).publish(any(PaymentCreatedEvent.class));
+    }
+
+    private PaymentIngestionResultDto readResult(String line) {
+        try {
+            return objectMapper.readValue(line, PaymentIngestionResultDto.class);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
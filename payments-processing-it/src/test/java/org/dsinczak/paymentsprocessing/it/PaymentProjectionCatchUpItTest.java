@@ -0,0 +1,92 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.dsinczak.paymentsprocessing.readModel.PaymentProjection;
+import org.dsinczak.paymentsprocessing.readModel.PaymentView;
+import org.dsinczak.paymentsprocessing.readModel.PaymentViews;
+import org.dsinczak.paymentsprocessing.shared.CurrencyCode;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Payments created and cancelled by other instance sharing the database, written here with plain SQL,
+ * reach the projection without any event.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:paymentProjectionCatchUp",
+        "payments.projection.enabled=true",
+        "payments.projection.catch-up-interval=50ms"
+})
+public class PaymentProjectionCatchUpItTest {
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    PaymentViews paymentViews;
+
+    @Autowired
+    Clock clock;
+
+    @MockBean
+    EventPublisher eventPublisher;
+
+    @Test
+    public void shouldFollowPaymentsChangedByOtherInstance() throws Exception {
+        // Given
+        var projection = (PaymentProjection) paymentViews;
+        awaitUntil(projection::isReady, Duration.ofSeconds(10));
+        var paymentId = UUID.randomUUID();
+
+        // When - other instance creates payment
+        jdbcTemplate.update("INSERT INTO payment (id, payment_id, type, debtor_iban, creditor_iban, details, amount_minor, amount_currency, created, last_modified, state, version) " +
+                "VALUES (1000000, ?, 0, 'CH9300762011623852957', 'SE3550000000054910000003', 'other instance', 1500, 'EUR', ?, ?, 0, 0)", paymentId, now(), now());
+        awaitUntil(() -> paymentViews.findByPaymentId(paymentId).isDefined(), Duration.ofSeconds(10));
+
+        // Then
+        assertThat(paymentViews.findNotCancelledAfter(CurrencyCode.EUR, 0, 0, Long.MAX_VALUE, 10))
+                .extracting(PaymentView::getPaymentId).containsExactly(paymentId);
+
+        // When - and cancels it
+        jdbcTemplate.update("UPDATE payment SET state = 1, cancellation_fee_minor = 45, cancellation_fee_currency = 'EUR', last_modified = ?, version = 1 " +
+                "WHERE payment_id = ?", now(), paymentId);
+        awaitUntil(() -> paymentViews.findByPaymentId(paymentId).exists(view -> view.getCancellationFee() != null), Duration.ofSeconds(10));
+
+        // Then
+        assertThat(paymentViews.findByPaymentId(paymentId).get().getCancellationFee().getNumber().doubleValue()).isEqualTo(0.45);
+        assertThat(paymentViews.findNotCancelledAfter(CurrencyCode.EUR, 0, 0, Long.MAX_VALUE, 10)).isEmpty();
+        // And - both changes count to lag of projection
+        assertThat(meterRegistry.get("payments.projection.lag").timer().count()).isEqualTo(2);
+    }
+
+    private Timestamp now() {
+        return Timestamp.valueOf(LocalDateTime.now(clock));
+    }
+
+    private static void awaitUntil(BooleanSupplier condition, Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dsinczak.paymentsprocessing.api.PaymentCancellationFeeDto;
+import org.dsinczak.paymentsprocessing.api.PaymentDto;
+import org.dsinczak.paymentsprocessing.api.PaymentIdsPageDto;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.dsinczak.paymentsprocessing.readModel.PaymentProjection;
+import org.dsinczak.paymentsprocessing.readModel.PaymentViews;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:paymentProjection",
+        "payments.projection.enabled=true"
+})
+@AutoConfigureMockMvc
+public class PaymentProjectionItTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    PaymentViews paymentViews;
+
+    @MockBean
+    EventPublisher eventPublisher;
+
+    @Test
+    public void shouldServeReadsFromProjectionFollowingCommittedChanges() throws Exception {
+        // Given
+        assertThat(paymentViews).isInstanceOf(PaymentProjection.class);
+        var projection = (PaymentProjection) paymentViews;
+        awaitUntil(projection::isReady, Duration.ofSeconds(10));
+        var ten = createPayment("TYPE1", "10", "USD");
+        var cancelled = createPayment("TYPE3", "15", "EUR");
+        var twenty = createPayment("TYPE3", "20", "EUR");
+        mockMvc.perform(put("/payment/{paymentId}/cancellation", cancelled)).andExpect(status().isOk());
+        // three creations and one cancellation
+        awaitUntil(() -> meterRegistry.get("payments.projection.lag").timer().count() >= 4, Duration.ofSeconds(10));
+
+        // When - rows are removed behind the back of the application, reads do not see database any more
+        jdbcTemplate.update("DELETE FROM payment");
+
+        // Then
+        var fee = objectMapper.readValue(mockMvc.perform(get("/payment/{paymentId}/cancellation", cancelled))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString(), PaymentCancellationFeeDto.class);
+        assertThat(fee.getPaymentId()).isEqualTo(cancelled);
+        assertThat(fee.getCancellationFeeCurrency()).isEqualTo("EUR");
+        var page = objectMapper.readValue(mockMvc.perform(get("/payment"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString(), PaymentIdsPageDto.class);
+        assertThat(page.getIds()).containsExactly(twenty, ten);
+        // And - size and lag of projection are measured
+        assertThat(meterRegistry.get("payments.projection.size").gauge().value()).isEqualTo(3);
+        assertThat(meterRegistry.get("payments.projection.pending").gauge().value()).isZero();
+    }
+
+    private String createPayment(String type, String amount, String currency) throws Exception {
+        var paymentDto = PaymentDto.builder()
+                .type(type)
+                .amount(amount)
+                .currency(currency)
+                .creditorIban("SE3550000000054910000003")
+                .creditorBic("DEUTDEFF")
+                .debtorIban("CH9300762011623852957")
+                .details("Projection")
+                .build();
+        return mockMvc.perform(
+                post("/payment")
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(paymentDto)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition, Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.api.PaymentDto;
+import org.dsinczak.paymentsprocessing.api.PaymentIdsPageDto;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:paymentQuery")
+@AutoConfigureMockMvc
+public class PaymentQueryItTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @MockBean
+    EventPublisher eventPublisher;
+
+    @Test
+    public void shouldPageThroughNotCancelledPaymentsInAmountRange() throws Exception {
+        // Given
+        var tooSmall = createPayment("9.99", "EUR");
+        var twenty = createPayment("20", "EUR");
+        var ten = createPayment("10", "EUR");
+        var cancelled = createPayment("15", "EUR");
+        var alsoTen = createPayment("10.00", "EUR");
+        var dollars = createPayment("15", "USD");
+        var tooLarge = createPayment("20.01", "EUR");
+        mockMvc.perform(put("/payment/{paymentId}/cancellation", cancelled)).andExpect(status().isOk());
+
+        // When - pages of single payment are read one after another
+        var ids = new ArrayList<String>();
+        var page = query(get("/payment").param("minAmount", "10").param("maxAmount", "20").param("currency", "EUR").param("limit", "1"));
+        ids.addAll(page.getIds());
+        while (page.getNextCursor() != null) {
+            page = query(get("/payment").param("minAmount", "10").param("maxAmount", "20").param("currency", "EUR").param("limit", "1")
+                    .param("cursor", page.getNextCursor()));
+            ids.addAll(page.getIds());
+        }
+
+        // Then - every payment in range was returned once, ordered by amount
+        assertThat(ids).containsExactly(ten, alsoTen, twenty);
+        // And - without filter all not cancelled payments are returned, currency by currency
+        assertThat(query(get("/payment")).getIds()).containsExactly(tooSmall, ten, alsoTen, twenty, tooLarge, dollars);
+    }
+
+    @Test
+    public void shouldRejectInvalidQuery() throws Exception {
+        mockMvc.perform(get("/payment").param("minAmount", "-1")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/payment").param("currency", "PLN")).andExpect(status().isBadRequest());
+        mockMvc.perform(get("/payment").param("cursor", "not a cursor")).andExpect(status().isBadRequest());
+    }
+
+    private PaymentIdsPageDto query(MockHttpServletRequestBuilder request) throws Exception {
+        var response = mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        return objectMapper.readValue(response, PaymentIdsPageDto.class);
+    }
+
+    private String createPayment(String amount, String currency) throws Exception {
+        var paymentDto = PaymentDto.builder()
+                .type("TYPE3")
+                .amount(amount)
+                .currency(currency)
+                .creditorIban("SE3550000000054910000003")
+                .creditorBic("DEUTDEFF")
+                .debtorIban("CH9300762011623852957")
+                .build();
+        return mockMvc.perform(
+                post("/payment")
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(paymentDto)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+    }
+}
@@ -0,0 +1,124 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.dsinczak.paymentsprocessing.readModel.NotCancelledPaymentsQuery;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Seeded data benchmark of amount range query. Walks all pages of large table and compares latency of the last
+ * pages with the first ones, for keyset pages of {@link NotCancelledPaymentsQuery} and for OFFSET pages of the same
+ * query. Runs on its own database, table is filled with plain JDBC.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:paymentQueryLatency")
+public class PaymentQueryLatencyItTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PaymentQueryLatencyItTest.class);
+
+    private static final int PAYMENTS = 300_000;
+    private static final int PAGE_SIZE = 1_000;
+    private static final int SAMPLE_PAGES = 20;
+    // Far above the noise of shared build machine, far below the growth of OFFSET paging
+    private static final int MAX_LAST_TO_FIRST_RATIO = 4;
+    private static final String KEYSET_QUERY = "SELECT payment_id FROM payment WHERE state = 0 AND amount_currency = 'EUR' " +
+            "AND amount_minor >= ? AND amount_minor <= ? AND (amount_minor > ? OR id > ?) " +
+            "ORDER BY state, amount_currency, amount_minor, id LIMIT ?";
+    private static final String OFFSET_QUERY = "SELECT payment_id FROM payment WHERE state = 0 AND amount_currency = 'EUR' " +
+            "AND amount_minor >= 100 ORDER BY state, amount_currency, amount_minor, id LIMIT ? OFFSET ?";
+
+    @Autowired
+    NotCancelledPaymentsQuery query;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    EventPublisher eventPublisher;
+
+    @Test
+    public void shouldReadLastPageAsFastAsTheFirstOne() {
+        // Given - large table, every tenth payment cancelled
+        seed();
+        assertThat(jdbcTemplate.queryForObject("EXPLAIN " + KEYSET_QUERY, String.class, 100, Long.MAX_VALUE, 100, 0, PAGE_SIZE))
+                .containsIgnoringCase("payment_state_amount_idx")
+                .contains("index sorted");
+
+        // When - all pages are read with cursor, first time only to warm up
+        readAllPages(new ArrayList<>());
+        var pageNanos = new ArrayList<Long>();
+        var read = readAllPages(pageNanos);
+
+        // Then - every not cancelled payment was read
+        assertThat(read).isEqualTo(PAYMENTS - PAYMENTS / 10);
+        // And - reading the last pages costs the same as reading the first ones
+        var first = averageMicros(pageNanos.subList(0, SAMPLE_PAGES));
+        var last = averageMicros(pageNanos.subList(pageNanos.size() - SAMPLE_PAGES, pageNanos.size()));
+        var firstWithOffset = offsetPageMicros(0);
+        var lastWithOffset = offsetPageMicros(read - SAMPLE_PAGES * PAGE_SIZE);
+        log.info("{} pages of {} payments, first pages {} us, last pages {} us; with OFFSET first pages {} us, last pages {} us",
+                pageNanos.size(), PAGE_SIZE, first, last, firstWithOffset, lastWithOffset);
+        assertThat(last).isLessThan(first * MAX_LAST_TO_FIRST_RATIO);
+    }
+
+    private int readAllPages(java.util.List<Long> pageNanos) {
+        var read = 0;
+        String cursor = null;
+        do {
+            var start = System.nanoTime();
+            var page = query.find("1.00", null, "EUR", cursor, PAGE_SIZE).get();
+            pageNanos.add(System.nanoTime() - start);
+            read += page.getPaymentIds().size();
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        return read;
+    }
+
+    private void seed() {
+        var created = Timestamp.valueOf(LocalDateTime.now());
+        var random = ThreadLocalRandom.current();
+        var rows = new ArrayList<Object[]>();
+        for (int i = 0; i < PAYMENTS; i++) {
+            // Ids far above the ones handed out by sequence
+            rows.add(new Object[]{1_000_000_000L + i, UUID.randomUUID(), random.nextLong(100, 10_000_000), created, i % 10 == 0 ? 1 : 0});
+            if (rows.size() == 10_000) {
+                insert(rows);
+                rows.clear();
+            }
+        }
+        insert(rows);
+    }
+
+    private void insert(java.util.List<Object[]> rows) {
+        jdbcTemplate.batchUpdate("INSERT INTO payment (id, payment_id, type, debtor_iban, creditor_iban, details, amount_minor, amount_currency, created, last_modified, state, version) " +
+                "VALUES (?, ?, 0, 'CH9300762011623852957', 'SE3550000000054910000003', 'seeded', ?, 'EUR', ?, CURRENT_TIMESTAMP, ?, 0)", rows);
+    }
+
+    private long offsetPageMicros(int offset) {
+        var start = System.nanoTime();
+        for (int i = 0; i < SAMPLE_PAGES; i++) {
+            jdbcTemplate.queryForList(OFFSET_QUERY, PAGE_SIZE, offset + i * PAGE_SIZE);
+        }
+        return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / SAMPLE_PAGES;
+    }
+
+    private static long averageMicros(java.util.List<Long> nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos.stream().mapToLong(Long::longValue).sum()) / nanos.size();
+    }
+}
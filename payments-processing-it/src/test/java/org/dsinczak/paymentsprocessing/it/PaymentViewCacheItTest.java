@@ -0,0 +1,96 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.dsinczak.paymentsprocessing.api.PaymentCancellationFeeDto;
+import org.dsinczak.paymentsprocessing.api.PaymentDto;
+import org.dsinczak.paymentsprocessing.notification.EventPublisher;
+import org.dsinczak.paymentsprocessing.readModel.PaymentViewCache;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:paymentViewCache")
+@AutoConfigureMockMvc
+public class PaymentViewCacheItTest {
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    PaymentViewCache paymentViewCache;
+
+    @MockBean
+    EventPublisher eventPublisher;
+
+    @Test
+    public void shouldInvalidatePaymentOnCancellationCommitAndAnswerPollsFromMemory() throws Exception {
+        // Given - payment is cached before it is cancelled
+        var paymentId = createPayment();
+        assertThat(paymentViewCache.findByPaymentId(UUID.fromString(paymentId)).get().getCancellationFee()).isNull();
+        mockMvc.perform(put("/payment/{paymentId}/cancellation", paymentId)).andExpect(status().isOk());
+
+        // When - cancellation is read, then row is removed behind the back of the application and read again
+        var first = getCancellation(paymentId);
+        jdbcTemplate.update("DELETE FROM payment");
+        var second = getCancellation(paymentId);
+
+        // Then - cancellation replaced cached payment, second poll did not reach the read model
+        assertThat(first.getCancellationFeeCurrency()).isEqualTo("EUR");
+        assertThat(second).isEqualTo(first);
+        assertThat(meterRegistry.get("payments.view.cache.gets").tag("result", "miss").counter().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("payments.view.cache.gets").tag("result", "hit").counter().count()).isEqualTo(1);
+    }
+
+    private PaymentCancellationFeeDto getCancellation(String paymentId) throws Exception {
+        var response = mockMvc.perform(get("/payment/{paymentId}/cancellation", paymentId))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+        return objectMapper.readValue(response, PaymentCancellationFeeDto.class);
+    }
+
+    private String createPayment() throws Exception {
+        var paymentDto = PaymentDto.builder()
+                .type("TYPE3")
+                .amount("10")
+                .currency("EUR")
+                .creditorIban("SE3550000000054910000003")
+                .creditorBic("DEUTDEFF")
+                .debtorIban("CH9300762011623852957")
+                .build();
+        return mockMvc.perform(
+                post("/payment")
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(paymentDto)))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+    }
+}
@@ -0,0 +1,144 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventRepository;
+import org.junit.AfterClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sender delivers events to slow HTTP destination with many requests in flight,
+ * but never more than configured window.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:pipelinedDelivery",
+        "payments.notification.sender.batch-size=50",
+        "payments.notification.sender.max-in-flight=" + PipelinedDeliveryItTest.MAX_IN_FLIGHT
+})
+@ContextConfiguration(initializers = PipelinedDeliveryItTest.DestinationInitializer.class)
+public class PipelinedDeliveryItTest {
+
+    private static final Logger log = LoggerFactory.getLogger(PipelinedDeliveryItTest.class);
+
+    static final int MAX_IN_FLIGHT = 8;
+    private static final int EVENTS = 200;
+    private static final long DESTINATION_LATENCY_MILLIS = 50;
+
+    private static final Set<String> received = ConcurrentHashMap.newKeySet();
+    private static final AtomicInteger inFlight = new AtomicInteger();
+    private static final AtomicInteger peakInFlight = new AtomicInteger();
+    private static final ExecutorService destinationExecutor = Executors.newFixedThreadPool(4 * MAX_IN_FLIGHT);
+    private static final HttpServer destination = startDestination();
+
+    static class DestinationInitializer implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+        @Override
+        public void initialize(ConfigurableApplicationContext context) {
+            TestPropertyValues.of("payments.notification.sender.destination-url=http://localhost:" + destination.getAddress().getPort() + "/events")
+                    .applyTo(context);
+        }
+    }
+
+    @Autowired
+    DbEventRepository eventRepository;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @AfterClass
+    public static void stopDestination() {
+        destination.stop(0);
+        destinationExecutor.shutdownNow();
+    }
+
+    @Test
+    public void shouldKeepBoundedNumberOfDeliveriesInFlight() throws Exception {
+        // Given - backlog of events and destination answering after a delay
+        var events = IntStream.range(0, EVENTS)
+                .mapToObj(i -> new PaymentCreatedEvent(UUID.randomUUID().toString(), "TYPE1"))
+                .collect(Collectors.toList());
+        var eventIds = events.stream().map(PaymentCreatedEvent::getEventId).collect(Collectors.toSet());
+        var start = System.nanoTime();
+        eventRepository.saveAll(events.stream().map(this::dbEvent).collect(Collectors.toList()));
+
+        // When - sender drains it
+        var deadline = start + TimeUnit.SECONDS.toNanos(30);
+        while (!received.containsAll(eventIds) && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        var elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Delivered {} events in {} ms, peak {} in flight", EVENTS, elapsedMillis, peakInFlight.get());
+
+        // Then - every event reached destination
+        assertThat(received).containsAll(eventIds);
+        // And - deliveries overlapped, but window was respected
+        assertThat(peakInFlight.get()).isGreaterThan(1).isLessThanOrEqualTo(MAX_IN_FLIGHT);
+        // And - total time is well below sum of destination round trips
+        assertThat(elapsedMillis).isLessThan(EVENTS * DESTINATION_LATENCY_MILLIS / 2);
+    }
+
+    private static HttpServer startDestination() {
+        try {
+            var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            var objectMapper = new ObjectMapper();
+            server.createContext("/events", exchange -> {
+                var current = inFlight.incrementAndGet();
+                peakInFlight.accumulateAndGet(current, Math::max);
+                var status = 202;
+                try {
+                    var event = objectMapper.readTree(exchange.getRequestBody());
+                    TimeUnit.MILLISECONDS.sleep(DESTINATION_LATENCY_MILLIS);
+                    received.add(event.get("eventId").asText());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    status = 503;
+                } finally {
+                    // Leaves the window before answering, sender may start next delivery right after response
+                    inFlight.decrementAndGet();
+                }
+                exchange.sendResponseHeaders(status, -1);
+                exchange.close();
+            });
+            server.setExecutor(destinationExecutor);
+            server.start();
+            return server;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private DbEvent dbEvent(PaymentCreatedEvent event) {
+        try {
+            return new DbEvent(objectMapper.writeValueAsString(event));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
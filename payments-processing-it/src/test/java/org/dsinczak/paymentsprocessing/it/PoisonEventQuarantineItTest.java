@@ -0,0 +1,154 @@
+package org.dsinczak.paymentsprocessing.it;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
+import org.dsinczak.paymentsprocessing.api.events.PaymentEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEvent;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventRepository;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderConduit;
+import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DeadLetterEventRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Events that cannot be delivered do not hold back the rest of the outbox and finally
+ * end up in the dead letter table.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:poisonEventQuarantine",
+        "payments.notification.sender.batch-size=10",
+        "payments.notification.sender.max-attempts=3",
+        "payments.notification.sender.initial-retry-backoff=50ms"
+})
+public class PoisonEventQuarantineItTest {
+
+    private static final int HEALTHY_EVENTS = 100;
+
+    @TestConfiguration
+    static class RejectingConduitConfiguration {
+        @Bean
+        @Primary
+        RejectingConduit rejectingConduit() {
+            return new RejectingConduit();
+        }
+    }
+
+    /**
+     * Accepts every event except the rejected ones.
+     */
+    static class RejectingConduit implements DbEventSenderConduit {
+        final Set<String> rejected = ConcurrentHashMap.newKeySet();
+        final Set<String> sent = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public CompletionStage<Void> send(PaymentEvent event) {
+            if (rejected.contains(event.getEventId())) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Destination rejected " + event.getEventId()));
+            }
+            sent.add(event.getEventId());
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    @Autowired
+    DbEventRepository eventRepository;
+
+    @Autowired
+    DeadLetterEventRepository deadLetterRepository;
+
+    @Autowired
+    RejectingConduit conduit;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Test
+    public void shouldQuarantineUnreadableEventWithoutBlockingOthers() throws Exception {
+        // Given - unreadable event at the head of the outbox
+        var poison = eventRepository.save(new DbEvent("{not a payment event"));
+        var healthy = healthyEvents();
+        eventRepository.saveAll(healthy.stream().map(this::dbEvent).collect(Collectors.toList()));
+        var healthyIds = eventIds(healthy);
+
+        // When
+        awaitUntil(() -> conduit.sent.containsAll(healthyIds) && !eventRepository.existsById(poison.getId()), Duration.ofSeconds(10));
+
+        // Then - events behind poison event were delivered
+        assertThat(conduit.sent).containsAll(healthyIds);
+        // And - poison event was moved to dead letter table after first attempt
+        var deadLetters = deadLetterRepository.findByOutboxId(poison.getId());
+        assertThat(deadLetters).hasSize(1);
+        assertThat(deadLetters.head().getAttempts()).isEqualTo(1);
+        assertThat(deadLetters.head().getEvent()).isEqualTo("{not a payment event");
+        assertThat(eventRepository.existsById(poison.getId())).isFalse();
+    }
+
+    @Test
+    public void shouldRetryRejectedEventAndQuarantineItAfterMaxAttempts() throws Exception {
+        // Given - event destination keeps rejecting, followed by healthy events
+        var rejected = new PaymentCreatedEvent(UUID.randomUUID().toString(), "TYPE1");
+        conduit.rejected.add(rejected.getEventId());
+        var rejectedRow = eventRepository.save(dbEvent(rejected));
+        var healthy = healthyEvents();
+        eventRepository.saveAll(healthy.stream().map(this::dbEvent).collect(Collectors.toList()));
+        var healthyIds = eventIds(healthy);
+
+        // When
+        awaitUntil(() -> !deadLetterRepository.findByOutboxId(rejectedRow.getId()).isEmpty(), Duration.ofSeconds(10));
+
+        // Then - healthy events were not held back
+        assertThat(conduit.sent).containsAll(healthyIds);
+        // And - rejected event was quarantined after all attempts
+        var deadLetters = deadLetterRepository.findByOutboxId(rejectedRow.getId());
+        assertThat(deadLetters).hasSize(1);
+        assertThat(deadLetters.head().getAttempts()).isEqualTo(3);
+        assertThat(deadLetters.head().getReason()).contains("Destination rejected");
+        assertThat(eventRepository.existsById(rejectedRow.getId())).isFalse();
+    }
+
+    private static List<PaymentCreatedEvent> healthyEvents() {
+        return IntStream.range(0, HEALTHY_EVENTS)
+                .mapToObj(i -> new PaymentCreatedEvent(UUID.randomUUID().toString(), "TYPE1"))
+                .collect(Collectors.toList());
+    }
+
+    private static Set<String> eventIds(List<PaymentCreatedEvent> events) {
+        return events.stream().map(PaymentCreatedEvent::getEventId).collect(Collectors.toSet());
+    }
+
+    private DbEvent dbEvent(PaymentCreatedEvent event) {
+        try {
+            return new DbEvent(objectMapper.writeValueAsString(event));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition, Duration timeout) throws InterruptedException {
+        var deadline = System.nanoTime() + timeout.toNanos();
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.dsinczak.paymentsprocessing.api.PaymentDto;
 import org.dsinczak.paymentsprocessing.api.events.PaymentCreatedEvent;
 import org.dsinczak.paymentsprocessing.notification.twoPhasePublisher.DbEventSenderConduit;
+import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,15 +14,18 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringRunner.class)
-@SpringBootTest
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:twoPhaseNotification")
 @AutoConfigureMockMvc
 public class TwoPhaseNotificationItTest {
 
@@ -34,6 +38,11 @@ public class TwoPhaseNotificationItTest {
     @MockBean
     DbEventSenderConduit eventSenderConduit;
 
+    @Before
+    public void destinationAcceptsEvents() {
+        when(eventSenderConduit.send(any())).thenReturn(CompletableFuture.completedFuture(null));
+    }
+
     @Test
     public void shouldSendNotificationUsing2PhaseApproach() throws Exception {
         // Given
@@ -61,4 +70,28 @@ public class TwoPhaseNotificationItTest {
         // and -verify if event was send
         verify(eventSenderConduit).send(any(PaymentCreatedEvent.class));
     }
+
+    @Test
+    public void shouldSendNotificationRightAfterCommitWithoutWaitingForPoll() throws Exception {
+        // Given - sender idle long enough to back off polling
+        TimeUnit.SECONDS.sleep(2);
+        PaymentDto paymentDto = PaymentDto.builder()
+                .type("TYPE2")
+                .amount("10")
+                .currency("EUR")
+                .creditorIban("SE3550000000054910000003")
+                .debtorIban("CH9300762011623852957")
+                .details("some details")
+                .build();
+
+        // When
+        mockMvc.perform(
+                post("/payment")
+                        .contentType("application/json")
+                        .content(objectMapper.writeValueAsString(paymentDto)))
+                .andExpect(status().isOk());
+
+        // Then - event is sent as soon as payment transaction commits
+        verify(eventSenderConduit, timeout(300)).send(any(PaymentCreatedEvent.class));
+    }
 }